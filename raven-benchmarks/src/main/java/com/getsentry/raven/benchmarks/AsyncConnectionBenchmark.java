@@ -0,0 +1,59 @@
+package com.getsentry.raven.benchmarks;
+
+import com.getsentry.raven.DefaultRavenFactory;
+import com.getsentry.raven.Raven;
+import com.getsentry.raven.dsn.Dsn;
+import com.getsentry.raven.event.Event;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link Raven#sendEvent(Event)} with an asynchronous connection to a {@link LoopbackSentryServer}.
+ * <p>
+ * The queue of the connection runs the events in the calling thread once it is full, so that the measure reflects
+ * the number of events actually sent rather than the number of events dropped.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AsyncConnectionBenchmark {
+    @Param({"raven.async.queue.overflow=sync", "raven.async.queue.overflow=sync&raven.async.ringbuffer=true"})
+    private String options;
+    private LoopbackSentryServer server;
+    private Raven raven;
+    private Event event;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new LoopbackSentryServer();
+        raven = new DefaultRavenFactory().createRavenInstance(new Dsn(server.getDsn(options)));
+        event = Fixtures.eventBuilder(Fixtures.exception(20)).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        raven.closeConnection();
+        server.close();
+    }
+
+    @Benchmark
+    public void sendEvent() {
+        raven.sendEvent(event);
+    }
+}
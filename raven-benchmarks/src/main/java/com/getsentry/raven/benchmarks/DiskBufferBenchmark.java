@@ -0,0 +1,78 @@
+package com.getsentry.raven.benchmarks;
+
+import com.getsentry.raven.buffer.BinaryEventCodec;
+import com.getsentry.raven.buffer.DiskBuffer;
+import com.getsentry.raven.buffer.EventCodec;
+import com.getsentry.raven.buffer.SerializationEventCodec;
+import com.getsentry.raven.event.Event;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of storing an event in the {@link DiskBuffer} and of reading the buffered events back, for each codec.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DiskBufferBenchmark {
+    private static final int BUFFERED_EVENTS = 50;
+    @Param({"serialization", "binary"})
+    private String codec;
+    private File bufferDir;
+    private DiskBuffer buffer;
+    private Event event;
+
+    @Setup
+    public void setUp() throws IOException {
+        bufferDir = File.createTempFile("raven-benchmark", null);
+        bufferDir.delete();
+        EventCodec eventCodec = "binary".equals(codec) ? new BinaryEventCodec() : new SerializationEventCodec();
+        buffer = new DiskBuffer(bufferDir, BUFFERED_EVENTS + 1, eventCodec);
+        for (int i = 0; i < BUFFERED_EVENTS; i++) {
+            buffer.add(Fixtures.eventBuilder(Fixtures.exception(20)).build());
+        }
+        event = Fixtures.eventBuilder(Fixtures.exception(20)).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File file : bufferDir.listFiles()) {
+            file.delete();
+        }
+        bufferDir.delete();
+    }
+
+    @Benchmark
+    public void addAndDiscard() {
+        buffer.add(event);
+        buffer.discard(event);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void getEvents(Blackhole blackhole) {
+        Iterator<Event> events = buffer.getEvents();
+        while (events.hasNext()) {
+            blackhole.consume(events.next());
+        }
+    }
+}
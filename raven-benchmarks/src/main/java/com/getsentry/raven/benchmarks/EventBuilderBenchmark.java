@@ -0,0 +1,41 @@
+package com.getsentry.raven.benchmarks;
+
+import com.getsentry.raven.event.Event;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building an event, including the conversion of the exception into Sentry interfaces.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventBuilderBenchmark {
+    @Param({"20", "200"})
+    private int stackDepth;
+    private Exception exception;
+
+    @Setup
+    public void setUp() {
+        exception = Fixtures.exception(stackDepth);
+    }
+
+    @Benchmark
+    public Event build() {
+        return Fixtures.eventBuilder(exception).build();
+    }
+}
@@ -0,0 +1,54 @@
+package com.getsentry.raven.benchmarks;
+
+import com.getsentry.raven.buffer.BinaryEventCodec;
+import com.getsentry.raven.buffer.EventCodec;
+import com.getsentry.raven.buffer.SerializationEventCodec;
+import com.getsentry.raven.event.Event;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of encoding and decoding a buffered event with each {@link EventCodec}, without any disk access.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventCodecBenchmark {
+    @Param({"serialization", "binary"})
+    private String codec;
+    private EventCodec eventCodec;
+    private Event event;
+    private byte[] encodedEvent;
+
+    @Setup
+    public void setUp() throws IOException {
+        eventCodec = "binary".equals(codec) ? new BinaryEventCodec() : new SerializationEventCodec();
+        event = Fixtures.eventBuilder(Fixtures.exception(20)).build();
+        encodedEvent = eventCodec.encode(event);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return eventCodec.encode(event);
+    }
+
+    @Benchmark
+    public Event decode() throws IOException {
+        return eventCodec.decode(encodedEvent);
+    }
+}
@@ -0,0 +1,48 @@
+package com.getsentry.raven.benchmarks;
+
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.marshaller.Marshaller;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning an event into the payload sent to Sentry, with and without compression.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonMarshallerBenchmark {
+    @Param({"true", "false"})
+    private boolean compression;
+    @Param({"20", "200"})
+    private int stackDepth;
+    private Marshaller marshaller;
+    private Event event;
+    private final OutputStream destination = new Fixtures.NullOutputStream();
+
+    @Setup
+    public void setUp() {
+        marshaller = Fixtures.marshaller(compression);
+        event = Fixtures.eventBuilder(Fixtures.exception(stackDepth)).build();
+    }
+
+    @Benchmark
+    public void marshall() {
+        marshaller.marshall(event, destination);
+    }
+}
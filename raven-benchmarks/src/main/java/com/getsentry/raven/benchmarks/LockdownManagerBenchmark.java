@@ -0,0 +1,91 @@
+package com.getsentry.raven.benchmarks;
+
+import com.getsentry.raven.connection.LockdownManager;
+import com.getsentry.raven.time.Clock;
+import com.getsentry.raven.time.SystemClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the lockdown checks made by the connections around every successful send, with as many threads as the
+ * async senders sharing the same lockdown manager.
+ * <p>
+ * The {@code Synchronized} variants measure the same checks with the previous implementation, which held the
+ * monitor of the lockdown manager for every call.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LockdownManagerBenchmark {
+    private final LockdownManager lockdownManager = new LockdownManager();
+    private final SynchronizedLockdownManager synchronizedLockdownManager = new SynchronizedLockdownManager();
+
+    @Benchmark
+    @Threads(1)
+    public boolean successfulSendSingleThread() {
+        return successfulSend();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean successfulSendContended() {
+        return successfulSend();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean successfulSendSingleThreadSynchronized() {
+        return successfulSendSynchronized();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean successfulSendContendedSynchronized() {
+        return successfulSendSynchronized();
+    }
+
+    private boolean successfulSend() {
+        boolean lockedDown = lockdownManager.isLockedDown();
+        lockdownManager.resetState();
+        return lockedDown;
+    }
+
+    private boolean successfulSendSynchronized() {
+        boolean lockedDown = synchronizedLockdownManager.isLockedDown();
+        synchronizedLockdownManager.resetState();
+        return lockedDown;
+    }
+
+    /**
+     * The checks made around a successful send by the previous, synchronized, implementation of
+     * {@link LockdownManager}.
+     */
+    private static final class SynchronizedLockdownManager {
+        private final Clock clock = new SystemClock();
+        private long lockdownTime = 0;
+        private Date lockdownStartTime = null;
+
+        public synchronized boolean isLockedDown() {
+            return lockdownStartTime != null && (clock.millis() - lockdownStartTime.getTime()) < lockdownTime;
+        }
+
+        public synchronized void resetState() {
+            lockdownTime = 0;
+            lockdownStartTime = null;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.getsentry.raven.benchmarks;
+
+import com.getsentry.raven.DefaultRavenFactory;
+import com.getsentry.raven.Raven;
+import com.getsentry.raven.dsn.Dsn;
+import com.getsentry.raven.jul.SentryHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Time spent in the logging thread by {@link SentryHandler#publish(LogRecord)}, from the log record to the event
+ * queued for a {@link LoopbackSentryServer}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SentryHandlerBenchmark {
+    private LoopbackSentryServer server;
+    private Raven raven;
+    private SentryHandler handler;
+    private LogRecord record;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new LoopbackSentryServer();
+        raven = new DefaultRavenFactory().createRavenInstance(
+            new Dsn(server.getDsn("raven.async.queue.overflow=sync")));
+        handler = new SentryHandler(raven);
+        record = new LogRecord(Level.SEVERE, "Couldn't process the order {0}");
+        record.setLoggerName("com.example.OrderService");
+        record.setParameters(new Object[]{12345});
+        record.setThrown(Fixtures.exception(20));
+    }
+
+    @TearDown
+    public void tearDown() {
+        handler.close();
+        raven.closeConnection();
+        server.close();
+    }
+
+    @Benchmark
+    public void publish() {
+        handler.publish(record);
+    }
+}
@@ -0,0 +1,70 @@
+package com.getsentry.raven.benchmarks;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.getsentry.raven.event.interfaces.StackTraceInterface;
+import com.getsentry.raven.marshaller.json.StackTraceInterfaceBinding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of writing deep stack traces, where the in-app detection runs for every frame unless the same stack trace
+ * is already in the cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StackTraceInterfaceBindingBenchmark {
+    private static final int IN_APP_PACKAGES = 40;
+    @Param({"50", "500"})
+    private int stackDepth;
+    @Param({"0", "100"})
+    private int cacheSize;
+    private StackTraceInterfaceBinding binding;
+    private StackTraceInterface stackTrace;
+    private JsonGenerator generator;
+
+    @Setup
+    public void setUp() throws IOException {
+        binding = new StackTraceInterfaceBinding();
+        // Applications typically configure a few dozens of in-app packages
+        List<String> inAppFrames = new ArrayList<String>();
+        for (int i = 0; i < IN_APP_PACKAGES; i++) {
+            inAppFrames.add("com.example.module" + i + ".");
+        }
+        inAppFrames.add("com.example.layer1");
+        binding.setInAppFrames(inAppFrames);
+        binding.setFrameCacheSize(cacheSize);
+        stackTrace = new StackTraceInterface(Fixtures.exception(stackDepth).getStackTrace());
+        generator = new JsonFactory().createGenerator(new Fixtures.NullOutputStream());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        generator.close();
+    }
+
+    @Benchmark
+    public void writeInterface() throws IOException {
+        binding.writeInterface(generator, stackTrace);
+        generator.flush();
+    }
+}
@@ -1,11 +1,19 @@
 package com.getsentry.raven;
 
+import com.getsentry.raven.buffer.BinaryEventCodec;
 import com.getsentry.raven.buffer.Buffer;
 import com.getsentry.raven.buffer.DiskBuffer;
+import com.getsentry.raven.buffer.EventCodec;
+import com.getsentry.raven.buffer.MappedDiskBuffer;
+import com.getsentry.raven.buffer.PayloadDiskBuffer;
+import com.getsentry.raven.buffer.SegmentedLogBuffer;
+import com.getsentry.raven.buffer.SerializationEventCodec;
 import com.getsentry.raven.connection.*;
 import com.getsentry.raven.context.ContextManager;
 import com.getsentry.raven.context.ThreadLocalContextManager;
 import com.getsentry.raven.dsn.Dsn;
+import com.getsentry.raven.event.EventBuilder;
+import com.getsentry.raven.event.helper.BasicRemoteAddressResolver;
 import com.getsentry.raven.event.helper.ContextBuilderHelper;
 import com.getsentry.raven.event.helper.HttpEventBuilderHelper;
 import com.getsentry.raven.event.interfaces.*;
@@ -44,6 +52,27 @@ public class DefaultRavenFactory extends RavenFactory {
      * Sentry Server.
      */
     public static final String MAX_MESSAGE_LENGTH_OPTION = "raven.maxmessagelength";
+    /**
+     * Option to set the maximum number of frames sent for each stack trace, the frames in the middle of longer stack
+     * traces are omitted.
+     */
+    public static final String MAX_FRAMES_OPTION = "raven.maxframes";
+    /**
+     * Option to set the maximum number of extras sent with each event.
+     */
+    public static final String MAX_EXTRAS_OPTION = "raven.maxextras";
+    /**
+     * Option to set the maximum nesting of the values of the extras and contexts sent.
+     */
+    public static final String MAX_DEPTH_OPTION = "raven.maxdepth";
+    /**
+     * Option to set the maximum length of the values of the breadcrumbs' data sent.
+     */
+    public static final String MAX_BREADCRUMB_VALUE_LENGTH_OPTION = "raven.maxbreadcrumbvaluelength";
+    /**
+     * Option to set the maximum size of the body of the requests to the Sentry Server, in bytes.
+     */
+    public static final String MAX_SIZE_OPTION = "raven.maxsize";
     /**
      * Option to set a timeout for requests to the Sentry server, in milliseconds.
      */
@@ -52,6 +81,30 @@ public class DefaultRavenFactory extends RavenFactory {
      * Default timeout of an HTTP connection to Sentry.
      */
     public static final int TIMEOUT_DEFAULT = (int) TimeUnit.SECONDS.toMillis(1);
+    /**
+     * Option to disable the reuse of the underlying HTTP connection between two events.
+     */
+    public static final String HTTP_KEEPALIVE_OPTION = "raven.http.keepalive";
+    /**
+     * Option to keep a pool of persistent HTTP connections to the Sentry server.
+     */
+    public static final String HTTP_POOL_OPTION = "raven.http.pool";
+    /**
+     * Option to set the maximum number of pooled HTTP connections open at the same time.
+     */
+    public static final String HTTP_POOL_MAX_CONNECTIONS_OPTION = "raven.http.pool.maxconnections";
+    /**
+     * Default maximum number of pooled HTTP connections open at the same time.
+     */
+    public static final int HTTP_POOL_MAX_CONNECTIONS_DEFAULT = 5;
+    /**
+     * Option to set the time after which an unused pooled HTTP connection is closed, in milliseconds.
+     */
+    public static final String HTTP_POOL_IDLE_TIMEOUT_OPTION = "raven.http.pool.idletimeout";
+    /**
+     * Default time after which an unused pooled HTTP connection is closed, in milliseconds.
+     */
+    public static final long HTTP_POOL_IDLE_TIMEOUT_DEFAULT = TimeUnit.SECONDS.toMillis(30);
     /**
      * Option to enable or disable Event buffering. A buffering directory is also required.
      * This setting is mostly useful on Android where a buffering directory is set by default.
@@ -73,6 +126,41 @@ public class DefaultRavenFactory extends RavenFactory {
      * Default number of events to cache offline when network is down.
      */
     public static final int BUFFER_SIZE_DEFAULT = 50;
+    /**
+     * Option for the way events are stored in the buffer directory, either one file per event ("disk"), an
+     * append-only log of segment files ("log"), memory-mapped segment files ("mapped") or one file per marshalled
+     * event ("payload").
+     */
+    public static final String BUFFER_TYPE_OPTION = "raven.buffer.type";
+    /**
+     * Buffer type storing every event in its own file.
+     */
+    public static final String BUFFER_TYPE_DISK = "disk";
+    /**
+     * Buffer type appending the events to an append-only log.
+     */
+    public static final String BUFFER_TYPE_LOG = "log";
+    /**
+     * Buffer type copying the events in memory-mapped segment files.
+     */
+    public static final String BUFFER_TYPE_MAPPED = "mapped";
+    /**
+     * Buffer type storing every event in its own file, as sent to the Sentry server. Only used with HTTP connections.
+     */
+    public static final String BUFFER_TYPE_PAYLOAD = "payload";
+    /**
+     * Option for the format of the buffered events, either the Java serialization ("serialization") or a compact
+     * binary format ("binary").
+     */
+    public static final String BUFFER_CODEC_OPTION = "raven.buffer.codec";
+    /**
+     * Buffer codec relying on the Java serialization.
+     */
+    public static final String BUFFER_CODEC_SERIALIZATION = "serialization";
+    /**
+     * Buffer codec using a compact binary format.
+     */
+    public static final String BUFFER_CODEC_BINARY = "binary";
     /**
      * Option for how long to wait between attempts to flush the disk buffer, in milliseconds.
      */
@@ -81,6 +169,18 @@ public class DefaultRavenFactory extends RavenFactory {
      * Default number of milliseconds between attempts to flush buffered events.
      */
     public static final long BUFFER_FLUSHTIME_DEFAULT = 60000;
+    /**
+     * Option for the maximum number of buffered events sent at once when flushing the disk buffer.
+     */
+    public static final String BUFFER_FLUSHTHREADS_OPTION = "raven.buffer.flushthreads";
+    /**
+     * Default maximum number of buffered events sent at once.
+     */
+    public static final int BUFFER_FLUSHTHREADS_DEFAULT = 1;
+    /**
+     * Option for the maximum number of buffered events sent per second when flushing the disk buffer.
+     */
+    public static final String BUFFER_FLUSHRATE_OPTION = "raven.buffer.flushrate";
     /**
      * Option to disable the graceful shutdown of the buffer flusher.
      */
@@ -143,6 +243,44 @@ public class DefaultRavenFactory extends RavenFactory {
      * Default timeout of the {@link AsyncConnection} executor, in milliseconds.
      */
     public static final long ASYNC_SHUTDOWN_TIMEOUT_DEFAULT = TimeUnit.SECONDS.toMillis(1);
+    /**
+     * Option to send events with non-blocking I/O from a single thread instead of a pool of blocking threads.
+     */
+    public static final String ASYNC_HTTP_OPTION = "raven.async.http";
+    /**
+     * Option for the maximum number of submissions waiting for Sentry at the same time with non-blocking I/O.
+     */
+    public static final String ASYNC_HTTP_MAX_IN_FLIGHT_OPTION = "raven.async.http.maxinflight";
+    /**
+     * Default maximum number of submissions waiting for Sentry at the same time with non-blocking I/O.
+     */
+    public static final int ASYNC_HTTP_MAX_IN_FLIGHT_DEFAULT = 100;
+    /**
+     * Option to queue the events of the async connection in a lock-free ring buffer sent by a single thread.
+     */
+    public static final String ASYNC_RING_BUFFER_OPTION = "raven.async.ringbuffer";
+    /**
+     * Option for the maximum number of events sent in a single batch by the async connection.
+     * <p>
+     * Batching is only enabled when this value is greater than 1.
+     */
+    public static final String ASYNC_BATCH_SIZE_OPTION = "raven.async.batch.size";
+    /**
+     * Default number of events in a batch, batching is disabled by default.
+     */
+    public static final int ASYNC_BATCH_SIZE_DEFAULT = 1;
+    /**
+     * Option for the maximum time to wait for a batch to fill up, in milliseconds.
+     */
+    public static final String ASYNC_BATCH_FLUSHTIME_OPTION = "raven.async.batch.flushtime";
+    /**
+     * Default maximum time to wait for a batch to fill up, in milliseconds.
+     */
+    public static final long ASYNC_BATCH_FLUSHTIME_DEFAULT = 100;
+    /**
+     * Option to run the builder helpers and build the events on the async threads instead of the calling thread.
+     */
+    public static final String ASYNC_BUILD_OPTION = "raven.async.build";
     /**
      * Option for which package prefixes are part of the user's application code, as a single
      * comma separated string.
@@ -152,10 +290,50 @@ public class DefaultRavenFactory extends RavenFactory {
      * Option for whether to hide common stackframes with enclosing exceptions.
      */
     public static final String HIDE_COMMON_FRAMES_OPTION = "raven.stacktrace.hidecommon";
+    /**
+     * Option for the number of serialized stack traces kept in memory, 0 disables the cache.
+     */
+    public static final String STACKTRACE_CACHE_SIZE_OPTION = "raven.stacktrace.cachesize";
     /**
      * Option for whether to sample events, allowing from 0.0 to 1.0 (0 to 100%) to be sent to the server.
      */
     public static final String SAMPLE_RATE_OPTION = "raven.sample.rate";
+    /**
+     * Option for the number of events per second to aim for when adapting the sample rate to the rate of events.
+     */
+    public static final String SAMPLE_TARGET_OPTION = "raven.sample.target";
+    /**
+     * Option for the maximum number of events sent per second, overall.
+     */
+    public static final String RATE_LIMIT_OPTION = "raven.ratelimit";
+    /**
+     * Option for the maximum number of events sent per second, for each logger.
+     */
+    public static final String RATE_LIMIT_LOGGER_OPTION = "raven.ratelimit.logger";
+    /**
+     * Option for the maximum number of events sent per second, for each fingerprint.
+     */
+    public static final String RATE_LIMIT_FINGERPRINT_OPTION = "raven.ratelimit.fingerprint";
+    /**
+     * Option for the number of events sent at once when a rate limit hasn't been reached for a while.
+     */
+    public static final String RATE_LIMIT_BURST_OPTION = "raven.ratelimit.burst";
+    /**
+     * Default number of events sent at once when a rate limit hasn't been reached for a while.
+     */
+    public static final int RATE_LIMIT_BURST_DEFAULT = 10;
+    /**
+     * Option for the duration during which the repeats of an event are suppressed, in milliseconds.
+     */
+    public static final String DEDUPLICATION_WINDOW_OPTION = "raven.deduplication.window";
+    /**
+     * Default duration during which the repeats of an event are suppressed, 0 disables the deduplication.
+     */
+    public static final long DEDUPLICATION_WINDOW_DEFAULT = 0;
+    /**
+     * Option for the number of frames of each exception used to identify the repeats of an event.
+     */
+    public static final String DEDUPLICATION_FRAMES_OPTION = "raven.deduplication.frames";
     /**
      * Option to set an HTTP proxy hostname for Sentry connections.
      */
@@ -172,6 +350,37 @@ public class DefaultRavenFactory extends RavenFactory {
      * Option to set an HTTP proxy password for Sentry connections.
      */
     public static final String HTTP_PROXY_PASS_OPTION = "raven.http.proxy.password";
+    /**
+     * Option for whether to capture only some headers and parameters of the HTTP requests, with limited lengths.
+     */
+    public static final String HTTP_SNAPSHOT_OPTION = "raven.http.snapshot";
+    /**
+     * Option for the headers captured from the HTTP requests when snapshots are enabled, as a single comma separated
+     * string.
+     */
+    public static final String HTTP_SNAPSHOT_HEADERS_OPTION = "raven.http.snapshot.headers";
+    /**
+     * Default headers captured from the HTTP requests when snapshots are enabled.
+     */
+    public static final String HTTP_SNAPSHOT_HEADERS_DEFAULT =
+        "Host,User-Agent,Referer,Accept,Accept-Language,Content-Type,Content-Length,X-Forwarded-For";
+    /**
+     * Option for the parameters captured from the HTTP requests when snapshots are enabled, as a single comma
+     * separated string.
+     */
+    public static final String HTTP_SNAPSHOT_PARAMETERS_OPTION = "raven.http.snapshot.parameters";
+    /**
+     * Option for the maximum length of each value captured from the HTTP requests when snapshots are enabled.
+     */
+    public static final String HTTP_SNAPSHOT_MAX_LENGTH_OPTION = "raven.http.snapshot.maxlength";
+    /**
+     * Default maximum length of each value captured from the HTTP requests when snapshots are enabled.
+     */
+    public static final int HTTP_SNAPSHOT_MAX_LENGTH_DEFAULT = 256;
+    /**
+     * Option for whether to measure the time spent in each builder helper.
+     */
+    public static final String HELPERS_TIMING_OPTION = "raven.helpers.timing";
     /**
      * The default async queue size if none is provided.
      */
@@ -181,6 +390,10 @@ public class DefaultRavenFactory extends RavenFactory {
      */
     public static final int HTTP_PROXY_PORT_DEFAULT = 80;
 
+    /**
+     * Time for which the creation of a Raven instance waits for the first resolution of the hostname (in ms).
+     */
+    private static final long HOSTNAME_LOOKUP_TIMEOUT = 500;
     private static final Logger logger = LoggerFactory.getLogger(DefaultRavenFactory.class);
     private static final String FALSE = Boolean.FALSE.toString();
 
@@ -191,15 +404,40 @@ public class DefaultRavenFactory extends RavenFactory {
         REJECT_EXECUTION_HANDLERS.put(ASYNC_QUEUE_DISCARDOLD, new ThreadPoolExecutor.DiscardOldestPolicy());
     }
 
+    private static final Map<String, QueueOverflowPolicy> QUEUE_OVERFLOW_POLICIES = new HashMap<String, QueueOverflowPolicy>();
+    static {
+        QUEUE_OVERFLOW_POLICIES.put(ASYNC_QUEUE_SYNC, QueueOverflowPolicy.SYNC);
+        QUEUE_OVERFLOW_POLICIES.put(ASYNC_QUEUE_DISCARDNEW, QueueOverflowPolicy.DISCARD_NEW);
+        QUEUE_OVERFLOW_POLICIES.put(ASYNC_QUEUE_DISCARDOLD, QueueOverflowPolicy.DISCARD_OLD);
+    }
+
     @Override
     public Raven createRavenInstance(Dsn dsn) {
+        // Resolved in the background, the first resolution being briefly awaited so that the first events have it
+        EventBuilder.getHostnameCache().start();
+        EventBuilder.getHostnameCache().awaitFirstRefresh(HOSTNAME_LOOKUP_TIMEOUT);
         Raven raven = new Raven(createConnection(dsn), getContextManager(dsn));
+        Double sampleRate = getSampleRate(dsn);
+        if (sampleRate != null) {
+            // Sampled before the events are built, the connection doesn't sample them again
+            raven.setSampleRate(sampleRate);
+        }
+        Double sampleTarget = getSampleTarget(dsn);
+        if (sampleTarget != null) {
+            raven.setAdaptiveEventSampler(new AdaptiveEventSampler(sampleTarget));
+        }
+        raven.setBuilderHelperTimingEnabled(getHelpersTimingEnabled(dsn));
+        if (getAsyncBuildEnabled(dsn)) {
+            raven.setEventBuildingExecutor(createEventBuildingExecutor(dsn), getAsyncShutdownTimeout(dsn));
+        }
         try {
             // `ServletRequestListener` was added in the Servlet 2.4 API, and
             // is used as part of the `HttpEventBuilderHelper`, see:
             // https://tomcat.apache.org/tomcat-5.5-doc/servletapi/
             Class.forName("javax.servlet.ServletRequestListener", false, this.getClass().getClassLoader());
-            raven.addBuilderHelper(new HttpEventBuilderHelper());
+            // Only capture the request of the events actually sent
+            raven.addBuilderHelper(new HttpEventBuilderHelper(new BasicRemoteAddressResolver(),
+                getHttpSnapshotPolicy(dsn)), Raven.DEFAULT_HELPER_PRIORITY, true);
         } catch (ClassNotFoundException e) {
             logger.debug("The current environment doesn't provide access to servlets,"
                 + " or provides an unsupported version.");
@@ -220,6 +458,15 @@ public class DefaultRavenFactory extends RavenFactory {
 
         if (protocol.equalsIgnoreCase("http") || protocol.equalsIgnoreCase("https")) {
             logger.info("Using an {} connection to Sentry.", protocol.toUpperCase());
+            if (getAsyncHttpEnabled(dsn)) {
+                // Already asynchronous, it must not be wrapped in an other async connection
+                connection = createAsyncHttpConnection(dsn);
+                BufferedConnection bufferedConnection = createBufferedConnection(dsn, connection);
+                if (bufferedConnection != null) {
+                    connection = bufferedConnection.wrapConnectionWithBufferWriter(bufferedConnection);
+                }
+                return createDeduplicatingConnection(dsn, connection);
+            }
             connection = createHttpConnection(dsn);
         } else if (protocol.equalsIgnoreCase("out")) {
             logger.info("Using StdOut to send events.");
@@ -231,21 +478,19 @@ public class DefaultRavenFactory extends RavenFactory {
             throw new IllegalStateException("Couldn't create a connection for the protocol '" + protocol + "'");
         }
 
-        BufferedConnection bufferedConnection = null;
-        if (getBufferEnabled(dsn)) {
-            Buffer eventBuffer = getBuffer(dsn);
-            if (eventBuffer != null) {
-                long flushtime = getBufferFlushtime(dsn);
-                boolean gracefulShutdown = getBufferedConnectionGracefulShutdownEnabled(dsn);
-                Long shutdownTimeout = getBufferedConnectionShutdownTimeout(dsn);
-                bufferedConnection = new BufferedConnection(connection, eventBuffer, flushtime, gracefulShutdown,
-                    shutdownTimeout);
-                connection = bufferedConnection;
-            }
+        boolean batchingEnabled = getAsyncEnabled(dsn) && getAsyncBatchSize(dsn) > 1;
+
+        BufferedConnection bufferedConnection = createBufferedConnection(dsn, connection);
+        if (bufferedConnection != null) {
+            connection = bufferedConnection;
         }
 
         // Enable async unless its value is 'false'.
-        if (getAsyncEnabled(dsn)) {
+        if (batchingEnabled) {
+            connection = createBatchingConnection(dsn, connection);
+        } else if (getAsyncRingBufferEnabled(dsn)) {
+            connection = createRingBufferConnection(dsn, connection);
+        } else if (getAsyncEnabled(dsn)) {
             connection = createAsyncConnection(dsn, connection);
         }
 
@@ -254,7 +499,46 @@ public class DefaultRavenFactory extends RavenFactory {
             connection = bufferedConnection.wrapConnectionWithBufferWriter(connection);
         }
 
-        return connection;
+        return createDeduplicatingConnection(dsn, connection);
+    }
+
+    /**
+     * Encapsulates an already existing connection in a {@link BufferedConnection} if the buffering is enabled and a
+     * buffer directory is set in the Sentry DSN.
+     *
+     * @param dsn        Data Source Name of the Sentry server.
+     * @param connection Connection to encapsulate in a {@link BufferedConnection}.
+     * @return the buffered connection, or null if the events aren't buffered.
+     */
+    protected BufferedConnection createBufferedConnection(Dsn dsn, Connection connection) {
+        if (!getBufferEnabled(dsn)) {
+            return null;
+        }
+        Buffer eventBuffer = getBuffer(dsn);
+        if (eventBuffer == null) {
+            return null;
+        }
+        long flushtime = getBufferFlushtime(dsn);
+        boolean gracefulShutdown = getBufferedConnectionGracefulShutdownEnabled(dsn);
+        Long shutdownTimeout = getBufferedConnectionShutdownTimeout(dsn);
+        return new BufferedConnection(connection, eventBuffer, flushtime, gracefulShutdown,
+            shutdownTimeout, getBufferFlushThreads(dsn), getBufferFlushRate(dsn));
+    }
+
+    /**
+     * Encapsulates an already existing connection in a {@link DeduplicatingConnection} if the deduplication is
+     * enabled in the Sentry DSN.
+     *
+     * @param dsn        Data Source Name of the Sentry server.
+     * @param connection Connection to encapsulate in a {@link DeduplicatingConnection}.
+     * @return the deduplicating connection, or the connection itself if the deduplication is disabled.
+     */
+    protected Connection createDeduplicatingConnection(Dsn dsn, Connection connection) {
+        long window = getDeduplicationWindow(dsn);
+        if (window <= 0) {
+            return connection;
+        }
+        return new DeduplicatingConnection(connection, window, getDeduplicationFrames(dsn));
     }
 
     /**
@@ -288,6 +572,106 @@ public class DefaultRavenFactory extends RavenFactory {
         return new AsyncConnection(connection, executorService, gracefulShutdown, shutdownTimeout);
     }
 
+    /**
+     * Creates the executor building the events off the calling thread, with the async options from the Sentry DSN.
+     *
+     * @param dsn Data Source Name of the Sentry server.
+     * @return the executor building the events.
+     */
+    protected ExecutorService createEventBuildingExecutor(Dsn dsn) {
+        int threads = getAsyncThreads(dsn);
+        int queueSize = getAsyncQueueSize(dsn);
+        BlockingQueue<Runnable> queue;
+        if (queueSize == -1) {
+            queue = new LinkedBlockingQueue<Runnable>();
+        } else {
+            queue = new LinkedBlockingQueue<Runnable>(queueSize);
+        }
+
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue,
+            new DaemonThreadFactory(getAsyncPriority(dsn)), getRejectedExecutionHandler(dsn));
+    }
+
+    /**
+     * Encapsulates an already existing connection in a {@link BatchingConnection} and get the async and batching
+     * options from the Sentry DSN.
+     *
+     * @param dsn        Data Source Name of the Sentry server.
+     * @param connection Connection to encapsulate in a {@link BatchingConnection}.
+     * @return the batching asynchronous connection.
+     */
+    protected Connection createBatchingConnection(Dsn dsn, Connection connection) {
+        int batchSize = getAsyncBatchSize(dsn);
+        long batchFlushtime = getAsyncBatchFlushtime(dsn);
+        int threads = getAsyncThreads(dsn);
+        int priority = getAsyncPriority(dsn);
+        int queueSize = getAsyncQueueSize(dsn);
+        QueueOverflowPolicy overflowPolicy = getQueueOverflowPolicy(dsn);
+        boolean gracefulShutdown = getAsyncGracefulShutdownEnabled(dsn);
+        long shutdownTimeout = getAsyncShutdownTimeout(dsn);
+        return new BatchingConnection(connection, batchSize, batchFlushtime, threads, priority, queueSize,
+            overflowPolicy, gracefulShutdown, shutdownTimeout);
+    }
+
+    /**
+     * Encapsulates an already existing connection in a {@link RingBufferConnection} and get the async options from
+     * the Sentry DSN.
+     *
+     * @param dsn        Data Source Name of the Sentry server.
+     * @param connection Connection to encapsulate in a {@link RingBufferConnection}.
+     * @return the asynchronous connection.
+     */
+    protected Connection createRingBufferConnection(Dsn dsn, Connection connection) {
+        int capacity = getAsyncQueueSize(dsn);
+        int priority = getAsyncPriority(dsn);
+        QueueOverflowPolicy overflowPolicy = getQueueOverflowPolicy(dsn);
+        boolean gracefulShutdown = getAsyncGracefulShutdownEnabled(dsn);
+        long shutdownTimeout = getAsyncShutdownTimeout(dsn);
+        return new RingBufferConnection(connection, capacity, priority, overflowPolicy, gracefulShutdown,
+            shutdownTimeout);
+    }
+
+    /**
+     * Creates an HTTP connection to the Sentry server based on non-blocking I/O.
+     *
+     * @param dsn Data Source Name of the Sentry server.
+     * @return an {@link AsyncHttpConnection} to the server.
+     */
+    protected Connection createAsyncHttpConnection(Dsn dsn) {
+        URL sentryApiUrl = HttpConnection.getSentryApiUrl(dsn.getUri(), dsn.getProjectId());
+
+        EventSampler eventSampler = createEventSampler(dsn);
+
+        AsyncHttpConnection httpConnection = new AsyncHttpConnection(sentryApiUrl, dsn.getPublicKey(),
+            dsn.getSecretKey(), eventSampler, getAsyncHttpMaxInFlight(dsn), getAsyncQueueSize(dsn),
+            getQueueOverflowPolicy(dsn), getAsyncGracefulShutdownEnabled(dsn), getAsyncShutdownTimeout(dsn));
+        httpConnection.setMarshaller(createMarshaller(dsn));
+        httpConnection.setTimeout(getTimeout(dsn));
+        httpConnection.setBypassSecurity(getBypassSecurityEnabled(dsn));
+        return httpConnection;
+    }
+
+    /**
+     * Creates the {@link EventSampler} deciding which events are sent to the Sentry server, based on the rate limits
+     * of the DSN.
+     * <p>
+     * The sample rate isn't part of it, the events are sampled by {@link Raven} before being built.
+     *
+     * @param dsn Data Source Name of the Sentry server.
+     * @return the sampler, or null if every event should be sent.
+     */
+    protected EventSampler createEventSampler(Dsn dsn) {
+        double rateLimit = getRateLimit(dsn, RATE_LIMIT_OPTION);
+        double loggerRateLimit = getRateLimit(dsn, RATE_LIMIT_LOGGER_OPTION);
+        double fingerprintRateLimit = getRateLimit(dsn, RATE_LIMIT_FINGERPRINT_OPTION);
+        if (rateLimit <= 0 && loggerRateLimit <= 0 && fingerprintRateLimit <= 0) {
+            return null;
+        }
+
+        return new RateLimitingEventSampler(rateLimit, loggerRateLimit, fingerprintRateLimit,
+            getRateLimitBurst(dsn));
+    }
+
     /**
      * Creates an HTTP connection to the Sentry server.
      *
@@ -311,10 +695,13 @@ public class DefaultRavenFactory extends RavenFactory {
             }
         }
 
-        Double sampleRate = getSampleRate(dsn);
-        EventSampler eventSampler = null;
-        if (sampleRate != null) {
-            eventSampler = new RandomEventSampler(sampleRate);
+        EventSampler eventSampler = createEventSampler(dsn);
+
+        if (getHttpPoolEnabled(dsn)) {
+            if (proxy == null) {
+                return createPooledHttpConnection(dsn, sentryApiUrl, eventSampler);
+            }
+            logger.warn("Pooled HTTP connections don't support proxies, falling back to a regular connection.");
         }
 
         HttpConnection httpConnection = new HttpConnection(sentryApiUrl, dsn.getPublicKey(),
@@ -329,6 +716,27 @@ public class DefaultRavenFactory extends RavenFactory {
         boolean bypassSecurityEnabled = getBypassSecurityEnabled(dsn);
         httpConnection.setBypassSecurity(bypassSecurityEnabled);
 
+        boolean keepAliveEnabled = getHttpKeepAliveEnabled(dsn);
+        httpConnection.setKeepAlive(keepAliveEnabled);
+
+        return httpConnection;
+    }
+
+    /**
+     * Creates an HTTP connection to the Sentry server keeping a pool of persistent connections.
+     *
+     * @param dsn          Data Source Name of the Sentry server.
+     * @param sentryApiUrl URL to the Sentry API.
+     * @param eventSampler EventSampler instance to use, or null to not sample events.
+     * @return a {@link PooledHttpConnection} to the server.
+     */
+    protected Connection createPooledHttpConnection(Dsn dsn, URL sentryApiUrl, EventSampler eventSampler) {
+        PooledHttpConnection httpConnection = new PooledHttpConnection(sentryApiUrl, dsn.getPublicKey(),
+            dsn.getSecretKey(), eventSampler, getHttpPoolMaxConnections(dsn));
+        httpConnection.setMarshaller(createMarshaller(dsn));
+        httpConnection.setTimeout(getTimeout(dsn));
+        httpConnection.setIdleTimeout(getHttpPoolIdleTimeout(dsn));
+        httpConnection.setBypassSecurity(getBypassSecurityEnabled(dsn));
         return httpConnection;
     }
 
@@ -362,6 +770,8 @@ public class DefaultRavenFactory extends RavenFactory {
         // Enable common frames hiding unless its value is 'false'.
         stackTraceBinding.setRemoveCommonFramesWithEnclosing(getHideCommonFramesEnabled(dsn));
         stackTraceBinding.setInAppFrames(getInAppFrames(dsn));
+        stackTraceBinding.setFrameCacheSize(getStackTraceCacheSize(dsn));
+        stackTraceBinding.setMaxFrames(getMaxFrames(dsn));
 
         marshaller.addInterfaceBinding(StackTraceInterface.class, stackTraceBinding);
         marshaller.addInterfaceBinding(ExceptionInterface.class, new ExceptionInterfaceBinding(stackTraceBinding));
@@ -374,6 +784,10 @@ public class DefaultRavenFactory extends RavenFactory {
 
         // Enable compression unless the option is set to false
         marshaller.setCompression(getCompressionEnabled(dsn));
+        marshaller.setMaxExtras(getMaxExtras(dsn));
+        marshaller.setMaxDepth(getMaxDepth(dsn));
+        marshaller.setMaxBreadcrumbValueLength(getMaxBreadcrumbValueLength(dsn));
+        marshaller.setMaxSize(getMaxSize(dsn));
 
         return marshaller;
     }
@@ -446,6 +860,150 @@ public class DefaultRavenFactory extends RavenFactory {
         return handler;
     }
 
+    /**
+     * Whether or not to send events with an {@link AsyncHttpConnection}.
+     * <p>
+     * Non-blocking I/O is only used when the async mode is enabled, and no HTTP proxy is configured.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Whether or not to use an {@link AsyncHttpConnection}.
+     */
+    protected boolean getAsyncHttpEnabled(Dsn dsn) {
+        if (!getAsyncEnabled(dsn) || !Boolean.parseBoolean(dsn.getOptions().get(ASYNC_HTTP_OPTION))) {
+            return false;
+        }
+        if (getProxyHost(dsn) != null) {
+            logger.warn("Non-blocking HTTP connections don't support proxies, falling back to a regular connection.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Whether or not to run the builder helpers and build the events on async threads.
+     * <p>
+     * The events are only built asynchronously when the async mode is enabled.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Whether or not to build the events on async threads.
+     */
+    protected boolean getAsyncBuildEnabled(Dsn dsn) {
+        return getAsyncEnabled(dsn) && Boolean.parseBoolean(dsn.getOptions().get(ASYNC_BUILD_OPTION));
+    }
+
+    /**
+     * Whether or not to queue the events of the async connection in a {@link RingBufferConnection}.
+     * <p>
+     * The ring buffer is preallocated, so it is only used when the async mode is enabled with a bounded queue.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Whether or not to use a {@link RingBufferConnection}.
+     */
+    protected boolean getAsyncRingBufferEnabled(Dsn dsn) {
+        if (!getAsyncEnabled(dsn) || !Boolean.parseBoolean(dsn.getOptions().get(ASYNC_RING_BUFFER_OPTION))) {
+            return false;
+        }
+        if (getAsyncQueueSize(dsn) == -1) {
+            logger.warn("The ring buffer requires a bounded queue, falling back to a regular async connection.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Maximum number of submissions waiting for Sentry at the same time with non-blocking I/O.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Maximum number of submissions waiting for Sentry at the same time.
+     */
+    protected int getAsyncHttpMaxInFlight(Dsn dsn) {
+        return Util.parseInteger(dsn.getOptions().get(ASYNC_HTTP_MAX_IN_FLIGHT_OPTION),
+            ASYNC_HTTP_MAX_IN_FLIGHT_DEFAULT);
+    }
+
+    /**
+     * Behaviour of the asynchronous connections managing their own queue when it is full.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return the {@link QueueOverflowPolicy} matching the {@link #ASYNC_QUEUE_OVERFLOW_OPTION}.
+     */
+    protected QueueOverflowPolicy getQueueOverflowPolicy(Dsn dsn) {
+        String overflowName = ASYNC_QUEUE_OVERFLOW_DEFAULT;
+        if (dsn.getOptions().containsKey(ASYNC_QUEUE_OVERFLOW_OPTION)) {
+            overflowName = dsn.getOptions().get(ASYNC_QUEUE_OVERFLOW_OPTION).toLowerCase();
+        }
+
+        QueueOverflowPolicy policy = QUEUE_OVERFLOW_POLICIES.get(overflowName);
+        if (policy == null) {
+            String options = Arrays.toString(QUEUE_OVERFLOW_POLICIES.keySet().toArray());
+            throw new RuntimeException("QueueOverflowPolicy not found: '" + overflowName
+                + "', valid choices are: " + options);
+        }
+
+        return policy;
+    }
+
+    /**
+     * Maximum number of events sent in a single batch by the async connection.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Maximum number of events in a batch, batching is disabled if it isn't greater than 1.
+     */
+    protected int getAsyncBatchSize(Dsn dsn) {
+        return Util.parseInteger(dsn.getOptions().get(ASYNC_BATCH_SIZE_OPTION), ASYNC_BATCH_SIZE_DEFAULT);
+    }
+
+    /**
+     * Maximum time to wait for a batch of events to fill up, in milliseconds.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Maximum time to wait for a batch of events to fill up, in milliseconds.
+     */
+    protected long getAsyncBatchFlushtime(Dsn dsn) {
+        return Util.parseLong(dsn.getOptions().get(ASYNC_BATCH_FLUSHTIME_OPTION), ASYNC_BATCH_FLUSHTIME_DEFAULT);
+    }
+
+    /**
+     * Whether or not to reuse the underlying HTTP connection between two events.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Whether or not to reuse the underlying HTTP connection between two events.
+     */
+    protected boolean getHttpKeepAliveEnabled(Dsn dsn) {
+        return !FALSE.equalsIgnoreCase(dsn.getOptions().get(HTTP_KEEPALIVE_OPTION));
+    }
+
+    /**
+     * Whether or not to keep a pool of persistent HTTP connections to the Sentry server.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Whether or not to use a {@link PooledHttpConnection}.
+     */
+    protected boolean getHttpPoolEnabled(Dsn dsn) {
+        return Boolean.parseBoolean(dsn.getOptions().get(HTTP_POOL_OPTION));
+    }
+
+    /**
+     * Maximum number of pooled HTTP connections open at the same time.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Maximum number of pooled HTTP connections open at the same time.
+     */
+    protected int getHttpPoolMaxConnections(Dsn dsn) {
+        return Util.parseInteger(dsn.getOptions().get(HTTP_POOL_MAX_CONNECTIONS_OPTION),
+            HTTP_POOL_MAX_CONNECTIONS_DEFAULT);
+    }
+
+    /**
+     * Time after which an unused pooled HTTP connection is closed, in milliseconds.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Time after which an unused pooled HTTP connection is closed, in milliseconds.
+     */
+    protected long getHttpPoolIdleTimeout(Dsn dsn) {
+        return Util.parseLong(dsn.getOptions().get(HTTP_POOL_IDLE_TIMEOUT_OPTION), HTTP_POOL_IDLE_TIMEOUT_DEFAULT);
+    }
+
     /**
      * Maximum time to wait for {@link BufferedConnection} shutdown when closed, in milliseconds.
      *
@@ -476,6 +1034,26 @@ public class DefaultRavenFactory extends RavenFactory {
         return Util.parseLong(dsn.getOptions().get(BUFFER_FLUSHTIME_OPTION), BUFFER_FLUSHTIME_DEFAULT);
     }
 
+    /**
+     * Maximum number of buffered events sent at once when flushing the disk buffer.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Maximum number of buffered events sent at once.
+     */
+    protected int getBufferFlushThreads(Dsn dsn) {
+        return Util.parseInteger(dsn.getOptions().get(BUFFER_FLUSHTHREADS_OPTION), BUFFER_FLUSHTHREADS_DEFAULT);
+    }
+
+    /**
+     * Maximum number of buffered events sent per second when flushing the disk buffer.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Maximum number of buffered events sent per second, or 0 if the flush isn't paced.
+     */
+    protected double getBufferFlushRate(Dsn dsn) {
+        return Util.parseDouble(dsn.getOptions().get(BUFFER_FLUSHRATE_OPTION), 0.0);
+    }
+
     /**
      * The graceful shutdown timeout of the async executor, in milliseconds.
      *
@@ -547,6 +1125,105 @@ public class DefaultRavenFactory extends RavenFactory {
         return Util.parseDouble(dsn.getOptions().get(SAMPLE_RATE_OPTION), null);
     }
 
+    /**
+     * Number of events per second to aim for when adapting the sample rate to the rate of events.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return The target rate of events per second, or null if the sample rate isn't adapted.
+     */
+    protected Double getSampleTarget(Dsn dsn) {
+        return Util.parseDouble(dsn.getOptions().get(SAMPLE_TARGET_OPTION), null);
+    }
+
+    /**
+     * Whether to measure the time spent in each builder helper.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Whether to measure the time spent in each builder helper.
+     */
+    protected boolean getHelpersTimingEnabled(Dsn dsn) {
+        return Boolean.parseBoolean(dsn.getOptions().get(HELPERS_TIMING_OPTION));
+    }
+
+    /**
+     * Policy limiting what is captured from the HTTP requests.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return The headers, parameters and maximum length of the values to capture, or null if the HTTP requests
+     * are captured entirely.
+     */
+    protected HttpSnapshotPolicy getHttpSnapshotPolicy(Dsn dsn) {
+        if (!Boolean.parseBoolean(dsn.getOptions().get(HTTP_SNAPSHOT_OPTION))) {
+            return null;
+        }
+
+        String headers = dsn.getOptions().get(HTTP_SNAPSHOT_HEADERS_OPTION);
+        if (headers == null) {
+            headers = HTTP_SNAPSHOT_HEADERS_DEFAULT;
+        }
+        int maxLength = Util.parseInteger(dsn.getOptions().get(HTTP_SNAPSHOT_MAX_LENGTH_OPTION),
+            HTTP_SNAPSHOT_MAX_LENGTH_DEFAULT);
+        return new HttpSnapshotPolicy(splitNames(headers),
+            splitNames(dsn.getOptions().get(HTTP_SNAPSHOT_PARAMETERS_OPTION)), maxLength);
+    }
+
+    private static Collection<String> splitNames(String names) {
+        if (names == null) {
+            return Collections.emptyList();
+        }
+
+        ArrayList<String> splitNames = new ArrayList<String>();
+        for (String name : names.split(",")) {
+            if (!name.trim().equals("")) {
+                splitNames.add(name.trim());
+            }
+        }
+        return splitNames;
+    }
+
+    /**
+     * Maximum number of events sent per second, for the given rate limit option.
+     *
+     * @param dsn    Sentry server DSN which may contain options.
+     * @param option rate limit option, {@link #RATE_LIMIT_OPTION}, {@link #RATE_LIMIT_LOGGER_OPTION} or
+     *               {@link #RATE_LIMIT_FINGERPRINT_OPTION}.
+     * @return Maximum number of events sent per second, or 0 if the events aren't limited.
+     */
+    protected double getRateLimit(Dsn dsn, String option) {
+        return Util.parseDouble(dsn.getOptions().get(option), 0.0);
+    }
+
+    /**
+     * Number of events sent at once when a rate limit hasn't been reached for a while.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Number of events sent at once when a rate limit hasn't been reached for a while.
+     */
+    protected int getRateLimitBurst(Dsn dsn) {
+        return Util.parseInteger(dsn.getOptions().get(RATE_LIMIT_BURST_OPTION), RATE_LIMIT_BURST_DEFAULT);
+    }
+
+    /**
+     * Duration during which the repeats of an event are suppressed, in milliseconds.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Duration during which the repeats of an event are suppressed, 0 if the deduplication is disabled.
+     */
+    protected long getDeduplicationWindow(Dsn dsn) {
+        return Util.parseLong(dsn.getOptions().get(DEDUPLICATION_WINDOW_OPTION), DEDUPLICATION_WINDOW_DEFAULT);
+    }
+
+    /**
+     * Number of frames of each exception used to identify the repeats of an event.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Number of frames of each exception used to identify the repeats of an event.
+     */
+    protected int getDeduplicationFrames(Dsn dsn) {
+        return Util.parseInteger(dsn.getOptions().get(DEDUPLICATION_FRAMES_OPTION),
+            DeduplicatingConnection.DEFAULT_TOP_FRAMES);
+    }
+
     /**
      * HTTP proxy port for Sentry connections.
      *
@@ -607,6 +1284,17 @@ public class DefaultRavenFactory extends RavenFactory {
         return !FALSE.equalsIgnoreCase(dsn.getOptions().get(HIDE_COMMON_FRAMES_OPTION));
     }
 
+    /**
+     * Number of serialized stack traces kept in memory.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Number of serialized stack traces kept in memory, 0 to disable the cache.
+     */
+    protected int getStackTraceCacheSize(Dsn dsn) {
+        return Util.parseInteger(dsn.getOptions().get(STACKTRACE_CACHE_SIZE_OPTION),
+            StackTraceInterfaceBinding.DEFAULT_FRAME_CACHE_SIZE);
+    }
+
     /**
      * The maximum length of the message body in the requests to the Sentry Server.
      *
@@ -618,6 +1306,56 @@ public class DefaultRavenFactory extends RavenFactory {
             dsn.getOptions().get(MAX_MESSAGE_LENGTH_OPTION), JsonMarshaller.DEFAULT_MAX_MESSAGE_LENGTH);
     }
 
+    /**
+     * The maximum number of frames sent for each stack trace.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return The maximum number of frames sent for each stack trace, 0 for no limit.
+     */
+    protected int getMaxFrames(Dsn dsn) {
+        return Util.parseInteger(dsn.getOptions().get(MAX_FRAMES_OPTION), 0);
+    }
+
+    /**
+     * The maximum number of extras sent with each event.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return The maximum number of extras sent with each event, 0 for no limit.
+     */
+    protected int getMaxExtras(Dsn dsn) {
+        return Util.parseInteger(dsn.getOptions().get(MAX_EXTRAS_OPTION), 0);
+    }
+
+    /**
+     * The maximum nesting of the values of the extras and contexts sent.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return The maximum nesting of the values of the extras and contexts, 0 for no limit.
+     */
+    protected int getMaxDepth(Dsn dsn) {
+        return Util.parseInteger(dsn.getOptions().get(MAX_DEPTH_OPTION), 0);
+    }
+
+    /**
+     * The maximum length of the values of the breadcrumbs' data sent.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return The maximum length of the values of the breadcrumbs' data, 0 for no limit.
+     */
+    protected int getMaxBreadcrumbValueLength(Dsn dsn) {
+        return Util.parseInteger(dsn.getOptions().get(MAX_BREADCRUMB_VALUE_LENGTH_OPTION), 0);
+    }
+
+    /**
+     * The maximum size of the body of the requests to the Sentry Server.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return The maximum size of the body of the requests, in bytes, 0 for no limit.
+     */
+    protected int getMaxSize(Dsn dsn) {
+        return Util.parseInteger(dsn.getOptions().get(MAX_SIZE_OPTION), 0);
+    }
+
     /**
      * Timeout for requests to the Sentry server, in milliseconds.
      *
@@ -651,11 +1389,70 @@ public class DefaultRavenFactory extends RavenFactory {
     protected Buffer getBuffer(Dsn dsn) {
         String bufferDir = dsn.getOptions().get(BUFFER_DIR_OPTION);
         if (bufferDir != null) {
-            return new DiskBuffer(new File(bufferDir), getBufferSize(dsn));
+            String bufferType = getBufferType(dsn);
+            EventCodec codec = getBufferCodec(dsn);
+            if (BUFFER_TYPE_LOG.equalsIgnoreCase(bufferType)) {
+                return new SegmentedLogBuffer(new File(bufferDir), getBufferSize(dsn),
+                    SegmentedLogBuffer.DEFAULT_SEGMENT_SIZE, codec);
+            } else if (BUFFER_TYPE_MAPPED.equalsIgnoreCase(bufferType)) {
+                return new MappedDiskBuffer(new File(bufferDir), getBufferSize(dsn),
+                    MappedDiskBuffer.DEFAULT_SEGMENT_SIZE, MappedDiskBuffer.DEFAULT_SYNC_INTERVAL, codec);
+            } else if (BUFFER_TYPE_PAYLOAD.equalsIgnoreCase(bufferType)) {
+                return new PayloadDiskBuffer(new File(bufferDir), getBufferSize(dsn), createMarshaller(dsn));
+            }
+            return new DiskBuffer(new File(bufferDir), getBufferSize(dsn), codec);
         }
         return null;
     }
 
+    /**
+     * Get the way events are stored in the buffer directory.
+     *
+     * @param dsn Dsn passed in by the user.
+     * @return the buffer type, {@link #BUFFER_TYPE_DISK}, {@link #BUFFER_TYPE_LOG}, {@link #BUFFER_TYPE_MAPPED} or
+     * {@link #BUFFER_TYPE_PAYLOAD}.
+     */
+    protected String getBufferType(Dsn dsn) {
+        String bufferType = dsn.getOptions().get(BUFFER_TYPE_OPTION);
+        if (bufferType == null) {
+            return BUFFER_TYPE_DISK;
+        }
+        if (!BUFFER_TYPE_DISK.equalsIgnoreCase(bufferType) && !BUFFER_TYPE_LOG.equalsIgnoreCase(bufferType)
+            && !BUFFER_TYPE_MAPPED.equalsIgnoreCase(bufferType) && !BUFFER_TYPE_PAYLOAD.equalsIgnoreCase(bufferType)) {
+            logger.warn("Unknown buffer type '{}', falling back to '{}'.", bufferType, BUFFER_TYPE_DISK);
+            return BUFFER_TYPE_DISK;
+        }
+        String protocol = dsn.getProtocol();
+        if (BUFFER_TYPE_PAYLOAD.equalsIgnoreCase(bufferType)
+            && !protocol.equalsIgnoreCase("http") && !protocol.equalsIgnoreCase("https")) {
+            logger.warn("The '{}' buffer type requires an HTTP connection, falling back to '{}'.",
+                BUFFER_TYPE_PAYLOAD, BUFFER_TYPE_DISK);
+            return BUFFER_TYPE_DISK;
+        }
+        if (BUFFER_TYPE_PAYLOAD.equalsIgnoreCase(bufferType) && getAsyncHttpEnabled(dsn)) {
+            logger.warn("The '{}' buffer type isn't supported by non-blocking HTTP connections, falling back to '{}'.",
+                BUFFER_TYPE_PAYLOAD, BUFFER_TYPE_DISK);
+            return BUFFER_TYPE_DISK;
+        }
+        return bufferType;
+    }
+
+    /**
+     * Get the {@link EventCodec} used to store the events in the buffer.
+     *
+     * @param dsn Dsn passed in by the user.
+     * @return the codec of the buffered events.
+     */
+    protected EventCodec getBufferCodec(Dsn dsn) {
+        String bufferCodec = dsn.getOptions().get(BUFFER_CODEC_OPTION);
+        if (BUFFER_CODEC_BINARY.equalsIgnoreCase(bufferCodec)) {
+            return new BinaryEventCodec();
+        } else if (bufferCodec != null && !BUFFER_CODEC_SERIALIZATION.equalsIgnoreCase(bufferCodec)) {
+            logger.warn("Unknown buffer codec '{}', falling back to '{}'.", bufferCodec, BUFFER_CODEC_SERIALIZATION);
+        }
+        return new SerializationEventCodec();
+    }
+
     /**
      * Get the maximum number of events to cache offline when network is down.
      *
@@ -1,5 +1,6 @@
 package com.getsentry.raven;
 
+import com.getsentry.raven.connection.AdaptiveEventSampler;
 import com.getsentry.raven.connection.Connection;
 import com.getsentry.raven.connection.LockedDownException;
 import com.getsentry.raven.context.Context;
@@ -8,14 +9,26 @@ import com.getsentry.raven.environment.RavenEnvironment;
 import com.getsentry.raven.event.Event;
 import com.getsentry.raven.event.EventBuilder;
 import com.getsentry.raven.event.helper.EventBuilderHelper;
+import com.getsentry.raven.event.helper.ThreadBoundEventBuilderHelper;
 import com.getsentry.raven.event.interfaces.ExceptionInterface;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Raven is a client for Sentry allowing to send an {@link Event} that will be processed and sent to a Sentry server.
@@ -38,16 +51,45 @@ public class Raven {
      */
     private volatile Connection connection;
     /**
-     * Set of {@link EventBuilderHelper}s. Note that we wrap a {@link ConcurrentHashMap} because there
-     * isn't a concurrent set in the standard library.
+     * Priority of the {@link EventBuilderHelper}s added without an explicit priority.
      */
-    private final Set<EventBuilderHelper> builderHelpers =
-        Collections.newSetFromMap(new ConcurrentHashMap<EventBuilderHelper, Boolean>());
+    public static final int DEFAULT_HELPER_PRIORITY = 0;
+    private static final RegisteredHelper[] NO_HELPERS = new RegisteredHelper[0];
+    /**
+     * {@link EventBuilderHelper}s sorted by priority, replaced by a new array on every change so that running them
+     * only takes a snapshot of the array.
+     */
+    private volatile RegisteredHelper[] builderHelpers = NO_HELPERS;
+    /**
+     * Lock held while changing the {@link #builderHelpers}.
+     */
+    private final Object builderHelpersLock = new Object();
+    /**
+     * Whether to measure the time spent in each {@link EventBuilderHelper}.
+     */
+    private volatile boolean builderHelperTimingEnabled = false;
     /**
      * The {@link ContextManager} to use for locating and storing data that is context specific,
      * such as {@link com.getsentry.raven.event.Breadcrumb}s.
      */
     private final ContextManager contextManager;
+    /**
+     * Ratio of events built and sent to Sentry (from 0.0 to 1.0), the other ones are dropped before being built.
+     */
+    private volatile double sampleRate = 1.0;
+    /**
+     * Optional sampler adapting the sample rate of the built events to their recent rate.
+     */
+    private volatile AdaptiveEventSampler adaptiveEventSampler;
+    /**
+     * Executor running the builder helpers and building the events off the calling thread, or null to build the
+     * events on the calling thread.
+     */
+    private volatile ExecutorService eventBuildingExecutor;
+    /**
+     * Timeout of the shutdown of the {@link #eventBuildingExecutor}, in milliseconds.
+     */
+    private volatile long eventBuildingShutdownTimeout;
     /**
      * Constructs a Raven instance using the provided connection.
      *
@@ -66,29 +108,102 @@ public class Raven {
     /**
      * Runs the {@link EventBuilderHelper} against the {@link EventBuilder} to obtain additional information with a
      * MDC-like system.
+     * <p>
+     * The helpers run from the highest priority. The {@link AdaptiveEventSampler}, if any, decides whether the
+     * event is sent after the other helpers and before the helpers added for sent events only, which don't run at
+     * all for dropped events.
      *
      * @param eventBuilder event builder containing a not yet finished event.
+     * @return true if the event should be built and sent, false if it was dropped by the
+     * {@link AdaptiveEventSampler}.
+     */
+    public boolean runBuilderHelpers(EventBuilder eventBuilder) {
+        return runBuilderHelpers(eventBuilder, builderHelpers, true, true);
+    }
+
+    /**
+     * Runs the thread bound or the other builder helpers, and the {@link AdaptiveEventSampler} with the thread
+     * bound ones.
      */
-    public void runBuilderHelpers(EventBuilder eventBuilder) {
-        for (EventBuilderHelper builderHelper : builderHelpers) {
-            builderHelper.helpBuildingEvent(eventBuilder);
+    private boolean runBuilderHelpers(EventBuilder eventBuilder, RegisteredHelper[] helpers, boolean threadBound,
+                                      boolean unbound) {
+        boolean timed = builderHelperTimingEnabled;
+        for (RegisteredHelper helper : helpers) {
+            if (!helper.sentEventsOnly && helper.runsOn(threadBound, unbound)) {
+                helper.run(eventBuilder, timed);
+            }
         }
+
+        AdaptiveEventSampler eventSampler = adaptiveEventSampler;
+        if (threadBound && eventSampler != null && !eventSampler.sample(eventBuilder)) {
+            return false;
+        }
+
+        for (RegisteredHelper helper : helpers) {
+            if (helper.sentEventsOnly && helper.runsOn(threadBound, unbound)) {
+                helper.run(eventBuilder, timed);
+            }
+        }
+        return true;
     }
 
     /**
-     * Sends a built {@link Event} to the Sentry server.
+     * Decides whether an event about to be built should be sent to the Sentry server, according to the sample rate.
+     * <p>
+     * The decision is made before building the event, so that a dropped event costs only a random number.
+     *
+     * @return true if the event should be built and sent, false if it should be dropped.
+     */
+    public boolean shouldSendEvent() {
+        double rate = sampleRate;
+        return rate >= 1.0 || ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    /**
+     * Sends a built {@link Event} to the Sentry server, if it's kept by the sample rate and the
+     * {@link AdaptiveEventSampler}.
+     * <p>
+     * Sampling an event already built wastes the cost of building it, events sent with
+     * {@link #sendEvent(EventBuilder)} are sampled before being built.
      *
      * @param event event to send to Sentry.
      */
     public void sendEvent(Event event) {
+        if (!shouldSendEvent()) {
+            return;
+        }
+        Event sampledEvent = event;
+        AdaptiveEventSampler eventSampler = adaptiveEventSampler;
+        if (eventSampler != null) {
+            sampledEvent = eventSampler.sample(event);
+            if (sampledEvent == null) {
+                return;
+            }
+        }
+        sendSampledEvent(sampledEvent);
+    }
+
+    /**
+     * Sends a built {@link Event} already sampled with {@link #shouldSendEvent()} and the
+     * {@link AdaptiveEventSampler}, through {@link #runBuilderHelpers(EventBuilder)}, to the Sentry server.
+     *
+     * @param event event to send to Sentry.
+     */
+    public void sendSampledEvent(Event event) {
+        try {
+            send(event);
+        } finally {
+            getContext().setLastEventId(event.getId());
+        }
+    }
+
+    private void send(Event event) {
         try {
             connection.send(event);
         } catch (LockedDownException e) {
             lockdownLogger.warn("The connection to Sentry is currently locked down.", e);
         } catch (Exception e) {
             logger.error("An exception occurred while sending the event to Sentry.", e);
-        } finally {
-            getContext().setLastEventId(event.getId());
         }
     }
 
@@ -98,9 +213,65 @@ public class Raven {
      * @param eventBuilder {@link EventBuilder} to send to Sentry.
      */
     public void sendEvent(EventBuilder eventBuilder) {
-        runBuilderHelpers(eventBuilder);
-        Event event = eventBuilder.build();
-        sendEvent(event);
+        if (!shouldSendEvent()) {
+            return;
+        }
+        buildAndSendEvent(eventBuilder, null);
+    }
+
+    /**
+     * Builds and sends an {@link Event} already sampled with {@link #shouldSendEvent()} to the Sentry server.
+     * <p>
+     * With an event building executor, only the {@link ThreadBoundEventBuilderHelper}s and the
+     * {@link AdaptiveEventSampler} run on the calling thread, the other builder helpers run and the event is built
+     * on the executor.
+     *
+     * @param eventBuilder {@link EventBuilder} to send to Sentry.
+     */
+    public void buildAndSendEvent(EventBuilder eventBuilder) {
+        buildAndSendEvent(eventBuilder, null);
+    }
+
+    /**
+     * Builds and sends an {@link Event}, adding the {@link ExceptionInterface} of the throwable when it's built.
+     */
+    private void buildAndSendEvent(final EventBuilder eventBuilder, final Throwable throwable) {
+        ExecutorService executor = eventBuildingExecutor;
+        if (executor == null) {
+            if (throwable != null) {
+                eventBuilder.withSentryInterface(new ExceptionInterface(throwable));
+            }
+            if (!runBuilderHelpers(eventBuilder)) {
+                return;
+            }
+            sendSampledEvent(eventBuilder.build());
+            return;
+        }
+
+        final RegisteredHelper[] helpers = builderHelpers;
+        if (!runBuilderHelpers(eventBuilder, helpers, true, false)) {
+            return;
+        }
+        // The id is known before the event is built
+        getContext().setLastEventId(eventBuilder.getEvent().getId());
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (throwable != null) {
+                            eventBuilder.withSentryInterface(new ExceptionInterface(throwable));
+                        }
+                        runBuilderHelpers(eventBuilder, helpers, false, true);
+                        send(eventBuilder.build());
+                    } catch (Exception e) {
+                        logger.error("An exception occurred while building the event.", e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("The event couldn't be queued to be built, it won't be sent.", e);
+        }
     }
 
     /**
@@ -111,11 +282,12 @@ public class Raven {
      * @param message message to send to Sentry.
      */
     public void sendMessage(String message) {
+        if (!shouldSendEvent()) {
+            return;
+        }
         EventBuilder eventBuilder = new EventBuilder().withMessage(message)
             .withLevel(Event.Level.INFO);
-        runBuilderHelpers(eventBuilder);
-        Event event = eventBuilder.build();
-        sendEvent(event);
+        buildAndSendEvent(eventBuilder, null);
     }
 
     /**
@@ -126,12 +298,12 @@ public class Raven {
      * @param throwable exception to send to Sentry.
      */
     public void sendException(Throwable throwable) {
+        if (!shouldSendEvent()) {
+            return;
+        }
         EventBuilder eventBuilder = new EventBuilder().withMessage(throwable.getMessage())
-            .withLevel(Event.Level.ERROR)
-            .withSentryInterface(new ExceptionInterface(throwable));
-        runBuilderHelpers(eventBuilder);
-        Event event = eventBuilder.build();
-        sendEvent(event);
+            .withLevel(Event.Level.ERROR);
+        buildAndSendEvent(eventBuilder, throwable);
     }
 
     /**
@@ -141,27 +313,112 @@ public class Raven {
      */
     public void removeBuilderHelper(EventBuilderHelper builderHelper) {
         logger.debug("Removing '{}' from the list of builder helpers.", builderHelper);
-        builderHelpers.remove(builderHelper);
+        synchronized (builderHelpersLock) {
+            List<RegisteredHelper> helpers = new ArrayList<RegisteredHelper>(Arrays.asList(builderHelpers));
+            Iterator<RegisteredHelper> iterator = helpers.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().helper.equals(builderHelper)) {
+                    iterator.remove();
+                }
+            }
+            builderHelpers = helpers.toArray(new RegisteredHelper[helpers.size()]);
+        }
     }
 
     /**
-     * Adds a builder helper.
+     * Adds a builder helper running for every event, with the {@link #DEFAULT_HELPER_PRIORITY}.
      *
      * @param builderHelper builder helper to add.
      */
     public void addBuilderHelper(EventBuilderHelper builderHelper) {
+        addBuilderHelper(builderHelper, DEFAULT_HELPER_PRIORITY, false);
+    }
+
+    /**
+     * Adds a builder helper, or changes the priority of a builder helper already added.
+     * <p>
+     * Helpers with a higher priority run first, helpers with the same priority run in the order they were added.
+     *
+     * @param builderHelper  builder helper to add.
+     * @param priority       priority of the builder helper.
+     * @param sentEventsOnly whether the helper only runs for the events which aren't dropped by the
+     *                       {@link AdaptiveEventSampler}, for helpers too expensive to run for every event.
+     */
+    public void addBuilderHelper(EventBuilderHelper builderHelper, int priority, boolean sentEventsOnly) {
         logger.debug("Adding '{}' to the list of builder helpers.", builderHelper);
-        builderHelpers.add(builderHelper);
+        synchronized (builderHelpersLock) {
+            List<RegisteredHelper> helpers = new ArrayList<RegisteredHelper>(builderHelpers.length + 1);
+            for (RegisteredHelper helper : builderHelpers) {
+                if (!helper.helper.equals(builderHelper)) {
+                    helpers.add(helper);
+                }
+            }
+            helpers.add(new RegisteredHelper(builderHelper, priority, sentEventsOnly));
+            // Stable sort, helpers with the same priority keep their order
+            Collections.sort(helpers);
+            builderHelpers = helpers.toArray(new RegisteredHelper[helpers.size()]);
+        }
     }
 
+    /**
+     * Returns the builder helpers, in the order they run.
+     *
+     * @return an unmodifiable set of the builder helpers.
+     */
     public Set<EventBuilderHelper> getBuilderHelpers() {
-        return Collections.unmodifiableSet(builderHelpers);
+        Set<EventBuilderHelper> helpers = new LinkedHashSet<EventBuilderHelper>();
+        for (RegisteredHelper helper : builderHelpers) {
+            helpers.add(helper.helper);
+        }
+        return Collections.unmodifiableSet(helpers);
+    }
+
+    /**
+     * Enables or disables measuring the time spent in each builder helper.
+     *
+     * @param builderHelperTimingEnabled whether to measure the time spent in each builder helper.
+     */
+    public void setBuilderHelperTimingEnabled(boolean builderHelperTimingEnabled) {
+        this.builderHelperTimingEnabled = builderHelperTimingEnabled;
+    }
+
+    /**
+     * Returns the time spent in each builder helper while the timing was enabled.
+     *
+     * @return the total time spent in each builder helper, in nanoseconds, in the order they run.
+     */
+    public Map<EventBuilderHelper, Long> getBuilderHelperTimes() {
+        Map<EventBuilderHelper, Long> times = new LinkedHashMap<EventBuilderHelper, Long>();
+        for (RegisteredHelper helper : builderHelpers) {
+            times.put(helper.helper, helper.totalNanos.get());
+        }
+        return Collections.unmodifiableMap(times);
+    }
+
+    /**
+     * Returns the number of times each builder helper ran while the timing was enabled.
+     *
+     * @return the number of runs of each builder helper, in the order they run.
+     */
+    public Map<EventBuilderHelper, Long> getBuilderHelperRuns() {
+        Map<EventBuilderHelper, Long> runs = new LinkedHashMap<EventBuilderHelper, Long>();
+        for (RegisteredHelper helper : builderHelpers) {
+            runs.put(helper.helper, helper.runs.get());
+        }
+        return Collections.unmodifiableMap(runs);
     }
 
     /**
      * Closes the connection for the Raven instance.
+     * <p>
+     * The events still being built are built and sent first, until the shutdown timeout of the event building
+     * executor.
      */
     public void closeConnection() {
+        ExecutorService executor = eventBuildingExecutor;
+        if (executor != null) {
+            shutdownEventBuilding(executor);
+        }
         try {
             connection.close();
         } catch (IOException e) {
@@ -169,6 +426,67 @@ public class Raven {
         }
     }
 
+    /**
+     * Sets the ratio of events built and sent to Sentry, the other ones are dropped before being built.
+     *
+     * @param sampleRate ratio of events to send to Sentry (from 0.0 to 1.0).
+     */
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Sets the sampler adapting the sample rate of the events to their recent rate.
+     *
+     * @param adaptiveEventSampler sampler applied to every event sent, or null to send them all.
+     */
+    public void setAdaptiveEventSampler(AdaptiveEventSampler adaptiveEventSampler) {
+        this.adaptiveEventSampler = adaptiveEventSampler;
+    }
+
+    /**
+     * Sets the executor building the events off the calling thread.
+     * <p>
+     * The {@link ThreadBoundEventBuilderHelper}s and the {@link AdaptiveEventSampler} still run on the calling
+     * thread, the other builder helpers run and the events are built and sent on the executor.
+     *
+     * @param eventBuildingExecutor executor building the events, or null to build them on the calling thread.
+     * @param shutdownTimeout       time to wait for the events being built when the connection is closed, in
+     *                              milliseconds, -1 to wait for all of them.
+     */
+    public void setEventBuildingExecutor(ExecutorService eventBuildingExecutor, long shutdownTimeout) {
+        this.eventBuildingShutdownTimeout = shutdownTimeout;
+        this.eventBuildingExecutor = eventBuildingExecutor;
+    }
+
+    /**
+     * Whether the events are built off the calling thread.
+     *
+     * @return true if the events are built by an executor.
+     */
+    public boolean isEventBuildingAsync() {
+        return eventBuildingExecutor != null;
+    }
+
+    private void shutdownEventBuilding(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            long timeout = eventBuildingShutdownTimeout;
+            if (timeout == -1L) {
+                while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    logger.info("Still waiting on the events being built.");
+                }
+            } else if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                List<Runnable> tasks = executor.shutdownNow();
+                logger.warn("{} events weren't built before the shutdown.", tasks.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            List<Runnable> tasks = executor.shutdownNow();
+            logger.warn("{} events weren't built before the shutdown.", tasks.size());
+        }
+    }
+
     public Context getContext() {
         return contextManager.getContext();
     }
@@ -247,4 +565,46 @@ public class Raven {
         getStoredInstance().sendEvent(eventBuilder);
     }
 
+
+    /**
+     * {@link EventBuilderHelper} with its priority and its timings.
+     */
+    private static final class RegisteredHelper implements Comparable<RegisteredHelper> {
+        private final EventBuilderHelper helper;
+        private final int priority;
+        private final boolean sentEventsOnly;
+        private final AtomicLong runs = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+
+        private RegisteredHelper(EventBuilderHelper helper, int priority, boolean sentEventsOnly) {
+            this.helper = helper;
+            this.priority = priority;
+            this.sentEventsOnly = sentEventsOnly;
+        }
+
+        private boolean runsOn(boolean threadBound, boolean unbound) {
+            return helper instanceof ThreadBoundEventBuilderHelper ? threadBound : unbound;
+        }
+
+        private void run(EventBuilder eventBuilder, boolean timed) {
+            if (!timed) {
+                helper.helpBuildingEvent(eventBuilder);
+                return;
+            }
+
+            long start = System.nanoTime();
+            try {
+                helper.helpBuildingEvent(eventBuilder);
+            } finally {
+                totalNanos.addAndGet(System.nanoTime() - start);
+                runs.incrementAndGet();
+            }
+        }
+
+        @Override
+        public int compareTo(RegisteredHelper other) {
+            // Highest priority first
+            return priority > other.priority ? -1 : (priority == other.priority ? 0 : 1);
+        }
+    }
 }
@@ -0,0 +1,685 @@
+package com.getsentry.raven.buffer;
+
+import com.getsentry.raven.event.Breadcrumb;
+import com.getsentry.raven.event.BreadcrumbBuilder;
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventBuilder;
+import com.getsentry.raven.event.interfaces.ExceptionInterface;
+import com.getsentry.raven.event.interfaces.HttpInterface;
+import com.getsentry.raven.event.interfaces.MessageInterface;
+import com.getsentry.raven.event.interfaces.SentryException;
+import com.getsentry.raven.event.interfaces.SentryInterface;
+import com.getsentry.raven.event.interfaces.StackTraceInterface;
+import com.getsentry.raven.event.interfaces.UserInterface;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compact binary codec covering every field of an {@link Event}.
+ * <p>
+ * Unlike the Java serialization, no class descriptor is written: each field is written in a fixed order, integers
+ * use a variable length encoding, and a string already written in the same event (such as the class name shared
+ * by many frames of a stack trace) is replaced by a reference to its first occurrence.<br>
+ * The extras and the contexts keep the type of the common values (strings, numbers, booleans, dates, maps and
+ * collections), other serializable values are stored with the Java serialization, and the remaining ones are
+ * converted with {@code toString()}. The {@link SentryInterface}s provided by Raven are encoded field by field,
+ * custom ones with the Java serialization.
+ * <p>
+ * The encoded content starts with a format version, so that an event written in an unknown format fails to be
+ * decoded instead of being misread.
+ */
+public class BinaryEventCodec implements EventCodec {
+    /**
+     * Version of the format written by this codec.
+     */
+    public static final byte FORMAT_VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * First byte of the encoded content, which can't be the start of a Java serialization stream.
+     */
+    private static final byte MAGIC = 'R';
+
+    private static final byte INTERFACE_MESSAGE = 1;
+    private static final byte INTERFACE_EXCEPTION = 2;
+    private static final byte INTERFACE_STACKTRACE = 3;
+    private static final byte INTERFACE_USER = 4;
+    private static final byte INTERFACE_HTTP = 5;
+    private static final byte INTERFACE_SERIALIZED = 6;
+
+    private static final byte VALUE_NULL = 0;
+    private static final byte VALUE_STRING = 1;
+    private static final byte VALUE_BOOLEAN = 2;
+    private static final byte VALUE_INTEGER = 3;
+    private static final byte VALUE_LONG = 4;
+    private static final byte VALUE_DOUBLE = 5;
+    private static final byte VALUE_FLOAT = 6;
+    private static final byte VALUE_DATE = 7;
+    private static final byte VALUE_MAP = 8;
+    private static final byte VALUE_LIST = 9;
+    private static final byte VALUE_SERIALIZED = 10;
+
+    @Override
+    public byte[] encode(Event event) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        Writer writer = new Writer(new DataOutputStream(content));
+        writer.writeEvent(event);
+        writer.output.flush();
+        return content.toByteArray();
+    }
+
+    @Override
+    public Event decode(byte[] content) throws IOException {
+        Reader reader = new Reader(new DataInputStream(new ByteArrayInputStream(content)));
+        try {
+            return reader.readEvent();
+        } catch (EOFException e) {
+            throw new IOException("The buffered event is truncated", e);
+        } catch (RuntimeException e) {
+            throw new IOException("The buffered event is invalid", e);
+        }
+    }
+
+    /**
+     * Encodes an event, keeping track of the strings already written.
+     */
+    private static final class Writer {
+        private final DataOutputStream output;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+        private Writer(DataOutputStream output) {
+            this.output = output;
+        }
+
+        private void writeEvent(Event event) throws IOException {
+            output.writeByte(MAGIC);
+            output.writeByte(FORMAT_VERSION);
+            output.writeLong(event.getId().getMostSignificantBits());
+            output.writeLong(event.getId().getLeastSignificantBits());
+            writeString(event.getMessage());
+            writeDate(event.getTimestamp());
+            writeString(event.getLevel() != null ? event.getLevel().name() : null);
+            writeString(event.getLogger());
+            writeString(event.getPlatform());
+            writeString(event.getSdkName());
+            writeString(event.getSdkVersion());
+            writeString(event.getCulprit());
+            writeString(event.getServerName());
+            writeString(event.getRelease());
+            writeString(event.getEnvironment());
+            writeString(event.getChecksum());
+            writeStringMap(event.getTags());
+            writeStringList(event.getFingerprint());
+
+            List<Breadcrumb> breadcrumbs = event.getBreadcrumbs();
+            writeSize(breadcrumbs);
+            if (breadcrumbs != null) {
+                for (Breadcrumb breadcrumb : breadcrumbs) {
+                    writeBreadcrumb(breadcrumb);
+                }
+            }
+
+            Map<String, Map<String, Object>> contexts = event.getContexts();
+            writeSize(contexts);
+            if (contexts != null) {
+                for (Map.Entry<String, Map<String, Object>> context : contexts.entrySet()) {
+                    writeString(context.getKey());
+                    writeValue(context.getValue());
+                }
+            }
+            writeValue(event.getExtra());
+
+            Map<String, SentryInterface> sentryInterfaces = event.getSentryInterfaces();
+            writeSize(sentryInterfaces);
+            if (sentryInterfaces != null) {
+                for (SentryInterface sentryInterface : sentryInterfaces.values()) {
+                    writeInterface(sentryInterface);
+                }
+            }
+        }
+
+        private void writeBreadcrumb(Breadcrumb breadcrumb) throws IOException {
+            writeString(breadcrumb.getType() != null ? breadcrumb.getType().name() : null);
+            writeDate(breadcrumb.getTimestamp());
+            writeString(breadcrumb.getLevel() != null ? breadcrumb.getLevel().name() : null);
+            writeString(breadcrumb.getMessage());
+            writeString(breadcrumb.getCategory());
+            writeStringMap(breadcrumb.getData());
+        }
+
+        private void writeInterface(SentryInterface sentryInterface) throws IOException {
+            if (sentryInterface instanceof MessageInterface) {
+                MessageInterface messageInterface = (MessageInterface) sentryInterface;
+                output.writeByte(INTERFACE_MESSAGE);
+                writeString(messageInterface.getMessage());
+                writeStringList(messageInterface.getParameters());
+                writeString(messageInterface.getFormatted());
+            } else if (sentryInterface instanceof ExceptionInterface) {
+                Deque<SentryException> exceptions = ((ExceptionInterface) sentryInterface).getExceptions();
+                output.writeByte(INTERFACE_EXCEPTION);
+                writeSize(exceptions);
+                for (SentryException exception : exceptions) {
+                    writeString(exception.getExceptionMessage());
+                    writeString(exception.getExceptionClassName());
+                    writeString(exception.getExceptionPackageName());
+                    writeStackTrace(exception.getStackTraceInterface());
+                }
+            } else if (sentryInterface instanceof StackTraceInterface) {
+                output.writeByte(INTERFACE_STACKTRACE);
+                writeStackTrace((StackTraceInterface) sentryInterface);
+            } else if (sentryInterface instanceof UserInterface) {
+                UserInterface userInterface = (UserInterface) sentryInterface;
+                output.writeByte(INTERFACE_USER);
+                writeString(userInterface.getId());
+                writeString(userInterface.getUsername());
+                writeString(userInterface.getIpAddress());
+                writeString(userInterface.getEmail());
+            } else if (sentryInterface instanceof HttpInterface) {
+                output.writeByte(INTERFACE_HTTP);
+                writeHttp((HttpInterface) sentryInterface);
+            } else {
+                output.writeByte(INTERFACE_SERIALIZED);
+                writeSerialized(sentryInterface);
+            }
+        }
+
+        private void writeStackTrace(StackTraceInterface stackTraceInterface) throws IOException {
+            if (stackTraceInterface == null) {
+                writeVarInt(0);
+                return;
+            }
+            int frameCount = stackTraceInterface.getFrameCount();
+            writeVarInt(frameCount + 1);
+            for (int i = 0; i < frameCount; i++) {
+                StackTraceElement frame = stackTraceInterface.getFrame(i);
+                writeString(frame.getClassName());
+                writeString(frame.getMethodName());
+                writeString(frame.getFileName());
+                writeVarInt(frame.getLineNumber());
+            }
+            writeVarInt(stackTraceInterface.getFramesCommonWithEnclosing());
+        }
+
+        private void writeHttp(HttpInterface httpInterface) throws IOException {
+            writeString(httpInterface.getRequestUrl());
+            writeString(httpInterface.getMethod());
+            writeMultiMap(httpInterface.getParameters());
+            writeString(httpInterface.getQueryString());
+            writeStringMap(httpInterface.getCookies());
+            writeString(httpInterface.getRemoteAddr());
+            writeString(httpInterface.getServerName());
+            writeVarInt(httpInterface.getServerPort());
+            writeString(httpInterface.getLocalAddr());
+            writeString(httpInterface.getLocalName());
+            writeVarInt(httpInterface.getLocalPort());
+            writeString(httpInterface.getProtocol());
+            output.writeBoolean(httpInterface.isSecure());
+            output.writeBoolean(httpInterface.isAsyncStarted());
+            writeString(httpInterface.getAuthType());
+            writeString(httpInterface.getRemoteUser());
+            writeMultiMap(httpInterface.getHeaders());
+            writeString(httpInterface.getBody());
+        }
+
+        private void writeMultiMap(Map<String, Collection<String>> map) throws IOException {
+            writeSize(map);
+            if (map != null) {
+                for (Map.Entry<String, Collection<String>> entry : map.entrySet()) {
+                    writeString(entry.getKey());
+                    writeStringList(entry.getValue());
+                }
+            }
+        }
+
+        private void writeStringMap(Map<String, String> map) throws IOException {
+            writeSize(map);
+            if (map != null) {
+                for (Map.Entry<String, String> entry : map.entrySet()) {
+                    writeString(entry.getKey());
+                    writeString(entry.getValue());
+                }
+            }
+        }
+
+        private void writeStringList(Collection<String> list) throws IOException {
+            writeSize(list);
+            if (list != null) {
+                for (String string : list) {
+                    writeString(string);
+                }
+            }
+        }
+
+        private void writeValue(Object value) throws IOException {
+            if (value == null) {
+                output.writeByte(VALUE_NULL);
+            } else if (value instanceof String) {
+                output.writeByte(VALUE_STRING);
+                writeString((String) value);
+            } else if (value instanceof Boolean) {
+                output.writeByte(VALUE_BOOLEAN);
+                output.writeBoolean((Boolean) value);
+            } else if (value instanceof Integer) {
+                output.writeByte(VALUE_INTEGER);
+                writeVarInt((Integer) value);
+            } else if (value instanceof Long) {
+                output.writeByte(VALUE_LONG);
+                output.writeLong((Long) value);
+            } else if (value instanceof Double) {
+                output.writeByte(VALUE_DOUBLE);
+                output.writeDouble((Double) value);
+            } else if (value instanceof Float) {
+                output.writeByte(VALUE_FLOAT);
+                output.writeFloat((Float) value);
+            } else if (value instanceof Date) {
+                output.writeByte(VALUE_DATE);
+                output.writeLong(((Date) value).getTime());
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                output.writeByte(VALUE_MAP);
+                writeSize(map);
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeString(String.valueOf(entry.getKey()));
+                    writeValue(entry.getValue());
+                }
+            } else if (value instanceof Collection) {
+                Collection<?> collection = (Collection<?>) value;
+                output.writeByte(VALUE_LIST);
+                writeSize(collection);
+                for (Object element : collection) {
+                    writeValue(element);
+                }
+            } else if (value.getClass().isArray()) {
+                int length = Array.getLength(value);
+                output.writeByte(VALUE_LIST);
+                writeVarInt(length + 1);
+                for (int i = 0; i < length; i++) {
+                    writeValue(Array.get(value, i));
+                }
+            } else if (value instanceof Serializable) {
+                output.writeByte(VALUE_SERIALIZED);
+                writeSerialized(value);
+            } else {
+                output.writeByte(VALUE_STRING);
+                writeString(value.toString());
+            }
+        }
+
+        private void writeSerialized(Object value) throws IOException {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            ObjectOutputStream objectOutputStream = new ObjectOutputStream(content);
+            objectOutputStream.writeObject(value);
+            objectOutputStream.close();
+            writeVarInt(content.size());
+            content.writeTo(output);
+        }
+
+        private void writeDate(Date date) throws IOException {
+            output.writeBoolean(date != null);
+            if (date != null) {
+                output.writeLong(date.getTime());
+            }
+        }
+
+        /**
+         * Writes the size of a map, or 0 if it is null.
+         */
+        private void writeSize(Map<?, ?> map) throws IOException {
+            writeVarInt(map != null ? map.size() + 1 : 0);
+        }
+
+        /**
+         * Writes the size of a collection, or 0 if it is null.
+         */
+        private void writeSize(Collection<?> collection) throws IOException {
+            writeVarInt(collection != null ? collection.size() + 1 : 0);
+        }
+
+        /**
+         * Writes a string, as 0 if it is null, as the opposite of the position of its first occurrence if it has
+         * already been written, or as its length in bytes + 1 followed by its UTF-8 bytes.
+         */
+        private void writeString(String string) throws IOException {
+            if (string == null) {
+                writeVarInt(0);
+                return;
+            }
+            Integer reference = strings.get(string);
+            if (reference != null) {
+                writeVarInt(-reference);
+                return;
+            }
+
+            strings.put(string, strings.size() + 1);
+            byte[] bytes = string.getBytes(UTF_8);
+            writeVarInt(bytes.length + 1);
+            output.write(bytes);
+        }
+
+        /**
+         * Writes a zigzag encoded integer, 7 bits at a time.
+         */
+        @SuppressWarnings("checkstyle:magicnumber")
+        private void writeVarInt(int value) throws IOException {
+            int zigzag = (value << 1) ^ (value >> 31);
+            while ((zigzag & ~0x7F) != 0) {
+                output.writeByte((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            output.writeByte(zigzag);
+        }
+    }
+
+    /**
+     * Decodes an event, keeping track of the strings already read.
+     */
+    private static final class Reader {
+        private final DataInputStream input;
+        private final List<String> strings = new ArrayList<String>();
+
+        private Reader(DataInputStream input) {
+            this.input = input;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Event readEvent() throws IOException {
+            if (input.readByte() != MAGIC) {
+                throw new IOException("The buffered content isn't an event encoded by " + BinaryEventCodec.class);
+            }
+            byte version = input.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported buffered event format version: " + version);
+            }
+
+            EventBuilder eventBuilder = new EventBuilder(new UUID(input.readLong(), input.readLong()));
+            eventBuilder.withMessage(readString());
+            eventBuilder.withTimestamp(readDate());
+            String level = readString();
+            eventBuilder.withLevel(level != null ? Event.Level.valueOf(level) : null);
+            eventBuilder.withLogger(readString());
+            eventBuilder.withPlatform(readString());
+            eventBuilder.withSdkName(readString());
+            eventBuilder.withSdkVersion(readString());
+            eventBuilder.withCulprit(readString());
+            eventBuilder.withServerName(readString());
+            eventBuilder.withRelease(readString());
+            eventBuilder.withEnvironment(readString());
+            eventBuilder.withChecksum(readString());
+            Map<String, String> tags = readStringMap();
+            if (tags != null) {
+                for (Map.Entry<String, String> tag : tags.entrySet()) {
+                    eventBuilder.withTag(tag.getKey(), tag.getValue());
+                }
+            }
+            eventBuilder.withFingerprint(readStringList());
+
+            int breadcrumbs = readSize();
+            if (breadcrumbs >= 0) {
+                List<Breadcrumb> breadcrumbList = new ArrayList<Breadcrumb>(breadcrumbs);
+                for (int i = 0; i < breadcrumbs; i++) {
+                    breadcrumbList.add(readBreadcrumb());
+                }
+                eventBuilder.withBreadcrumbs(breadcrumbList);
+            }
+
+            int contexts = readSize();
+            if (contexts >= 0) {
+                Map<String, Map<String, Object>> contextMap = new HashMap<String, Map<String, Object>>(contexts);
+                for (int i = 0; i < contexts; i++) {
+                    contextMap.put(readString(), (Map<String, Object>) readValue());
+                }
+                eventBuilder.withContexts(contextMap);
+            }
+
+            Map<String, Object> extra = (Map<String, Object>) readValue();
+            if (extra != null) {
+                for (Map.Entry<String, Object> entry : extra.entrySet()) {
+                    eventBuilder.withExtra(entry.getKey(), entry.getValue());
+                }
+            }
+
+            int sentryInterfaces = readSize();
+            for (int i = 0; i < sentryInterfaces; i++) {
+                eventBuilder.withSentryInterface(readInterface());
+            }
+
+            // The event was already built before being buffered, the default values must not be applied again
+            return eventBuilder.getEvent();
+        }
+
+        private Breadcrumb readBreadcrumb() throws IOException {
+            String type = readString();
+            Date timestamp = readDate();
+            String level = readString();
+            return new BreadcrumbBuilder()
+                .setType(type != null ? Breadcrumb.Type.valueOf(type) : null)
+                .setTimestamp(timestamp)
+                .setLevel(level != null ? Breadcrumb.Level.valueOf(level) : null)
+                .setMessage(readString())
+                .setCategory(readString())
+                .setData(readStringMap())
+                .build();
+        }
+
+        private SentryInterface readInterface() throws IOException {
+            byte type = input.readByte();
+            switch (type) {
+                case INTERFACE_MESSAGE:
+                    String message = readString();
+                    List<String> parameters = readStringList();
+                    String formatted = readString();
+                    return new MessageInterface(message,
+                        parameters != null ? parameters : new ArrayList<String>(), formatted);
+                case INTERFACE_EXCEPTION:
+                    int size = readSize();
+                    Deque<SentryException> exceptions = new ArrayDeque<SentryException>(Math.max(size, 0));
+                    for (int i = 0; i < size; i++) {
+                        String exceptionMessage = readString();
+                        String className = readString();
+                        String packageName = readString();
+                        if (SentryException.DEFAULT_PACKAGE_NAME.equals(packageName)) {
+                            packageName = null;
+                        }
+                        exceptions.add(new SentryException(exceptionMessage, className, packageName,
+                            readStackTrace()));
+                    }
+                    return new ExceptionInterface(exceptions);
+                case INTERFACE_STACKTRACE:
+                    return readStackTrace();
+                case INTERFACE_USER:
+                    return new UserInterface(readString(), readString(), readString(), readString());
+                case INTERFACE_HTTP:
+                    return readHttp();
+                case INTERFACE_SERIALIZED:
+                    return (SentryInterface) readSerialized();
+                default:
+                    throw new IOException("Unknown type of buffered interface: " + type);
+            }
+        }
+
+        private StackTraceInterface readStackTrace() throws IOException {
+            int size = readSize();
+            if (size < 0) {
+                return null;
+            }
+            StackTraceElement[] stackTrace = new StackTraceElement[size];
+            for (int i = 0; i < size; i++) {
+                stackTrace[i] = new StackTraceElement(readString(), readString(), readString(), readVarInt());
+            }
+            return new StackTraceInterface(stackTrace, readVarInt());
+        }
+
+        private HttpInterface readHttp() throws IOException {
+            String requestUrl = readString();
+            String method = readString();
+            Map<String, Collection<String>> parameters = readMultiMap();
+            String queryString = readString();
+            Map<String, String> cookies = readStringMap();
+            String remoteAddr = readString();
+            String serverName = readString();
+            int serverPort = readVarInt();
+            String localAddr = readString();
+            String localName = readString();
+            int localPort = readVarInt();
+            String protocol = readString();
+            boolean secure = input.readBoolean();
+            boolean asyncStarted = input.readBoolean();
+            String authType = readString();
+            String remoteUser = readString();
+            Map<String, Collection<String>> headers = readMultiMap();
+            String body = readString();
+            return new HttpInterface(requestUrl, method, parameters, queryString, cookies, remoteAddr, serverName,
+                serverPort, localAddr, localName, localPort, protocol, secure, asyncStarted, authType, remoteUser,
+                headers, body);
+        }
+
+        private Map<String, Collection<String>> readMultiMap() throws IOException {
+            int size = readSize();
+            if (size < 0) {
+                return null;
+            }
+            Map<String, Collection<String>> map = new HashMap<String, Collection<String>>(size);
+            for (int i = 0; i < size; i++) {
+                map.put(readString(), readStringList());
+            }
+            return map;
+        }
+
+        private Map<String, String> readStringMap() throws IOException {
+            int size = readSize();
+            if (size < 0) {
+                return null;
+            }
+            Map<String, String> map = new HashMap<String, String>(size);
+            for (int i = 0; i < size; i++) {
+                map.put(readString(), readString());
+            }
+            return map;
+        }
+
+        private List<String> readStringList() throws IOException {
+            int size = readSize();
+            if (size < 0) {
+                return null;
+            }
+            List<String> list = new ArrayList<String>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(readString());
+            }
+            return list;
+        }
+
+        private Object readValue() throws IOException {
+            byte type = input.readByte();
+            int size;
+            switch (type) {
+                case VALUE_NULL:
+                    return null;
+                case VALUE_STRING:
+                    return readString();
+                case VALUE_BOOLEAN:
+                    return input.readBoolean();
+                case VALUE_INTEGER:
+                    return readVarInt();
+                case VALUE_LONG:
+                    return input.readLong();
+                case VALUE_DOUBLE:
+                    return input.readDouble();
+                case VALUE_FLOAT:
+                    return input.readFloat();
+                case VALUE_DATE:
+                    return new Date(input.readLong());
+                case VALUE_MAP:
+                    size = readSize();
+                    Map<String, Object> map = new LinkedHashMap<String, Object>(Math.max(size, 0));
+                    for (int i = 0; i < size; i++) {
+                        map.put(readString(), readValue());
+                    }
+                    return map;
+                case VALUE_LIST:
+                    size = readSize();
+                    List<Object> list = new ArrayList<Object>(Math.max(size, 0));
+                    for (int i = 0; i < size; i++) {
+                        list.add(readValue());
+                    }
+                    return list;
+                case VALUE_SERIALIZED:
+                    return readSerialized();
+                default:
+                    throw new IOException("Unknown type of buffered value: " + type);
+            }
+        }
+
+        private Object readSerialized() throws IOException {
+            byte[] content = new byte[readVarInt()];
+            input.readFully(content);
+            ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(content));
+            try {
+                return objectInputStream.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("The buffered event references an unknown class", e);
+            } finally {
+                objectInputStream.close();
+            }
+        }
+
+        private Date readDate() throws IOException {
+            return input.readBoolean() ? new Date(input.readLong()) : null;
+        }
+
+        /**
+         * Reads the size of a map or a collection, or -1 if it is null.
+         */
+        private int readSize() throws IOException {
+            return readVarInt() - 1;
+        }
+
+        private String readString() throws IOException {
+            int length = readVarInt();
+            if (length == 0) {
+                return null;
+            } else if (length < 0) {
+                return strings.get(-length - 1);
+            }
+
+            byte[] bytes = new byte[length - 1];
+            input.readFully(bytes);
+            String string = new String(bytes, UTF_8);
+            strings.add(string);
+            return string;
+        }
+
+        @SuppressWarnings("checkstyle:magicnumber")
+        private int readVarInt() throws IOException {
+            int zigzag = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = input.readUnsignedByte();
+                zigzag |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+            throw new IOException("Malformed variable length integer");
+        }
+    }
+}
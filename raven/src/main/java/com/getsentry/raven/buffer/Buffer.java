@@ -26,7 +26,10 @@ public interface Buffer {
     void discard(Event event);
 
     /**
-     * Returns an Iterator of {@link Event}s in the buffer.
+     * Returns an Iterator of {@link Event}s in the buffer, oldest first.
+     * <p>
+     * The events are returned in the order they were buffered, across the whole buffer, so that they can be sent
+     * again in that order without being read and sorted first.
      *
      * @return Iterator of Events in the buffer.
      */
@@ -5,8 +5,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Stores {@link Event} objects to a directory on the filesystem and allows
@@ -23,6 +26,7 @@ public class DiskBuffer implements Buffer {
 
     private int maxEvents;
     private final File bufferDir;
+    private final EventCodec codec;
 
     /**
      * Construct an DiskBuffer which stores errors in the specified directory on disk.
@@ -31,10 +35,22 @@ public class DiskBuffer implements Buffer {
      * @param maxEvents The maximum number of events to store offline
      */
     public DiskBuffer(File bufferDir, int maxEvents) {
+        this(bufferDir, maxEvents, new SerializationEventCodec());
+    }
+
+    /**
+     * Construct an DiskBuffer which stores errors in the specified directory on disk.
+     *
+     * @param bufferDir File representing directory to store buffered Events in
+     * @param maxEvents The maximum number of events to store offline
+     * @param codec     The codec used to store the events
+     */
+    public DiskBuffer(File bufferDir, int maxEvents, EventCodec codec) {
         super();
 
         this.bufferDir = bufferDir;
         this.maxEvents = maxEvents;
+        this.codec = codec;
 
         String errMsg = "Could not create or write to disk buffer dir: " + bufferDir.getAbsolutePath();
         try {
@@ -52,8 +68,8 @@ public class DiskBuffer implements Buffer {
     }
 
     /**
-     * Store a single event to the add directory. Java serialization is used and each
-     * event is stored in a file named by its UUID.
+     * Store a single event to the add directory. The event is encoded with the {@link EventCodec}
+     * of the buffer and stored in a file named by its UUID.
      *
      * @param event Event to store in add directory
      */
@@ -75,12 +91,11 @@ public class DiskBuffer implements Buffer {
         }
 
         FileOutputStream fileOutputStream = null;
-        ObjectOutputStream objectOutputStream = null;
 
         try {
+            byte[] content = codec.encode(event);
             fileOutputStream = new FileOutputStream(eventFile);
-            objectOutputStream = new ObjectOutputStream(fileOutputStream);
-            objectOutputStream.writeObject(event);
+            fileOutputStream.write(content);
         } catch (Exception e) {
             logger.error("Error writing Event to offline storage: " + event.getId(), e);
         } finally {
@@ -91,13 +106,6 @@ public class DiskBuffer implements Buffer {
                     logger.error("Error closing fileOutputStream", e);
                 }
             }
-            if (objectOutputStream != null) {
-                try {
-                    objectOutputStream.close();
-                } catch (IOException e) {
-                    logger.error("Error closing objectOutputStream", e);
-                }
-            }
         }
 
         logger.debug(Integer.toString(getNumStoredEvents())
@@ -120,31 +128,29 @@ public class DiskBuffer implements Buffer {
     }
 
     /**
-     * Attempts to open and deserialize a single {@link Event} from a {@link File}.
+     * Attempts to open and decode a single {@link Event} from a {@link File}.
      *
-     * @param eventFile File to deserialize into an Event
+     * @param eventFile File to decode into an Event
      * @return Event from the File, or null
      */
     private Event fileToEvent(File eventFile) {
-        FileInputStream fileInputStream;
-        Object eventObj;
-
         try {
-            fileInputStream = new FileInputStream(new File(eventFile.getAbsolutePath()));
-            ObjectInputStream ois = new ObjectInputStream(fileInputStream);
-            eventObj = ois.readObject();
+            return codec.decode(readFile(eventFile));
         } catch (Exception e) {
             logger.error("Error reading Event file: " + eventFile.getAbsolutePath(), e);
             eventFile.delete();
             return null;
         }
+    }
 
+    private static byte[] readFile(File file) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(new FileInputStream(file));
         try {
-            return (Event) eventObj;
-        } catch (Exception e) {
-            logger.error("Error casting Object to Event: " + eventFile.getAbsolutePath(), e);
-            eventFile.delete();
-            return null;
+            byte[] content = new byte[(int) file.length()];
+            dataInputStream.readFully(content);
+            return content;
+        } finally {
+            dataInputStream.close();
         }
     }
 
@@ -174,7 +180,8 @@ public class DiskBuffer implements Buffer {
 
     /**
      * Returns an Iterator of Events that are stored on disk <b>at the point in time this method
-     * is called</b>. Note that files may not deserialize correctly, may be corrupted,
+     * is called</b>, oldest first based on the modification time of their files.
+     * Note that files may not deserialize correctly, may be corrupted,
      * or may be missing on disk by the time we attempt to open them - so some care is taken to
      * only return valid {@link Event}s.
      *
@@ -185,7 +192,26 @@ public class DiskBuffer implements Buffer {
      */
     @Override
     public Iterator<Event> getEvents() {
-        final Iterator<File> files = Arrays.asList(bufferDir.listFiles()).iterator();
+        File[] listedFiles = bufferDir.listFiles();
+        final long[] lastModified = new long[listedFiles.length];
+        Integer[] order = new Integer[listedFiles.length];
+        for (int i = 0; i < listedFiles.length; i++) {
+            // Read once per file, as it's a system call and may change while sorting
+            lastModified[i] = listedFiles[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                long difference = lastModified[first] - lastModified[second];
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+        List<File> sortedFiles = new ArrayList<File>(listedFiles.length);
+        for (Integer index : order) {
+            sortedFiles.add(listedFiles[index]);
+        }
+        final Iterator<File> files = sortedFiles.iterator();
 
         return new Iterator<Event>() {
             private Event next = getNextEvent(files);
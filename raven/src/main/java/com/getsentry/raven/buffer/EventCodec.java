@@ -0,0 +1,31 @@
+package com.getsentry.raven.buffer;
+
+import com.getsentry.raven.event.Event;
+
+import java.io.IOException;
+
+/**
+ * Codec converting an {@link Event} to the bytes stored by a {@link Buffer}, and back.
+ * <p>
+ * Buffered events can be read back by a later version of the application, so a codec must either keep its format
+ * compatible or fail to decode the content it doesn't understand.
+ */
+public interface EventCodec {
+    /**
+     * Converts an event to bytes.
+     *
+     * @param event event to encode.
+     * @return the encoded event.
+     * @throws IOException if the event can't be encoded.
+     */
+    byte[] encode(Event event) throws IOException;
+
+    /**
+     * Converts bytes produced by {@link #encode(Event)} back to an event.
+     *
+     * @param content encoded event.
+     * @return the decoded event.
+     * @throws IOException if the content isn't a valid encoded event.
+     */
+    Event decode(byte[] content) throws IOException;
+}
@@ -0,0 +1,667 @@
+package com.getsentry.raven.buffer;
+
+import com.getsentry.raven.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Stores {@link Event} objects in memory-mapped segment files, used as a queue.
+ * <p>
+ * Adding an event copies its record at the tail of the current segment, and reading it back copies it out of the
+ * mapping, so neither goes through a system call nor blocks on the disk: the operating system writes the pages
+ * back in the background, and a JVM crash doesn't lose anything that was copied in a mapping.<br>
+ * Discarding an event flips the status of its record in place, and the head of the queue moves past the discarded
+ * records. Segments without any live record, other than the tail, are unmapped and deleted, even if older records
+ * are still live.
+ * <p>
+ * The head and tail offsets are stored in a mapped checkpoint file. The segments and the checkpoint are forced to
+ * the disk periodically, outside of the lock taken to add events, so that a crash of the host loses at most the
+ * records written since the last synchronisation. On startup the records are scanned from the checkpointed head,
+ * and the scan stops at the first record that is incomplete or doesn't match its checksum.
+ */
+public class MappedDiskBuffer implements Buffer, Closeable {
+
+    /**
+     * File suffix added to all segment files.
+     */
+    public static final String FILE_SUFFIX = ".raven-segment";
+    /**
+     * Name of the file storing the head and tail of the queue.
+     */
+    public static final String CHECKPOINT_FILE = "checkpoint.raven";
+    /**
+     * Default size of a segment, in bytes.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+    /**
+     * Default time between two synchronisations of the mappings with the disk, in milliseconds.
+     */
+    public static final long DEFAULT_SYNC_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedDiskBuffer.class);
+    private static final byte LIVE = 1;
+    private static final byte DISCARDED = 2;
+    /**
+     * Size of the length, status, event id and checksum preceding every record.
+     */
+    private static final int HEADER_SIZE = 25;
+    private static final int STATUS_OFFSET = 4;
+    private static final int ID_OFFSET = 5;
+    private static final int CHECKSUM_OFFSET = 21;
+    private static final int CHECKPOINT_HEAD_SEGMENT = 0;
+    private static final int CHECKPOINT_HEAD_OFFSET = 8;
+    private static final int CHECKPOINT_TAIL_SEGMENT = 12;
+    private static final int CHECKPOINT_TAIL_OFFSET = 20;
+    private static final int CHECKPOINT_SIZE = 24;
+    private static final int SEGMENT_NAME_DIGITS = 20;
+
+    private final File bufferDir;
+    private final int maxEvents;
+    private final int segmentSize;
+    private final EventCodec codec;
+    /**
+     * Mapped segments, from the head to the tail of the queue.
+     */
+    private final LinkedList<Segment> segments = new LinkedList<Segment>();
+    /**
+     * Location of every buffered event, in the order they were written.
+     */
+    private final Map<UUID, Location> index = new LinkedHashMap<UUID, Location>();
+    /**
+     * Segments removed from the queue, unmapped and deleted by the next {@link #sync()} once they can't be forced
+     * anymore.
+     */
+    private final List<Segment> removedSegments = new ArrayList<Segment>();
+    private final RandomAccessFile checkpointFile;
+    private final MappedByteBuffer checkpoint;
+    private final ScheduledExecutorService syncExecutor;
+    /**
+     * Lock held while the mappings are forced to the disk, so that they aren't unmapped in the meantime.
+     */
+    private final Object syncLock = new Object();
+    /**
+     * Position of the oldest record which hasn't been discarded.
+     */
+    private int headOffset;
+    /**
+     * Position where the next record is written, in the last segment.
+     */
+    private int tailOffset;
+    private boolean closed;
+
+    /**
+     * Construct a MappedDiskBuffer which stores events in the specified directory on disk.
+     *
+     * @param bufferDir File representing directory to store buffered Events in
+     * @param maxEvents The maximum number of events to store offline
+     */
+    public MappedDiskBuffer(File bufferDir, int maxEvents) {
+        this(bufferDir, maxEvents, DEFAULT_SEGMENT_SIZE, DEFAULT_SYNC_INTERVAL, new SerializationEventCodec());
+    }
+
+    /**
+     * Construct a MappedDiskBuffer which stores events in the specified directory on disk.
+     *
+     * @param bufferDir    File representing directory to store buffered Events in
+     * @param maxEvents    The maximum number of events to store offline
+     * @param segmentSize  The size of a segment file, which bounds the size of a single event, in bytes
+     * @param syncInterval The time between two synchronisations of the mappings with the disk, in milliseconds
+     * @param codec        The codec used to store the events
+     */
+    public MappedDiskBuffer(File bufferDir, int maxEvents, int segmentSize, long syncInterval, EventCodec codec) {
+        this.bufferDir = bufferDir;
+        this.maxEvents = maxEvents;
+        this.segmentSize = segmentSize;
+        this.codec = codec;
+
+        String errMsg = "Could not create or write to disk buffer dir: " + bufferDir.getAbsolutePath();
+        try {
+            bufferDir.mkdirs();
+            if (!bufferDir.isDirectory() || !bufferDir.canWrite()) {
+                throw new RuntimeException(errMsg);
+            }
+            checkpointFile = new RandomAccessFile(new File(bufferDir, CHECKPOINT_FILE), "rw");
+            checkpoint = checkpointFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, CHECKPOINT_SIZE);
+            recover();
+        } catch (IOException e) {
+            throw new RuntimeException(errMsg, e);
+        }
+
+        logger.debug(index.size() + " stored events found in dir: " + bufferDir.getAbsolutePath());
+
+        this.syncExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "raven-buffer-sync");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        syncExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sync();
+            }
+        }, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Copies a single event at the tail of the queue, encoded with the {@link EventCodec} of the buffer.
+     *
+     * @param event Event to store in the buffer
+     */
+    @Override
+    public void add(Event event) {
+        byte[] content;
+        try {
+            content = codec.encode(event);
+        } catch (IOException e) {
+            logger.error("Error serializing Event for offline storage: " + event.getId(), e);
+            return;
+        }
+        if (HEADER_SIZE + content.length > segmentSize) {
+            logger.warn("Not adding Event because it is larger than a buffer segment: " + event.getId());
+            return;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (index.size() >= maxEvents) {
+                logger.warn("Not adding Event because at least "
+                    + Integer.toString(maxEvents) + " events are already stored: " + event.getId());
+                return;
+            }
+            if (index.containsKey(event.getId())) {
+                logger.trace("Not adding Event to offline storage because it already exists: " + event.getId());
+                return;
+            }
+
+            try {
+                if (tailOffset + HEADER_SIZE + content.length > segmentSize) {
+                    Segment previous = segments.getLast();
+                    segments.addLast(mapSegment(previous.id + 1));
+                    tailOffset = 0;
+                    if (previous.liveRecords == 0) {
+                        // Kept only because it was the tail
+                        removeSegment(previous);
+                        advanceHead();
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Error writing Event to offline storage: " + event.getId(), e);
+                return;
+            }
+
+            Segment segment = segments.getLast();
+            MappedByteBuffer buffer = segment.buffer;
+            buffer.position(tailOffset);
+            buffer.putInt(content.length);
+            buffer.put(LIVE);
+            buffer.putLong(event.getId().getMostSignificantBits());
+            buffer.putLong(event.getId().getLeastSignificantBits());
+            buffer.putInt(checksum(content));
+            buffer.put(content);
+            segment.dirty = true;
+            segment.liveRecords++;
+
+            index.put(event.getId(), new Location(segment, tailOffset, content.length));
+            tailOffset = buffer.position();
+            writeCheckpoint();
+        }
+    }
+
+    /**
+     * Discards a buffered {@link Event} by marking its record as discarded, and moves the head of the queue past
+     * the discarded records.
+     *
+     * @param event Event to discard from the buffer.
+     */
+    @Override
+    public synchronized void discard(Event event) {
+        discard(event.getId());
+    }
+
+    private synchronized void discard(UUID id) {
+        if (closed) {
+            return;
+        }
+        Location location = index.remove(id);
+        if (location == null) {
+            return;
+        }
+
+        logger.debug("Discarding Event from offline storage: " + id);
+        Segment segment = location.segment;
+        segment.buffer.put(location.offset + STATUS_OFFSET, DISCARDED);
+        segment.dirty = true;
+        segment.liveRecords--;
+        if (segment.liveRecords == 0 && segment != segments.getLast()) {
+            removeSegment(segment);
+        }
+        advanceHead();
+        writeCheckpoint();
+    }
+
+    /**
+     * Returns an Iterator of Events that are stored in the buffer <b>at the point in time this method
+     * is called</b>, in the order of their records. Events discarded in the meantime are skipped, and
+     * events that can't be deserialized are discarded.
+     *
+     * If Events are added after this Iterator is created they <b>will not</b> be returned
+     * by this Iterator.
+     *
+     * @return Iterator of Events in the buffer
+     */
+    @Override
+    public Iterator<Event> getEvents() {
+        final Iterator<UUID> ids;
+        synchronized (this) {
+            ids = new ArrayList<UUID>(index.keySet()).iterator();
+        }
+
+        return new Iterator<Event>() {
+            private Event next = getNextEvent(ids);
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Event next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Event toReturn = next;
+                next = getNextEvent(ids);
+                return toReturn;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Number of events currently stored in the buffer.
+     *
+     * @return the number of buffered events.
+     */
+    public synchronized int getNumStoredEvents() {
+        return index.size();
+    }
+
+    /**
+     * Number of segment files currently on disk.
+     *
+     * @return the number of segments.
+     */
+    public synchronized int getNumSegments() {
+        return segments.size();
+    }
+
+    /**
+     * Forces the modified segments and the checkpoint to the disk, then unmaps and deletes the removed segments.
+     * <p>
+     * The lock of the buffer is only held to list the segments, so that events can still be added while the disk
+     * is being written.
+     */
+    void sync() {
+        synchronized (syncLock) {
+            List<Segment> dirtySegments = new ArrayList<Segment>();
+            List<Segment> segmentsToDelete;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                for (Segment segment : segments) {
+                    if (segment.dirty) {
+                        // Modified again while being forced, it will be forced by the next synchronisation
+                        segment.dirty = false;
+                        dirtySegments.add(segment);
+                    }
+                }
+                segmentsToDelete = new ArrayList<Segment>(removedSegments);
+                removedSegments.clear();
+            }
+
+            for (Segment segment : dirtySegments) {
+                segment.buffer.force();
+            }
+            checkpoint.force();
+            for (Segment segment : segmentsToDelete) {
+                segment.close();
+                if (!segment.file.delete()) {
+                    logger.warn("Couldn't delete the offline storage segment: " + segment.file.getAbsolutePath());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        syncExecutor.shutdownNow();
+        synchronized (syncLock) {
+            sync();
+            synchronized (this) {
+                closed = true;
+                for (Segment segment : segments) {
+                    segment.close();
+                }
+                checkpointFile.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the next *valid* {@link Event} among the given ids.
+     */
+    private Event getNextEvent(Iterator<UUID> ids) {
+        while (ids.hasNext()) {
+            UUID id = ids.next();
+            byte[] content;
+            synchronized (this) {
+                Location location = index.get(id);
+                if (closed || location == null) {
+                    continue;
+                }
+                content = new byte[location.length];
+                MappedByteBuffer buffer = location.segment.buffer;
+                buffer.position(location.offset + HEADER_SIZE);
+                buffer.get(content);
+            }
+
+            try {
+                return codec.decode(content);
+            } catch (Exception e) {
+                logger.error("Error deserializing Event from offline storage: " + id, e);
+                discard(id);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves the head past the discarded records, deleting the segments left behind.
+     */
+    private void advanceHead() {
+        while (true) {
+            Segment head = segments.getFirst();
+            boolean last = segments.size() == 1;
+            int end = last ? tailOffset : segmentSize;
+            if (headOffset + HEADER_SIZE <= end) {
+                int length = head.buffer.getInt(headOffset);
+                if (length > 0 && head.buffer.get(headOffset + STATUS_OFFSET) == DISCARDED) {
+                    headOffset += HEADER_SIZE + length;
+                    continue;
+                }
+                if (length > 0 || last) {
+                    return;
+                }
+            } else if (last) {
+                return;
+            }
+
+            // Nothing left in the head segment
+            removeSegment(head);
+        }
+    }
+
+    /**
+     * Removes a segment from the queue, to be unmapped and deleted by the next {@link #sync()}.
+     */
+    private void removeSegment(Segment segment) {
+        if (segment == segments.getFirst()) {
+            headOffset = 0;
+        }
+        segments.remove(segment);
+        removedSegments.add(segment);
+    }
+
+    private void writeCheckpoint() {
+        checkpoint.putLong(CHECKPOINT_HEAD_SEGMENT, segments.getFirst().id);
+        checkpoint.putInt(CHECKPOINT_HEAD_OFFSET, headOffset);
+        checkpoint.putLong(CHECKPOINT_TAIL_SEGMENT, segments.getLast().id);
+        checkpoint.putInt(CHECKPOINT_TAIL_OFFSET, tailOffset);
+    }
+
+    /**
+     * Maps the segments from the checkpointed head, and rebuilds the index by scanning the records.
+     */
+    private void recover() throws IOException {
+        List<Long> segmentIds = listSegmentIds();
+        long headSegment = checkpoint.getLong(CHECKPOINT_HEAD_SEGMENT);
+        headOffset = checkpoint.getInt(CHECKPOINT_HEAD_OFFSET);
+        if (!segmentIds.contains(headSegment) || headOffset < 0 || headOffset > segmentSize) {
+            // No checkpoint yet, or it wasn't synchronised with the segments
+            headSegment = segmentIds.isEmpty() ? 0 : segmentIds.get(0);
+            headOffset = 0;
+        }
+
+        // Segments without live records may have been deleted, the following segments aren't always contiguous
+        Iterator<Long> followingIds = segmentIds.iterator();
+        while (followingIds.hasNext()) {
+            long segmentId = followingIds.next();
+            if (segmentId >= headSegment) {
+                break;
+            }
+            deleteSegmentFile(segmentFile(segmentId));
+        }
+
+        int offset = headOffset;
+        segments.addLast(mapSegment(headSegment));
+        while (true) {
+            Segment segment = segments.getLast();
+            MappedByteBuffer buffer = segment.buffer;
+            int length = offset + HEADER_SIZE <= segmentSize ? buffer.getInt(offset) : 0;
+            if (length <= 0 || offset + HEADER_SIZE + length > segmentSize) {
+                if (followingIds.hasNext()) {
+                    segments.addLast(mapSegment(followingIds.next()));
+                    offset = 0;
+                    continue;
+                }
+                break;
+            }
+
+            byte status = buffer.get(offset + STATUS_OFFSET);
+            UUID id = new UUID(buffer.getLong(offset + ID_OFFSET), buffer.getLong(offset + ID_OFFSET + 8));
+            int checksum = buffer.getInt(offset + CHECKSUM_OFFSET);
+            byte[] content = new byte[length];
+            buffer.position(offset + HEADER_SIZE);
+            buffer.get(content);
+            if ((status != LIVE && status != DISCARDED) || checksum(content) != checksum) {
+                logger.warn("Ignoring the incomplete end of the offline storage segment: "
+                    + segment.file.getAbsolutePath());
+                // Clears the partial record, so that it isn't mistaken for a record once overwritten
+                buffer.position(offset);
+                buffer.put(new byte[segmentSize - offset]);
+                segment.dirty = true;
+                // The following segments can't be reached anymore
+                while (followingIds.hasNext()) {
+                    File file = segmentFile(followingIds.next());
+                    logger.warn("Deleting the unreachable offline storage segment: " + file.getAbsolutePath());
+                    deleteSegmentFile(file);
+                }
+                break;
+            }
+            if (status == LIVE) {
+                index.put(id, new Location(segment, offset, length));
+                segment.liveRecords++;
+            }
+            offset += HEADER_SIZE + length;
+        }
+        tailOffset = offset;
+
+        for (Segment segment : new ArrayList<Segment>(segments)) {
+            if (segment.liveRecords == 0 && segment != segments.getLast()) {
+                removeSegment(segment);
+            }
+        }
+        advanceHead();
+        writeCheckpoint();
+    }
+
+    private static void deleteSegmentFile(File file) {
+        if (!file.delete()) {
+            logger.warn("Couldn't delete the offline storage segment: " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Lists the identifiers of the segments in the buffer directory.
+     *
+     * @return the identifiers of the segments, in ascending order.
+     */
+    private List<Long> listSegmentIds() {
+        List<Long> ids = new ArrayList<Long>();
+        File[] files = bufferDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.endsWith(FILE_SUFFIX)) {
+                    continue;
+                }
+                try {
+                    ids.add(Long.parseLong(name.substring(0, name.length() - FILE_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring unexpected file in the offline storage: " + file.getAbsolutePath());
+                }
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private File segmentFile(long id) {
+        return new File(bufferDir, String.format("%0" + SEGMENT_NAME_DIGITS + "d", id) + FILE_SUFFIX);
+    }
+
+    private Segment mapSegment(long id) throws IOException {
+        return new Segment(id, segmentFile(id), segmentSize);
+    }
+
+    /**
+     * Releases a mapping right away instead of waiting for the garbage collector, which also allows the file to be
+     * deleted on Windows. Falls back to the garbage collector if the JVM doesn't allow it.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            // Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (NoSuchMethodException e) {
+            logger.trace("Unsafe.invokeCleaner isn't available, falling back to the cleaner of the buffer.");
+        } catch (Exception e) {
+            logger.debug("Couldn't unmap an offline storage segment, leaving it to the garbage collector.", e);
+            return;
+        }
+
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            logger.debug("Couldn't unmap an offline storage segment, leaving it to the garbage collector.", e);
+        }
+    }
+
+    private static int checksum(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Mapped segment file.
+     */
+    private static final class Segment {
+        private final long id;
+        private final File file;
+        private final RandomAccessFile randomAccessFile;
+        private final MappedByteBuffer buffer;
+        /**
+         * Whether the mapping has been modified since it was last forced to the disk.
+         */
+        private boolean dirty;
+        /**
+         * Number of records of the segment which haven't been discarded.
+         */
+        private int liveRecords;
+
+        private Segment(long id, File file, int size) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.randomAccessFile = new RandomAccessFile(file, "rw");
+            // Mapping beyond the end of the file fills it with zeros
+            this.buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        /**
+         * Closes the segment file and unmaps it. The mapping must not be used anymore.
+         */
+        private void close() {
+            try {
+                randomAccessFile.close();
+            } catch (IOException e) {
+                logger.error("Error closing the offline storage segment: " + file.getAbsolutePath(), e);
+            }
+            unmap(buffer);
+        }
+    }
+
+    /**
+     * Position of an event record in a segment.
+     */
+    private static final class Location {
+        private final Segment segment;
+        /**
+         * Offset of the record in its segment.
+         */
+        private final int offset;
+        /**
+         * Length of the serialized event.
+         */
+        private final int length;
+
+        private Location(Segment segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.getsentry.raven.buffer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.UUID;
+
+/**
+ * Wire payload of an {@link com.getsentry.raven.event.Event} stored by a {@link PayloadBuffer}, exactly as it was
+ * produced by the {@link com.getsentry.raven.marshaller.Marshaller} of the connection.
+ */
+public final class Payload {
+    private final UUID eventId;
+    private final File file;
+
+    /**
+     * Creates a payload stored in a file.
+     *
+     * @param eventId identifier of the marshalled event.
+     * @param file    file containing the marshalled event.
+     */
+    public Payload(UUID eventId, File file) {
+        this.eventId = eventId;
+        this.file = file;
+    }
+
+    public UUID getEventId() {
+        return eventId;
+    }
+
+    /**
+     * Time at which the payload was stored, in milliseconds since the epoch.
+     *
+     * @return the time at which the payload was stored.
+     */
+    public long getTimestamp() {
+        return file.lastModified();
+    }
+
+    /**
+     * Opens a channel on the payload, to be closed by the caller.
+     *
+     * @return a channel reading the payload from its first byte.
+     * @throws IOException if the payload couldn't be opened, for example because it has been discarded.
+     */
+    public FileChannel open() throws IOException {
+        return new FileInputStream(file).getChannel();
+    }
+
+    File getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,36 @@
+package com.getsentry.raven.buffer;
+
+import com.getsentry.raven.event.Event;
+
+import java.util.Iterator;
+
+/**
+ * Buffer storing the final wire payload of the events instead of the events themselves, so that flushing them again
+ * doesn't require to decode and marshall them on every attempt.
+ * <p>
+ * A payload can't be turned back into an {@link Event}, {@link #getPayloads()} replaces {@link #getEvents()} to read
+ * the content of such a buffer.
+ */
+public interface PayloadBuffer extends Buffer {
+    /**
+     * Marshalls an {@link Event} into the buffer, unless it's already there.
+     *
+     * @param event Event to store in the buffer.
+     * @return the stored payload of the event, or null if it couldn't be stored.
+     */
+    Payload addPayload(Event event);
+
+    /**
+     * Returns an Iterator of the {@link Payload}s in the buffer, oldest first.
+     *
+     * @return Iterator of Payloads in the buffer.
+     */
+    Iterator<Payload> getPayloads();
+
+    /**
+     * Discard a {@link Payload} from the buffer. Note: the {@link Payload} may or may not still exist in the buffer.
+     *
+     * @param payload Payload to discard from the buffer.
+     */
+    void discard(Payload payload);
+}
@@ -0,0 +1,213 @@
+package com.getsentry.raven.buffer;
+
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.marshaller.Marshaller;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stores the marshalled content of {@link Event}s to a directory on the filesystem and allows
+ * them to be flushed to Sentry (and deleted) at a later time.
+ * <p>
+ * Each event is marshalled once, when it is added, with the same {@link Marshaller} as the connection. Sending it,
+ * and sending it again after a failure, then only have to copy the content of the file to the connection.
+ */
+public class PayloadDiskBuffer implements PayloadBuffer {
+
+    /**
+     * File suffix added to all marshalled event files.
+     */
+    public static final String FILE_SUFFIX = ".raven-payload";
+    /**
+     * File suffix of the payloads still being written.
+     */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private static final Logger logger = LoggerFactory.getLogger(PayloadDiskBuffer.class);
+
+    private final int maxEvents;
+    private final File bufferDir;
+    private final Marshaller marshaller;
+    /**
+     * Number of payloads stored in the buffer directory, kept up to date to avoid listing it on every event.
+     */
+    private final AtomicInteger storedEvents = new AtomicInteger();
+
+    /**
+     * Construct a PayloadDiskBuffer which stores the marshalled events in the specified directory on disk.
+     *
+     * @param bufferDir  File representing directory to store buffered Events in
+     * @param maxEvents  The maximum number of events to store offline
+     * @param marshaller The marshaller used by the connection to send the events
+     */
+    public PayloadDiskBuffer(File bufferDir, int maxEvents, Marshaller marshaller) {
+        this.bufferDir = bufferDir;
+        this.maxEvents = maxEvents;
+        this.marshaller = marshaller;
+
+        String errMsg = "Could not create or write to disk buffer dir: " + bufferDir.getAbsolutePath();
+        try {
+            bufferDir.mkdirs();
+            if (!bufferDir.isDirectory() || !bufferDir.canWrite()) {
+                throw new RuntimeException(errMsg);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(errMsg, e);
+        }
+
+        for (File file : bufferDir.listFiles()) {
+            if (file.getName().endsWith(FILE_SUFFIX)) {
+                storedEvents.incrementAndGet();
+            } else if (file.getName().endsWith(FILE_SUFFIX + TEMPORARY_SUFFIX)) {
+                // Payloads interrupted while being written can't be sent
+                file.delete();
+            }
+        }
+
+        logger.debug(Integer.toString(storedEvents.get())
+            + " stored payloads found in dir: "
+            + bufferDir.getAbsolutePath());
+    }
+
+    /**
+     * Marshalls a single event to the buffer directory, in a file named by its UUID.
+     *
+     * @param event Event to store in the buffer directory
+     */
+    @Override
+    public void add(Event event) {
+        addPayload(event);
+    }
+
+    /**
+     * Marshalls a single event to the buffer directory, in a file named by its UUID.
+     * <p>
+     * The payload is written to a temporary file first, so that a payload partially written when the JVM stopped is
+     * never sent.
+     *
+     * @param event Event to store in the buffer directory
+     * @return the stored payload of the event, or null if the buffer is full or the event couldn't be written.
+     */
+    @Override
+    public Payload addPayload(Event event) {
+        File payloadFile = getPayloadFile(event.getId());
+        if (payloadFile.exists()) {
+            logger.trace("Not adding Event to offline storage because it already exists: "
+                + payloadFile.getAbsolutePath());
+            return new Payload(event.getId(), payloadFile);
+        }
+
+        if (storedEvents.get() >= maxEvents) {
+            logger.warn("Not adding Event because at least "
+                + Integer.toString(maxEvents) + " events are already stored: " + event.getId());
+            return null;
+        }
+
+        logger.debug("Adding Event to offline storage: " + payloadFile.getAbsolutePath());
+        File temporaryFile = new File(bufferDir, payloadFile.getName() + TEMPORARY_SUFFIX);
+        OutputStream outputStream = null;
+        try {
+            outputStream = new BufferedOutputStream(new FileOutputStream(temporaryFile));
+            marshaller.marshall(event, outputStream);
+            outputStream.close();
+            outputStream = null;
+            if (!temporaryFile.renameTo(payloadFile)) {
+                throw new IOException("Couldn't rename " + temporaryFile + " to " + payloadFile);
+            }
+            storedEvents.incrementAndGet();
+            return new Payload(event.getId(), payloadFile);
+        } catch (Exception e) {
+            logger.error("Error writing Event to offline storage: " + event.getId(), e);
+            temporaryFile.delete();
+            return null;
+        } finally {
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException e) {
+                    logger.error("Error closing the payload stream", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void discard(Event event) {
+        discard(getPayloadFile(event.getId()));
+    }
+
+    @Override
+    public void discard(Payload payload) {
+        discard(payload.getFile());
+    }
+
+    private void discard(File payloadFile) {
+        if (payloadFile.delete()) {
+            logger.debug("Discarded Event from offline storage: " + payloadFile.getAbsolutePath());
+            storedEvents.decrementAndGet();
+        }
+    }
+
+    /**
+     * Payloads can't be decoded back into {@link Event}s, use {@link #getPayloads()} instead.
+     *
+     * @return never returns.
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public Iterator<Event> getEvents() {
+        throw new UnsupportedOperationException("Payloads can't be decoded back into events, read them with "
+            + "getPayloads() instead.");
+    }
+
+    /**
+     * Returns an Iterator of the payloads that are stored on disk <b>at the point in time this method
+     * is called</b>, oldest first. A payload may have been deleted by the time it is opened.
+     *
+     * @return Iterator of Payloads on disk
+     */
+    @Override
+    public Iterator<Payload> getPayloads() {
+        List<Payload> payloads = new ArrayList<Payload>();
+        for (File file : bufferDir.listFiles()) {
+            String name = file.getName();
+            if (!name.endsWith(FILE_SUFFIX)) {
+                continue;
+            }
+
+            try {
+                UUID eventId = UUID.fromString(name.substring(0, name.length() - FILE_SUFFIX.length()));
+                payloads.add(new Payload(eventId, file));
+            } catch (IllegalArgumentException e) {
+                logger.warn("Ignoring a payload file without a valid event id: " + file.getAbsolutePath());
+            }
+        }
+
+        Collections.sort(payloads, new Comparator<Payload>() {
+            @Override
+            public int compare(Payload p1, Payload p2) {
+                long t1 = p1.getTimestamp();
+                long t2 = p2.getTimestamp();
+                return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+            }
+        });
+        return payloads.iterator();
+    }
+
+    private File getPayloadFile(UUID eventId) {
+        return new File(bufferDir, eventId.toString() + FILE_SUFFIX);
+    }
+}
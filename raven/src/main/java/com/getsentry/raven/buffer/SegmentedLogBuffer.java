@@ -0,0 +1,578 @@
+package com.getsentry.raven.buffer;
+
+import com.getsentry.raven.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Stores {@link Event} objects in an append-only log on the filesystem, split in rolling segment files.
+ * <p>
+ * Unlike {@link DiskBuffer}, adding an event is a single sequential append and never lists the buffer directory:
+ * the position of every buffered event is kept in memory, and rebuilt by replaying the segments on startup.<br>
+ * Each record is prefixed by its length and a checksum, so that a record partially written when the JVM stopped is
+ * ignored. Discarding an event appends a tombstone rather than rewriting the log.
+ * <p>
+ * A background task compacts the log: once the oldest segment mostly contains discarded events, its remaining events
+ * are appended to the current segment and the oldest segment is deleted. Only the oldest segment is ever deleted,
+ * so a tombstone can't be removed while the event it discards is still on disk.
+ */
+public class SegmentedLogBuffer implements Buffer, Closeable {
+
+    /**
+     * File suffix added to all segment files.
+     */
+    public static final String FILE_SUFFIX = ".raven-log";
+    /**
+     * Default size after which a new segment is started, in bytes.
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentedLogBuffer.class);
+    /**
+     * Time between two compactions of the log, in milliseconds.
+     */
+    private static final long COMPACTION_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+    /**
+     * Ratio of live events under which the oldest segment is compacted.
+     */
+    private static final double COMPACTION_THRESHOLD = 0.5;
+    private static final byte EVENT_RECORD = 1;
+    private static final byte TOMBSTONE_RECORD = 2;
+    /**
+     * Size of the length and checksum preceding every record.
+     */
+    private static final int HEADER_SIZE = 8;
+    /**
+     * Size of the type and event id starting every record.
+     */
+    private static final int RECORD_PREFIX_SIZE = 17;
+    private static final int SEGMENT_NAME_DIGITS = 20;
+
+    private final File bufferDir;
+    private final int maxEvents;
+    private final long segmentSize;
+    private final EventCodec codec;
+    /**
+     * Segments on disk, the oldest first.
+     */
+    private final List<Segment> segments = new ArrayList<Segment>();
+    /**
+     * Location of every buffered event, in the order they were written.
+     */
+    private final Map<UUID, Location> index = new LinkedHashMap<UUID, Location>();
+    private final ScheduledExecutorService compactor;
+    /**
+     * Segment receiving the new records.
+     */
+    private Segment currentSegment;
+    private boolean closed;
+
+    /**
+     * Construct a SegmentedLogBuffer which stores events in the specified directory on disk.
+     *
+     * @param bufferDir File representing directory to store buffered Events in
+     * @param maxEvents The maximum number of events to store offline
+     */
+    public SegmentedLogBuffer(File bufferDir, int maxEvents) {
+        this(bufferDir, maxEvents, DEFAULT_SEGMENT_SIZE, new SerializationEventCodec());
+    }
+
+    /**
+     * Construct a SegmentedLogBuffer which stores events in the specified directory on disk.
+     *
+     * @param bufferDir   File representing directory to store buffered Events in
+     * @param maxEvents   The maximum number of events to store offline
+     * @param segmentSize The size after which a new segment is started, in bytes
+     * @param codec       The codec used to store the events
+     */
+    public SegmentedLogBuffer(File bufferDir, int maxEvents, long segmentSize, EventCodec codec) {
+        this.bufferDir = bufferDir;
+        this.maxEvents = maxEvents;
+        this.segmentSize = segmentSize;
+        this.codec = codec;
+
+        String errMsg = "Could not create or write to disk buffer dir: " + bufferDir.getAbsolutePath();
+        try {
+            bufferDir.mkdirs();
+            if (!bufferDir.isDirectory() || !bufferDir.canWrite()) {
+                throw new RuntimeException(errMsg);
+            }
+            replay();
+            currentSegment = openSegment(nextSegmentId());
+        } catch (IOException e) {
+            throw new RuntimeException(errMsg, e);
+        }
+
+        logger.debug(index.size() + " stored events found in dir: " + bufferDir.getAbsolutePath());
+
+        this.compactor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "raven-buffer-compactor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        compactor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                compact();
+            }
+        }, COMPACTION_INTERVAL, COMPACTION_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Appends a single event to the log, encoded with the {@link EventCodec} of the buffer.
+     *
+     * @param event Event to store in the log
+     */
+    @Override
+    public void add(Event event) {
+        byte[] content;
+        try {
+            content = codec.encode(event);
+        } catch (IOException e) {
+            logger.error("Error serializing Event for offline storage: " + event.getId(), e);
+            return;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (index.size() >= maxEvents) {
+                logger.warn("Not adding Event because at least "
+                    + Integer.toString(maxEvents) + " events are already stored: " + event.getId());
+                return;
+            }
+            if (index.containsKey(event.getId())) {
+                logger.trace("Not adding Event to offline storage because it already exists: " + event.getId());
+                return;
+            }
+
+            try {
+                Location location = append(EVENT_RECORD, event.getId(), content);
+                index.put(event.getId(), location);
+                location.segment.liveEvents++;
+                location.segment.events++;
+            } catch (IOException e) {
+                logger.error("Error writing Event to offline storage: " + event.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * Discards a buffered {@link Event} by appending a tombstone to the log.
+     *
+     * @param event Event to discard from the log.
+     */
+    @Override
+    public void discard(Event event) {
+        discard(event.getId());
+    }
+
+    private synchronized void discard(UUID id) {
+        if (closed) {
+            return;
+        }
+        Location location = index.remove(id);
+        if (location == null) {
+            return;
+        }
+
+        logger.debug("Discarding Event from offline storage: " + id);
+        location.segment.liveEvents--;
+        try {
+            append(TOMBSTONE_RECORD, id, new byte[0]);
+        } catch (IOException e) {
+            logger.error("Error writing tombstone to offline storage: " + id, e);
+        }
+    }
+
+    /**
+     * Returns an Iterator of Events that are stored in the log <b>at the point in time this method
+     * is called</b>, in the order they were added. Once the log is reopened, the events moved by a
+     * compaction come after the ones added before it. Events discarded in the meantime are skipped,
+     * and events that can't be deserialized are discarded.
+     *
+     * If Events are added after this Iterator is created they <b>will not</b> be returned
+     * by this Iterator.
+     *
+     * @return Iterator of Events in the log
+     */
+    @Override
+    public Iterator<Event> getEvents() {
+        final Iterator<UUID> ids;
+        synchronized (this) {
+            ids = new ArrayList<UUID>(index.keySet()).iterator();
+        }
+
+        return new Iterator<Event>() {
+            private Event next = getNextEvent(ids);
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Event next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Event toReturn = next;
+                next = getNextEvent(ids);
+                return toReturn;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Number of events currently stored in the log.
+     *
+     * @return the number of buffered events.
+     */
+    public synchronized int getNumStoredEvents() {
+        return index.size();
+    }
+
+    /**
+     * Number of segment files currently on disk.
+     *
+     * @return the number of segments.
+     */
+    public synchronized int getNumSegments() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        compactor.shutdownNow();
+        synchronized (this) {
+            closed = true;
+            for (Segment segment : segments) {
+                segment.close();
+            }
+        }
+    }
+
+    /**
+     * Compacts the oldest segments while most of their events have been discarded.
+     */
+    void compact() {
+        while (true) {
+            Segment oldest;
+            synchronized (this) {
+                oldest = segments.isEmpty() ? null : segments.get(0);
+                if (closed || oldest == null || oldest == currentSegment
+                    || oldest.liveEvents > oldest.events * COMPACTION_THRESHOLD) {
+                    return;
+                }
+            }
+
+            try {
+                compact(oldest);
+            } catch (IOException e) {
+                logger.error("Error compacting the offline storage segment: " + oldest.file.getAbsolutePath(), e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Moves the events still buffered in a segment to the current segment, then deletes the segment.
+     * <p>
+     * The events are moved one at a time to avoid blocking the threads adding events for too long.
+     */
+    private void compact(Segment segment) throws IOException {
+        logger.debug("Compacting offline storage segment: " + segment.file.getAbsolutePath());
+        List<UUID> ids = new ArrayList<UUID>();
+        synchronized (this) {
+            for (Map.Entry<UUID, Location> entry : index.entrySet()) {
+                if (entry.getValue().segment == segment) {
+                    ids.add(entry.getKey());
+                }
+            }
+        }
+
+        for (UUID id : ids) {
+            synchronized (this) {
+                Location location = index.get(id);
+                if (closed) {
+                    return;
+                }
+                if (location == null || location.segment != segment) {
+                    continue;
+                }
+                byte[] content = read(location);
+                Location moved = append(EVENT_RECORD, id, content);
+                index.put(id, moved);
+                moved.segment.liveEvents++;
+                moved.segment.events++;
+                segment.liveEvents--;
+            }
+        }
+
+        synchronized (this) {
+            if (closed || segment.liveEvents > 0) {
+                return;
+            }
+            segments.remove(segment);
+            segment.close();
+            if (!segment.file.delete()) {
+                logger.warn("Couldn't delete the offline storage segment: " + segment.file.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Returns the next *valid* {@link Event} among the given ids.
+     */
+    private Event getNextEvent(Iterator<UUID> ids) {
+        while (ids.hasNext()) {
+            UUID id = ids.next();
+            byte[] content;
+            synchronized (this) {
+                Location location = index.get(id);
+                if (closed || location == null) {
+                    continue;
+                }
+                try {
+                    content = read(location);
+                } catch (IOException e) {
+                    logger.error("Error reading Event from offline storage: " + id, e);
+                    continue;
+                }
+            }
+
+            try {
+                return codec.decode(content);
+            } catch (Exception e) {
+                logger.error("Error deserializing Event from offline storage: " + id, e);
+                discard(id);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Appends a record to the current segment, starting a new segment first if it is full.
+     */
+    private Location append(byte type, UUID id, byte[] content) throws IOException {
+        if (currentSegment.size >= segmentSize) {
+            currentSegment = openSegment(nextSegmentId());
+        }
+
+        int length = RECORD_PREFIX_SIZE + content.length;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + length);
+        record.putInt(length);
+        record.putInt(0);
+        record.put(type);
+        record.putLong(id.getMostSignificantBits());
+        record.putLong(id.getLeastSignificantBits());
+        record.put(content);
+        record.putInt(4, checksum(record.array(), HEADER_SIZE, length));
+        record.flip();
+
+        Segment segment = currentSegment;
+        long offset = segment.size;
+        while (record.hasRemaining()) {
+            segment.channel.write(record, offset + record.position());
+        }
+        segment.size += record.limit();
+        return new Location(segment, offset, content.length);
+    }
+
+    private static byte[] read(Location location) throws IOException {
+        ByteBuffer content = ByteBuffer.allocate(location.length);
+        long position = location.offset + HEADER_SIZE + RECORD_PREFIX_SIZE;
+        while (content.hasRemaining()) {
+            if (location.segment.channel.read(content, position + content.position()) == -1) {
+                throw new IOException("Unexpected end of segment " + location.segment.file.getAbsolutePath());
+            }
+        }
+        return content.array();
+    }
+
+    /**
+     * Rebuilds the index from the segments on disk, applying the tombstones.
+     */
+    private void replay() throws IOException {
+        File[] files = bufferDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(FILE_SUFFIX);
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+
+        for (File file : files) {
+            long id;
+            try {
+                id = Long.parseLong(file.getName().substring(0, file.getName().length() - FILE_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring unexpected file in the offline storage: " + file.getAbsolutePath());
+                continue;
+            }
+            Segment segment = openSegment(id);
+            replay(segment);
+        }
+    }
+
+    private void replay(Segment segment) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long position = 0;
+        while (true) {
+            header.clear();
+            if (!readFully(segment.channel, header, position)) {
+                break;
+            }
+            int length = header.getInt(0);
+            int checksum = header.getInt(4);
+            if (length < RECORD_PREFIX_SIZE || position + HEADER_SIZE + length > segment.size) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(length);
+            if (!readFully(segment.channel, record, position + HEADER_SIZE)
+                || checksum(record.array(), 0, length) != checksum) {
+                break;
+            }
+
+            byte type = record.get(0);
+            UUID id = new UUID(record.getLong(1), record.getLong(1 + 8));
+            if (type == EVENT_RECORD) {
+                Location previous = index.put(id, new Location(segment, position, length - RECORD_PREFIX_SIZE));
+                if (previous != null) {
+                    // The event was moved by a compaction which didn't complete
+                    previous.segment.liveEvents--;
+                }
+                segment.liveEvents++;
+                segment.events++;
+            } else if (type == TOMBSTONE_RECORD) {
+                Location location = index.remove(id);
+                if (location != null) {
+                    location.segment.liveEvents--;
+                }
+            }
+            position += HEADER_SIZE + length;
+        }
+
+        if (position < segment.size) {
+            logger.warn("Ignoring the incomplete end of the offline storage segment: "
+                + segment.file.getAbsolutePath());
+            segment.channel.truncate(position);
+            segment.size = position;
+        }
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long nextSegmentId() {
+        return segments.isEmpty() ? 0 : segments.get(segments.size() - 1).id + 1;
+    }
+
+    private Segment openSegment(long id) throws IOException {
+        String name = String.format("%0" + SEGMENT_NAME_DIGITS + "d", id) + FILE_SUFFIX;
+        Segment segment = new Segment(id, new File(bufferDir, name));
+        segments.add(segment);
+        return segment;
+    }
+
+    private static int checksum(byte[] content, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(content, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Segment file of the log.
+     */
+    private static final class Segment {
+        private final long id;
+        private final File file;
+        private final RandomAccessFile randomAccessFile;
+        private final FileChannel channel;
+        private long size;
+        /**
+         * Number of event records written in this segment.
+         */
+        private int events;
+        /**
+         * Number of event records of this segment that haven't been discarded.
+         */
+        private int liveEvents;
+
+        private Segment(long id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.randomAccessFile = new RandomAccessFile(file, "rw");
+            this.channel = randomAccessFile.getChannel();
+            this.size = channel.size();
+        }
+
+        private void close() {
+            try {
+                randomAccessFile.close();
+            } catch (IOException e) {
+                logger.error("Error closing the offline storage segment: " + file.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    /**
+     * Position of an event record in the log.
+     */
+    private static final class Location {
+        private final Segment segment;
+        /**
+         * Offset of the record in its segment.
+         */
+        private final long offset;
+        /**
+         * Length of the serialized event.
+         */
+        private final int length;
+
+        private Location(Segment segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
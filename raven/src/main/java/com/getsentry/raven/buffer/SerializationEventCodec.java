@@ -0,0 +1,40 @@
+package com.getsentry.raven.buffer;
+
+import com.getsentry.raven.event.Event;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Codec relying on the Java serialization of {@link Event}.
+ * <p>
+ * This is the historical format of the buffered events, which stays the default to read the events buffered by
+ * previous versions.
+ */
+public class SerializationEventCodec implements EventCodec {
+    @Override
+    public byte[] encode(Event event) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        ObjectOutputStream objectOutputStream = new ObjectOutputStream(content);
+        objectOutputStream.writeObject(event);
+        objectOutputStream.close();
+        return content.toByteArray();
+    }
+
+    @Override
+    public Event decode(byte[] content) throws IOException {
+        ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(content));
+        try {
+            return (Event) objectInputStream.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("The buffered event references an unknown class", e);
+        } catch (ClassCastException e) {
+            throw new IOException("The buffered object isn't an event", e);
+        } finally {
+            objectInputStream.close();
+        }
+    }
+}
@@ -13,7 +13,7 @@ import java.util.Set;
  * <p>
  * Provide the basic tools to submit events to the server (authentication header, dsn).<br>
  * To avoid spamming the network if and when Sentry is down, automatically lock the connection each time a
- * {@link ConnectionException} is caught.
+ * {@link ConnectionException} is caught, until a single probe event is sent successfully.
  */
 public abstract class AbstractConnection implements Connection {
     /**
@@ -41,7 +41,18 @@ public abstract class AbstractConnection implements Connection {
     protected AbstractConnection(String publicKey, String secretKey) {
         this.lockdownManager = new LockdownManager();
         this.eventSendFailureCallbacks = new HashSet<EventSendFailureCallback>();
-        this.authHeader = "Sentry sentry_version=" + SENTRY_PROTOCOL_VERSION + ","
+        this.authHeader = createAuthHeader(publicKey, secretKey);
+    }
+
+    /**
+     * Builds the value of the X-Sentry-Auth header based on the public and secret keys.
+     *
+     * @param publicKey public key (identifier) to the Sentry server.
+     * @param secretKey secret key (password) to the Sentry server.
+     * @return an authentication header as a String.
+     */
+    static String createAuthHeader(String publicKey, String secretKey) {
+        return "Sentry sentry_version=" + SENTRY_PROTOCOL_VERSION + ","
             + "sentry_client=" + RavenEnvironment.getRavenName() + ","
             + "sentry_key=" + publicKey + ","
             + "sentry_secret=" + secretKey;
@@ -59,31 +70,18 @@ public abstract class AbstractConnection implements Connection {
     @Override
     public final void send(Event event) throws ConnectionException {
         try {
-            if (lockdownManager.isLockedDown()) {
-                /*
-                An exception is thrown to signal that this Event was not sent, which may be
-                important in, for example, a BufferedConnection where the Event would be deleted
-                from the Buffer if an exception isn't raised in the call to send.
-                 */
-                throw new LockedDownException("Dropping an Event due to lockdown: " + event);
-            }
+            /*
+            An exception is thrown to signal that this Event was not sent, which may be
+            important in, for example, a BufferedConnection where the Event would be deleted
+            from the Buffer if an exception isn't raised in the call to send.
+             */
+            checkLockdown(event);
 
             doSend(event);
 
-            lockdownManager.resetState();
+            onSendSuccess();
         } catch (ConnectionException e) {
-            for (EventSendFailureCallback eventSendFailureCallback : eventSendFailureCallbacks) {
-                try {
-                    eventSendFailureCallback.onFailure(event, e);
-                } catch (Exception exc) {
-                    logger.warn("An exception occurred while running an EventSendFailureCallback: "
-                        + eventSendFailureCallback.getClass().getName(), exc);
-                }
-            }
-
-            logger.warn("An exception due to the connection occurred, a lockdown will be initiated.", e);
-            lockdownManager.setState(e);
-
+            onSendFailure(event, e);
             throw e;
         }
     }
@@ -96,6 +94,58 @@ public abstract class AbstractConnection implements Connection {
      */
     protected abstract void doSend(Event event) throws ConnectionException;
 
+    /**
+     * Checks that the connection isn't locked down before sending something to the Sentry server.
+     * <p>
+     * Connections sending events in other ways than {@link #doSend(Event)}, such as {@link PayloadConnection}s, must
+     * call it before every submission, followed by {@link #onSendSuccess()} or {@link #onSendFailure}.
+     *
+     * @param sent what is about to be sent, for the exception message.
+     * @throws LockedDownException if the connection is locked down.
+     */
+    protected final void checkLockdown(Object sent) throws LockedDownException {
+        if (lockdownManager.isLockedDown()) {
+            throw new LockedDownException("Dropping an Event due to lockdown: " + sent);
+        }
+    }
+
+    /**
+     * Ends the lockdown after a successful submission.
+     */
+    protected final void onSendSuccess() {
+        lockdownManager.resetState();
+    }
+
+    /**
+     * Notifies the {@link EventSendFailureCallback}s of a failed submission and initiates a lockdown, unless the
+     * submission failed with a {@link PoolExhaustedException}.
+     *
+     * @param event event that couldn't be sent, or null if it isn't available anymore, in which case the callbacks
+     *              aren't called.
+     * @param e     exception which caused the failure.
+     */
+    protected final void onSendFailure(Event event, ConnectionException e) {
+        if (event != null) {
+            for (EventSendFailureCallback eventSendFailureCallback : eventSendFailureCallbacks) {
+                try {
+                    eventSendFailureCallback.onFailure(event, e);
+                } catch (Exception exc) {
+                    logger.warn("An exception occurred while running an EventSendFailureCallback: "
+                        + eventSendFailureCallback.getClass().getName(), exc);
+                }
+            }
+        }
+
+        if (e instanceof PoolExhaustedException) {
+            // Every connection being busy doesn't mean that the Sentry server is failing
+            logger.warn("No connection to the Sentry server was available, the event wasn't sent.", e);
+            return;
+        }
+
+        logger.warn("An exception due to the connection occurred, a lockdown will be initiated.", e);
+        lockdownManager.setState(e);
+    }
+
     /**
      * Add a callback that is called when an exception occurs while attempting to
      * send events to the Sentry server.
@@ -106,4 +156,23 @@ public abstract class AbstractConnection implements Connection {
         eventSendFailureCallbacks.add(eventSendFailureCallback);
     }
 
+    /**
+     * Add a listener that is called when the lockdown of the connection changes state.
+     *
+     * @param lockdownStateListener listener instance
+     */
+    public void addLockdownStateListener(LockdownStateListener lockdownStateListener) {
+        lockdownManager.addStateListener(lockdownStateListener);
+    }
+
+    /**
+     * Returns true if events sent now would be rejected with a {@link LockedDownException}, so that they can be
+     * buffered or dropped without going through the rest of the pipeline.
+     *
+     * @return true if the connection is locked down or already sending a probe, otherwise false
+     */
+    public boolean isShortCircuited() {
+        return lockdownManager.isShortCircuited();
+    }
+
 }
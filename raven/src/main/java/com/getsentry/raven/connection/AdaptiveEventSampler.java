@@ -0,0 +1,210 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventBuilder;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decide whether {@link Event}s should be sent to the server by adapting the sample rate to the recent rate of
+ * events, to stay within a budget of events per second.
+ * <p>
+ * The rate of the events of each logger and level is tracked with an exponentially decaying counter. Each active
+ * logger and level gets an equal share of the budget, and its events are sampled just enough to stay within that
+ * share, so a noisy logger doesn't hide the events of the others. {@link Event.Level#FATAL} events and the first
+ * event of a logger and level after a quiet period are always sent.
+ * <p>
+ * {@link #sample(Event)} tags the events sent with a sample rate lower than 1 with {@link #SAMPLE_RATE_TAG}.
+ */
+public class AdaptiveEventSampler implements EventSampler {
+    /**
+     * Name of the tag holding the sample rate applied to an event.
+     */
+    public static final String SAMPLE_RATE_TAG = "sample_rate";
+    /**
+     * Default period over which the rates of events are averaged, in milliseconds.
+     */
+    public static final long DEFAULT_WINDOW = TimeUnit.SECONDS.toMillis(10);
+    /**
+     * Maximum number of loggers and levels tracked, the counters are all reset once it's reached.
+     */
+    static final int MAX_TRACKED_KEYS = 10000;
+    private static final MathContext SAMPLE_RATE_PRECISION = new MathContext(3);
+    private final double targetRate;
+    private final long windowNanos;
+    private final Random random;
+    private final ConcurrentMap<String, DecayingCounter> counters = new ConcurrentHashMap<String, DecayingCounter>();
+    /**
+     * Time at which the idle counters will be removed next, as returned by {@link System#nanoTime()}.
+     */
+    private final AtomicLong nextPrune;
+
+    /**
+     * Construct an AdaptiveEventSampler keeping the events around the target rate.
+     *
+     * @param targetRate budget of events per second.
+     */
+    public AdaptiveEventSampler(double targetRate) {
+        this(targetRate, DEFAULT_WINDOW, null);
+    }
+
+    /**
+     * Construct an AdaptiveEventSampler keeping the events around the target rate, averaged over a window.
+     * <p>
+     * This constructor is primarily visible for testing, you should use
+     * {@link AdaptiveEventSampler#AdaptiveEventSampler(double)}.
+     *
+     * @param targetRate budget of events per second.
+     * @param window     period over which the rates of events are averaged, in milliseconds.
+     * @param random     Random instance to use for sampling, or null to use a {@link ThreadLocalRandom}.
+     */
+    public AdaptiveEventSampler(double targetRate, long window, Random random) {
+        if (targetRate <= 0) {
+            throw new IllegalArgumentException("The target rate must be positive, got " + targetRate);
+        }
+
+        this.targetRate = targetRate;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(window);
+        this.random = random;
+        this.nextPrune = new AtomicLong(System.nanoTime() + windowNanos);
+    }
+
+    @Override
+    public boolean shouldSendEvent(Event event) {
+        return getSampleRate(event, System.nanoTime()) > nextRandom();
+    }
+
+    /**
+     * Decides whether an event should be sent to the server, and tags it with the sample rate applied.
+     *
+     * @param event Event to be checked against the sampling logic.
+     * @return the event to send, a copy of the event if it had to be tagged, or null if it shouldn't be sent.
+     */
+    public Event sample(Event event) {
+        double sampleRate = getSampleRate(event, System.nanoTime());
+        if (sampleRate >= 1.0) {
+            return event;
+        } else if (sampleRate <= nextRandom()) {
+            return null;
+        }
+
+        return EventBuilder.copyOf(event).withTag(SAMPLE_RATE_TAG, formatSampleRate(sampleRate)).build();
+    }
+
+    /**
+     * Decides whether an event being built should be sent to the server, and tags it with the sample rate applied.
+     * <p>
+     * Unlike {@link #sample(Event)}, the event doesn't have to be copied to be tagged.
+     *
+     * @param eventBuilder builder of the event to be checked against the sampling logic.
+     * @return true if the event should be sent.
+     */
+    public boolean sample(EventBuilder eventBuilder) {
+        double sampleRate = getSampleRate(eventBuilder.getEvent(), System.nanoTime());
+        if (sampleRate >= 1.0) {
+            return true;
+        } else if (sampleRate <= nextRandom()) {
+            return false;
+        }
+
+        eventBuilder.withTag(SAMPLE_RATE_TAG, formatSampleRate(sampleRate));
+        return true;
+    }
+
+    private static String formatSampleRate(double sampleRate) {
+        return new BigDecimal(sampleRate).round(SAMPLE_RATE_PRECISION).toString();
+    }
+
+    /**
+     * Counts an event and computes the probability of sending it.
+     *
+     * @param event event to count.
+     * @param now   current time, as returned by {@link System#nanoTime()}.
+     * @return the probability of sending the event, from 0.0 to 1.0.
+     */
+    double getSampleRate(Event event, long now) {
+        pruneIdleCounters(now);
+
+        String key = event.getLogger() + '\n' + event.getLevel();
+        DecayingCounter counter = counters.get(key);
+        if (counter == null) {
+            if (counters.size() >= MAX_TRACKED_KEYS) {
+                counters.clear();
+            }
+            DecayingCounter newCounter = new DecayingCounter(now);
+            counter = counters.putIfAbsent(key, newCounter);
+            if (counter == null) {
+                // First event after a quiet period
+                newCounter.increment(now);
+                return 1.0;
+            }
+        }
+
+        double eventsPerSecond = counter.increment(now) / windowNanos * TimeUnit.SECONDS.toNanos(1);
+        if (event.getLevel() == Event.Level.FATAL) {
+            return 1.0;
+        }
+        double share = targetRate / counters.size();
+        return Math.min(1.0, share / eventsPerSecond);
+    }
+
+    /**
+     * Removes the counters without any recent event, at most once per window, so that they don't take a share of the
+     * budget anymore.
+     */
+    private void pruneIdleCounters(long now) {
+        long currentNextPrune = nextPrune.get();
+        if (now - currentNextPrune < 0 || !nextPrune.compareAndSet(currentNextPrune, now + windowNanos)) {
+            return;
+        }
+
+        Iterator<DecayingCounter> iterator = counters.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isIdle(now)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private double nextRandom() {
+        return random != null ? random.nextDouble() : ThreadLocalRandom.current().nextDouble();
+    }
+
+    /**
+     * Number of events over the window, each event counting less as it gets older.
+     */
+    private final class DecayingCounter {
+        /**
+         * Below half an event over the window, the logger and level are considered idle.
+         */
+        private static final double IDLE_THRESHOLD = 0.5;
+        private double count;
+        private long lastUpdate;
+
+        private DecayingCounter(long now) {
+            this.lastUpdate = now;
+        }
+
+        private synchronized double increment(long now) {
+            count = decayedCount(now) + 1;
+            lastUpdate = now;
+            return count;
+        }
+
+        private synchronized boolean isIdle(long now) {
+            return decayedCount(now) < IDLE_THRESHOLD;
+        }
+
+        private double decayedCount(long now) {
+            return count * Math.exp(-(double) (now - lastUpdate) / windowNanos);
+        }
+    }
+}
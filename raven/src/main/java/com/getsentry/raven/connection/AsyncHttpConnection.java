@@ -0,0 +1,1290 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.Raven;
+import com.getsentry.raven.buffer.Buffer;
+import com.getsentry.raven.environment.RavenEnvironment;
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.marshaller.Marshaller;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLParameters;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous connection to a Sentry server over HTTP and HTTPS, based on non-blocking I/O.
+ * <p>
+ * Events are queued and handed to a single I/O thread which marshals them and multiplexes every submission with a
+ * {@link Selector}. Up to {@code maxInFlight} submissions can wait for Sentry at the same time, each on its own
+ * persistent HTTP/1.1 connection, so the number of threads doesn't depend on the latency of the Sentry server.
+ * The host of the Sentry server is resolved, and periodically refreshed, by a separate thread so that a slow DNS
+ * server never blocks the I/O thread.
+ * <p>
+ * As the result of a submission is only known once its response is received, the lockdown and the
+ * {@link EventSendFailureCallback}s are handled by the I/O thread when a submission completes. Events sent while the
+ * connection is locked down are dropped, as with {@link AsyncConnection}, unless it's wrapped in a
+ * {@link BufferedConnection}: the events then stay in the buffer until the Sentry server accepts them.
+ * <p>
+ * This connection talks directly to the Sentry host and doesn't support HTTP proxies.
+ */
+public class AsyncHttpConnection implements Connection {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final Logger logger = LoggerFactory.getLogger(AsyncHttpConnection.class);
+    // CHECKSTYLE.OFF: ConstantName
+    private static final Logger lockdownLogger = LoggerFactory.getLogger(Raven.class.getName() + ".lockdown");
+    // CHECKSTYLE.ON: ConstantName
+    /**
+     * Default timeout to establish a connection to Sentry, and to receive its response, in milliseconds.
+     */
+    private static final int DEFAULT_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(1);
+    /**
+     * Time after which the address of the Sentry server is resolved again, in milliseconds.
+     */
+    private static final long DNS_REFRESH_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    /**
+     * Time after which an unused connection is closed, in milliseconds.
+     */
+    private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+    /**
+     * Maximum time spent waiting in the selector, so that timeouts are checked regularly, in milliseconds.
+     */
+    private static final long SELECT_TIMEOUT = TimeUnit.MILLISECONDS.toMillis(100);
+    private static final int HTTP_PORT = 80;
+    private static final int HTTPS_PORT = 443;
+    private static final int HTTP_OK_MIN = 200;
+    private static final int HTTP_OK_MAX = 299;
+    private static final int BUFFER_SIZE = 8192;
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+    /**
+     * URL of the Sentry endpoint.
+     */
+    private final URL sentryUrl;
+    /**
+     * Address of the Sentry server.
+     */
+    private final InetSocketAddress address;
+    /**
+     * Whether connections must be established over TLS.
+     */
+    private final boolean secure;
+    /**
+     * Headers sent with every request, up to the Content-Length.
+     */
+    private final String requestHeaders;
+    /**
+     * Optional instance of an EventSampler to use.
+     */
+    private final EventSampler eventSampler;
+    /**
+     * Maximum number of submissions waiting for Sentry at the same time.
+     */
+    private final int maxInFlight;
+    /**
+     * Permits to queue a submission, or null if the queue is unbounded.
+     */
+    private final Semaphore queuePermits;
+    /**
+     * Behaviour when an event is sent while the queue is full.
+     */
+    private final QueueOverflowPolicy overflowPolicy;
+    /**
+     * Timeout of the {@link #ioThread} shutdown, in milliseconds.
+     */
+    private final long shutdownTimeout;
+    /**
+     * Submissions waiting to be picked up by the {@link #ioThread}.
+     */
+    private final Queue<Exchange> pendingExchanges = new ConcurrentLinkedQueue<Exchange>();
+    /**
+     * Number of elements in {@link #pendingExchanges}.
+     */
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    /**
+     * Number of submissions waiting for Sentry.
+     */
+    private final AtomicInteger inFlightCount = new AtomicInteger();
+    /**
+     * Submissions waiting for Sentry, only accessed by the {@link #ioThread}.
+     */
+    private final List<Exchange> inFlightExchanges = new ArrayList<Exchange>();
+    /**
+     * Connections kept open between two submissions, the most recently used first, only accessed by the
+     * {@link #ioThread}.
+     */
+    private final Deque<HttpChannel> idleChannels = new ArrayDeque<HttpChannel>();
+    private final Set<EventSendFailureCallback> eventSendFailureCallbacks =
+        new CopyOnWriteArraySet<EventSendFailureCallback>();
+    private final LockdownManager lockdownManager = new LockdownManager();
+    /**
+     * Buffer from which the events are discarded once the Sentry server accepted them, or null.
+     */
+    private volatile Buffer buffer;
+    private final Selector selector;
+    /**
+     * Thread doing all the network operations.
+     */
+    private final Thread ioThread;
+    /**
+     * Set while the address of the Sentry server is being resolved.
+     */
+    private final AtomicBoolean resolving = new AtomicBoolean();
+    /**
+     * Last resolved address of the Sentry server, or null if it hasn't been resolved yet.
+     */
+    private volatile InetSocketAddress resolvedAddress;
+    /**
+     * Time of the last resolution of {@link #resolvedAddress}, in milliseconds.
+     */
+    private volatile long resolvedAt;
+    /**
+     * Failure of the last resolution of the Sentry server address, or null if it succeeded.
+     */
+    private volatile IOException resolutionFailure;
+    /**
+     * Shutdown hook used to stop the connection properly when the JVM quits.
+     */
+    private final ShutDownHook shutDownHook = new ShutDownHook();
+    /**
+     * Marshaller used to transform and send the {@link Event} over a stream.
+     */
+    private Marshaller marshaller;
+    /**
+     * Timeout to establish a connection to Sentry, and to receive its response once the request is sent, in
+     * milliseconds.
+     */
+    private int timeout = DEFAULT_TIMEOUT;
+    /**
+     * Setting allowing to bypass the security system which requires wildcard certificates
+     * to be added to the truststore.
+     */
+    private boolean bypassSecurity = false;
+    /**
+     * Context of the TLS connections, or null to use the default one.
+     */
+    private SSLContext sslContext;
+    /**
+     * Boolean that represents if graceful shutdown is enabled.
+     */
+    private boolean gracefulShutdown;
+    /**
+     * Boolean used to check whether the connection is still open or not.
+     */
+    private volatile boolean closed = false;
+    /**
+     * Set when the {@link #ioThread} must stop, even if submissions are still pending.
+     */
+    private volatile boolean stopped = false;
+
+    /**
+     * Creates an asynchronous HTTP connection to a Sentry server.
+     *
+     * @param sentryUrl        URL to the Sentry API.
+     * @param publicKey        public key of the current project.
+     * @param secretKey        private key of the current project.
+     * @param eventSampler     EventSampler instance to use, or null to not sample events.
+     * @param maxInFlight      maximum number of submissions waiting for Sentry at the same time.
+     * @param queueSize        maximum number of submissions waiting for a connection, or -1 for no limit.
+     * @param overflowPolicy   behaviour when an event is sent while the queue is full.
+     * @param gracefulShutdown Indicates whether or not the shutdown operation should be managed by a ShutdownHook.
+     * @param shutdownTimeout  timeout for graceful shutdown of the I/O thread, in milliseconds.
+     */
+    public AsyncHttpConnection(URL sentryUrl, String publicKey, String secretKey, EventSampler eventSampler,
+                               int maxInFlight, int queueSize, QueueOverflowPolicy overflowPolicy,
+                               boolean gracefulShutdown, long shutdownTimeout) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("The maximum number of in-flight submissions must be at least 1, got "
+                + maxInFlight);
+        }
+
+        this.sentryUrl = sentryUrl;
+        this.eventSampler = eventSampler;
+        this.maxInFlight = maxInFlight;
+        this.queuePermits = queueSize == -1 ? null : new Semaphore(queueSize);
+        this.overflowPolicy = overflowPolicy;
+        this.shutdownTimeout = shutdownTimeout;
+        this.secure = "https".equalsIgnoreCase(sentryUrl.getProtocol());
+        int defaultPort = secure ? HTTPS_PORT : HTTP_PORT;
+        int port = sentryUrl.getPort() != -1 ? sentryUrl.getPort() : defaultPort;
+        this.address = InetSocketAddress.createUnresolved(sentryUrl.getHost(), port);
+        String hostHeader = port == defaultPort ? sentryUrl.getHost() : sentryUrl.getHost() + ":" + port;
+        this.requestHeaders = "POST " + sentryUrl.getFile() + " HTTP/1.1\r\n"
+            + "Host: " + hostHeader + "\r\n"
+            + "User-Agent: " + RavenEnvironment.getRavenName() + "\r\n"
+            + "X-Sentry-Auth: " + AbstractConnection.createAuthHeader(publicKey, secretKey) + "\r\n"
+            + "Connection: keep-alive\r\n";
+
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't open a selector for the connection to Sentry.", e);
+        }
+        this.ioThread = new Thread(new IoLoop(), "raven-async-http");
+        this.ioThread.setDaemon(true);
+        this.ioThread.start();
+
+        if (gracefulShutdown) {
+            this.gracefulShutdown = gracefulShutdown;
+            // JUL loggers are shutdown by an other shutdown hook, it's possible that nothing will get actually logged.
+            Runtime.getRuntime().addShutdownHook(shutDownHook);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The event is queued, then marshalled and submitted by the I/O thread later on.<br>
+     * If the queue is full, the {@link QueueOverflowPolicy} decides whether the event or the oldest queued event is
+     * dropped, or whether the current thread waits for some room in the queue.
+     */
+    @Override
+    public void send(Event event) {
+        if (closed) {
+            logger.debug("The connection to Sentry is closed, dropping the event: {}", event.getId());
+            return;
+        }
+        // The probe ending a lockdown is only taken by the I/O thread
+        if (lockdownManager.isShortCircuited()) {
+            lockdownLogger.debug("The connection to Sentry is currently locked down, dropping the event: {}",
+                event.getId());
+            return;
+        }
+        if (eventSampler != null && !eventSampler.shouldSendEvent(event)) {
+            return;
+        }
+        if (!acquireQueuePermit(event)) {
+            return;
+        }
+
+        pendingCount.incrementAndGet();
+        pendingExchanges.offer(new Exchange(event));
+        selector.wakeup();
+    }
+
+    /**
+     * Makes some room for the event in the queue, according to the {@link #overflowPolicy}.
+     *
+     * @param event event to queue.
+     * @return true if the event can be queued, false if it must be dropped.
+     */
+    private boolean acquireQueuePermit(Event event) {
+        if (queuePermits == null || queuePermits.tryAcquire()) {
+            return true;
+        }
+
+        switch (overflowPolicy) {
+            case DISCARD_OLD:
+                while (!queuePermits.tryAcquire()) {
+                    Exchange discarded = pendingExchanges.poll();
+                    if (discarded != null) {
+                        // The permit of the discarded submission is taken over
+                        pendingCount.decrementAndGet();
+                        logger.debug("Too many events waiting to be sent, dropping the oldest event: {}",
+                            discarded.event.getId());
+                        return true;
+                    }
+                }
+                return true;
+            case SYNC:
+                try {
+                    queuePermits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logger.debug("Interrupted while waiting to queue the event: {}", event.getId());
+                    return false;
+                }
+                if (closed) {
+                    queuePermits.release();
+                    return false;
+                }
+                return true;
+            case DISCARD_NEW:
+            default:
+                logger.debug("Too many events waiting to be sent, dropping the event: {}", event.getId());
+                return false;
+        }
+    }
+
+    private ByteBuffer createRequest(ByteArrayOutputStream body) {
+        byte[] headers = (requestHeaders + "Content-Length: " + body.size() + "\r\n\r\n").getBytes(ISO_8859_1);
+        ByteBuffer request = ByteBuffer.allocate(headers.length + body.size());
+        request.put(headers);
+        request.put(body.toByteArray());
+        request.flip();
+        return request;
+    }
+
+    @Override
+    public void addEventSendFailureCallback(EventSendFailureCallback eventSendFailureCallback) {
+        eventSendFailureCallbacks.add(eventSendFailureCallback);
+    }
+
+    /**
+     * Returns true if events sent now would be dropped because the connection is locked down.
+     *
+     * @return true if the connection is locked down or already sending a probe, otherwise false
+     */
+    boolean isShortCircuited() {
+        return lockdownManager.isShortCircuited();
+    }
+
+    /**
+     * Discards each event from the buffer once the Sentry server accepted it, rather than as soon as it's queued.
+     * The events dropped or rejected stay in the buffer, to be flushed again later.
+     *
+     * @param buffer buffer of the {@link BufferedConnection} wrapping this connection.
+     */
+    void setBuffer(Buffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Add a listener that is called when the lockdown of the connection changes state.
+     *
+     * @param lockdownStateListener listener instance
+     */
+    public void addLockdownStateListener(LockdownStateListener lockdownStateListener) {
+        lockdownManager.addStateListener(lockdownStateListener);
+    }
+
+    /**
+     * {@inheritDoc}.
+     * <p>
+     * Closing the {@link AsyncHttpConnection} will stop accepting new events and give the I/O thread
+     * {@link #shutdownTimeout} milliseconds to complete the pending submissions.<br>
+     * If the shutdown times out, the remaining submissions are abandoned.
+     */
+    @Override
+    public void close() throws IOException {
+        if (gracefulShutdown) {
+            shutDownHook.enabled = false;
+        }
+
+        doClose();
+    }
+
+    /**
+     * Close the connection whether it's from the shutdown hook or not.
+     *
+     * @see #close()
+     */
+    @SuppressWarnings("checkstyle:magicnumber")
+    private void doClose() throws IOException {
+        logger.info("Gracefully shutdown sentry async HTTP thread.");
+        closed = true;
+        selector.wakeup();
+        try {
+            if (shutdownTimeout == -1L) {
+                // Block until the I/O thread terminates, but log periodically.
+                long waitBetweenLoggingMs = 5000L;
+                while (true) {
+                    ioThread.join(waitBetweenLoggingMs);
+                    if (!ioThread.isAlive()) {
+                        break;
+                    }
+                    logger.info("Still waiting on async HTTP thread to terminate.");
+                }
+            } else {
+                ioThread.join(shutdownTimeout);
+                if (ioThread.isAlive()) {
+                    logger.warn("Graceful shutdown took too much time, forcing the shutdown.");
+                    logger.info("{} events failed to be sent before the shutdown.",
+                        pendingCount.get() + inFlightCount.get());
+                }
+            }
+            logger.info("Shutdown finished.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Graceful shutdown interrupted, forcing the shutdown.");
+        } finally {
+            stopped = true;
+            selector.wakeup();
+        }
+    }
+
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    public void setMarshaller(Marshaller marshaller) {
+        this.marshaller = marshaller;
+    }
+
+    public void setBypassSecurity(boolean bypassSecurity) {
+        this.bypassSecurity = bypassSecurity;
+    }
+
+    public void setSslContext(SSLContext sslContext) {
+        this.sslContext = sslContext;
+    }
+
+    /**
+     * Number of submissions waiting for a response from Sentry.
+     *
+     * @return the number of in-flight submissions.
+     */
+    public int getInFlight() {
+        return inFlightCount.get();
+    }
+
+    /**
+     * Number of submissions waiting for a connection to Sentry.
+     *
+     * @return the number of pending submissions.
+     */
+    public int getPending() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Loop of the I/O thread, starting the pending submissions and reacting to the network events until the
+     * connection is closed and every submission completed.
+     */
+    private final class IoLoop implements Runnable {
+        @Override
+        public void run() {
+            RavenEnvironment.startManagingThread();
+            try {
+                while (!stopped && !(closed && pendingExchanges.isEmpty() && inFlightExchanges.isEmpty())) {
+                    selector.select(SELECT_TIMEOUT);
+                    startPendingExchanges();
+                    processSelectedKeys();
+                    checkTimeouts();
+                }
+            } catch (Exception e) {
+                logger.error("The async HTTP thread stopped unexpectedly.", e);
+            } finally {
+                releaseAll();
+                RavenEnvironment.stopManagingThread();
+            }
+        }
+
+        private void startPendingExchanges() {
+            while (inFlightExchanges.size() < maxInFlight && !pendingExchanges.isEmpty()) {
+                HttpChannel channel = takeIdleChannel();
+                if (channel == null && getAddress() == null && resolutionFailure == null) {
+                    // Wait for the resolver to wake the selector up
+                    return;
+                }
+
+                Exchange exchange = pendingExchanges.poll();
+                if (exchange == null) {
+                    if (channel != null) {
+                        idleChannels.addFirst(channel);
+                    }
+                    return;
+                }
+                pendingCount.decrementAndGet();
+                if (queuePermits != null) {
+                    queuePermits.release();
+                }
+
+                if (lockdownManager.isLockedDown()) {
+                    lockdownLogger.debug("The connection to Sentry is currently locked down, dropping the event: {}",
+                        exchange.event.getId());
+                } else if (marshall(exchange)) {
+                    inFlightExchanges.add(exchange);
+                    inFlightCount.incrementAndGet();
+                    start(exchange, channel);
+                    continue;
+                }
+                if (channel != null) {
+                    idleChannels.addFirst(channel);
+                }
+            }
+        }
+
+        /**
+         * Creates the request of a submission.
+         *
+         * @return false if the event couldn't be marshalled.
+         */
+        private boolean marshall(Exchange exchange) {
+            try {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                marshaller.marshall(exchange.event, body);
+                exchange.request = createRequest(body);
+                return true;
+            } catch (Exception e) {
+                logger.error("An exception occurred while marshalling the event: " + exchange.event.getId(), e);
+                return false;
+            }
+        }
+
+        /**
+         * Starts a submission on the given connection, or on a new one if it's null.
+         */
+        private void start(Exchange exchange, HttpChannel channel) {
+            try {
+                if (channel == null) {
+                    channel = openChannel();
+                }
+                exchange.channel = channel;
+                exchange.deadline = System.currentTimeMillis() + timeout;
+                channel.exchange = exchange;
+                channel.response.reset();
+                exchange.request.rewind();
+                if (channel.connected) {
+                    process(channel);
+                }
+            } catch (IOException e) {
+                fail(exchange, new ConnectionException("Couldn't open a connection to the Sentry server.", e));
+            }
+        }
+
+        private HttpChannel takeIdleChannel() {
+            HttpChannel channel;
+            while ((channel = idleChannels.pollFirst()) != null) {
+                if (!channel.isStale()) {
+                    return channel;
+                }
+                logger.debug("Pooled connection to Sentry was closed by the server.");
+                channel.close();
+            }
+            return null;
+        }
+
+        private HttpChannel openChannel() throws IOException {
+            InetSocketAddress resolved = getAddress();
+            if (resolved == null) {
+                IOException failure = resolutionFailure;
+                throw failure != null ? failure : new UnknownHostException(address.getHostName());
+            }
+            SocketChannel socketChannel = SocketChannel.open();
+            try {
+                socketChannel.configureBlocking(false);
+                socketChannel.socket().setTcpNoDelay(true);
+                HttpChannel channel = new HttpChannel(socketChannel, secure ? createEngine() : null);
+                channel.key = socketChannel.register(selector, 0, channel);
+                if (socketChannel.connect(resolved)) {
+                    channel.onConnected();
+                } else {
+                    channel.key.interestOps(SelectionKey.OP_CONNECT);
+                }
+                return channel;
+            } catch (IOException e) {
+                closeQuietly(socketChannel);
+                throw e;
+            }
+        }
+
+        private SSLEngine createEngine() throws IOException {
+            try {
+                SSLContext context = sslContext != null ? sslContext : SSLContext.getDefault();
+                SSLEngine engine = context.createSSLEngine(address.getHostName(), address.getPort());
+                engine.setUseClientMode(true);
+                if (!bypassSecurity) {
+                    // Checks that the certificate matches the host, as HttpsURLConnection does
+                    SSLParameters sslParameters = engine.getSSLParameters();
+                    sslParameters.setEndpointIdentificationAlgorithm("HTTPS");
+                    engine.setSSLParameters(sslParameters);
+                }
+                return engine;
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException("Couldn't initialise TLS for the connection to Sentry.", e);
+            }
+        }
+
+        private void processSelectedKeys() {
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                HttpChannel channel = (HttpChannel) key.attachment();
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isConnectable()) {
+                        if (!channel.socketChannel.finishConnect()) {
+                            continue;
+                        }
+                        channel.onConnected();
+                        if (channel.exchange != null) {
+                            channel.exchange.deadline = System.currentTimeMillis() + timeout;
+                        }
+                    }
+                    if (channel.exchange == null) {
+                        // Idle connection readable: the server closed it, or sent something unexpected
+                        idleChannels.remove(channel);
+                        channel.close();
+                        continue;
+                    }
+                    process(channel);
+                } catch (IOException e) {
+                    onIOException(channel, e);
+                }
+            }
+        }
+
+        /**
+         * Makes as much progress as possible on the submission of a connection without blocking.
+         */
+        private void process(HttpChannel channel) throws IOException {
+            if (channel.engine != null && !channel.handshakeDone && !channel.handshake()) {
+                return;
+            }
+            if (!channel.writeRequest()) {
+                channel.key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            channel.exchange.written = true;
+            channel.key.interestOps(SelectionKey.OP_READ);
+
+            boolean endOfStream = channel.readResponse();
+            Response response = channel.response.parse(endOfStream);
+            if (response != null) {
+                complete(channel, response);
+            } else if (endOfStream) {
+                throw new EOFException("The connection was closed before a complete response was received.");
+            }
+        }
+
+        private void onIOException(HttpChannel channel, IOException e) {
+            Exchange exchange = channel.exchange;
+            channel.close();
+            if (exchange == null) {
+                idleChannels.remove(channel);
+                return;
+            }
+
+            if (channel.reused && !exchange.written && !exchange.retried) {
+                // Nothing reached the server, the request can be sent once more on a new connection
+                logger.debug("Pooled connection to Sentry was closed by the server, opening a new one.", e);
+                exchange.retried = true;
+                start(exchange, null);
+            } else {
+                fail(exchange, new ConnectionException(
+                    "An exception occurred while submitting the event to the Sentry server.", e));
+            }
+        }
+
+        private void complete(HttpChannel channel, Response response) {
+            Exchange exchange = channel.exchange;
+            channel.exchange = null;
+            if (response.keepAlive && !closed) {
+                channel.reused = true;
+                channel.lastUsed = System.currentTimeMillis();
+                idleChannels.addFirst(channel);
+            } else {
+                channel.close();
+            }
+
+            if (response.status >= HTTP_OK_MIN && response.status <= HTTP_OK_MAX) {
+                finish(exchange);
+                lockdownManager.resetState();
+                discard(exchange.event);
+            } else {
+                String errorMessage = new String(response.body, UTF_8);
+                if (errorMessage.isEmpty()) {
+                    errorMessage = "An exception occurred while submitting the event to the Sentry server.";
+                }
+                fail(exchange, new ConnectionException(errorMessage, new IOException(
+                    "Server returned HTTP response code: " + response.status + " for URL: " + sentryUrl),
+                    response.retryAfterMs));
+            }
+        }
+
+        private void fail(Exchange exchange, ConnectionException e) {
+            finish(exchange);
+            for (EventSendFailureCallback eventSendFailureCallback : eventSendFailureCallbacks) {
+                try {
+                    eventSendFailureCallback.onFailure(exchange.event, e);
+                } catch (Exception exc) {
+                    logger.warn("An exception occurred while running an EventSendFailureCallback: "
+                        + eventSendFailureCallback.getClass().getName(), exc);
+                }
+            }
+
+            logger.warn("An exception due to the connection occurred, a lockdown will be initiated.", e);
+            lockdownManager.setState(e);
+        }
+
+        private void discard(Event event) {
+            Buffer currentBuffer = buffer;
+            if (currentBuffer == null) {
+                return;
+            }
+            try {
+                currentBuffer.discard(event);
+            } catch (Exception e) {
+                logger.error("Exception occurred while attempting to discard a sent Event from the buffer: "
+                    + event.getId(), e);
+            }
+        }
+
+        private void finish(Exchange exchange) {
+            if (inFlightExchanges.remove(exchange)) {
+                inFlightCount.decrementAndGet();
+            }
+        }
+
+        private void checkTimeouts() {
+            long now = System.currentTimeMillis();
+            for (Exchange exchange : new ArrayList<Exchange>(inFlightExchanges)) {
+                if (exchange.deadline < now) {
+                    exchange.channel.close();
+                    exchange.channel.exchange = null;
+                    fail(exchange, new ConnectionException("The submission to the Sentry server timed out."));
+                }
+            }
+
+            Iterator<HttpChannel> channels = idleChannels.descendingIterator();
+            while (channels.hasNext()) {
+                HttpChannel channel = channels.next();
+                if (channel.lastUsed + IDLE_TIMEOUT < now) {
+                    channels.remove();
+                    channel.close();
+                }
+            }
+        }
+
+        /**
+         * Gets the address of the Sentry server, resolving it again in the background when it is too old.
+         *
+         * @return the address of the Sentry server, or null if it hasn't been resolved yet.
+         */
+        private InetSocketAddress getAddress() {
+            InetSocketAddress resolved = resolvedAddress;
+            if (resolved == null || resolvedAt + DNS_REFRESH_INTERVAL < System.currentTimeMillis()) {
+                resolveAddress();
+            }
+            return resolved;
+        }
+
+        private void resolveAddress() {
+            if (!resolving.compareAndSet(false, true)) {
+                return;
+            }
+            Thread resolverThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    RavenEnvironment.startManagingThread();
+                    try {
+                        InetSocketAddress resolved = new InetSocketAddress(address.getHostName(), address.getPort());
+                        if (resolved.isUnresolved()) {
+                            resolutionFailure = new UnknownHostException("Couldn't resolve the Sentry host '"
+                                + address.getHostName() + "'.");
+                            logger.warn("Couldn't resolve the Sentry host '{}'.", address.getHostName());
+                        } else {
+                            resolvedAddress = resolved;
+                            resolvedAt = System.currentTimeMillis();
+                            resolutionFailure = null;
+                        }
+                    } finally {
+                        resolving.set(false);
+                        selector.wakeup();
+                        RavenEnvironment.stopManagingThread();
+                    }
+                }
+            }, "raven-async-http-resolver");
+            resolverThread.setDaemon(true);
+            resolverThread.start();
+        }
+
+        private void releaseAll() {
+            for (HttpChannel channel : idleChannels) {
+                channel.close();
+            }
+            idleChannels.clear();
+            for (Exchange exchange : inFlightExchanges) {
+                if (exchange.channel != null) {
+                    exchange.channel.close();
+                }
+            }
+            inFlightExchanges.clear();
+            if (queuePermits != null) {
+                // Wakes up the threads waiting for some room in the queue
+                queuePermits.release(Integer.MAX_VALUE - queuePermits.availablePermits());
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.debug("An exception occurred while closing the selector.", e);
+            }
+        }
+    }
+
+    private static void closeQuietly(SocketChannel socketChannel) {
+        try {
+            socketChannel.close();
+        } catch (IOException e) {
+            logger.debug("An exception occurred while closing a connection to Sentry.", e);
+        }
+    }
+
+    /**
+     * Submission of a single event.
+     */
+    private static final class Exchange {
+        private final Event event;
+        private ByteBuffer request;
+        private HttpChannel channel;
+        private long deadline;
+        private boolean written;
+        private boolean retried;
+
+        private Exchange(Event event) {
+            this.event = event;
+        }
+    }
+
+    /**
+     * Persistent connection to the Sentry server, optionally over TLS.
+     * <p>
+     * The network buffers are kept ready to be written to: {@link #netIn} receives the bytes read from the socket,
+     * {@link #netOut} is flipped once filled and holds the bytes still to be written to the socket.
+     */
+    private final class HttpChannel {
+        private final SocketChannel socketChannel;
+        private final SSLEngine engine;
+        private final ByteBuffer netIn;
+        private final ByteBuffer netOut;
+        private final ByteBuffer appIn;
+        private final ResponseBuffer response = new ResponseBuffer();
+        private SelectionKey key;
+        private Exchange exchange;
+        private boolean connected;
+        private boolean handshakeDone;
+        private boolean reused;
+        private long lastUsed = System.currentTimeMillis();
+
+        private HttpChannel(SocketChannel socketChannel, SSLEngine engine) {
+            this.socketChannel = socketChannel;
+            this.engine = engine;
+            if (engine != null) {
+                this.netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+                this.netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+                this.appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+            } else {
+                this.netIn = null;
+                this.netOut = null;
+                this.appIn = ByteBuffer.allocate(BUFFER_SIZE);
+            }
+            if (netOut != null) {
+                netOut.flip();
+            }
+        }
+
+        private void onConnected() throws IOException {
+            connected = true;
+            if (engine != null) {
+                engine.beginHandshake();
+            }
+        }
+
+        /**
+         * Advances the TLS handshake.
+         *
+         * @return true once the handshake is complete.
+         */
+        private boolean handshake() throws IOException {
+            while (true) {
+                switch (engine.getHandshakeStatus()) {
+                    case NEED_TASK:
+                        Runnable task;
+                        while ((task = engine.getDelegatedTask()) != null) {
+                            task.run();
+                        }
+                        break;
+                    case NEED_WRAP:
+                        if (!flush()) {
+                            key.interestOps(SelectionKey.OP_WRITE);
+                            return false;
+                        }
+                        netOut.clear();
+                        SSLEngineResult wrapResult = engine.wrap(EMPTY_BUFFER, netOut);
+                        netOut.flip();
+                        checkClosed(wrapResult);
+                        break;
+                    case NEED_UNWRAP:
+                        if (!flush()) {
+                            key.interestOps(SelectionKey.OP_WRITE);
+                            return false;
+                        }
+                        if (unwrap().getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                            int read = socketChannel.read(netIn);
+                            if (read == -1) {
+                                throw new EOFException("The connection was closed during the TLS handshake.");
+                            } else if (read == 0) {
+                                key.interestOps(SelectionKey.OP_READ);
+                                return false;
+                            }
+                        }
+                        break;
+                    default:
+                        if (!flush()) {
+                            key.interestOps(SelectionKey.OP_WRITE);
+                            return false;
+                        }
+                        handshakeDone = true;
+                        return true;
+                }
+            }
+        }
+
+        private SSLEngineResult unwrap() throws IOException {
+            netIn.flip();
+            SSLEngineResult result = engine.unwrap(netIn, appIn);
+            netIn.compact();
+            checkClosed(result);
+            return result;
+        }
+
+        private void checkClosed(SSLEngineResult result) throws IOException {
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new EOFException("The TLS session was closed by the Sentry server.");
+            }
+        }
+
+        /**
+         * Writes the pending TLS records to the socket.
+         *
+         * @return true if everything was written.
+         */
+        private boolean flush() throws IOException {
+            while (netOut.hasRemaining()) {
+                if (socketChannel.write(netOut) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Writes as much of the request as possible to the socket.
+         *
+         * @return true once the whole request has been written.
+         */
+        private boolean writeRequest() throws IOException {
+            ByteBuffer request = exchange.request;
+            if (engine == null) {
+                while (request.hasRemaining()) {
+                    if (socketChannel.write(request) == 0) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            while (true) {
+                if (!flush()) {
+                    return false;
+                }
+                if (!request.hasRemaining()) {
+                    return true;
+                }
+                netOut.clear();
+                SSLEngineResult result = engine.wrap(request, netOut);
+                netOut.flip();
+                checkClosed(result);
+            }
+        }
+
+        /**
+         * Reads every byte of the response currently available.
+         *
+         * @return true if the end of the stream was reached.
+         */
+        private boolean readResponse() throws IOException {
+            if (engine == null) {
+                int read;
+                while ((read = socketChannel.read(appIn)) > 0) {
+                    drainAppIn();
+                }
+                return read == -1;
+            }
+
+            boolean endOfStream = false;
+            while (true) {
+                int read = socketChannel.read(netIn);
+                if (read == -1) {
+                    endOfStream = true;
+                }
+                SSLEngineResult result;
+                do {
+                    netIn.flip();
+                    result = engine.unwrap(netIn, appIn);
+                    netIn.compact();
+                    drainAppIn();
+                    if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                        Runnable task;
+                        while ((task = engine.getDelegatedTask()) != null) {
+                            task.run();
+                        }
+                    }
+                    if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        return true;
+                    }
+                } while (result.getStatus() == SSLEngineResult.Status.OK && result.bytesConsumed() > 0);
+
+                if (read <= 0) {
+                    return endOfStream;
+                }
+            }
+        }
+
+        /**
+         * Checks whether the server closed the connection (or sent something unexpected) while it was idle.
+         *
+         * @return true if the connection can't be used anymore.
+         */
+        private boolean isStale() {
+            if (!socketChannel.isOpen()) {
+                return true;
+            }
+            try {
+                // Nothing, not even the end of the stream, should be readable on an idle connection
+                return socketChannel.read(ByteBuffer.allocate(1)) != 0;
+            } catch (IOException e) {
+                return true;
+            }
+        }
+
+        private void drainAppIn() {
+            appIn.flip();
+            response.append(appIn);
+            appIn.clear();
+        }
+
+        private void close() {
+            connected = false;
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(socketChannel);
+        }
+    }
+
+    /**
+     * Accumulates the bytes of a response until it is complete.
+     */
+    private static final class ResponseBuffer {
+        private byte[] content = new byte[BUFFER_SIZE];
+        private int length;
+
+        private void append(ByteBuffer buffer) {
+            int remaining = buffer.remaining();
+            if (length + remaining > content.length) {
+                byte[] newContent = new byte[Math.max(content.length * 2, length + remaining)];
+                System.arraycopy(content, 0, newContent, 0, length);
+                content = newContent;
+            }
+            buffer.get(content, length, remaining);
+            length += remaining;
+        }
+
+        private void reset() {
+            length = 0;
+        }
+
+        /**
+         * Parses the response received so far.
+         *
+         * @param endOfStream whether the connection was closed by the server.
+         * @return the response, or null if it isn't complete yet.
+         * @throws IOException if the response is invalid.
+         */
+        private Response parse(boolean endOfStream) throws IOException {
+            int headersEnd = indexOfHeadersEnd();
+            if (headersEnd == -1) {
+                return null;
+            }
+            String[] lines = new String(content, 0, headersEnd, ISO_8859_1).split("\r\n");
+            String[] statusParts = lines[0].split(" ", 3);
+            Response response = new Response();
+            try {
+                response.status = Integer.parseInt(statusParts[1]);
+            } catch (RuntimeException e) {
+                throw new IOException("Invalid HTTP status line: " + lines[0]);
+            }
+            response.keepAlive = !"HTTP/1.0".equals(statusParts[0]);
+
+            long contentLength = -1;
+            boolean chunked = false;
+            for (int i = 1; i < lines.length; i++) {
+                int separator = lines[i].indexOf(':');
+                if (separator <= 0) {
+                    continue;
+                }
+                String name = lines[i].substring(0, separator).trim();
+                String value = lines[i].substring(separator + 1).trim();
+                if ("Content-Length".equalsIgnoreCase(name)) {
+                    try {
+                        contentLength = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Invalid Content-Length: " + value);
+                    }
+                } else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+                    chunked = value.toLowerCase().contains("chunked");
+                } else if ("Connection".equalsIgnoreCase(name)) {
+                    if ("close".equalsIgnoreCase(value)) {
+                        response.keepAlive = false;
+                    } else if ("keep-alive".equalsIgnoreCase(value)) {
+                        response.keepAlive = true;
+                    }
+                } else if ("Retry-After".equalsIgnoreCase(name)) {
+                    // CHECKSTYLE.OFF: EmptyCatchBlock
+                    try {
+                        // CHECKSTYLE.OFF: MagicNumber
+                        response.retryAfterMs = Long.parseLong(value) * 1000L; // seconds -> milliseconds
+                        // CHECKSTYLE.ON: MagicNumber
+                    } catch (NumberFormatException nfe) {
+                        // noop, use default retry
+                    }
+                    // CHECKSTYLE.ON: EmptyCatchBlock
+                }
+            }
+
+            int bodyStart = headersEnd + 4;
+            if (chunked) {
+                response.body = parseChunks(bodyStart);
+                return response.body != null ? response : null;
+            } else if (contentLength >= 0) {
+                if (length - bodyStart < contentLength) {
+                    return null;
+                }
+                response.body = copy(bodyStart, (int) contentLength);
+                return response;
+            } else if (endOfStream) {
+                // Without a length, the end of the body is the end of the connection
+                response.body = copy(bodyStart, length - bodyStart);
+                response.keepAlive = false;
+                return response;
+            }
+            return null;
+        }
+
+        private byte[] parseChunks(int start) throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            int position = start;
+            while (true) {
+                int lineEnd = indexOfCrlf(position);
+                if (lineEnd == -1) {
+                    return null;
+                }
+                String sizeLine = new String(content, position, lineEnd - position, ISO_8859_1);
+                int extension = sizeLine.indexOf(';');
+                if (extension != -1) {
+                    sizeLine = sizeLine.substring(0, extension);
+                }
+                int chunkSize;
+                try {
+                    // CHECKSTYLE.OFF: MagicNumber
+                    chunkSize = Integer.parseInt(sizeLine.trim(), 16);
+                    // CHECKSTYLE.ON: MagicNumber
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid chunk size: " + sizeLine);
+                }
+                position = lineEnd + 2;
+                if (chunkSize == 0) {
+                    // The trailers end with an empty line
+                    while (true) {
+                        int trailerEnd = indexOfCrlf(position);
+                        if (trailerEnd == -1) {
+                            return null;
+                        } else if (trailerEnd == position) {
+                            return body.toByteArray();
+                        }
+                        position = trailerEnd + 2;
+                    }
+                }
+                if (length < position + chunkSize + 2) {
+                    return null;
+                }
+                body.write(content, position, chunkSize);
+                position += chunkSize + 2;
+            }
+        }
+
+        private int indexOfCrlf(int from) {
+            for (int i = from; i < length - 1; i++) {
+                if (content[i] == '\r' && content[i + 1] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private byte[] copy(int from, int count) {
+            byte[] copy = new byte[count];
+            System.arraycopy(content, from, copy, 0, count);
+            return copy;
+        }
+
+        /**
+         * Finds the end of the headers, marked by an empty line.
+         */
+        private int indexOfHeadersEnd() {
+            for (int i = 0; i < length - 3; i++) {
+                if (content[i] == '\r' && content[i + 1] == '\n' && content[i + 2] == '\r' && content[i + 3] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Status, relevant headers and body of an HTTP response.
+     */
+    private static final class Response {
+        private int status;
+        private boolean keepAlive;
+        private Long retryAfterMs;
+        private byte[] body;
+    }
+
+    private final class ShutDownHook extends Thread {
+
+        /**
+         * Whether or not this ShutDownHook instance will do anything when run.
+         */
+        private volatile boolean enabled = true;
+
+        @Override
+        public void run() {
+            if (!enabled) {
+                return;
+            }
+
+            RavenEnvironment.startManagingThread();
+            try {
+                // The current thread is managed by raven
+                logger.info("Automatic shutdown of the async HTTP connection");
+                AsyncHttpConnection.this.doClose();
+            } catch (Exception e) {
+                logger.error("An exception occurred while closing the connection.", e);
+            } finally {
+                RavenEnvironment.stopManagingThread();
+            }
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.Raven;
+import com.getsentry.raven.environment.RavenEnvironment;
+import com.getsentry.raven.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous connection sending events in batches.
+ * <p>
+ * Instead of handing each event to a thread pool, events are queued and a fixed number of daemon sender threads
+ * gather them into batches bounded both in size and in time. Each batch is then sent back to back by the thread
+ * that gathered it, which allows the underlying transport (see {@link HttpConnection#setKeepAlive(boolean)}) to reuse
+ * the same network connection for the whole batch instead of paying a TCP and TLS handshake for each event.
+ * <p>
+ * Every event of a batch still goes through {@link Connection#send(Event)} on the actual connection, so the lockdown
+ * and {@link EventSendFailureCallback} semantics are kept for each event.
+ */
+public class BatchingConnection implements Connection {
+    /**
+     * Time to wait for new events before checking again if the connection has been closed, in milliseconds.
+     */
+    private static final long POLL_TIMEOUT = TimeUnit.MILLISECONDS.toMillis(500);
+    /**
+     * Maximum time to wait for a batch to fill up before checking again if the connection has been closed, in
+     * milliseconds.
+     */
+    private static final long FILL_POLL_TIMEOUT = TimeUnit.MILLISECONDS.toMillis(50);
+    private static final Logger logger = LoggerFactory.getLogger(BatchingConnection.class);
+    // CHECKSTYLE.OFF: ConstantName
+    private static final Logger lockdownLogger = LoggerFactory.getLogger(Raven.class.getName() + ".lockdown");
+    // CHECKSTYLE.ON: ConstantName
+    /**
+     * Connection used to actually send the events.
+     */
+    private final Connection actualConnection;
+    /**
+     * Queue of events waiting to be gathered in a batch.
+     */
+    private final BlockingQueue<Event> queue;
+    /**
+     * Maximum number of events in a single batch.
+     */
+    private final int batchSize;
+    /**
+     * Maximum time to wait for a batch to fill up once its first event has been queued, in milliseconds.
+     */
+    private final long batchFlushtime;
+    /**
+     * Behaviour when an event is sent while the {@link #queue} is full.
+     */
+    private final QueueOverflowPolicy overflowPolicy;
+    /**
+     * Timeout of the {@link #senderThreads} shutdown, in milliseconds.
+     */
+    private final long shutdownTimeout;
+    /**
+     * Threads gathering and sending the batches.
+     */
+    private final Thread[] senderThreads;
+    /**
+     * Shutdown hook used to stop the batching connection properly when the JVM quits.
+     */
+    private final ShutDownHook shutDownHook = new ShutDownHook();
+    /**
+     * Boolean that represents if graceful shutdown is enabled.
+     */
+    private boolean gracefulShutdown;
+    /**
+     * Boolean used to check whether the connection is still open or not.
+     */
+    private volatile boolean closed;
+    /**
+     * Number of events dropped because the {@link #queue} was full or the connection was closed.
+     */
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    /**
+     * Creates a connection sending events in batches to the actual connection.
+     * <p>
+     * Will propagate the {@link #close()} operation.
+     *
+     * @param actualConnection connection used to send the events.
+     * @param batchSize        maximum number of events sent in a single batch.
+     * @param batchFlushtime   maximum time to wait for a batch to fill up, in milliseconds.
+     * @param threads          number of threads sending batches concurrently.
+     * @param priority         priority of the threads sending batches.
+     * @param queueSize        maximum number of events waiting to be sent, or -1 for an unbounded queue.
+     * @param overflowPolicy   behaviour when an event is sent while the queue is full.
+     * @param gracefulShutdown Indicates whether or not the shutdown operation should be managed by a ShutdownHook.
+     * @param shutdownTimeout  timeout for graceful shutdown of the sender threads, in milliseconds.
+     */
+    public BatchingConnection(Connection actualConnection, int batchSize, long batchFlushtime, int threads,
+                              int priority, int queueSize, QueueOverflowPolicy overflowPolicy,
+                              boolean gracefulShutdown, long shutdownTimeout) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be at least 1, got " + batchSize);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of sender threads must be at least 1, got " + threads);
+        }
+
+        this.actualConnection = actualConnection;
+        this.batchSize = batchSize;
+        this.batchFlushtime = batchFlushtime;
+        this.overflowPolicy = overflowPolicy;
+        this.shutdownTimeout = shutdownTimeout;
+        if (queueSize == -1) {
+            this.queue = new LinkedBlockingQueue<Event>();
+        } else {
+            this.queue = new LinkedBlockingQueue<Event>(queueSize);
+        }
+
+        this.senderThreads = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            Thread senderThread = new Thread(new BatchSender(), "raven-batch-sender-" + i);
+            senderThread.setDaemon(true);
+            senderThread.setPriority(priority);
+            senderThreads[i] = senderThread;
+            senderThread.start();
+        }
+
+        if (gracefulShutdown) {
+            this.gracefulShutdown = gracefulShutdown;
+            // JUL loggers are shutdown by an other shutdown hook, it's possible that nothing will get actually logged.
+            Runtime.getRuntime().addShutdownHook(shutDownHook);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The event will be added to a queue and will be sent as part of a batch by a separate {@code Thread} later on.
+     * Events sent once the connection is closed are dropped.
+     */
+    @Override
+    public void send(Event event) {
+        if (closed) {
+            droppedEvents.incrementAndGet();
+            logger.debug("The batching connection is closed, discarding the event: {}", event.getId());
+            return;
+        }
+        if (queue.offer(event)) {
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case DISCARD_OLD:
+                Event discarded = queue.poll();
+                if (discarded != null) {
+                    droppedEvents.incrementAndGet();
+                    logger.debug("Batching queue full, discarding the oldest event: {}", discarded.getId());
+                }
+                if (!queue.offer(event)) {
+                    droppedEvents.incrementAndGet();
+                    logger.debug("Batching queue full, discarding the event: {}", event.getId());
+                }
+                break;
+            case SYNC:
+                sendBatch(Collections.singletonList(event));
+                break;
+            case DISCARD_NEW:
+            default:
+                droppedEvents.incrementAndGet();
+                logger.debug("Batching queue full, discarding the event: {}", event.getId());
+                break;
+        }
+    }
+
+    /**
+     * Sends every event of a batch through the {@link #actualConnection}, one after the other.
+     *
+     * @param batch events to send.
+     */
+    private void sendBatch(List<Event> batch) {
+        RavenEnvironment.startManagingThread();
+        try {
+            int lockedDown = 0;
+            for (Event event : batch) {
+                try {
+                    // The current thread is managed by raven
+                    actualConnection.send(event);
+                } catch (LockedDownException e) {
+                    lockedDown++;
+                } catch (Exception e) {
+                    logger.error("An exception occurred while sending the event to Sentry.", e);
+                }
+            }
+
+            if (lockedDown > 0) {
+                lockdownLogger.warn("The connection to Sentry is currently locked down, {} out of {} events"
+                    + " of the batch were not sent.", lockedDown, batch.size());
+            }
+        } finally {
+            RavenEnvironment.stopManagingThread();
+        }
+    }
+
+    @Override
+    public void addEventSendFailureCallback(EventSendFailureCallback eventSendFailureCallback) {
+        actualConnection.addEventSendFailureCallback(eventSendFailureCallback);
+    }
+
+    /**
+     * Number of events dropped because too many events were waiting to be sent, or because the connection was
+     * closed.
+     *
+     * @return the number of events dropped.
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * {@inheritDoc}.
+     * <p>
+     * Closing the {@link BatchingConnection} will stop accepting new events and give the sender threads
+     * {@link #shutdownTimeout} milliseconds to send the events that are still queued.<br>
+     * If the shutdown times out, the sender threads will be interrupted and the remaining events dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        if (gracefulShutdown) {
+            shutDownHook.enabled = false;
+        }
+
+        doClose();
+    }
+
+    /**
+     * Close the connection whether it's from the shutdown hook or not.
+     *
+     * @see #close()
+     */
+    @SuppressWarnings("checkstyle:magicnumber")
+    private void doClose() throws IOException {
+        logger.info("Gracefully shutdown sentry batching thread.");
+        closed = true;
+        try {
+            if (shutdownTimeout == -1L) {
+                // Block until the senders terminate, but log periodically.
+                long waitBetweenLoggingMs = 5000L;
+                for (Thread senderThread : senderThreads) {
+                    while (true) {
+                        senderThread.join(waitBetweenLoggingMs);
+                        if (!senderThread.isAlive()) {
+                            break;
+                        }
+                        logger.info("Still waiting on batch senders to terminate.");
+                    }
+                }
+            } else {
+                long deadline = System.currentTimeMillis() + shutdownTimeout;
+                for (Thread senderThread : senderThreads) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining > 0) {
+                        senderThread.join(remaining);
+                    }
+                }
+                if (interruptSenders()) {
+                    logger.warn("Graceful shutdown took too much time, forcing the shutdown.");
+                    logger.info("{} events failed to be sent before the shutdown.", queue.size());
+                }
+            }
+            logger.info("Shutdown finished.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Graceful shutdown interrupted, forcing the shutdown.");
+            interruptSenders();
+            logger.info("{} events failed to be sent before the shutdown.", queue.size());
+        } finally {
+            actualConnection.close();
+        }
+    }
+
+    /**
+     * Interrupts the sender threads that are still running.
+     *
+     * @return true if at least one sender thread was still running.
+     */
+    private boolean interruptSenders() {
+        boolean running = false;
+        for (Thread senderThread : senderThreads) {
+            if (senderThread.isAlive()) {
+                senderThread.interrupt();
+                running = true;
+            }
+        }
+        return running;
+    }
+
+    /**
+     * Runnable gathering the queued events in batches and sending them until the connection is closed and the queue
+     * is empty.
+     */
+    private final class BatchSender implements Runnable {
+        @Override
+        public void run() {
+            List<Event> batch = new ArrayList<Event>(batchSize);
+            try {
+                while (!closed || !queue.isEmpty()) {
+                    Event first = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+
+                    batch.add(first);
+                    fillBatch(batch);
+                    sendBatch(batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.debug("Batch sender interrupted, {} events left in the queue.", queue.size());
+            }
+        }
+
+        /**
+         * Adds events to the batch until it is full, or until {@link #batchFlushtime} has elapsed.
+         *
+         * @param batch batch already containing its first event.
+         * @throws InterruptedException if the sender thread is interrupted while waiting for events.
+         */
+        private void fillBatch(List<Event> batch) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchFlushtime);
+            while (batch.size() < batchSize) {
+                // Take everything that's already available without waiting
+                queue.drainTo(batch, batchSize - batch.size());
+                long remaining = deadline - System.nanoTime();
+                if (batch.size() >= batchSize || remaining <= 0 || closed) {
+                    return;
+                }
+
+                // Don't wait for the whole flushtime at once, so that a batch is sent promptly once closed
+                long wait = Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(FILL_POLL_TIMEOUT));
+                Event next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                if (next != null) {
+                    batch.add(next);
+                }
+            }
+        }
+    }
+
+    private final class ShutDownHook extends Thread {
+
+        /**
+         * Whether or not this ShutDownHook instance will do anything when run.
+         */
+        private volatile boolean enabled = true;
+
+        @Override
+        public void run() {
+            if (!enabled) {
+                return;
+            }
+
+            RavenEnvironment.startManagingThread();
+            try {
+                // The current thread is managed by raven
+                logger.info("Automatic shutdown of the batching connection");
+                BatchingConnection.this.doClose();
+            } catch (Exception e) {
+                logger.error("An exception occurred while closing the connection.", e);
+            } finally {
+                RavenEnvironment.stopManagingThread();
+            }
+        }
+    }
+}
@@ -1,15 +1,26 @@
 package com.getsentry.raven.connection;
 
 import com.getsentry.raven.buffer.Buffer;
+import com.getsentry.raven.buffer.Payload;
+import com.getsentry.raven.buffer.PayloadBuffer;
 import com.getsentry.raven.environment.RavenEnvironment;
 import com.getsentry.raven.event.Event;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
@@ -32,24 +43,35 @@ import java.util.concurrent.TimeUnit;
 public class BufferedConnection implements Connection {
 
     private static final Logger logger = LoggerFactory.getLogger(BufferedConnection.class);
+    /**
+     * Maximum number of events read from the buffer at once by the Flusher.
+     */
+    private static final int FLUSH_CHUNK_SIZE = 1000;
+    /**
+     * Factory of daemon threads, so that they don't keep the JVM running after main() exits.
+     */
+    private static final ThreadFactory DAEMON_THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
 
     /**
      * Shutdown hook used to stop the buffered connection properly when the JVM quits.
      */
     private final BufferedConnection.ShutDownHook shutDownHook = new BufferedConnection.ShutDownHook();
     /**
-     * Flusher ExecutorService, created in a verbose way to use daemon threads
-     * so that it doesn't keep the JVM running after main() exits.
+     * Flusher ExecutorService, using daemon threads.
      */
     private final ScheduledExecutorService executorService =
-        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
-            @Override
-            public Thread newThread(Runnable r) {
-                Thread thread = new Thread(r);
-                thread.setDaemon(true);
-                return thread;
-            }
-        });
+        Executors.newSingleThreadScheduledExecutor(DAEMON_THREAD_FACTORY);
+    /**
+     * Flusher scheduled on the {@link #executorService}.
+     */
+    private final Flusher flusher;
     /**
      * Connection used to actually send the events.
      */
@@ -58,6 +80,15 @@ public class BufferedConnection implements Connection {
      * Buffer used to store and retrieve events from.
      */
     private Buffer buffer;
+    /**
+     * The {@link #actualConnection} if the events are stored as marshalled payloads, otherwise null.
+     */
+    private final PayloadConnection payloadConnection;
+    /**
+     * The {@link #actualConnection} if it sends the events in the background, in which case it discards them from the
+     * buffer itself once they're accepted, otherwise null.
+     */
+    private final AsyncHttpConnection asyncHttpConnection;
     /**
      * Boolean that represents if graceful shutdown is enabled.
      */
@@ -83,7 +114,43 @@ public class BufferedConnection implements Connection {
      */
     public BufferedConnection(Connection actualConnection, Buffer buffer, long flushtime, boolean gracefulShutdown,
         long shutdownTimeout) {
+        this(actualConnection, buffer, flushtime, gracefulShutdown, shutdownTimeout, 1, 0);
+    }
 
+    /**
+     * Construct a BufferedConnection that will store events that failed to send to the provided
+     * {@link Buffer} and attempt to flush them to the underlying connection later, several at once.
+     *
+     * @param actualConnection Connection to wrap.
+     * @param buffer Buffer to be used when {@link Connection#send(Event)}s fail.
+     * @param flushtime Time to wait between flush attempts, in milliseconds.
+     * @param gracefulShutdown Indicates whether or not the shutdown operation should be managed by a ShutdownHook.
+     * @param shutdownTimeout Timeout for graceful shutdown of the executor, in milliseconds.
+     * @param flushThreads Maximum number of buffered events sent at once.
+     * @param flushRate Maximum number of buffered events sent per second, or 0 for no limit.
+     * @throws IllegalArgumentException if the buffer is a {@link PayloadBuffer} but the connection isn't a
+     * {@link PayloadConnection}.
+     */
+    // CHECKSTYLE.OFF: ParameterNumber
+    public BufferedConnection(Connection actualConnection, Buffer buffer, long flushtime, boolean gracefulShutdown,
+        long shutdownTimeout, int flushThreads, double flushRate) {
+        // CHECKSTYLE.ON: ParameterNumber
+
+        if (buffer instanceof PayloadBuffer) {
+            if (!(actualConnection instanceof PayloadConnection)) {
+                throw new IllegalArgumentException(actualConnection.getClass().getName()
+                    + " can't send the marshalled events of " + buffer.getClass().getName());
+            }
+            this.payloadConnection = (PayloadConnection) actualConnection;
+        } else {
+            this.payloadConnection = null;
+        }
+        if (actualConnection instanceof AsyncHttpConnection) {
+            this.asyncHttpConnection = (AsyncHttpConnection) actualConnection;
+            this.asyncHttpConnection.setBuffer(buffer);
+        } else {
+            this.asyncHttpConnection = null;
+        }
         this.actualConnection = actualConnection;
         this.buffer = buffer;
         this.gracefulShutdown = gracefulShutdown;
@@ -93,16 +160,60 @@ public class BufferedConnection implements Connection {
             Runtime.getRuntime().addShutdownHook(shutDownHook);
         }
 
-        Flusher flusher = new BufferedConnection.Flusher(flushtime);
+        flusher = new BufferedConnection.Flusher(flushtime, flushThreads, flushRate);
         executorService.scheduleWithFixedDelay(flusher, flushtime, flushtime, TimeUnit.MILLISECONDS);
     }
 
     @Override
     public void send(Event event) {
+        if (payloadConnection != null) {
+            sendPayload(event);
+            return;
+        }
+
         actualConnection.send(event);
 
-        // success, remove the event from the buffer
-        buffer.discard(event);
+        // success, remove the event from the buffer, unless it's only queued
+        if (asyncHttpConnection == null) {
+            buffer.discard(event);
+        }
+    }
+
+    /**
+     * Marshalls the event into the {@link PayloadBuffer} and sends the stored payload, so that the event is only
+     * marshalled once, even if it has to be flushed again later.
+     *
+     * @param event Event to send.
+     */
+    private void sendPayload(Event event) {
+        PayloadBuffer payloadBuffer = (PayloadBuffer) buffer;
+        Payload payload = payloadBuffer.addPayload(event);
+        if (payload == null) {
+            // The buffer is full, the event can still be sent without being buffered
+            actualConnection.send(event);
+            return;
+        }
+
+        FileChannel channel;
+        try {
+            channel = payload.open();
+        } catch (IOException e) {
+            logger.debug("Buffered payload disappeared before being sent: " + event.getId(), e);
+            actualConnection.send(event);
+            return;
+        }
+        try {
+            payloadConnection.sendPayload(event.getId(), event, channel);
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Couldn't close the buffered payload: " + event.getId(), e);
+            }
+        }
+
+        // success, remove the payload from the buffer
+        payloadBuffer.discard(payload);
     }
 
     @Override
@@ -110,6 +221,20 @@ public class BufferedConnection implements Connection {
         actualConnection.addEventSendFailureCallback(eventSendFailureCallback);
     }
 
+    /**
+     * Returns true if the events sent now would be rejected by the locked down {@link #actualConnection}, and can
+     * stay in the buffer without going through the pipeline.
+     *
+     * @return true if the actual connection is locked down, otherwise false.
+     */
+    private boolean isShortCircuited() {
+        if (asyncHttpConnection != null) {
+            return asyncHttpConnection.isShortCircuited();
+        }
+        return actualConnection instanceof AbstractConnection
+            && ((AbstractConnection) actualConnection).isShortCircuited();
+    }
+
     @Override
     @SuppressWarnings("checkstyle:magicnumber")
     public void close() throws IOException {
@@ -141,7 +266,14 @@ public class BufferedConnection implements Connection {
             List<Runnable> tasks = executorService.shutdownNow();
             logger.info("{} tasks failed to execute before the shutdown.", tasks.size());
         } finally {
-            actualConnection.close();
+            flusher.shutdown();
+            try {
+                actualConnection.close();
+            } finally {
+                if (buffer instanceof Closeable) {
+                    ((Closeable) buffer).close();
+                }
+            }
         }
     }
 
@@ -153,6 +285,10 @@ public class BufferedConnection implements Connection {
      * before they are passed on to the (optional) asynchronous connection so that Events will
      * be stored even if the application is about to exit due to a crash.
      *
+     * A {@link PayloadBuffer} is the exception: marshalling the events is too expensive to be done
+     * on the calling thread, so they are stored by {@link #send(Event)} when they are actually sent,
+     * unless the connection is locked down.
+     *
      * @param connectionToWrap {@link Connection} to wrap with buffering logic.
      * @return Connection that will write {@link Event}s to a buffer before passing along to
      *         a wrapped {@link Connection}.
@@ -163,13 +299,22 @@ public class BufferedConnection implements Connection {
 
             @Override
             public void send(Event event) throws ConnectionException {
-                try {
-                    // buffer before we attempt to send
-                    buffer.add(event);
-                } catch (Exception e) {
-                    logger.error("Exception occurred while attempting to add Event to buffer: ", e);
+                boolean shortCircuited = isShortCircuited();
+                if (payloadConnection == null || shortCircuited) {
+                    try {
+                        // buffer before we attempt to send
+                        buffer.add(event);
+                    } catch (Exception e) {
+                        logger.error("Exception occurred while attempting to add Event to buffer: ", e);
+                    }
                 }
 
+                if (shortCircuited) {
+                    // The event stays in the buffer until the Flusher sends it after the lockdown
+                    logger.debug("The connection to Sentry is currently locked down, buffering the event: {}",
+                        event.getId());
+                    return;
+                }
                 wrappedConnection.send(event);
             }
 
@@ -187,51 +332,89 @@ public class BufferedConnection implements Connection {
 
     /**
      * Flusher is scheduled to periodically run by the BufferedConnection. It retrieves
-     * an Iterator of Events from the underlying {@link Buffer} and attempts to send
-     * one at time, discarding from the buffer on success.
+     * the Events from the underlying {@link Buffer}, oldest first as returned by the buffer,
+     * and attempts to send them in that order, discarding each one from the buffer on success.
      *
-     * Upon the first failure, Flusher will return and wait to be run again in the future,
-     * under the assumption that the network is now/still down.
+     * Up to {@link #maxConcurrency} events are sent at once, starting with a single one and
+     * adding one after each success, so that the server isn't flooded right after it recovers.
+     * The sends can also be paced to a maximum rate.
+     *
+     * Upon the first failure, Flusher stops sending new events, waits for the ones being sent,
+     * and returns to wait to be run again in the future, under the assumption that the network
+     * is now/still down.
      */
     private class Flusher implements Runnable {
-        private long minAgeMillis;
+        private final long minAgeMillis;
+        private final int maxConcurrency;
+        /**
+         * Minimum time between the start of two sends, in nanoseconds, or 0 if the sends aren't paced.
+         */
+        private final long pacingNanos;
+        /**
+         * Threads sending the events, or null if they're sent one at a time by the Flusher itself.
+         */
+        private final ExecutorService senders;
+        /**
+         * Number of events currently allowed to be sent at once, only used by the Flusher thread.
+         */
+        private int concurrency = 1;
+        /**
+         * Earliest time at which the next event can be sent, as returned by {@link System#nanoTime()}.
+         */
+        private long nextSendTime = System.nanoTime();
 
-        Flusher(long minAgeMillis) {
+        Flusher(long minAgeMillis, int maxConcurrency, double maxRate) {
             this.minAgeMillis = minAgeMillis;
+            this.maxConcurrency = Math.max(1, maxConcurrency);
+            this.pacingNanos = maxRate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / maxRate) : 0;
+            if (this.maxConcurrency > 1) {
+                this.senders = Executors.newFixedThreadPool(this.maxConcurrency, DAEMON_THREAD_FACTORY);
+            } else {
+                this.senders = null;
+            }
         }
 
         @Override
         public void run() {
             logger.trace("Running Flusher");
 
+            if (isShortCircuited()) {
+                logger.trace("Flusher run skipped, the connection is locked down.");
+                concurrency = 1;
+                return;
+            }
+
             RavenEnvironment.startManagingThread();
             try {
+                if (payloadConnection != null) {
+                    flushPayloads((PayloadBuffer) buffer);
+                    return;
+                }
+
                 Iterator<Event> events = buffer.getEvents();
                 while (events.hasNext() && !closed) {
-                    Event event = events.next();
-
-                    /*
-                     Skip events that have been in the buffer for less than minAgeMillis
-                     milliseconds. We need to do this because events are added to the
-                     buffer before they are passed on to the underlying "real" connection,
-                     which means the Flusher might run and see them before we even attempt
-                     to send them for the first time.
-                     */
-                    long now = System.currentTimeMillis();
-                    long eventTime = event.getTimestamp().getTime();
-                    long age = now - eventTime;
-                    if (age < minAgeMillis) {
-                        logger.trace("Ignoring buffered event because it only " + age + "ms old.");
-                        return;
-                    }
+                    List<EventSend> sends = new ArrayList<EventSend>(FLUSH_CHUNK_SIZE);
+                    while (events.hasNext() && sends.size() < FLUSH_CHUNK_SIZE) {
+                        Event event = events.next();
 
-                    try {
-                        logger.trace("Flusher attempting to send Event: " + event.getId());
-                        send(event);
-                        logger.trace("Flusher successfully sent Event: " + event.getId());
-                    } catch (Exception e) {
-                        logger.debug("Flusher failed to send Event: " + event.getId(), e);
+                        /*
+                         Skip events that have been in the buffer for less than minAgeMillis
+                         milliseconds. We need to do this because events are added to the
+                         buffer before they are passed on to the underlying "real" connection,
+                         which means the Flusher might run and see them before we even attempt
+                         to send them for the first time. Older events may still follow.
+                         */
+                        long now = System.currentTimeMillis();
+                        long eventTime = event.getTimestamp().getTime();
+                        long age = now - eventTime;
+                        if (age < minAgeMillis) {
+                            logger.trace("Ignoring buffered event because it only " + age + "ms old.");
+                            continue;
+                        }
+                        sends.add(new EventSend(event));
+                    }
 
+                    if (!flush(sends)) {
                         // Connectivity issues, give up until next Flusher run.
                         logger.trace("Flusher run exiting early.");
                         return;
@@ -242,6 +425,223 @@ public class BufferedConnection implements Connection {
                 RavenEnvironment.stopManagingThread();
             }
         }
+
+        /**
+         * Sends the payloads of a {@link PayloadBuffer} as they were stored, without decoding nor marshalling them again.
+         *
+         * @param payloadBuffer buffer containing the marshalled events.
+         */
+        private void flushPayloads(PayloadBuffer payloadBuffer) {
+            Iterator<Payload> payloads = payloadBuffer.getPayloads();
+            while (payloads.hasNext() && !closed) {
+                List<PayloadSend> sends = new ArrayList<PayloadSend>(FLUSH_CHUNK_SIZE);
+                boolean youngPayloadReached = false;
+                while (payloads.hasNext() && sends.size() < FLUSH_CHUNK_SIZE) {
+                    Payload payload = payloads.next();
+
+                    // Payloads are sorted from the oldest, the following ones are even younger
+                    long age = System.currentTimeMillis() - payload.getTimestamp();
+                    if (age < minAgeMillis) {
+                        logger.trace("Ignoring buffered payload because it only " + age + "ms old.");
+                        youngPayloadReached = true;
+                        break;
+                    }
+                    sends.add(new PayloadSend(payloadBuffer, payload));
+                }
+
+                if (!flush(sends)) {
+                    // Connectivity issues, give up until next Flusher run.
+                    logger.trace("Flusher run exiting early.");
+                    return;
+                }
+                if (youngPayloadReached) {
+                    break;
+                }
+            }
+            logger.trace("Flusher run exiting, no more payloads to send.");
+        }
+
+        /**
+         * Sends buffered events in order, up to {@link #concurrency} at once, and stops at the first failure.
+         *
+         * @param sends sends of the buffered events, in the order they should be sent.
+         * @return true if every event was sent, false if one of them failed.
+         */
+        private boolean flush(List<? extends Callable<Boolean>> sends) {
+            if (senders == null) {
+                for (Callable<Boolean> send : sends) {
+                    if (closed || !pace()) {
+                        return false;
+                    }
+                    if (!call(send)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            CompletionService<Boolean> completions = new ExecutorCompletionService<Boolean>(senders);
+            int inFlight = 0;
+            boolean succeeded = true;
+            try {
+                Iterator<? extends Callable<Boolean>> iterator = sends.iterator();
+                while (succeeded && iterator.hasNext() && !closed) {
+                    if (inFlight >= concurrency) {
+                        succeeded = completed(completions.take());
+                        inFlight--;
+                        continue;
+                    }
+                    if (!pace()) {
+                        return false;
+                    }
+                    completions.submit(iterator.next());
+                    inFlight++;
+                }
+                while (inFlight > 0) {
+                    succeeded &= completed(completions.take());
+                    inFlight--;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            return succeeded && !closed;
+        }
+
+        private boolean call(Callable<Boolean> send) {
+            boolean sent;
+            try {
+                sent = send.call();
+            } catch (Exception e) {
+                sent = false;
+            }
+            updateConcurrency(sent);
+            return sent;
+        }
+
+        private boolean completed(Future<Boolean> send) throws InterruptedException {
+            boolean sent;
+            try {
+                sent = send.get();
+            } catch (ExecutionException e) {
+                sent = false;
+            }
+            updateConcurrency(sent);
+            return sent;
+        }
+
+        private void updateConcurrency(boolean sent) {
+            if (sent) {
+                concurrency = Math.min(maxConcurrency, concurrency + 1);
+            } else {
+                concurrency = 1;
+            }
+        }
+
+        /**
+         * Waits until the next event can be sent without exceeding the maximum rate.
+         *
+         * @return true if the event can be sent, false if the Flusher was interrupted.
+         */
+        private boolean pace() {
+            if (pacingNanos == 0) {
+                return true;
+            }
+
+            long now = System.nanoTime();
+            long delay = nextSendTime - now;
+            if (delay > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            // Time spent idle doesn't allow a burst of events
+            nextSendTime = Math.max(nextSendTime, now) + pacingNanos;
+            return true;
+        }
+
+        private void shutdown() {
+            if (senders != null) {
+                senders.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Sends a buffered event and discards it from the buffer on success.
+     */
+    private final class EventSend implements Callable<Boolean> {
+        private final Event event;
+
+        private EventSend(Event event) {
+            this.event = event;
+        }
+
+        @Override
+        public Boolean call() {
+            RavenEnvironment.startManagingThread();
+            try {
+                if (asyncHttpConnection != null && asyncHttpConnection.isShortCircuited()) {
+                    // The event would be dropped and stay in the buffer, the flush stops like after a failure
+                    return false;
+                }
+                logger.trace("Flusher attempting to send Event: " + event.getId());
+                send(event);
+                logger.trace("Flusher successfully sent Event: " + event.getId());
+                return true;
+            } catch (Exception e) {
+                logger.debug("Flusher failed to send Event: " + event.getId(), e);
+                return false;
+            } finally {
+                RavenEnvironment.stopManagingThread();
+            }
+        }
+    }
+
+    /**
+     * Sends a buffered payload and discards it from the buffer on success.
+     */
+    private final class PayloadSend implements Callable<Boolean> {
+        private final PayloadBuffer payloadBuffer;
+        private final Payload payload;
+
+        private PayloadSend(PayloadBuffer payloadBuffer, Payload payload) {
+            this.payloadBuffer = payloadBuffer;
+            this.payload = payload;
+        }
+
+        @Override
+        public Boolean call() {
+            FileChannel channel;
+            try {
+                channel = payload.open();
+            } catch (IOException e) {
+                logger.trace("Buffered payload disappeared before being flushed: " + payload.getEventId(), e);
+                return true;
+            }
+
+            RavenEnvironment.startManagingThread();
+            try {
+                logger.trace("Flusher attempting to send payload: " + payload.getEventId());
+                payloadConnection.sendPayload(payload.getEventId(), null, channel);
+                logger.trace("Flusher successfully sent payload: " + payload.getEventId());
+            } catch (Exception e) {
+                logger.debug("Flusher failed to send payload: " + payload.getEventId(), e);
+                return false;
+            } finally {
+                RavenEnvironment.stopManagingThread();
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger.warn("Couldn't close the buffered payload: " + payload.getEventId(), e);
+                }
+            }
+            payloadBuffer.discard(payload);
+            return true;
+        }
     }
 
     private final class ShutDownHook extends Thread {
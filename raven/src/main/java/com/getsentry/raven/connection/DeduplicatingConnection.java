@@ -0,0 +1,252 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.environment.RavenEnvironment;
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventBuilder;
+import com.getsentry.raven.event.interfaces.ExceptionInterface;
+import com.getsentry.raven.event.interfaces.SentryException;
+import com.getsentry.raven.event.interfaces.SentryInterface;
+import com.getsentry.raven.event.interfaces.StackTraceInterface;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection wrapper suppressing the repeats of an event sent shortly before.
+ * <p>
+ * Events are identified by their message, culprit, exception classes and the top frames of each exception. The
+ * first occurrence of an event is sent right away, the following ones are only counted until the end of the
+ * window. The last of them is then sent with a {@link #TIMES_SEEN_EXTRA} extra holding the number of events it
+ * stands for, and a new window starts. Once a window ends without any repeat, the next occurrence is sent right away
+ * again.
+ */
+public class DeduplicatingConnection implements Connection {
+    /**
+     * Name of the extra holding the number of events a summary stands for.
+     */
+    public static final String TIMES_SEEN_EXTRA = "times_seen";
+    /**
+     * Default number of frames of each exception used to identify an event.
+     */
+    public static final int DEFAULT_TOP_FRAMES = 5;
+    private static final Logger logger = LoggerFactory.getLogger(DeduplicatingConnection.class);
+    /**
+     * Connection used to actually send the events.
+     */
+    private final Connection actualConnection;
+    /**
+     * Duration of a window, in milliseconds.
+     */
+    private final long window;
+    /**
+     * Number of frames of each exception used to identify an event.
+     */
+    private final int topFrames;
+    /**
+     * Events sent during their current window, by fingerprint.
+     */
+    private final ConcurrentMap<String, Occurrences> occurrences = new ConcurrentHashMap<String, Occurrences>();
+    /**
+     * Executor sending the summaries, created in a verbose way to use daemon threads
+     * so that it doesn't keep the JVM running after main() exits.
+     */
+    private final ScheduledExecutorService executorService =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "raven-deduplication");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    /**
+     * Creates a connection suppressing the repeats of an event during {@code window} milliseconds.
+     *
+     * @param actualConnection connection used to send the events.
+     * @param window           duration of a window, in milliseconds.
+     * @param topFrames        number of frames of each exception used to identify an event.
+     */
+    public DeduplicatingConnection(Connection actualConnection, long window, int topFrames) {
+        if (window < 1) {
+            throw new IllegalArgumentException("The deduplication window must be at least 1ms, got " + window);
+        }
+
+        this.actualConnection = actualConnection;
+        this.window = window;
+        this.topFrames = topFrames;
+
+        // Windows are checked a few times per window, so that a summary isn't late by a whole window
+        long checkInterval = Math.max(1, window / 4);
+        executorService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                RavenEnvironment.startManagingThread();
+                try {
+                    sendSummaries(System.currentTimeMillis(), false);
+                } catch (Exception e) {
+                    logger.error("An exception occurred while sending the deduplicated events.", e);
+                } finally {
+                    RavenEnvironment.stopManagingThread();
+                }
+            }
+        }, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The event is only counted if an identical event has been sent during the current window.
+     */
+    @Override
+    public void send(Event event) {
+        String fingerprint = fingerprint(event);
+        long now = System.currentTimeMillis();
+
+        Occurrences eventOccurrences = occurrences.get(fingerprint);
+        if (eventOccurrences == null) {
+            Occurrences newOccurrences = new Occurrences(now);
+            eventOccurrences = occurrences.putIfAbsent(fingerprint, newOccurrences);
+            if (eventOccurrences == null) {
+                actualConnection.send(event);
+                return;
+            }
+        }
+
+        if (!eventOccurrences.suppress(event)) {
+            // The window ended while the event was checked, it becomes the first of a new window
+            occurrences.remove(fingerprint, eventOccurrences);
+            send(event);
+        }
+    }
+
+    /**
+     * Sends the summaries of the windows ended at {@code now}, and forgets the events without repeats.
+     *
+     * @param now current time, in milliseconds.
+     * @param all whether the windows still in progress should be ended too.
+     */
+    void sendSummaries(long now, boolean all) {
+        Iterator<Map.Entry<String, Occurrences>> iterator = occurrences.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Occurrences eventOccurrences = iterator.next().getValue();
+            Event lastEvent;
+            int suppressed;
+            synchronized (eventOccurrences) {
+                if (!all && now - eventOccurrences.windowStart < window) {
+                    continue;
+                }
+
+                lastEvent = eventOccurrences.lastEvent;
+                suppressed = eventOccurrences.suppressed;
+                if (suppressed == 0 || all) {
+                    eventOccurrences.ended = true;
+                    iterator.remove();
+                } else {
+                    eventOccurrences.startWindow(now);
+                }
+            }
+
+            if (suppressed > 0) {
+                logger.debug("Sending an event seen {} times: {}", suppressed, lastEvent.getId());
+                try {
+                    actualConnection.send(withTimesSeen(lastEvent, suppressed));
+                } catch (Exception e) {
+                    logger.warn("The deduplicated event '" + lastEvent.getId() + "' couldn't be sent.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the value identifying the repeats of an event.
+     *
+     * @param event event to identify.
+     * @return the fingerprint of the event.
+     */
+    protected String fingerprint(Event event) {
+        StringBuilder fingerprint = new StringBuilder();
+        fingerprint.append(event.getMessage()).append('\n').append(event.getCulprit());
+
+        SentryInterface sentryInterface = event.getSentryInterfaces().get(ExceptionInterface.EXCEPTION_INTERFACE);
+        if (sentryInterface instanceof ExceptionInterface) {
+            for (SentryException exception : ((ExceptionInterface) sentryInterface).getExceptions()) {
+                fingerprint.append('\n')
+                    .append(exception.getExceptionPackageName()).append('.')
+                    .append(exception.getExceptionClassName());
+                StackTraceInterface stackTrace = exception.getStackTraceInterface();
+                for (int i = 0; i < Math.min(topFrames, stackTrace.getFrameCount()); i++) {
+                    fingerprint.append('\n').append(stackTrace.getFrame(i));
+                }
+            }
+        }
+        return fingerprint.toString();
+    }
+
+    private static Event withTimesSeen(Event event, int timesSeen) {
+        return EventBuilder.copyOf(event).withExtra(TIMES_SEEN_EXTRA, timesSeen).build();
+    }
+
+    @Override
+    public void addEventSendFailureCallback(EventSendFailureCallback eventSendFailureCallback) {
+        actualConnection.addEventSendFailureCallback(eventSendFailureCallback);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The events suppressed so far are sent before closing the actual connection.
+     */
+    @Override
+    public void close() throws IOException {
+        executorService.shutdownNow();
+        try {
+            sendSummaries(System.currentTimeMillis(), true);
+        } finally {
+            actualConnection.close();
+        }
+    }
+
+    /**
+     * Occurrences of an event during the current window.
+     */
+    private static final class Occurrences {
+        private long windowStart;
+        private int suppressed;
+        private Event lastEvent;
+        private boolean ended;
+
+        private Occurrences(long windowStart) {
+            this.windowStart = windowStart;
+        }
+
+        /**
+         * Counts a repeat of the event.
+         *
+         * @return false if the window already ended, in which case the event must be sent.
+         */
+        private synchronized boolean suppress(Event event) {
+            if (ended) {
+                return false;
+            }
+            suppressed++;
+            lastEvent = event;
+            return true;
+        }
+
+        private void startWindow(long now) {
+            windowStart = now;
+            suppressed = 0;
+            lastEvent = null;
+        }
+    }
+}
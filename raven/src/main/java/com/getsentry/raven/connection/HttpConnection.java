@@ -15,7 +15,11 @@ import java.net.MalformedURLException;
 import java.net.Proxy;
 import java.net.URI;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -23,7 +27,7 @@ import java.util.concurrent.TimeUnit;
  * <p>
  * It is possible to enable the "naive mode" to allow a connection over SSL using a certificate with a wildcard.
  */
-public class HttpConnection extends AbstractConnection {
+public class HttpConnection extends AbstractConnection implements PayloadConnection {
     private static final Charset UTF_8 = Charset.forName("UTF-8");
     private static final Logger logger = LoggerFactory.getLogger(HttpConnection.class);
     /**
@@ -72,6 +76,11 @@ public class HttpConnection extends AbstractConnection {
      * to be added to the truststore.
      */
     private boolean bypassSecurity = false;
+    /**
+     * Whether the underlying socket should be left open after a successful submission, allowing the JDK to reuse it
+     * for the next event sent to the same host.
+     */
+    private boolean keepAlive = false;
 
      /**
      * Creates an HTTP connection to a Sentry server.
@@ -134,18 +143,79 @@ public class HttpConnection extends AbstractConnection {
     }
 
     @Override
-    protected void doSend(Event event) throws ConnectionException {
+    protected void doSend(final Event event) throws ConnectionException {
         if (eventSampler != null && !eventSampler.shouldSendEvent(event)) {
             return;
         }
 
+        submit(getConnection(), new RequestBody() {
+            @Override
+            void writeTo(OutputStream outputStream) {
+                marshaller.marshall(event, outputStream);
+            }
+        });
+    }
+
+    @Override
+    public void sendPayload(UUID eventId, Event event, FileChannel payload) throws ConnectionException {
+        try {
+            checkLockdown(eventId);
+
+            if (event == null || eventSampler == null || eventSampler.shouldSendEvent(event)) {
+                doSendPayload(eventId, payload);
+            }
+
+            onSendSuccess();
+        } catch (ConnectionException e) {
+            onSendFailure(event, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Copies the marshalled event to the request as it was stored, without decoding nor marshalling it.
+     * <p>
+     * As the size of the payload is known, the request is streamed with a fixed length rather than buffered in memory
+     * by {@link HttpURLConnection}.
+     */
+    private void doSendPayload(UUID eventId, final FileChannel payload) throws ConnectionException {
         HttpURLConnection connection = getConnection();
+        final long start;
+        final long size;
+        try {
+            start = payload.position();
+            size = payload.size();
+            connection.setFixedLengthStreamingMode(size - start);
+        } catch (IOException e) {
+            throw new ConnectionException("Couldn't read the payload of the event " + eventId, e);
+        }
+
+        submit(connection, new RequestBody() {
+            @Override
+            void writeTo(OutputStream outputStream) throws IOException {
+                WritableByteChannel channel = Channels.newChannel(outputStream);
+                long position = start;
+                while (position < size) {
+                    position += payload.transferTo(position, size - position, channel);
+                }
+            }
+        });
+    }
+
+    private void submit(HttpURLConnection connection, RequestBody body) throws ConnectionException {
+        boolean success = false;
         try {
             connection.connect();
             OutputStream outputStream = connection.getOutputStream();
-            marshaller.marshall(event, outputStream);
+            body.writeTo(outputStream);
             outputStream.close();
-            connection.getInputStream().close();
+            InputStream inputStream = connection.getInputStream();
+            if (keepAlive) {
+                // The response has to be fully read for the socket to be returned to the keep-alive cache
+                drain(inputStream);
+            }
+            inputStream.close();
+            success = true;
         } catch (IOException e) {
             String errorMessage = null;
             final InputStream errorStream = connection.getErrorStream();
@@ -172,7 +242,26 @@ public class HttpConnection extends AbstractConnection {
 
             throw new ConnectionException(errorMessage, e, retryAfterMs);
         } finally {
-            connection.disconnect();
+            if (!keepAlive || !success) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Content written in the body of a request to Sentry.
+     */
+    private abstract static class RequestBody {
+        abstract void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    private static void drain(InputStream inputStream) throws IOException {
+        // CHECKSTYLE.OFF: MagicNumber
+        byte[] buffer = new byte[512];
+        // CHECKSTYLE.ON: MagicNumber
+        while (inputStream.read(buffer) != -1) {
+            // Discard the content of the response
+            continue;
         }
     }
 
@@ -208,6 +297,18 @@ public class HttpConnection extends AbstractConnection {
         this.bypassSecurity = bypassSecurity;
     }
 
+    /**
+     * Enables or disables the reuse of the underlying socket between two events.
+     * <p>
+     * When enabled, a successful response is fully read and the connection isn't disconnected, so that the JDK
+     * keep-alive cache can hand the same socket to the next submission instead of opening a new one.
+     *
+     * @param keepAlive whether the socket should be kept open after a successful submission.
+     */
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
     @Override
     public void close() throws IOException {
     }
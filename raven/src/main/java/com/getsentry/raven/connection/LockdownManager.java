@@ -2,13 +2,25 @@ package com.getsentry.raven.connection;
 
 import com.getsentry.raven.time.Clock;
 import com.getsentry.raven.time.SystemClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Abstracts the connection lockdown logic (and state) to a single place so that
  * it's easier to understand.
+ * <p>
+ * The lockdown is a circuit breaker. After a failure, the circuit is {@link State#OPEN} and no event is sent for
+ * the lockdown time. Then it's {@link State#HALF_OPEN}, and a single event is sent as a probe: the circuit is
+ * {@link State#CLOSED} again if it's sent successfully, and open again otherwise.
+ * <p>
+ * The state is immutable and swapped with compare-and-set, so checking it on every event doesn't take any lock,
+ * and resetting it after a successful send doesn't write anything unless there was a lockdown.
  */
 public class LockdownManager {
     /**
@@ -19,24 +31,26 @@ public class LockdownManager {
      * Default base duration for a lockdown.
      */
     public static final long DEFAULT_BASE_LOCKDOWN_TIME = TimeUnit.SECONDS.toMillis(1);
+    private static final Logger logger = LoggerFactory.getLogger(LockdownManager.class);
     /**
-     * Maximum duration for a lockdown, in milliseconds.
+     * State when there hasn't been any failure since the last successful send.
      */
-    private long maxLockdownTime = DEFAULT_MAX_LOCKDOWN_TIME;
+    private static final Lockdown NO_LOCKDOWN = new Lockdown(State.CLOSED, 0, 0);
     /**
-     * Base duration for a lockdown, in milliseconds.
-     * <p>
-     * On each attempt the time is doubled until it reaches {@link #maxLockdownTime}.
+     * Maximum duration for a lockdown, in milliseconds, even if the server recommends a longer one.
      */
-    private long baseLockdownTime = DEFAULT_BASE_LOCKDOWN_TIME;
+    private volatile long maxLockdownTime = DEFAULT_MAX_LOCKDOWN_TIME;
     /**
-     * Number of milliseconds after lockdownStartTime to lockdown for, or 0 if not currently locked down.
+     * Base duration for a lockdown, in milliseconds, unless the server recommends an other one.
+     * <p>
+     * It's also the time given to the probe to succeed before an other event is allowed as a probe.
      */
-    private long lockdownTime = 0;
+    private volatile long baseLockdownTime = DEFAULT_BASE_LOCKDOWN_TIME;
     /**
-     * Timestamp of when the current lockdown started, or null if not currently locked down.
+     * Current state of the circuit.
      */
-    private Date lockdownStartTime = null;
+    private final AtomicReference<Lockdown> lockdown = new AtomicReference<Lockdown>(NO_LOCKDOWN);
+    private final List<LockdownStateListener> stateListeners = new CopyOnWriteArrayList<LockdownStateListener>();
     /**
      * Clock instance used for time, injectable for testing.
      */
@@ -59,52 +73,190 @@ public class LockdownManager {
     }
 
     /**
-     * Returns true if the system is in a lockdown.
+     * Returns true if the system is in a lockdown, meaning the event about to be sent must not be.
+     * <p>
+     * Once the lockdown time is over, the first caller gets false and its event is the probe deciding whether the
+     * lockdown ends, the other callers get true until the probe succeeds or fails.
      *
      * @return true if the system is in a lockdown, otherwise false
      */
-    public synchronized boolean isLockedDown() {
-        return lockdownStartTime != null && (clock.millis() - lockdownStartTime.getTime()) < lockdownTime;
+    public boolean isLockedDown() {
+        while (true) {
+            Lockdown currentLockdown = lockdown.get();
+            if (currentLockdown == NO_LOCKDOWN) {
+                return false;
+            }
+
+            long now = clock.millis();
+            if (currentLockdown.isActive(now)) {
+                return true;
+            }
+
+            // Probes which never completed time out like the lockdown itself
+            Lockdown probe = new Lockdown(State.HALF_OPEN, now, baseLockdownTime);
+            if (lockdown.compareAndSet(currentLockdown, probe)) {
+                notifyStateChange(currentLockdown.state, State.HALF_OPEN);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns true if events shouldn't even be attempted, because the system is in a lockdown or a probe is
+     * already being sent.
+     * <p>
+     * Unlike {@link #isLockedDown()}, it never takes the probe, the event must still be checked with
+     * {@link #isLockedDown()} before being sent.
+     *
+     * @return true if events can be dropped or buffered right away, otherwise false
+     */
+    public boolean isShortCircuited() {
+        Lockdown currentLockdown = lockdown.get();
+        return currentLockdown != NO_LOCKDOWN && currentLockdown.isActive(clock.millis());
     }
 
     /**
-     * Reset the lockdown state, disabling lockdown and setting the backoff time to zero.
+     * Returns the current state of the circuit.
+     *
+     * @return {@link State#CLOSED} if events are sent, {@link State#OPEN} during a lockdown, or
+     * {@link State#HALF_OPEN} while a probe is sent.
      */
-    public synchronized void resetState() {
-        lockdownTime = 0;
-        lockdownStartTime = null;
+    public State getState() {
+        return lockdown.get().state;
+    }
+
+    /**
+     * Reset the lockdown state after a successful send, closing the circuit.
+     */
+    public void resetState() {
+        // Only written after a failure, so that successful sends don't contend on the same cache line
+        Lockdown currentLockdown = lockdown.get();
+        if (currentLockdown != NO_LOCKDOWN && lockdown.compareAndSet(currentLockdown, NO_LOCKDOWN)) {
+            notifyStateChange(currentLockdown.state, State.CLOSED);
+        }
     }
 
     /**
      * Enable lockdown if it's not already enabled, using the recommended time
-     * from the provided {@link ConnectionException}, if any.
+     * from the provided {@link ConnectionException}, if any, or the base lockdown time.
      *
      * @param connectionException ConnectionException to check for a recommended
      *                            lockdown time, may be null
      */
-    public synchronized void setState(ConnectionException connectionException) {
-        // If we are already in a lockdown state, don't change anything
-        if (isLockedDown()) {
-            return;
-        }
-
+    public void setState(ConnectionException connectionException) {
+        long lockdownTime;
         if (connectionException != null && connectionException.getRecommendedLockdownTime() != null) {
             lockdownTime = connectionException.getRecommendedLockdownTime();
-        } else if (lockdownTime != 0) {
-            lockdownTime = lockdownTime * 2;
         } else {
             lockdownTime = baseLockdownTime;
         }
-
         lockdownTime = Math.min(maxLockdownTime, lockdownTime);
-        lockdownStartTime = clock.date();
+
+        while (true) {
+            Lockdown currentLockdown = lockdown.get();
+            long now = clock.millis();
+            // If we are already in a lockdown state, don't change anything
+            if (currentLockdown.state == State.OPEN && currentLockdown.isActive(now)) {
+                return;
+            }
+
+            if (lockdown.compareAndSet(currentLockdown, new Lockdown(State.OPEN, now, lockdownTime))) {
+                if (currentLockdown.state != State.OPEN) {
+                    notifyStateChange(currentLockdown.state, State.OPEN);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Add a listener that is called when the state of the circuit changes, on the thread which changed it.
+     *
+     * @param stateListener listener instance
+     */
+    public void addStateListener(LockdownStateListener stateListener) {
+        stateListeners.add(stateListener);
     }
 
-    public synchronized void setBaseLockdownTime(long baseLockdownTime) {
+    private void notifyStateChange(State previousState, State newState) {
+        for (LockdownStateListener stateListener : stateListeners) {
+            try {
+                stateListener.onStateChange(previousState, newState);
+            } catch (Exception e) {
+                logger.warn("An exception occurred while running a LockdownStateListener: "
+                    + stateListener.getClass().getName(), e);
+            }
+        }
+    }
+
+    public void setBaseLockdownTime(long baseLockdownTime) {
         this.baseLockdownTime = baseLockdownTime;
     }
 
-    public synchronized void setMaxLockdownTime(long maxLockdownTime) {
+    public void setMaxLockdownTime(long maxLockdownTime) {
         this.maxLockdownTime = maxLockdownTime;
     }
+
+    /**
+     * Returns the duration of the current lockdown or probe.
+     *
+     * @return the duration of the lockdown in milliseconds, or 0 if there hasn't been any failure since the last
+     * successful send.
+     */
+    long getLockdownTime() {
+        return lockdown.get().duration;
+    }
+
+    /**
+     * Returns the time at which the current lockdown or probe started.
+     *
+     * @return the start of the lockdown, or null if there hasn't been any failure since the last successful send.
+     */
+    Date getLockdownStartTime() {
+        Lockdown currentLockdown = lockdown.get();
+        return currentLockdown != NO_LOCKDOWN ? new Date(currentLockdown.startTime) : null;
+    }
+
+    /**
+     * States of the circuit.
+     */
+    public enum State {
+        /**
+         * Events are sent.
+         */
+        CLOSED,
+        /**
+         * Events aren't sent until the end of the lockdown.
+         */
+        OPEN,
+        /**
+         * A single event is sent to check whether the server is available again.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * State of the circuit since a given time, for a given duration.
+     */
+    private static final class Lockdown {
+        private final State state;
+        /**
+         * Timestamp of when the state started, in milliseconds.
+         */
+        private final long startTime;
+        /**
+         * Number of milliseconds after startTime during which no other event is sent.
+         */
+        private final long duration;
+
+        private Lockdown(State state, long startTime, long duration) {
+            this.state = state;
+            this.startTime = startTime;
+            this.duration = duration;
+        }
+
+        private boolean isActive(long now) {
+            return now - startTime < duration;
+        }
+    }
 }
@@ -0,0 +1,16 @@
+package com.getsentry.raven.connection;
+
+/**
+ * Listener that is called when the lockdown of the connection to the Sentry server changes state.
+ */
+public interface LockdownStateListener {
+
+    /**
+     * Called when the lockdown of the connection to the Sentry server changes state.
+     *
+     * @param previousState state before the change
+     * @param newState      state after the change
+     */
+    void onStateChange(LockdownManager.State previousState, LockdownManager.State newState);
+
+}
@@ -0,0 +1,24 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.event.Event;
+
+import java.nio.channels.FileChannel;
+import java.util.UUID;
+
+/**
+ * Connection able to send an event that has already been marshalled, without marshalling it again.
+ */
+public interface PayloadConnection extends Connection {
+    /**
+     * Sends the marshalled content of an event to a Sentry server.
+     * <p>
+     * The payload is read from its current position, which is left unchanged, so the same channel can be sent again.
+     *
+     * @param eventId identifier of the marshalled event.
+     * @param event   the marshalled event if it's still available, to be sampled and passed to the
+     *                {@link EventSendFailureCallback}s, or null if it was sampled when it was first sent.
+     * @param payload channel positioned on the marshalled event, read up to its end.
+     * @throws ConnectionException whenever a temporary exception due to the connection happened.
+     */
+    void sendPayload(UUID eventId, Event event, FileChannel payload) throws ConnectionException;
+}
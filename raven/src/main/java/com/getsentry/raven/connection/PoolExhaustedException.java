@@ -0,0 +1,21 @@
+package com.getsentry.raven.connection;
+
+/**
+ * Exception thrown by a connection when no pooled connection to the Sentry server became available in time.
+ * <p>
+ * Unlike other {@link ConnectionException}s, it doesn't mean that the Sentry server is failing, only that every
+ * connection is busy, so it doesn't initiate a lockdown. The event can still be buffered, and the
+ * {@link EventSendFailureCallback}s are called.
+ */
+public class PoolExhaustedException extends ConnectionException {
+
+    //CHECKSTYLE.OFF: JavadocMethod
+    public PoolExhaustedException(String message) {
+        super(message);
+    }
+
+    public PoolExhaustedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+    //CHECKSTYLE.ON: JavadocMethod
+}
@@ -0,0 +1,783 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.environment.RavenEnvironment;
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.marshaller.Marshaller;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.UUID;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connection to a Sentry server over HTTP and HTTPS, keeping a bounded pool of persistent HTTP/1.1 connections.
+ * <p>
+ * Unlike {@link HttpConnection}, the sockets (and TLS sessions) are kept open between two events and reused by the
+ * next submission, so the cost of the TCP and TLS handshakes is only paid when a new connection is opened.<br>
+ * Connections unused for longer than the idle timeout are closed, and at most {@code maxConnections} connections
+ * are open at any time. When all of them are busy, a submission waits up to the timeout for one to be released,
+ * and fails with a {@link PoolExhaustedException} otherwise, which doesn't lock the connection down.
+ * <p>
+ * Idle connections closed by the server are detected by a background thread reading from them every second, so
+ * that a submission reusing a connection only checks it without blocking.
+ * <p>
+ * A request is only retried on a new connection if it couldn't be written on a reused one: once a request has been
+ * written, the server may have processed it, so it is never sent twice.
+ * <p>
+ * This connection talks directly to the Sentry host and doesn't support HTTP proxies.
+ */
+public class PooledHttpConnection extends AbstractConnection implements PayloadConnection {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final Logger logger = LoggerFactory.getLogger(PooledHttpConnection.class);
+    /**
+     * Default timeout of an HTTP connection to Sentry.
+     */
+    private static final int DEFAULT_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(1);
+    /**
+     * Default time after which an unused connection is closed, in milliseconds.
+     */
+    private static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+    private static final int HTTP_PORT = 80;
+    private static final int HTTPS_PORT = 443;
+    private static final int HTTP_OK_MIN = 200;
+    private static final int HTTP_OK_MAX = 299;
+    private static final int HEX_RADIX = 16;
+    private static final int BUFFER_SIZE = 512;
+    /**
+     * Time to wait for data on an idle connection to check whether it has been closed by the server, in milliseconds.
+     */
+    private static final int STALE_CHECK_TIMEOUT = 1;
+    /**
+     * Delay between two checks of the idle connections, in milliseconds.
+     */
+    private static final long STALE_CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+    /**
+     * URL of the Sentry endpoint.
+     */
+    private final URL sentryUrl;
+    /**
+     * Whether connections must be established over TLS.
+     */
+    private final boolean secure;
+    /**
+     * Port of the Sentry endpoint.
+     */
+    private final int port;
+    /**
+     * Value of the Host header of every request.
+     */
+    private final String hostHeader;
+    /**
+     * Optional instance of an EventSampler to use.
+     */
+    private final EventSampler eventSampler;
+    /**
+     * Idle connections, the most recently used first.
+     */
+    private final BlockingDeque<PooledSocket> idleSockets = new LinkedBlockingDeque<PooledSocket>();
+    /**
+     * Permits to use a connection, bounding the number of connections open at once.
+     */
+    private final Semaphore permits;
+    /**
+     * Number of connections opened since the creation of this instance.
+     */
+    private final AtomicLong openedConnections = new AtomicLong();
+    /**
+     * Number of requests sent since the creation of this instance.
+     */
+    private final AtomicLong requests = new AtomicLong();
+    /**
+     * Number of requests sent over an already open connection.
+     */
+    private final AtomicLong reusedRequests = new AtomicLong();
+    /**
+     * Marshaller used to transform and send the {@link Event} over a stream.
+     */
+    private Marshaller marshaller;
+    /**
+     * Timeout to establish a connection, or to wait for one to be available, in milliseconds.
+     */
+    private int timeout = DEFAULT_TIMEOUT;
+    /**
+     * Time after which an unused connection is closed, in milliseconds.
+     */
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    /**
+     * Setting allowing to bypass the security system which requires wildcard certificates
+     * to be added to the truststore.
+     */
+    private boolean bypassSecurity = false;
+    /**
+     * Factory of the TLS connections, or null to use the default one.
+     */
+    private SSLSocketFactory sslSocketFactory;
+    /**
+     * Boolean used to check whether the connection is still open or not.
+     */
+    private volatile boolean closed = false;
+    /**
+     * Executor checking the idle connections, created in a verbose way to use daemon threads
+     * so that it doesn't keep the JVM running after main() exits.
+     */
+    private final ScheduledExecutorService staleChecker =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "raven-pool-checker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    /**
+     * Creates a pooled HTTP connection to a Sentry server.
+     *
+     * @param sentryUrl      URL to the Sentry API.
+     * @param publicKey      public key of the current project.
+     * @param secretKey      private key of the current project.
+     * @param eventSampler   EventSampler instance to use, or null to not sample events.
+     * @param maxConnections maximum number of connections open at the same time.
+     */
+    public PooledHttpConnection(URL sentryUrl, String publicKey, String secretKey, EventSampler eventSampler,
+                                int maxConnections) {
+        super(publicKey, secretKey);
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("The maximum number of connections must be at least 1, got "
+                + maxConnections);
+        }
+
+        this.sentryUrl = sentryUrl;
+        this.eventSampler = eventSampler;
+        this.permits = new Semaphore(maxConnections, true);
+        this.secure = "https".equalsIgnoreCase(sentryUrl.getProtocol());
+        int defaultPort = secure ? HTTPS_PORT : HTTP_PORT;
+        this.port = sentryUrl.getPort() != -1 ? sentryUrl.getPort() : defaultPort;
+        this.hostHeader = port == defaultPort ? sentryUrl.getHost() : sentryUrl.getHost() + ":" + port;
+
+        staleChecker.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkIdleSockets();
+            }
+        }, STALE_CHECK_INTERVAL, STALE_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected void doSend(Event event) throws ConnectionException {
+        if (eventSampler != null && !eventSampler.shouldSendEvent(event)) {
+            return;
+        }
+
+        // The body is marshalled first so that the Content-Length is known
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        marshaller.marshall(event, body);
+
+        send(new RequestBody() {
+            @Override
+            long length() {
+                return body.size();
+            }
+
+            @Override
+            void writeTo(OutputStream outputStream) throws IOException {
+                body.writeTo(outputStream);
+            }
+        });
+    }
+
+    @Override
+    public void sendPayload(UUID eventId, Event event, FileChannel payload) throws ConnectionException {
+        try {
+            checkLockdown(eventId);
+
+            if (event == null || eventSampler == null || eventSampler.shouldSendEvent(event)) {
+                doSendPayload(eventId, payload);
+            }
+
+            onSendSuccess();
+        } catch (ConnectionException e) {
+            onSendFailure(event, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Copies the marshalled event to the request as it was stored, without decoding nor marshalling it.
+     * <p>
+     * The payload is read from the same position on every attempt, so it can be written again on a new connection.
+     */
+    private void doSendPayload(UUID eventId, final FileChannel payload) throws ConnectionException {
+        final long start;
+        final long size;
+        try {
+            start = payload.position();
+            size = payload.size();
+        } catch (IOException e) {
+            throw new ConnectionException("Couldn't read the payload of the event " + eventId, e);
+        }
+
+        send(new RequestBody() {
+            @Override
+            long length() {
+                return size - start;
+            }
+
+            @Override
+            void writeTo(OutputStream outputStream) throws IOException {
+                WritableByteChannel channel = Channels.newChannel(outputStream);
+                long position = start;
+                while (position < size) {
+                    position += payload.transferTo(position, size - position, channel);
+                }
+            }
+        });
+    }
+
+    /**
+     * Sends a request on an idle connection, or on a new one if none of them can be used.
+     *
+     * @param body content of the request.
+     * @throws ConnectionException if the submission failed.
+     */
+    private void send(RequestBody body) throws ConnectionException {
+        acquirePermit();
+        try {
+            PooledSocket socket;
+            while ((socket = pollIdleSocket()) != null) {
+                try {
+                    submit(socket, body);
+                    return;
+                } catch (StaleConnectionException e) {
+                    // Nothing reached the server, the request can be sent on another connection
+                    logger.debug("Pooled connection to Sentry was closed by the server, trying another one.", e);
+                }
+            }
+
+            try {
+                socket = openSocket();
+            } catch (IOException e) {
+                throw new ConnectionException("Couldn't open a connection to the Sentry server.", e);
+            }
+            // A new connection is never considered as stale
+            submit(socket, body);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Sends the request on the given socket, and returns the socket to the pool if it can be reused.
+     *
+     * @param socket socket on which the request is sent.
+     * @param body   content of the request.
+     * @throws StaleConnectionException if the request couldn't be written on a reused socket.
+     * @throws ConnectionException      if the submission failed.
+     */
+    private void submit(PooledSocket socket, RequestBody body) throws ConnectionException {
+        boolean reusable = false;
+        try {
+            try {
+                writeRequest(socket.outputStream, body);
+            } catch (IOException e) {
+                if (socket.reused) {
+                    throw new StaleConnectionException(e);
+                }
+                throw e;
+            }
+
+            // From now on the server may have processed the request, it must not be retried
+            String statusLine = readLine(socket.inputStream);
+            if (statusLine == null) {
+                throw new EOFException("The connection was closed before a response was received.");
+            }
+
+            Response response = readResponse(socket.inputStream, statusLine);
+            requests.incrementAndGet();
+            if (socket.reused) {
+                reusedRequests.incrementAndGet();
+            }
+            reusable = response.keepAlive;
+
+            if (response.status < HTTP_OK_MIN || response.status > HTTP_OK_MAX) {
+                String errorMessage = new String(response.body.toByteArray(), UTF_8);
+                if (errorMessage.isEmpty()) {
+                    errorMessage = "An exception occurred while submitting the event to the Sentry server.";
+                }
+                throw new ConnectionException(errorMessage, new IOException("Server returned HTTP response code: "
+                    + response.status + " for URL: " + sentryUrl), response.retryAfterMs);
+            }
+        } catch (IOException e) {
+            throw new ConnectionException("An exception occurred while submitting the event to the Sentry server.", e);
+        } finally {
+            if (reusable && !closed) {
+                socket.reused = true;
+                socket.lastUsed = System.currentTimeMillis();
+                idleSockets.offerFirst(socket);
+            } else {
+                socket.close();
+            }
+        }
+    }
+
+    private void writeRequest(OutputStream outputStream, RequestBody body) throws IOException {
+        StringBuilder headers = new StringBuilder();
+        headers.append("POST ").append(sentryUrl.getFile()).append(" HTTP/1.1\r\n")
+            .append("Host: ").append(hostHeader).append("\r\n")
+            .append("User-Agent: ").append(RavenEnvironment.getRavenName()).append("\r\n")
+            .append("X-Sentry-Auth: ").append(getAuthHeader()).append("\r\n")
+            .append("Connection: keep-alive\r\n")
+            .append("Content-Length: ").append(body.length()).append("\r\n")
+            .append("\r\n");
+        outputStream.write(headers.toString().getBytes(ISO_8859_1));
+        body.writeTo(outputStream);
+        outputStream.flush();
+    }
+
+    /**
+     * Reads the headers and the body of a response, leaving the stream at the beginning of the next response.
+     */
+    private Response readResponse(InputStream inputStream, String statusLine) throws IOException {
+        Response response = new Response();
+        String[] statusParts = statusLine.split(" ", 3);
+        if (statusParts.length < 2 || !statusParts[0].startsWith("HTTP/")) {
+            throw new IOException("Invalid HTTP status line: " + statusLine);
+        }
+        try {
+            response.status = Integer.parseInt(statusParts[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid HTTP status line: " + statusLine);
+        }
+        response.keepAlive = !"HTTP/1.0".equals(statusParts[0]);
+
+        long contentLength = -1;
+        boolean chunked = false;
+        String line;
+        while ((line = readLine(inputStream)) != null && !line.isEmpty()) {
+            int separator = line.indexOf(':');
+            if (separator <= 0) {
+                continue;
+            }
+            String name = line.substring(0, separator).trim();
+            String value = line.substring(separator + 1).trim();
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                try {
+                    contentLength = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid Content-Length: " + value);
+                }
+            } else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+                chunked = value.toLowerCase().contains("chunked");
+            } else if ("Connection".equalsIgnoreCase(name)) {
+                if ("close".equalsIgnoreCase(value)) {
+                    response.keepAlive = false;
+                } else if ("keep-alive".equalsIgnoreCase(value)) {
+                    response.keepAlive = true;
+                }
+            } else if ("Retry-After".equalsIgnoreCase(name)) {
+                // CHECKSTYLE.OFF: EmptyCatchBlock
+                try {
+                    // CHECKSTYLE.OFF: MagicNumber
+                    response.retryAfterMs = Long.parseLong(value) * 1000L; // seconds -> milliseconds
+                    // CHECKSTYLE.ON: MagicNumber
+                } catch (NumberFormatException nfe) {
+                    // noop, use default retry
+                }
+                // CHECKSTYLE.ON: EmptyCatchBlock
+            }
+        }
+        if (line == null) {
+            throw new EOFException("The connection was closed while reading the response headers.");
+        }
+
+        if (chunked) {
+            readChunkedBody(inputStream, response.body);
+        } else if (contentLength >= 0) {
+            readBody(inputStream, response.body, contentLength);
+        } else {
+            // Without a length, the end of the body is the end of the connection
+            readBody(inputStream, response.body, Long.MAX_VALUE);
+            response.keepAlive = false;
+        }
+        return response;
+    }
+
+    private static void readChunkedBody(InputStream inputStream, OutputStream destination) throws IOException {
+        while (true) {
+            String sizeLine = readLine(inputStream);
+            if (sizeLine == null) {
+                throw new EOFException("The connection was closed while reading a chunk.");
+            }
+            int extension = sizeLine.indexOf(';');
+            if (extension != -1) {
+                sizeLine = sizeLine.substring(0, extension);
+            }
+            long chunkSize;
+            try {
+                chunkSize = Long.parseLong(sizeLine.trim(), HEX_RADIX);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid chunk size: " + sizeLine);
+            }
+            if (chunkSize == 0) {
+                // Skip the trailers
+                String trailer;
+                while ((trailer = readLine(inputStream)) != null && !trailer.isEmpty()) {
+                    continue;
+                }
+                return;
+            }
+            readBody(inputStream, destination, chunkSize);
+            readLine(inputStream);
+        }
+    }
+
+    private static void readBody(InputStream inputStream, OutputStream destination, long length) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long remaining = length;
+        while (remaining > 0) {
+            int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read == -1) {
+                if (length == Long.MAX_VALUE) {
+                    return;
+                }
+                throw new EOFException("The connection was closed while reading the response body.");
+            }
+            destination.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    /**
+     * Reads a line terminated by CRLF (or LF) from the stream.
+     *
+     * @return the line without its terminator, or null if the end of the stream was reached before any character.
+     */
+    private static String readLine(InputStream inputStream) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = inputStream.read()) != -1) {
+            if (c == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    /**
+     * Waits up to the {@link #timeout} for a connection to be available.
+     * <p>
+     * Every connection being busy isn't a failure of the Sentry server, so the {@link PoolExhaustedException} thrown
+     * otherwise doesn't initiate a lockdown.
+     */
+    private void acquirePermit() throws PoolExhaustedException {
+        try {
+            if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new PoolExhaustedException("No connection to the Sentry server became available in "
+                    + timeout + "ms.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PoolExhaustedException("Interrupted while waiting for a connection to the Sentry server.", e);
+        }
+    }
+
+    /**
+     * Takes the most recently used idle socket from the pool, closing the sockets idle for too long or closed by the
+     * server on the way.
+     *
+     * @return an idle socket, or null if none is available.
+     */
+    private PooledSocket pollIdleSocket() {
+        evictIdleSockets();
+        PooledSocket socket;
+        while ((socket = idleSockets.pollFirst()) != null) {
+            // Waits for the background check of this socket to complete, if it's running
+            synchronized (socket) {
+                if (!socket.isStale()) {
+                    return socket;
+                }
+            }
+            logger.debug("Pooled connection to Sentry was closed by the server.");
+            socket.close();
+        }
+        return null;
+    }
+
+    /**
+     * Reads from each idle connection, to close the ones closed by the server before a submission tries to use them.
+     */
+    private void checkIdleSockets() {
+        evictIdleSockets();
+        for (PooledSocket socket : idleSockets) {
+            synchronized (socket) {
+                // The socket may have been taken by a submission in the meantime
+                if (!idleSockets.contains(socket)) {
+                    continue;
+                }
+                // Sockets taken afterwards are closed by the submission, which sees them as stale
+                if (socket.probe(timeout) && idleSockets.removeFirstOccurrence(socket)) {
+                    logger.debug("Pooled connection to Sentry was closed by the server.");
+                    socket.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the connections that haven't been used for longer than the {@link #idleTimeout}.
+     */
+    private void evictIdleSockets() {
+        long expiry = System.currentTimeMillis() - idleTimeout;
+        PooledSocket oldest;
+        while ((oldest = idleSockets.peekLast()) != null && oldest.lastUsed < expiry) {
+            if (idleSockets.removeLastOccurrence(oldest)) {
+                logger.debug("Closing a connection to Sentry idle for more than {}ms.", idleTimeout);
+                oldest.close();
+            }
+        }
+    }
+
+    private PooledSocket openSocket() throws IOException {
+        String host = sentryUrl.getHost();
+        Socket socket = SocketFactory.getDefault().createSocket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.setSoTimeout(timeout);
+            socket.connect(new InetSocketAddress(host, port), timeout);
+            if (secure) {
+                SSLSocketFactory factory = sslSocketFactory != null
+                    ? sslSocketFactory : (SSLSocketFactory) SSLSocketFactory.getDefault();
+                SSLSocket sslSocket = (SSLSocket) factory.createSocket(socket, host, port, true);
+                if (!bypassSecurity) {
+                    // Checks that the certificate matches the host, as HttpsURLConnection does
+                    SSLParameters sslParameters = sslSocket.getSSLParameters();
+                    sslParameters.setEndpointIdentificationAlgorithm("HTTPS");
+                    sslSocket.setSSLParameters(sslParameters);
+                }
+                socket = sslSocket;
+                sslSocket.startHandshake();
+            }
+            openedConnections.incrementAndGet();
+            return new PooledSocket(socket);
+        } catch (IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.debug("An exception occurred while closing a connection to Sentry.", e);
+        }
+    }
+
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public void setMarshaller(Marshaller marshaller) {
+        this.marshaller = marshaller;
+    }
+
+    public void setBypassSecurity(boolean bypassSecurity) {
+        this.bypassSecurity = bypassSecurity;
+    }
+
+    public void setSslSocketFactory(SSLSocketFactory sslSocketFactory) {
+        this.sslSocketFactory = sslSocketFactory;
+    }
+
+    /**
+     * Number of connections opened to the Sentry server since the creation of this instance.
+     *
+     * @return the number of opened connections.
+     */
+    public long getOpenedConnections() {
+        return openedConnections.get();
+    }
+
+    /**
+     * Number of requests that received a response from the Sentry server since the creation of this instance.
+     *
+     * @return the number of requests.
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Number of requests sent over a connection that was already used by a previous request.
+     *
+     * @return the number of requests that didn't need to open a new connection.
+     */
+    public long getReusedRequests() {
+        return reusedRequests.get();
+    }
+
+    /**
+     * Ratio of requests sent over an already open connection.
+     *
+     * @return the reuse rate, between 0.0 and 1.0, or 0.0 if no request has been sent yet.
+     */
+    public double getReuseRate() {
+        long total = requests.get();
+        return total == 0 ? 0.0 : (double) reusedRequests.get() / total;
+    }
+
+    /**
+     * Number of connections currently idle in the pool.
+     *
+     * @return the number of idle connections.
+     */
+    public int getIdleConnections() {
+        return idleSockets.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        staleChecker.shutdownNow();
+        PooledSocket socket;
+        while ((socket = idleSockets.pollFirst()) != null) {
+            socket.close();
+        }
+    }
+
+    /**
+     * Persistent connection to the Sentry server with its buffered streams.
+     */
+    private static final class PooledSocket {
+        private final Socket socket;
+        private final InputStream inputStream;
+        private final OutputStream outputStream;
+        private volatile long lastUsed;
+        private volatile boolean reused;
+        /**
+         * Whether the server closed the connection, or sent something unexpected, while it was idle.
+         */
+        private volatile boolean stale;
+
+        private PooledSocket(Socket socket) throws IOException {
+            this.socket = socket;
+            this.inputStream = new BufferedInputStream(socket.getInputStream());
+            this.outputStream = new BufferedOutputStream(socket.getOutputStream());
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        /**
+         * Checks without blocking whether the connection can't be used anymore, based on the last {@link #probe}
+         * and on the data already received.
+         *
+         * @return true if the connection can't be used anymore.
+         */
+        private boolean isStale() {
+            if (stale || socket.isClosed() || socket.isInputShutdown()) {
+                return true;
+            }
+            try {
+                return inputStream.available() > 0;
+            } catch (IOException e) {
+                return true;
+            }
+        }
+
+        /**
+         * Reads from the idle connection to find out whether the server closed it (or sent something unexpected),
+         * waiting up to {@link #STALE_CHECK_TIMEOUT}.
+         *
+         * @param readTimeout read timeout to restore if the connection can be used.
+         * @return true if the connection can't be used anymore.
+         */
+        private boolean probe(int readTimeout) {
+            if (isStale()) {
+                stale = true;
+                return true;
+            }
+            try {
+                socket.setSoTimeout(STALE_CHECK_TIMEOUT);
+                try {
+                    inputStream.read();
+                    stale = true;
+                } catch (SocketTimeoutException e) {
+                    // Nothing to read, the connection is still open
+                    socket.setSoTimeout(readTimeout);
+                }
+            } catch (IOException e) {
+                stale = true;
+            }
+            return stale;
+        }
+
+        private void close() {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Content written in the body of a request to Sentry.
+     */
+    private abstract static class RequestBody {
+        abstract long length();
+
+        abstract void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    /**
+     * Status, relevant headers and body of an HTTP response.
+     */
+    private static final class Response {
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private int status;
+        private boolean keepAlive;
+        private Long retryAfterMs;
+    }
+
+    /**
+     * Signals that a pooled connection was closed by the server before the request could be written, in which case
+     * the request can safely be retried on a new connection.
+     */
+    private static final class StaleConnectionException extends ConnectionException {
+        private StaleConnectionException(Throwable cause) {
+            super("The pooled connection was closed by the Sentry server.", cause);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.getsentry.raven.connection;
+
+/**
+ * Behaviour of an asynchronous connection managing its own queue when an {@link com.getsentry.raven.event.Event}
+ * is sent while the queue is already full.
+ */
+public enum QueueOverflowPolicy {
+    /**
+     * Discards the oldest event in the queue to make room for the new one.
+     */
+    DISCARD_OLD,
+    /**
+     * Discards the new event that was attempting to be sent.
+     */
+    DISCARD_NEW,
+    /**
+     * Sends the new event synchronously on the current thread.
+     */
+    SYNC
+}
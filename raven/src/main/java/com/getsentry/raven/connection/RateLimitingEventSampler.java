@@ -0,0 +1,106 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decide whether {@link Event}s should be sent to the server by limiting the rate of events, overall and for each
+ * logger or fingerprint.
+ * <p>
+ * Each limit is a {@link TokenBucket}, allowing bursts of events up to its capacity, so checking an event doesn't
+ * take any lock.
+ */
+public class RateLimitingEventSampler implements EventSampler {
+    /**
+     * Maximum number of loggers or fingerprints tracked, the buckets are all reset once it's reached.
+     */
+    static final int MAX_TRACKED_KEYS = 10000;
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitingEventSampler.class);
+    private final TokenBucket globalBucket;
+    private final double loggerRate;
+    private final double fingerprintRate;
+    private final int burst;
+    private final ConcurrentMap<String, TokenBucket> loggerBuckets = new ConcurrentHashMap<String, TokenBucket>();
+    private final ConcurrentMap<String, TokenBucket> fingerprintBuckets =
+        new ConcurrentHashMap<String, TokenBucket>();
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    /**
+     * Construct a RateLimitingEventSampler with the given rates, in events per second.
+     *
+     * @param globalRate      maximum rate of all the events, or 0 for no global limit.
+     * @param loggerRate      maximum rate of the events of each logger, or 0 for no limit per logger.
+     * @param fingerprintRate maximum rate of the events of each fingerprint, or 0 for no limit per fingerprint.
+     * @param burst           maximum number of events allowed at once by each limit after a period of inactivity.
+     */
+    public RateLimitingEventSampler(double globalRate, double loggerRate, double fingerprintRate, int burst) {
+        this.globalBucket = globalRate > 0 ? new TokenBucket(globalRate, burst) : null;
+        this.loggerRate = loggerRate;
+        this.fingerprintRate = fingerprintRate;
+        this.burst = burst;
+    }
+
+    /**
+     * Handles event rate limiting logic.
+     *
+     * @param event Event to be checked against the rate limits.
+     * @return True if the event should be sent to the server, else False.
+     */
+    @Override
+    public boolean shouldSendEvent(Event event) {
+        // The most specific limits come first, so that a noisy logger doesn't use the tokens of the others
+        if ((fingerprintRate > 0 && !acquire(fingerprintBuckets, fingerprint(event), fingerprintRate))
+            || (loggerRate > 0 && !acquire(loggerBuckets, String.valueOf(event.getLogger()), loggerRate))
+            || (globalBucket != null && !globalBucket.tryAcquire())) {
+            droppedEvents.incrementAndGet();
+            logger.debug("Rate limit reached, the event '{}' won't be sent.", event.getId());
+            return false;
+        }
+        return true;
+    }
+
+    private boolean acquire(ConcurrentMap<String, TokenBucket> buckets, String key, double rate) {
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= MAX_TRACKED_KEYS) {
+                buckets.clear();
+            }
+            TokenBucket newBucket = new TokenBucket(rate, burst);
+            bucket = buckets.putIfAbsent(key, newBucket);
+            if (bucket == null) {
+                bucket = newBucket;
+            }
+        }
+        return bucket.tryAcquire();
+    }
+
+    /**
+     * Gets the value grouping the events limited together, the fingerprint of the event if it has one, its culprit
+     * and message otherwise.
+     *
+     * @param event event to group.
+     * @return the key of the bucket of the event.
+     */
+    private static String fingerprint(Event event) {
+        List<String> fingerprint = event.getFingerprint();
+        if (fingerprint != null && !fingerprint.isEmpty()) {
+            return fingerprint.toString();
+        }
+        return event.getCulprit() + '\n' + event.getMessage();
+    }
+
+    /**
+     * Returns the number of events which weren't sent because a rate limit was reached.
+     *
+     * @return the number of dropped events.
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+}
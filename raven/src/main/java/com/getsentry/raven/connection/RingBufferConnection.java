@@ -0,0 +1,321 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.Raven;
+import com.getsentry.raven.environment.RavenEnvironment;
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.util.RingBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous connection handing events to a single sender thread through a lock-free {@link RingBuffer}.
+ * <p>
+ * Unlike {@link AsyncConnection}, sending an event doesn't allocate a task nor take the lock of an executor queue:
+ * the event is stored in a preallocated slot with a compare-and-set, and the sender thread is only woken up when it
+ * was waiting for events. This keeps the contention low when many threads send events at the same time.
+ * <p>
+ * When the ring buffer is full, the {@link QueueOverflowPolicy} applies, and the dropped events are counted.
+ */
+public class RingBufferConnection implements Connection {
+    /**
+     * Maximum time for the sender thread to wait for new events before checking again if the connection has been
+     * closed, in nanoseconds.
+     */
+    private static final long PARK_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final Logger logger = LoggerFactory.getLogger(RingBufferConnection.class);
+    // CHECKSTYLE.OFF: ConstantName
+    private static final Logger lockdownLogger = LoggerFactory.getLogger(Raven.class.getName() + ".lockdown");
+    // CHECKSTYLE.ON: ConstantName
+    /**
+     * Connection used to actually send the events.
+     */
+    private final Connection actualConnection;
+    /**
+     * Events waiting to be sent.
+     */
+    private final RingBuffer<Event> ringBuffer;
+    /**
+     * Behaviour when an event is sent while the {@link #ringBuffer} is full.
+     */
+    private final QueueOverflowPolicy overflowPolicy;
+    /**
+     * Timeout of the {@link #senderThread} shutdown, in milliseconds.
+     */
+    private final long shutdownTimeout;
+    /**
+     * Thread sending the events.
+     */
+    private final Thread senderThread;
+    /**
+     * Number of new events dropped because the {@link #ringBuffer} was full.
+     */
+    private final AtomicLong droppedNewEvents = new AtomicLong();
+    /**
+     * Number of queued events dropped to make room for new ones.
+     */
+    private final AtomicLong droppedOldEvents = new AtomicLong();
+    /**
+     * Number of events sent on the calling thread because the {@link #ringBuffer} was full.
+     */
+    private final AtomicLong synchronousEvents = new AtomicLong();
+    /**
+     * Shutdown hook used to stop the connection properly when the JVM quits.
+     */
+    private final ShutDownHook shutDownHook = new ShutDownHook();
+    /**
+     * Boolean that represents if graceful shutdown is enabled.
+     */
+    private boolean gracefulShutdown;
+    /**
+     * Set while the {@link #senderThread} is parked, waiting for new events.
+     */
+    private volatile boolean senderWaiting;
+    /**
+     * Boolean used to check whether the connection is still open or not.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Creates a connection sending events from a ring buffer to the actual connection.
+     * <p>
+     * Will propagate the {@link #close()} operation.
+     *
+     * @param actualConnection connection used to send the events.
+     * @param capacity         minimum number of events waiting to be sent, rounded up to the next power of two.
+     * @param priority         priority of the thread sending the events.
+     * @param overflowPolicy   behaviour when an event is sent while the ring buffer is full.
+     * @param gracefulShutdown Indicates whether or not the shutdown operation should be managed by a ShutdownHook.
+     * @param shutdownTimeout  timeout for graceful shutdown of the sender thread, in milliseconds.
+     */
+    public RingBufferConnection(Connection actualConnection, int capacity, int priority,
+                                QueueOverflowPolicy overflowPolicy, boolean gracefulShutdown, long shutdownTimeout) {
+        this.actualConnection = actualConnection;
+        this.ringBuffer = new RingBuffer<Event>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.shutdownTimeout = shutdownTimeout;
+
+        this.senderThread = new Thread(new EventSender(), "raven-ring-buffer-sender");
+        this.senderThread.setDaemon(true);
+        this.senderThread.setPriority(priority);
+        this.senderThread.start();
+
+        if (gracefulShutdown) {
+            this.gracefulShutdown = gracefulShutdown;
+            // JUL loggers are shutdown by an other shutdown hook, it's possible that nothing will get actually logged.
+            Runtime.getRuntime().addShutdownHook(shutDownHook);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The event will be added to the ring buffer and will be sent by a separate {@code Thread} later on.
+     */
+    @Override
+    public void send(Event event) {
+        if (closed) {
+            return;
+        }
+
+        if (!ringBuffer.offer(event)) {
+            switch (overflowPolicy) {
+                case DISCARD_OLD:
+                    do {
+                        Event discarded = ringBuffer.poll();
+                        if (discarded != null) {
+                            droppedOldEvents.incrementAndGet();
+                            logger.debug("Ring buffer full, discarding the oldest event: {}", discarded.getId());
+                        }
+                    } while (!ringBuffer.offer(event));
+                    break;
+                case SYNC:
+                    synchronousEvents.incrementAndGet();
+                    doSend(event);
+                    return;
+                case DISCARD_NEW:
+                default:
+                    droppedNewEvents.incrementAndGet();
+                    logger.debug("Ring buffer full, discarding the event: {}", event.getId());
+                    return;
+            }
+        }
+
+        if (senderWaiting) {
+            LockSupport.unpark(senderThread);
+        }
+    }
+
+    /**
+     * Sends an event through the {@link #actualConnection}.
+     *
+     * @param event event to send.
+     */
+    private void doSend(Event event) {
+        RavenEnvironment.startManagingThread();
+        try {
+            // The current thread is managed by raven
+            actualConnection.send(event);
+        } catch (LockedDownException e) {
+            lockdownLogger.warn("The connection to Sentry is currently locked down.", e);
+        } catch (Exception e) {
+            logger.error("An exception occurred while sending the event to Sentry.", e);
+        } finally {
+            RavenEnvironment.stopManagingThread();
+        }
+    }
+
+    @Override
+    public void addEventSendFailureCallback(EventSendFailureCallback eventSendFailureCallback) {
+        actualConnection.addEventSendFailureCallback(eventSendFailureCallback);
+    }
+
+    /**
+     * Number of new events dropped because too many events were waiting to be sent.
+     *
+     * @return the number of new events dropped.
+     */
+    public long getDroppedNewEvents() {
+        return droppedNewEvents.get();
+    }
+
+    /**
+     * Number of queued events dropped to make room for new events.
+     *
+     * @return the number of old events dropped.
+     */
+    public long getDroppedOldEvents() {
+        return droppedOldEvents.get();
+    }
+
+    /**
+     * Number of events sent on the calling thread because too many events were waiting to be sent.
+     *
+     * @return the number of events sent synchronously.
+     */
+    public long getSynchronousEvents() {
+        return synchronousEvents.get();
+    }
+
+    /**
+     * Number of events waiting to be sent.
+     *
+     * @return the approximate number of queued events.
+     */
+    public int getQueuedEvents() {
+        return ringBuffer.size();
+    }
+
+    /**
+     * {@inheritDoc}.
+     * <p>
+     * Closing the {@link RingBufferConnection} will stop accepting new events and give the sender thread
+     * {@link #shutdownTimeout} milliseconds to send the events that are still queued.<br>
+     * If the shutdown times out, the sender thread will be interrupted and the remaining events dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        if (gracefulShutdown) {
+            shutDownHook.enabled = false;
+        }
+
+        doClose();
+    }
+
+    /**
+     * Close the connection whether it's from the shutdown hook or not.
+     *
+     * @see #close()
+     */
+    @SuppressWarnings("checkstyle:magicnumber")
+    private void doClose() throws IOException {
+        logger.info("Gracefully shutdown sentry ring buffer thread.");
+        closed = true;
+        LockSupport.unpark(senderThread);
+        try {
+            if (shutdownTimeout == -1L) {
+                // Block until the sender terminates, but log periodically.
+                long waitBetweenLoggingMs = 5000L;
+                while (true) {
+                    senderThread.join(waitBetweenLoggingMs);
+                    if (!senderThread.isAlive()) {
+                        break;
+                    }
+                    logger.info("Still waiting on ring buffer sender to terminate.");
+                }
+            } else {
+                senderThread.join(shutdownTimeout);
+                if (senderThread.isAlive()) {
+                    logger.warn("Graceful shutdown took too much time, forcing the shutdown.");
+                    senderThread.interrupt();
+                    logger.info("{} events failed to be sent before the shutdown.", ringBuffer.size());
+                }
+            }
+            logger.info("Shutdown finished.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Graceful shutdown interrupted, forcing the shutdown.");
+            senderThread.interrupt();
+            logger.info("{} events failed to be sent before the shutdown.", ringBuffer.size());
+        } finally {
+            actualConnection.close();
+        }
+    }
+
+    /**
+     * Runnable sending the events of the ring buffer until the connection is closed and the ring buffer is empty.
+     */
+    private final class EventSender implements Runnable {
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                Event event = ringBuffer.poll();
+                if (event != null) {
+                    doSend(event);
+                    continue;
+                }
+                if (closed) {
+                    return;
+                }
+
+                senderWaiting = true;
+                // Checks again once waiting is visible, so that a concurrent send can't be missed
+                if (ringBuffer.isEmpty() && !closed) {
+                    LockSupport.parkNanos(this, PARK_TIMEOUT);
+                }
+                senderWaiting = false;
+            }
+            logger.debug("Ring buffer sender interrupted, {} events left in the queue.", ringBuffer.size());
+        }
+    }
+
+    private final class ShutDownHook extends Thread {
+
+        /**
+         * Whether or not this ShutDownHook instance will do anything when run.
+         */
+        private volatile boolean enabled = true;
+
+        @Override
+        public void run() {
+            if (!enabled) {
+                return;
+            }
+
+            RavenEnvironment.startManagingThread();
+            try {
+                // The current thread is managed by raven
+                logger.info("Automatic shutdown of the ring buffer connection");
+                RingBufferConnection.this.doClose();
+            } catch (Exception e) {
+                logger.error("An exception occurred while closing the connection.", e);
+            } finally {
+                RavenEnvironment.stopManagingThread();
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.getsentry.raven.connection;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, allowing a sustained rate of permits with bursts up to the capacity of the bucket.
+ * <p>
+ * Instead of a number of tokens refilled periodically, the bucket only keeps the time since which tokens have been
+ * accumulating, one per interval between two permits (the generic cell rate algorithm). Taking a permit moves that
+ * time forward by one interval with a single compare-and-set, as long as it doesn't go past the current time.
+ */
+public final class TokenBucket {
+    private final long intervalNanos;
+    private final long capacityNanos;
+    /**
+     * Time since which tokens have been accumulating, as returned by {@link System#nanoTime()}.
+     */
+    private final AtomicLong emptyAt;
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param permitsPerSecond sustained rate of permits.
+     * @param capacity         maximum number of permits taken at once after a period of inactivity.
+     */
+    public TokenBucket(double permitsPerSecond, int capacity) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("The rate must be positive, got " + permitsPerSecond);
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least 1, got " + capacity);
+        }
+
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.capacityNanos = intervalNanos * capacity;
+        this.emptyAt = new AtomicLong(System.nanoTime() - capacityNanos);
+    }
+
+    /**
+     * Takes a permit if one is available.
+     *
+     * @return true if a permit was taken, false if the bucket is empty.
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    /**
+     * Takes a permit if one is available at the given time.
+     *
+     * @param now current time, as returned by {@link System#nanoTime()}.
+     * @return true if a permit was taken, false if the bucket is empty.
+     */
+    boolean tryAcquire(long now) {
+        while (true) {
+            long currentEmptyAt = emptyAt.get();
+            // A bucket full for a while doesn't hold more than its capacity
+            long newEmptyAt = Math.max(currentEmptyAt, now - capacityNanos) + intervalNanos;
+            if (newEmptyAt - now > 0) {
+                return false;
+            }
+            if (emptyAt.compareAndSet(currentEmptyAt, newEmptyAt)) {
+                return true;
+            }
+        }
+    }
+}
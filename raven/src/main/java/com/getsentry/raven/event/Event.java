@@ -293,8 +293,8 @@ public class Event implements Serializable {
     /**
      * Returns a serializable Map (HashMap) with the content of the parameter Map.
      * <p>
-     * Serializable objects are kept as is in the Map, while the non serializable ones are converted into string
-     * using the {@code toString()} method.
+     * Serializable objects and null values are kept as is in the Map, while the non serializable ones are converted
+     * into string using the {@code toString()} method.
      *
      * @param objectMap original Map containing various Objects.
      * @return A serializable map which contains only serializable entries.
@@ -303,7 +303,7 @@ public class Event implements Serializable {
     private static HashMap<String, ? super Serializable> convertToSerializable(Map<String, Object> objectMap) {
         HashMap<String, ? super Serializable> serializableMap = new HashMap<String, Serializable>(objectMap.size());
         for (Map.Entry<String, Object> objectEntry : objectMap.entrySet()) {
-            if (objectEntry.getValue() instanceof Serializable) {
+            if (objectEntry.getValue() == null || objectEntry.getValue() instanceof Serializable) {
                 serializableMap.put(objectEntry.getKey(), (Serializable) objectEntry.getValue());
             } else {
                 serializableMap.put(objectEntry.getKey(), objectEntry.getValue().toString());
@@ -2,14 +2,9 @@ package com.getsentry.raven.event;
 
 import com.getsentry.raven.environment.RavenEnvironment;
 import com.getsentry.raven.event.interfaces.SentryInterface;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.net.InetAddress;
 import java.nio.charset.Charset;
 import java.util.*;
-import java.util.concurrent.Callable;
-import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
@@ -37,6 +32,15 @@ public class EventBuilder {
     private final Event event;
     private boolean alreadyBuilt = false;
 
+    /**
+     * Returns the cache of the hostname used for the events without a server name.
+     *
+     * @return the hostname cache.
+     */
+    public static HostnameCache getHostnameCache() {
+        return HOSTNAME_CACHE;
+    }
+
     /**
      * Creates a new EventBuilder to prepare a new {@link Event}.
      * <p>
@@ -55,6 +59,42 @@ public class EventBuilder {
         this.event = new Event(eventId);
     }
 
+    /**
+     * Creates a new EventBuilder to prepare a copy of an already built {@link Event}, with the same identifier.
+     * <p>
+     * Allows to add details to an event which can't be modified anymore.
+     *
+     * @param originalEvent event to copy.
+     * @return an EventBuilder holding a modifiable copy of the event.
+     */
+    public static EventBuilder copyOf(Event originalEvent) {
+        EventBuilder eventBuilder = new EventBuilder(originalEvent.getId());
+        Event event = eventBuilder.event;
+        event.setMessage(originalEvent.getMessage());
+        event.setTimestamp(originalEvent.getTimestamp());
+        event.setLevel(originalEvent.getLevel());
+        event.setLogger(originalEvent.getLogger());
+        event.setPlatform(originalEvent.getPlatform());
+        event.setSdkName(originalEvent.getSdkName());
+        event.setSdkVersion(originalEvent.getSdkVersion());
+        event.setCulprit(originalEvent.getCulprit());
+        event.setServerName(originalEvent.getServerName());
+        event.setRelease(originalEvent.getRelease());
+        event.setEnvironment(originalEvent.getEnvironment());
+        event.setChecksum(originalEvent.getChecksum());
+        event.setFingerprint(originalEvent.getFingerprint());
+        event.setTags(new HashMap<String, String>(originalEvent.getTags()));
+        event.setBreadcrumbs(new ArrayList<Breadcrumb>(originalEvent.getBreadcrumbs()));
+        Map<String, Map<String, Object>> contexts = new HashMap<String, Map<String, Object>>();
+        for (Map.Entry<String, Map<String, Object>> context : originalEvent.getContexts().entrySet()) {
+            contexts.put(context.getKey(), new HashMap<String, Object>(context.getValue()));
+        }
+        event.setContexts(contexts);
+        event.setExtra(new HashMap<String, Object>(originalEvent.getExtra()));
+        event.setSentryInterfaces(new HashMap<String, SentryInterface>(originalEvent.getSentryInterfaces()));
+        return eventBuilder;
+    }
+
     /**
      * Calculates a checksum for a given string.
      *
@@ -426,85 +466,4 @@ public class EventBuilder {
                 + ", alreadyBuilt=" + alreadyBuilt
                 + '}';
     }
-
-    /**
-     * Time sensitive cache in charge of keeping track of the hostname.
-     * <p>
-     * The {@code InetAddress.getLocalHost().getCanonicalHostName()} call can be quite expensive and could be called
-     * for the creation of each {@link Event}. This system will prevent unnecessary costs by keeping track of the
-     * hostname for a period defined during the construction.<br>
-     * For performance purposes, the operation of retrieving the hostname will automatically fail after a period of
-     * time
-     * defined by {@link #GET_HOSTNAME_TIMEOUT} without result.
-     */
-    private static final class HostnameCache {
-        /**
-         * Time before the get hostname operation times out (in ms).
-         */
-        public static final long GET_HOSTNAME_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
-        private static final Logger logger = LoggerFactory.getLogger(HostnameCache.class);
-        /**
-         * Time for which the cache is kept.
-         */
-        private final long cacheDuration;
-        /**
-         * Current value for hostname (might change over time).
-         */
-        private String hostname = DEFAULT_HOSTNAME;
-        /**
-         * Time at which the cache should expire.
-         */
-        private long expirationTimestamp;
-
-        /**
-         * Sets up a cache for the hostname.
-         *
-         * @param cacheDuration cache duration in milliseconds.
-         */
-        private HostnameCache(long cacheDuration) {
-            this.cacheDuration = cacheDuration;
-        }
-
-        /**
-         * Gets the hostname of the current machine.
-         * <p>
-         * Gets the value from the cache if possible otherwise calls {@link #updateCache()}.
-         *
-         * @return the hostname of the current machine.
-         */
-        public String getHostname() {
-            if (expirationTimestamp < System.currentTimeMillis()) {
-                updateCache();
-            }
-
-            return hostname;
-        }
-
-        /**
-         * Force an update of the cache to get the current value of the hostname.
-         */
-        public void updateCache() {
-            FutureTask<String> futureTask = new FutureTask<String>(new HostRetriever());
-            try {
-                new Thread(futureTask).start();
-                logger.debug("Updating the hostname cache");
-                hostname = futureTask.get(GET_HOSTNAME_TIMEOUT, TimeUnit.MILLISECONDS);
-                expirationTimestamp = System.currentTimeMillis() + cacheDuration;
-            } catch (Exception e) {
-                futureTask.cancel(true);
-                expirationTimestamp = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(1);
-                logger.warn("Localhost hostname lookup failed, keeping the value '{}'", hostname, e);
-            }
-        }
-
-        /**
-         * Task retrieving the current hostname.
-         */
-        private static final class HostRetriever implements Callable<String> {
-            @Override
-            public String call() throws Exception {
-                return InetAddress.getLocalHost().getCanonicalHostName();
-            }
-        }
-    }
 }
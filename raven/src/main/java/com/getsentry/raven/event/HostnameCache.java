@@ -0,0 +1,197 @@
+package com.getsentry.raven.event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time sensitive cache in charge of keeping track of the hostname.
+ * <p>
+ * The {@code InetAddress.getLocalHost().getCanonicalHostName()} call can be quite expensive, and can block for a long
+ * time when the DNS is unavailable. The hostname is resolved by a background daemon thread and refreshed
+ * periodically, so that {@link #getHostname()} never waits for it. Until the first resolution completes, the hostname
+ * is {@link EventBuilder#DEFAULT_HOSTNAME}.
+ * <p>
+ * A failed resolution is retried after {@link #RETRY_DELAY}, the delay doubling after each consecutive failure up to
+ * the cache duration.
+ */
+public final class HostnameCache {
+    /**
+     * Time before the first failed resolution of the hostname is retried (in ms).
+     */
+    public static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(1);
+    private static final Logger logger = LoggerFactory.getLogger(HostnameCache.class);
+    /**
+     * Time for which the hostname is kept before being resolved again (in ms).
+     */
+    private final long cacheDuration;
+    /**
+     * Executor running the resolutions, or null to create a daemon thread when the resolution starts.
+     */
+    private ScheduledExecutorService executorService;
+    private final AtomicBoolean started = new AtomicBoolean();
+    /**
+     * Current value for hostname (might change over time).
+     */
+    private volatile String hostname = EventBuilder.DEFAULT_HOSTNAME;
+    private volatile long lastRefreshLatency = -1;
+    private final AtomicLong refreshFailures = new AtomicLong();
+    /**
+     * Time before the next failed resolution is retried (in ms), only used by the thread resolving the hostname.
+     */
+    private long retryDelay = RETRY_DELAY;
+    /**
+     * Whether the last resolution failed, only used by the thread resolving the hostname.
+     */
+    private boolean failing;
+    /**
+     * Released once the first resolution completed, successfully or not.
+     */
+    private final CountDownLatch firstRefresh = new CountDownLatch(1);
+
+    /**
+     * Sets up a cache for the hostname, resolved by its own daemon thread.
+     *
+     * @param cacheDuration cache duration in milliseconds.
+     */
+    HostnameCache(long cacheDuration) {
+        this(cacheDuration, null);
+    }
+
+    /**
+     * Sets up a cache for the hostname, resolved by the given executor.
+     * <p>
+     * This constructor is primarily visible for testing.
+     *
+     * @param cacheDuration   cache duration in milliseconds.
+     * @param executorService executor running the resolutions, or null to create a daemon thread.
+     */
+    HostnameCache(long cacheDuration, ScheduledExecutorService executorService) {
+        this.cacheDuration = cacheDuration;
+        this.executorService = executorService;
+    }
+
+    /**
+     * Gets the hostname of the current machine, without waiting for it to be resolved.
+     * <p>
+     * Starts the background resolution if it wasn't started yet.
+     *
+     * @return the last hostname resolved, or {@link EventBuilder#DEFAULT_HOSTNAME} if it isn't known yet.
+     */
+    public String getHostname() {
+        if (!started.get()) {
+            start();
+        }
+        return hostname;
+    }
+
+    /**
+     * Starts resolving the hostname in the background, if it isn't already.
+     */
+    public void start() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+
+        synchronized (this) {
+            if (executorService == null) {
+                executorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "raven-hostname");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+        }
+        schedule(0);
+    }
+
+    /**
+     * Waits for the first resolution of the hostname to complete, successfully or not.
+     *
+     * @param timeout maximum time to wait, in milliseconds.
+     * @return true if the first resolution completed, false if the timeout elapsed before.
+     */
+    public boolean awaitFirstRefresh(long timeout) {
+        try {
+            return firstRefresh.await(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void schedule(long delay) {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = executorService;
+        }
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                schedule(refresh());
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Resolves the hostname, keeping the last known value if it fails.
+     *
+     * @return the time before the next resolution, in milliseconds.
+     */
+    long refresh() {
+        long start = System.nanoTime();
+        try {
+            logger.debug("Updating the hostname cache");
+            hostname = InetAddress.getLocalHost().getCanonicalHostName();
+            if (failing) {
+                logger.info("Localhost hostname lookup succeeded again: '{}'", hostname);
+                failing = false;
+                retryDelay = RETRY_DELAY;
+            }
+            return cacheDuration;
+        } catch (Exception e) {
+            refreshFailures.incrementAndGet();
+            long delay = retryDelay;
+            if (!failing) {
+                logger.warn("Localhost hostname lookup failed, keeping the value '{}'", hostname, e);
+                failing = true;
+            } else {
+                logger.debug("Localhost hostname lookup failed again, retrying in {}ms", delay, e);
+            }
+            retryDelay = Math.max(Math.min(delay * 2, cacheDuration), RETRY_DELAY);
+            return delay;
+        } finally {
+            lastRefreshLatency = System.nanoTime() - start;
+            firstRefresh.countDown();
+        }
+    }
+
+    /**
+     * Returns the time taken by the last resolution of the hostname, successful or not.
+     *
+     * @return the duration of the last resolution in nanoseconds, or -1 if the hostname wasn't resolved yet.
+     */
+    public long getLastRefreshLatency() {
+        return lastRefreshLatency;
+    }
+
+    /**
+     * Returns the number of resolutions of the hostname which failed.
+     *
+     * @return the number of failed resolutions.
+     */
+    public long getRefreshFailures() {
+        return refreshFailures.get();
+    }
+}
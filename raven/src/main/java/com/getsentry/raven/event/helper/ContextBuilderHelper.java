@@ -14,8 +14,11 @@ import java.util.List;
 /**
  * {@link EventBuilderHelper} that extracts and sends any data attached to the
  * provided {@link Raven}'s {@link Context}.
+ * <p>
+ * The {@link Context} may be bound to the thread sending the event, depending on the
+ * {@link com.getsentry.raven.context.ContextManager}.
  */
-public class ContextBuilderHelper implements EventBuilderHelper {
+public class ContextBuilderHelper implements ThreadBoundEventBuilderHelper {
 
     /**
      * Raven object where the Context comes from.
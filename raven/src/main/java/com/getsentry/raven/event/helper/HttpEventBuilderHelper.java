@@ -2,6 +2,7 @@ package com.getsentry.raven.event.helper;
 
 import com.getsentry.raven.event.EventBuilder;
 import com.getsentry.raven.event.interfaces.HttpInterface;
+import com.getsentry.raven.event.interfaces.HttpSnapshotPolicy;
 import com.getsentry.raven.event.interfaces.UserInterface;
 import com.getsentry.raven.servlet.RavenServletRequestListener;
 
@@ -13,15 +14,16 @@ import javax.servlet.http.HttpServletRequest;
  * The {@link HttpServletRequest} is retrieved from a {@link ThreadLocal} storage. This means that this builder must
  * be called from the thread in which the HTTP request has been handled.
  */
-public class HttpEventBuilderHelper implements EventBuilderHelper {
+public class HttpEventBuilderHelper implements ThreadBoundEventBuilderHelper {
 
     private final RemoteAddressResolver remoteAddressResolver;
+    private final HttpSnapshotPolicy snapshotPolicy;
 
     /**
      * {@link EventBuilderHelper} that uses a {@link BasicRemoteAddressResolver}.
      */
     public HttpEventBuilderHelper() {
-        this.remoteAddressResolver = new BasicRemoteAddressResolver();
+        this(new BasicRemoteAddressResolver());
     }
 
     /**
@@ -30,7 +32,20 @@ public class HttpEventBuilderHelper implements EventBuilderHelper {
      * @param remoteAddressResolver RemoteAddressResolver
      */
     public HttpEventBuilderHelper(RemoteAddressResolver remoteAddressResolver) {
+        this(remoteAddressResolver, null);
+    }
+
+    /**
+     * {@link EventBuilderHelper} that uses the provided {@link RemoteAddressResolver} and captures only what the
+     * {@link HttpSnapshotPolicy} allows from the requests.
+     *
+     * @param remoteAddressResolver RemoteAddressResolver
+     * @param snapshotPolicy        policy limiting what is captured from the requests, or null to capture them
+     *                              entirely.
+     */
+    public HttpEventBuilderHelper(RemoteAddressResolver remoteAddressResolver, HttpSnapshotPolicy snapshotPolicy) {
         this.remoteAddressResolver = remoteAddressResolver;
+        this.snapshotPolicy = snapshotPolicy;
     }
 
     @Override
@@ -45,7 +60,13 @@ public class HttpEventBuilderHelper implements EventBuilderHelper {
     }
 
     private void addHttpInterface(EventBuilder eventBuilder, HttpServletRequest servletRequest) {
-        eventBuilder.withSentryInterface(new HttpInterface(servletRequest, remoteAddressResolver), false);
+        HttpInterface httpInterface;
+        if (snapshotPolicy != null) {
+            httpInterface = new HttpInterface(servletRequest, remoteAddressResolver, null, snapshotPolicy);
+        } else {
+            httpInterface = new HttpInterface(servletRequest, remoteAddressResolver);
+        }
+        eventBuilder.withSentryInterface(httpInterface, false);
     }
 
     private void addUserInterface(EventBuilder eventBuilder, HttpServletRequest servletRequest) {
@@ -62,4 +83,8 @@ public class HttpEventBuilderHelper implements EventBuilderHelper {
     public RemoteAddressResolver getRemoteAddressResolver() {
         return remoteAddressResolver;
     }
+
+    public HttpSnapshotPolicy getSnapshotPolicy() {
+        return snapshotPolicy;
+    }
 }
@@ -0,0 +1,9 @@
+package com.getsentry.raven.event.helper;
+
+/**
+ * {@link EventBuilderHelper} reading the state of the thread sending the event, such as a {@link ThreadLocal}.
+ * <p>
+ * When the events are built off the calling thread, these helpers still run on the thread sending the event.
+ */
+public interface ThreadBoundEventBuilderHelper extends EventBuilderHelper {
+}
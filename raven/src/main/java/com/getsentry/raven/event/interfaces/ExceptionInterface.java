@@ -1,24 +1,57 @@
 package com.getsentry.raven.event.interfaces;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.util.Deque;
 
 /**
  * The Exception interface for Sentry allowing to add an Exception details to an event.
+ * <p>
+ * When created from a {@link Throwable}, the chain of causes and their stack traces are only extracted the first
+ * time they are needed, usually when the event is marshalled by the connection.
  */
 public class ExceptionInterface implements SentryInterface {
     /**
      * Name of the exception interface in Sentry.
      */
     public static final String EXCEPTION_INTERFACE = "sentry.interfaces.Exception";
-    private final Deque<SentryException> exceptions;
+    /**
+     * Default maximum number of exceptions kept from a chain of causes.
+     */
+    public static final int DEFAULT_MAX_EXCEPTIONS = 32;
+    /**
+     * Default maximum number of frames kept from each stack trace.
+     */
+    public static final int DEFAULT_MAX_FRAMES = 256;
+    /**
+     * Throwable to extract the exceptions from, released once they are extracted.
+     */
+    private transient volatile Throwable throwable;
+    private final int maxExceptions;
+    private final int maxFrames;
+    private volatile Deque<SentryException> exceptions;
 
     /**
-     * Creates a new instance from the given {@code throwable}.
+     * Creates a new instance from the given {@code throwable}, keeping at most {@link #DEFAULT_MAX_EXCEPTIONS}
+     * exceptions of {@link #DEFAULT_MAX_FRAMES} frames.
      *
      * @param throwable the {@link Throwable} to build this instance from
      */
     public ExceptionInterface(final Throwable throwable) {
-        this(SentryException.extractExceptionQueue(throwable));
+        this(throwable, DEFAULT_MAX_EXCEPTIONS, DEFAULT_MAX_FRAMES);
+    }
+
+    /**
+     * Creates a new instance from the given {@code throwable}, bounding the chain of causes and the stack traces.
+     *
+     * @param throwable     the {@link Throwable} to build this instance from
+     * @param maxExceptions maximum number of exceptions kept from the chain of causes
+     * @param maxFrames     maximum number of frames kept from each stack trace, from the most recent one
+     */
+    public ExceptionInterface(final Throwable throwable, int maxExceptions, int maxFrames) {
+        this.throwable = throwable;
+        this.maxExceptions = maxExceptions;
+        this.maxFrames = maxFrames;
     }
 
     /**
@@ -28,6 +61,8 @@ public class ExceptionInterface implements SentryInterface {
      */
     public ExceptionInterface(final Deque<SentryException> exceptions) {
         this.exceptions = exceptions;
+        this.maxExceptions = Integer.MAX_VALUE;
+        this.maxFrames = Integer.MAX_VALUE;
     }
 
     @Override
@@ -35,14 +70,38 @@ public class ExceptionInterface implements SentryInterface {
         return EXCEPTION_INTERFACE;
     }
 
+    /**
+     * Gets the exceptions, extracting them from the throwable the first time.
+     *
+     * @return the exceptions from the most recent one to the oldest one.
+     */
     public Deque<SentryException> getExceptions() {
-        return exceptions;
+        Deque<SentryException> currentExceptions = exceptions;
+        if (currentExceptions == null) {
+            synchronized (this) {
+                currentExceptions = exceptions;
+                if (currentExceptions == null) {
+                    currentExceptions = SentryException.extractExceptionQueue(throwable, maxExceptions, maxFrames);
+                    exceptions = currentExceptions;
+                    throwable = null;
+                }
+            }
+        }
+        return currentExceptions;
+    }
+
+    /**
+     * Extracts the exceptions before serializing them, the throwable itself isn't serialized.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getExceptions();
+        out.defaultWriteObject();
     }
 
     @Override
     public String toString() {
         return "ExceptionInterface{"
-                + "exceptions=" + exceptions
+                + "exceptions=" + getExceptions()
                 + '}';
     }
 
@@ -57,12 +116,12 @@ public class ExceptionInterface implements SentryInterface {
 
         ExceptionInterface that = (ExceptionInterface) o;
 
-        return exceptions.equals(that.exceptions);
+        return getExceptions().equals(that.getExceptions());
 
     }
 
     @Override
     public int hashCode() {
-        return exceptions.hashCode();
+        return getExceptions().hashCode();
     }
 }
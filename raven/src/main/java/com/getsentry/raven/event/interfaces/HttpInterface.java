@@ -17,7 +17,10 @@ public class HttpInterface implements SentryInterface {
     public static final String HTTP_INTERFACE = "sentry.interfaces.Http";
     private final String requestUrl;
     private final String method;
-    private final Map<String, Collection<String>> parameters;
+    /**
+     * Parameters of the request, built lazily from the snapshot if the request was captured with a policy.
+     */
+    private volatile Map<String, Collection<String>> parameters;
     private final String queryString;
     private final Map<String, String> cookies;
     private final String remoteAddr;
@@ -31,8 +34,15 @@ public class HttpInterface implements SentryInterface {
     private final boolean asyncStarted;
     private final String authType;
     private final String remoteUser;
-    private final Map<String, Collection<String>> headers;
+    /**
+     * Headers of the request, built lazily from the snapshot if the request was captured with a policy.
+     */
+    private volatile Map<String, Collection<String>> headers;
     private final String body;
+    private final String[] parameterNames;
+    private final String[][] parameterValues;
+    private final String[] headerNames;
+    private final String[][] headerValues;
 
     /**
      * This constructor is for compatibility reasons and should not be used.
@@ -92,6 +102,130 @@ public class HttpInterface implements SentryInterface {
             this.headers.put(headerName, Collections.list(request.getHeaders(headerName)));
         }
         this.body = body;
+        this.parameterNames = null;
+        this.parameterValues = null;
+        this.headerNames = null;
+        this.headerValues = null;
+    }
+
+    /**
+     * Creates an HTTP element for an {@link com.getsentry.raven.event.Event}, capturing only what the policy allows.
+     * <p>
+     * The values of the allowed headers and parameters are kept in arrays sized for the policy, the maps returned by
+     * {@link #getHeaders()} and {@link #getParameters()} are only built when they're first used. Cookies aren't
+     * captured, except in the {@code Cookie} header if it is allowed.
+     *
+     * @param request Captured HTTP request to send to Sentry.
+     * @param remoteAddressResolver RemoteAddressResolver
+     * @param body HTTP request body (optional)
+     * @param snapshotPolicy headers, parameters and maximum length of the values to capture.
+     */
+    public HttpInterface(HttpServletRequest request, RemoteAddressResolver remoteAddressResolver, String body,
+                         HttpSnapshotPolicy snapshotPolicy) {
+        this.requestUrl = request.getRequestURL().toString();
+        this.method = request.getMethod();
+        this.queryString = snapshotPolicy.truncate(request.getQueryString());
+        this.cookies = Collections.emptyMap();
+        this.remoteAddr = remoteAddressResolver.getRemoteAddress(request);
+        this.serverName = request.getServerName();
+        this.serverPort = request.getServerPort();
+        this.localAddr = request.getLocalAddr();
+        this.localName = request.getLocalName();
+        this.localPort = request.getLocalPort();
+        this.protocol = request.getProtocol();
+        this.secure = request.isSecure();
+        this.asyncStarted = request.isAsyncStarted();
+        this.authType = request.getAuthType();
+        this.remoteUser = request.getRemoteUser();
+        this.body = snapshotPolicy.truncate(body);
+
+        this.parameterNames = snapshotPolicy.getParameterNames();
+        this.parameterValues = new String[parameterNames.length][];
+        for (int i = 0; i < parameterNames.length; i++) {
+            String[] values = request.getParameterValues(parameterNames[i]);
+            if (values != null) {
+                parameterValues[i] = new String[values.length];
+                for (int j = 0; j < values.length; j++) {
+                    parameterValues[i][j] = snapshotPolicy.truncate(values[j]);
+                }
+            }
+        }
+
+        this.headerNames = snapshotPolicy.getHeaderNames();
+        this.headerValues = new String[headerNames.length][];
+        for (int i = 0; i < headerNames.length; i++) {
+            headerValues[i] = captureValues(request.getHeaders(headerNames[i]), snapshotPolicy);
+        }
+    }
+
+    private static String[] captureValues(Enumeration<String> values, HttpSnapshotPolicy snapshotPolicy) {
+        if (values == null || !values.hasMoreElements()) {
+            return null;
+        }
+
+        // Most headers have a single value
+        String[] captured = new String[1];
+        int count = 0;
+        while (values.hasMoreElements()) {
+            if (count == captured.length) {
+                captured = Arrays.copyOf(captured, count * 2);
+            }
+            captured[count++] = snapshotPolicy.truncate(values.nextElement());
+        }
+        return count == captured.length ? captured : Arrays.copyOf(captured, count);
+    }
+
+    /**
+     * Creates an HTTP element from the values of an already captured HTTP request.
+     *
+     * @param requestUrl   URL of the request.
+     * @param method       HTTP method of the request.
+     * @param parameters   parameters of the request.
+     * @param queryString  query string of the request.
+     * @param cookies      cookies sent with the request.
+     * @param remoteAddr   address of the client.
+     * @param serverName   name of the server.
+     * @param serverPort   port of the server.
+     * @param localAddr    address of the interface which received the request.
+     * @param localName    name of the interface which received the request.
+     * @param localPort    port of the interface which received the request.
+     * @param protocol     protocol of the request.
+     * @param secure       whether the request was made over a secure channel.
+     * @param asyncStarted whether the request was put in asynchronous mode.
+     * @param authType     authentication scheme of the request.
+     * @param remoteUser   login of the authenticated user.
+     * @param headers      headers of the request.
+     * @param body         HTTP request body (optional).
+     */
+    // CHECKSTYLE.OFF: ParameterNumber
+    public HttpInterface(String requestUrl, String method, Map<String, Collection<String>> parameters,
+                         String queryString, Map<String, String> cookies, String remoteAddr, String serverName,
+                         int serverPort, String localAddr, String localName, int localPort, String protocol,
+                         boolean secure, boolean asyncStarted, String authType, String remoteUser,
+                         Map<String, Collection<String>> headers, String body) {
+        // CHECKSTYLE.ON: ParameterNumber
+        this.requestUrl = requestUrl;
+        this.method = method;
+        this.parameters = parameters;
+        this.queryString = queryString;
+        this.cookies = cookies;
+        this.remoteAddr = remoteAddr;
+        this.serverName = serverName;
+        this.serverPort = serverPort;
+        this.localAddr = localAddr;
+        this.localName = localName;
+        this.localPort = localPort;
+        this.protocol = protocol;
+        this.secure = secure;
+        this.asyncStarted = asyncStarted;
+        this.authType = authType;
+        this.remoteUser = remoteUser;
+        this.headers = headers;
+        this.body = body;
+        this.parameterNames = null;
+        this.parameterValues = null;
+        this.headerNames = null;
+        this.headerValues = null;
     }
 
     @Override
@@ -108,7 +242,12 @@ public class HttpInterface implements SentryInterface {
     }
 
     public Map<String, Collection<String>> getParameters() {
-        return Collections.unmodifiableMap(parameters);
+        Map<String, Collection<String>> currentParameters = parameters;
+        if (currentParameters == null) {
+            currentParameters = toMap(parameterNames, parameterValues);
+            parameters = currentParameters;
+        }
+        return Collections.unmodifiableMap(currentParameters);
     }
 
     public String getQueryString() {
@@ -168,7 +307,22 @@ public class HttpInterface implements SentryInterface {
     }
 
     public Map<String, Collection<String>> getHeaders() {
-        return Collections.unmodifiableMap(headers);
+        Map<String, Collection<String>> currentHeaders = headers;
+        if (currentHeaders == null) {
+            currentHeaders = toMap(headerNames, headerValues);
+            headers = currentHeaders;
+        }
+        return Collections.unmodifiableMap(currentHeaders);
+    }
+
+    private static Map<String, Collection<String>> toMap(String[] names, String[][] values) {
+        Map<String, Collection<String>> map = new HashMap<String, Collection<String>>();
+        for (int i = 0; i < names.length; i++) {
+            if (values[i] != null) {
+                map.put(names[i], Arrays.asList(values[i]));
+            }
+        }
+        return map;
     }
 
     @Override
@@ -177,7 +331,7 @@ public class HttpInterface implements SentryInterface {
             + "requestUrl='" + requestUrl + '\''
             + ", method='" + method + '\''
             + ", queryString='" + queryString + '\''
-            + ", parameters=" + parameters
+            + ", parameters=" + getParameters()
             + '}';
     }
 
@@ -210,7 +364,7 @@ public class HttpInterface implements SentryInterface {
         if (!cookies.equals(that.cookies)) {
             return false;
         }
-        if (!headers.equals(that.headers)) {
+        if (!getHeaders().equals(that.getHeaders())) {
             return false;
         }
         if (localAddr != null ? !localAddr.equals(that.localAddr) : that.localAddr != null) {
@@ -222,7 +376,7 @@ public class HttpInterface implements SentryInterface {
         if (method != null ? !method.equals(that.method) : that.method != null) {
             return false;
         }
-        if (!parameters.equals(that.parameters)) {
+        if (!getParameters().equals(that.getParameters())) {
             return false;
         }
         if (protocol != null ? !protocol.equals(that.protocol) : that.protocol != null) {
@@ -254,7 +408,7 @@ public class HttpInterface implements SentryInterface {
     public int hashCode() {
         int result = requestUrl.hashCode();
         result = 31 * result + (method != null ? method.hashCode() : 0);
-        result = 31 * result + parameters.hashCode();
+        result = 31 * result + getParameters().hashCode();
         return result;
     }
 }
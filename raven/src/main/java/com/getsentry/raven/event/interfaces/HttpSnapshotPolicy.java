@@ -0,0 +1,64 @@
+package com.getsentry.raven.event.interfaces;
+
+import com.getsentry.raven.util.Util;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+/**
+ * Limits what is captured from an HTTP request by {@link HttpInterface}.
+ * <p>
+ * Only the allowed headers and parameters are read from the request, and every value is truncated to a maximum
+ * length, so capturing a request doesn't copy all of its content.
+ */
+public final class HttpSnapshotPolicy implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * Truncated values end with an ellipsis, which must fit.
+     */
+    private static final int MIN_VALUE_LENGTH = 3;
+    private final String[] headerNames;
+    private final String[] parameterNames;
+    private final int maxValueLength;
+
+    /**
+     * Creates a policy capturing only the given headers and parameters.
+     *
+     * @param headerNames    names of the headers to capture, case insensitive.
+     * @param parameterNames names of the parameters to capture.
+     * @param maxValueLength maximum length of each captured value and of the body.
+     */
+    public HttpSnapshotPolicy(Collection<String> headerNames, Collection<String> parameterNames,
+                              int maxValueLength) {
+        if (maxValueLength < MIN_VALUE_LENGTH) {
+            throw new IllegalArgumentException("The maximum length must be at least " + MIN_VALUE_LENGTH
+                + ", got " + maxValueLength);
+        }
+
+        this.headerNames = headerNames.toArray(new String[headerNames.size()]);
+        this.parameterNames = parameterNames.toArray(new String[parameterNames.size()]);
+        this.maxValueLength = maxValueLength;
+    }
+
+    String[] getHeaderNames() {
+        return headerNames;
+    }
+
+    String[] getParameterNames() {
+        return parameterNames;
+    }
+
+    public int getMaxValueLength() {
+        return maxValueLength;
+    }
+
+    /**
+     * Truncates a captured value to the maximum length.
+     *
+     * @param value value to truncate.
+     * @return the value, truncated if it was too long.
+     */
+    String truncate(String value) {
+        return Util.trimString(value, maxValueLength);
+    }
+}
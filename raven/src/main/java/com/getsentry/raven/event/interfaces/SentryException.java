@@ -2,9 +2,9 @@ package com.getsentry.raven.event.interfaces;
 
 import java.io.Serializable;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
 
 /**
  * Class associating a Sentry exception to its {@link StackTraceInterface}.
@@ -14,6 +14,7 @@ public final class SentryException implements Serializable {
      * Name used when the class' package is the default one.
      */
     public static final String DEFAULT_PACKAGE_NAME = "(default)";
+    private static final StackTraceElement[] NO_FRAMES = new StackTraceElement[0];
     private final String exceptionMessage;
     private final String exceptionClassName;
     private final String exceptionPackageName;
@@ -29,11 +30,20 @@ public final class SentryException implements Serializable {
      * @param childExceptionStackTrace StackTrace of the exception caused by {@code throwable}.
      */
     public SentryException(Throwable throwable, StackTraceElement[] childExceptionStackTrace) {
+        this(throwable, throwable.getStackTrace(), childExceptionStackTrace, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a Sentry exception sharing the stack trace already obtained from the throwable, keeping at most
+     * {@code maxFrames} frames from the most recent one.
+     */
+    private SentryException(Throwable throwable, StackTraceElement[] stackTrace,
+                            StackTraceElement[] childExceptionStackTrace, int maxFrames) {
         this.exceptionMessage = throwable.getMessage();
         this.exceptionClassName = throwable.getClass().getSimpleName();
         Package exceptionPackage = throwable.getClass().getPackage();
         this.exceptionPackageName = exceptionPackage != null ? exceptionPackage.getName() : null;
-        this.stackTraceInterface = new StackTraceInterface(throwable.getStackTrace(), childExceptionStackTrace);
+        this.stackTraceInterface = StackTraceInterface.sharing(stackTrace, childExceptionStackTrace, maxFrames);
     }
 
     /**
@@ -63,20 +73,52 @@ public final class SentryException implements Serializable {
      * @return a queue of exception with StackTrace.
      */
     public static Deque<SentryException> extractExceptionQueue(Throwable throwable) {
+        return extractExceptionQueue(throwable, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Transforms a {@link Throwable} into a Queue of {@link SentryException}, bounding the length of the chain of
+     * causes and the number of frames of each stack trace.
+     * <p>
+     * Exceptions are stored in the queue from the most recent one to the oldest one. The most recent frames of each
+     * stack trace are kept.
+     *
+     * @param throwable     throwable to transform in a queue of exceptions.
+     * @param maxExceptions maximum number of exceptions kept from the chain of causes.
+     * @param maxFrames     maximum number of frames kept from each stack trace.
+     * @return a queue of exception with StackTrace.
+     */
+    public static Deque<SentryException> extractExceptionQueue(Throwable throwable, int maxExceptions,
+                                                               int maxFrames) {
         Deque<SentryException> exceptions = new ArrayDeque<SentryException>();
-        Set<Throwable> circularityDetector = new HashSet<Throwable>();
-        StackTraceElement[] childExceptionStackTrace = new StackTraceElement[0];
+        List<Throwable> extracted = new ArrayList<Throwable>();
+        StackTraceElement[] childExceptionStackTrace = NO_FRAMES;
 
         //Stack the exceptions to send them in the reverse order
-        while (throwable != null && circularityDetector.add(throwable)) {
-            exceptions.add(new SentryException(throwable, childExceptionStackTrace));
-            childExceptionStackTrace = throwable.getStackTrace();
+        while (throwable != null && extracted.size() < maxExceptions && !containsInstance(extracted, throwable)) {
+            // Throwable.getStackTrace() returns a new copy of the stack trace on every call
+            StackTraceElement[] stackTrace = throwable.getStackTrace();
+            exceptions.add(new SentryException(throwable, stackTrace, childExceptionStackTrace, maxFrames));
+            extracted.add(throwable);
+            childExceptionStackTrace = stackTrace;
             throwable = throwable.getCause();
         }
 
         return exceptions;
     }
 
+    /**
+     * Detects circular chains of causes, which are short enough to be scanned rather than hashed.
+     */
+    private static boolean containsInstance(List<Throwable> throwables, Throwable throwable) {
+        for (Throwable extracted : throwables) {
+            if (extracted == throwable) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public String getExceptionMessage() {
         return exceptionMessage;
     }
@@ -33,15 +33,57 @@ public class StackTraceInterface implements SentryInterface {
      *                            are in common.
      */
     public StackTraceInterface(StackTraceElement[] stackTrace, StackTraceElement[] enclosingStackTrace) {
-        this.stackTrace = Arrays.copyOf(stackTrace, stackTrace.length);
+        this(countCommonFrames(stackTrace, enclosingStackTrace), Arrays.copyOf(stackTrace, stackTrace.length));
+    }
+
+    /**
+     * Creates a StackTrace for an {@link com.getsentry.raven.event.Event}, when the number of frames in common
+     * with the enclosing exception is already known.
+     *
+     * @param stackTrace                StackTrace to provide to Sentry.
+     * @param framesCommonWithEnclosing number of frames in common with the StackTrace of the enclosing exception.
+     */
+    public StackTraceInterface(StackTraceElement[] stackTrace, int framesCommonWithEnclosing) {
+        this(framesCommonWithEnclosing, Arrays.copyOf(stackTrace, stackTrace.length));
+    }
+
+    /**
+     * Creates a StackTrace without copying the {@code stackTrace} array.
+     */
+    private StackTraceInterface(int framesCommonWithEnclosing, StackTraceElement[] stackTrace) {
+        this.stackTrace = stackTrace;
+        this.framesCommonWithEnclosing = framesCommonWithEnclosing;
+    }
+
+    /**
+     * Creates a StackTrace taking ownership of the {@code stackTrace} array instead of copying it, keeping at most
+     * {@code maxFrames} frames from the most recent one.
+     *
+     * @param stackTrace          StackTrace to provide to Sentry, not modified afterwards.
+     * @param enclosingStackTrace StackTrace of the enclosing exception, to determine how many Stack frames
+     *                            are in common.
+     * @param maxFrames           maximum number of frames kept.
+     * @return a StackTrace sharing the {@code stackTrace} array, unless it had to be truncated.
+     */
+    static StackTraceInterface sharing(StackTraceElement[] stackTrace, StackTraceElement[] enclosingStackTrace,
+                                       int maxFrames) {
+        int framesCommonWithEnclosing = countCommonFrames(stackTrace, enclosingStackTrace);
+        if (stackTrace.length > maxFrames) {
+            // The common frames are the oldest ones, the ones dropped first
+            framesCommonWithEnclosing = Math.max(0, framesCommonWithEnclosing - (stackTrace.length - maxFrames));
+            stackTrace = Arrays.copyOf(stackTrace, maxFrames);
+        }
+        return new StackTraceInterface(framesCommonWithEnclosing, stackTrace);
+    }
 
+    private static int countCommonFrames(StackTraceElement[] stackTrace, StackTraceElement[] enclosingStackTrace) {
         int m = stackTrace.length - 1;
         int n = enclosingStackTrace.length - 1;
         while (m >= 0 && n >= 0 && stackTrace[m].equals(enclosingStackTrace[n])) {
             m--;
             n--;
         }
-        framesCommonWithEnclosing = stackTrace.length - 1 - m;
+        return stackTrace.length - 1 - m;
     }
 
     @Override
@@ -49,10 +91,36 @@ public class StackTraceInterface implements SentryInterface {
         return STACKTRACE_INTERFACE;
     }
 
+    /**
+     * Gets a copy of the frames of the StackTrace, from the most recent one.
+     * <p>
+     * {@link #getFrameCount()} and {@link #getFrame(int)} read the frames without copying them.
+     *
+     * @return the frames of the StackTrace.
+     */
     public StackTraceElement[] getStackTrace() {
         return Arrays.copyOf(stackTrace, stackTrace.length);
     }
 
+    /**
+     * Gets the number of frames of the StackTrace.
+     *
+     * @return the number of frames.
+     */
+    public int getFrameCount() {
+        return stackTrace.length;
+    }
+
+    /**
+     * Gets a frame of the StackTrace, without copying the frames.
+     *
+     * @param index index of the frame, 0 being the most recent one.
+     * @return the frame at {@code index}.
+     */
+    public StackTraceElement getFrame(int index) {
+        return stackTrace[index];
+    }
+
     public int getFramesCommonWithEnclosing() {
         return framesCommonWithEnclosing;
     }
@@ -246,8 +246,18 @@ public class SentryHandler extends Handler {
         RavenEnvironment.startManagingThread();
         try {
             lazyInit();
+            // Dropped events aren't built at all
+            if (!raven.shouldSendEvent()) {
+                return;
+            }
+            if (raven.isEventBuildingAsync()) {
+                raven.buildAndSendEvent(createEventBuilder(record));
+                return;
+            }
             Event event = buildEvent(record);
-            raven.sendEvent(event);
+            if (event != null) {
+                raven.sendSampledEvent(event);
+            }
         } catch (Exception e) {
             reportError("An exception occurred while creating a new event in Raven", e, ErrorManager.WRITE_FAILURE);
         } finally {
@@ -277,9 +287,26 @@ public class SentryHandler extends Handler {
      * Builds an Event based on the log record.
      *
      * @param record Log generated.
-     * @return Event containing details provided by the logging system.
+     * @return Event containing details provided by the logging system, or null if the event was dropped while
+     * running the builder helpers.
      */
     protected Event buildEvent(LogRecord record) {
+        EventBuilder eventBuilder = createEventBuilder(record);
+        if (!raven.runBuilderHelpers(eventBuilder)) {
+            return null;
+        }
+        return eventBuilder.build();
+    }
+
+    /**
+     * Captures the details of the log record in an EventBuilder, without running the builder helpers.
+     * <p>
+     * When the events are built asynchronously, this is the only part running on the logging thread.
+     *
+     * @param record Log generated.
+     * @return EventBuilder containing details provided by the logging system.
+     */
+    protected EventBuilder createEventBuilder(LogRecord record) {
         EventBuilder eventBuilder = new EventBuilder()
             .withSdkName(RavenEnvironment.SDK_NAME + ":jul")
             .withLevel(getLevel(record.getLevel()))
@@ -350,8 +377,7 @@ public class SentryHandler extends Handler {
             eventBuilder.withServerName(serverName.trim());
         }
 
-        raven.runBuilderHelpers(eventBuilder);
-        return eventBuilder.build();
+        return eventBuilder;
     }
 
     /**
@@ -0,0 +1,88 @@
+package com.getsentry.raven.marshaller.json;
+
+import com.getsentry.raven.event.interfaces.StackTraceInterface;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of the UTF-8 encoded JSON representation of stack traces.
+ * <p>
+ * A stack trace is identified by its frames and by the number of frames it has in common with its enclosing
+ * exception, which both change the JSON content.
+ */
+final class EncodedStackTraceCache {
+    private final Map<Key, byte[]> cache;
+
+    /**
+     * Creates a cache holding up to {@code maxSize} stack traces.
+     *
+     * @param maxSize maximum number of stack traces in the cache.
+     */
+    EncodedStackTraceCache(final int maxSize) {
+        this.cache = new LinkedHashMap<Key, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Gets the JSON representation of a stack trace.
+     *
+     * @param stackTrace                 stack trace, identified by its frames.
+     * @param framesCommonWithEnclosing  number of frames in common with the enclosing exception.
+     * @return the JSON representation of the stack trace, or null if it isn't in the cache.
+     */
+    synchronized byte[] get(StackTraceInterface stackTrace, int framesCommonWithEnclosing) {
+        return cache.get(new Key(stackTrace, framesCommonWithEnclosing));
+    }
+
+    /**
+     * Stores the JSON representation of a stack trace, evicting the least recently used one if the cache is full.
+     *
+     * @param stackTrace                 stack trace, identified by its frames.
+     * @param framesCommonWithEnclosing  number of frames in common with the enclosing exception.
+     * @param json                       JSON representation of the stack trace.
+     */
+    synchronized void put(StackTraceInterface stackTrace, int framesCommonWithEnclosing, byte[] json) {
+        cache.put(new Key(stackTrace, framesCommonWithEnclosing), json);
+    }
+
+    synchronized int size() {
+        return cache.size();
+    }
+
+    private static final class Key {
+        private final StackTraceInterface stackTrace;
+        private final int framesCommonWithEnclosing;
+        private final int hashCode;
+
+        private Key(StackTraceInterface stackTrace, int framesCommonWithEnclosing) {
+            this.stackTrace = stackTrace;
+            this.framesCommonWithEnclosing = framesCommonWithEnclosing;
+            this.hashCode = 31 * stackTrace.hashCode() + framesCommonWithEnclosing;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            Key key = (Key) o;
+            return hashCode == key.hashCode
+                && framesCommonWithEnclosing == key.framesCommonWithEnclosing
+                && stackTrace.equals(key.stackTrace);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
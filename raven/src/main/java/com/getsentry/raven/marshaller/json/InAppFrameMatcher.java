@@ -0,0 +1,111 @@
+package com.getsentry.raven.marshaller.json;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tells whether a class is part of the application, based on the prefixes of the in-app classes.
+ * <p>
+ * The prefixes are compiled in a trie, so that a class name is matched in a time proportional to its length whatever
+ * the number of prefixes. The decisions are also cached per class name, as the same classes show up in most of the
+ * stack traces of an application.
+ */
+final class InAppFrameMatcher {
+    /**
+     * Maximum number of class names in the cache, which is emptied once it is reached.
+     */
+    static final int MAX_CACHED_CLASSES = 10000;
+    private final Node root = new Node();
+    private final boolean empty;
+    private final ConcurrentMap<String, Boolean> cache = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * Compiles the prefixes of the in-app classes.
+     *
+     * @param inAppPrefixes prefixes of the names of the in-app classes.
+     */
+    InAppFrameMatcher(Collection<String> inAppPrefixes) {
+        for (String inAppPrefix : inAppPrefixes) {
+            Node node = root;
+            for (int i = 0; i < inAppPrefix.length(); i++) {
+                node = node.getOrAddChild(inAppPrefix.charAt(i));
+            }
+            node.terminal = true;
+        }
+        empty = inAppPrefixes.isEmpty();
+    }
+
+    /**
+     * Checks whether a class name starts with one of the in-app prefixes.
+     *
+     * @param className name of the class of a frame.
+     * @return true if the class is part of the application.
+     */
+    boolean isInApp(String className) {
+        if (empty) {
+            return false;
+        }
+
+        Boolean inApp = cache.get(className);
+        if (inApp == null) {
+            inApp = matches(className);
+            if (cache.size() >= MAX_CACHED_CLASSES) {
+                cache.clear();
+            }
+            cache.put(className, inApp);
+        }
+        return inApp;
+    }
+
+    private boolean matches(String className) {
+        Node node = root;
+        for (int i = 0; !node.terminal; i++) {
+            if (i == className.length()) {
+                return false;
+            }
+            node = node.getChild(className.charAt(i));
+            if (node == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Node of the trie, with its children sorted by character.
+     */
+    private static final class Node {
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private char[] keys = new char[0];
+        private Node[] children = NO_CHILDREN;
+        private boolean terminal;
+
+        private Node getChild(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node getOrAddChild(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+
+            int insertion = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertion);
+            System.arraycopy(children, 0, newChildren, 0, insertion);
+            System.arraycopy(keys, insertion, newKeys, insertion + 1, keys.length - insertion);
+            System.arraycopy(children, insertion, newChildren, insertion + 1, children.length - insertion);
+            Node child = new Node();
+            newKeys[insertion] = c;
+            newChildren[insertion] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+    }
+}
@@ -4,26 +4,34 @@ import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.getsentry.raven.event.Breadcrumb;
 import com.getsentry.raven.util.Base64;
-import com.getsentry.raven.util.Base64OutputStream;
 import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.interfaces.ExceptionInterface;
+import com.getsentry.raven.event.interfaces.SentryException;
 import com.getsentry.raven.event.interfaces.SentryInterface;
+import com.getsentry.raven.event.interfaces.StackTraceInterface;
 import com.getsentry.raven.marshaller.Marshaller;
 import com.getsentry.raven.util.Util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.zip.DeflaterOutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
 
 /**
  * Event marshaller using JSON to send the data.
  * <p>
- * The content can also be compressed with {@link DeflaterOutputStream} in which case the binary result is encoded
+ * The content can also be compressed with {@link Deflater} in which case the binary result is encoded
  * in base 64.
+ * <p>
+ * Each thread reuses its own buffers, compressor and JSON generator from one event to the next. The event is entirely
+ * marshalled before being written to the destination, with a single call to {@link OutputStream#write(byte[], int,
+ * int)}.
  */
 public class JsonMarshaller implements Marshaller {
     /**
@@ -102,6 +110,10 @@ public class JsonMarshaller implements Marshaller {
      * Default maximum length for a message.
      */
     public static final int DEFAULT_MAX_MESSAGE_LENGTH = 1000;
+    /**
+     * Value written in place of the content cut from the extras and contexts.
+     */
+    private static final String TRUNCATED_VALUE = "...";
     /**
      * Date format for ISO 8601.
      */
@@ -114,8 +126,27 @@ public class JsonMarshaller implements Marshaller {
         }
     };
 
+    /**
+     * Largest buffer kept by a thread between two events, bigger buffers are released once the event is marshalled.
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+
     private static final Logger logger = LoggerFactory.getLogger(JsonMarshaller.class);
-    private final JsonFactory jsonFactory = new JsonFactory();
+    /**
+     * Factory of the JSON generators, without separator between root values as each generator is reused to write
+     * one event after an other.
+     */
+    private final JsonFactory jsonFactory = new JsonFactory().setRootValueSeparator(null);
+    /**
+     * Buffers, compressor and generator reused by each thread marshalling events.
+     */
+    private final ThreadLocal<MarshallingBuffers> threadBuffers = new ThreadLocal<MarshallingBuffers>() {
+        @Override
+        protected MarshallingBuffers initialValue() {
+            return new MarshallingBuffers();
+        }
+    };
     private final Map<Class<? extends SentryInterface>, InterfaceBinding<?>> interfaceBindings = new HashMap<Class<? extends SentryInterface>, InterfaceBinding<?>>();
     /**
      * Enables disables the compression of JSON.
@@ -125,6 +156,24 @@ public class JsonMarshaller implements Marshaller {
      * Maximum length for a message.
      */
     private final int maxMessageLength;
+    /**
+     * Maximum number of extras written, 0 for no limit.
+     */
+    private int maxExtras = 0;
+    /**
+     * Maximum nesting of the values of the extras and contexts, 0 for no limit.
+     */
+    private int maxDepth = 0;
+    /**
+     * Maximum length of the values of the breadcrumbs' data, 0 for no limit.
+     */
+    private int maxBreadcrumbValueLength = 0;
+    /**
+     * Maximum size of the content written, in bytes, 0 for no limit.
+     */
+    private int maxSize = 0;
+    private final AtomicLong truncatedEvents = new AtomicLong();
+    private final AtomicLong droppedEvents = new AtomicLong();
 
     /**
      * Create instance of JsonMarshaller with default message length.
@@ -144,41 +193,63 @@ public class JsonMarshaller implements Marshaller {
 
     @Override
     public void marshall(Event event, OutputStream destination) {
-        // Prevent the stream from being closed automatically
-        destination = new UncloseableOutputStream(destination);
-
-        if (compression) {
-            destination = new DeflaterOutputStream(new Base64OutputStream(destination, Base64.NO_WRAP));
-        }
+        MarshallingBuffers buffers = threadBuffers.get();
+        boolean success = false;
+        try {
+            int length = marshall(buffers, event);
+            if (maxSize > 0 && length > maxSize) {
+                buffers.truncated = true;
+                Trimming trimming = buffers.trimming;
+                trimming.start(event);
+                while (length > maxSize && trimming.next(event)) {
+                    length = marshall(buffers, event);
+                }
+            }
+            success = true;
 
-        JsonGenerator generator = null;
+            if (maxSize > 0 && length > maxSize) {
+                droppedEvents.incrementAndGet();
+                logger.warn("The event '{}' is {} bytes long once trimmed, above the limit of {} bytes, it won't be "
+                    + "sent.", event.getId(), length, maxSize);
+                return;
+            }
 
-        try {
-            writeContent(generator, event);
+            if (buffers.truncated) {
+                truncatedEvents.incrementAndGet();
+            }
+            destination.write(compression ? buffers.encoded : buffers.json.array(), 0, length);
         } catch (IOException e) {
             logger.error("An exception occurred while serialising the event.", e);
         } finally {
-            try {
-                destination.close();
-            } catch (IOException e) {
-                logger.error("An exception occurred while serialising the event.", e);
-            }
+            buffers.reset(success);
+        }
+    }
 
-            if (generator != null) {
-                try {
-                    generator.close();
-                } catch (IOException e) {
-                    logger.error("An exception occurred while closing the generator", e);
-                }
-            }
+    /**
+     * Marshalls the event in the buffers, replacing their previous content.
+     *
+     * @return the length of the content to write.
+     */
+    private int marshall(MarshallingBuffers buffers, Event event) throws IOException {
+        buffers.json.reset();
+        JsonGenerator generator = buffers.getGenerator();
+        writeContent(generator, event, buffers.trimming);
+        // Moves the content of the generator to the JSON buffer
+        generator.flush();
+
+        if (compression) {
+            return buffers.compressAndEncode();
+        } else {
+            return buffers.json.size();
         }
     }
 
-    private void writeContent(JsonGenerator generator, Event event) throws IOException {
+    private void writeContent(JsonGenerator generator, Event event, Trimming trimming) throws IOException {
         generator.writeStartObject();
 
         generator.writeStringField(EVENT_ID, formatId(event.getId()));
-        generator.writeStringField(MESSAGE, Util.trimString(event.getMessage(), maxMessageLength));
+        generator.writeStringField(MESSAGE,
+            trimMessage(event.getMessage(), Math.min(maxMessageLength, trimming.messageLength)));
         generator.writeStringField(TIMESTAMP, ISO_FORMAT.get().format(event.getTimestamp()));
         generator.writeStringField(LEVEL, formatLevel(event.getLevel()));
         generator.writeStringField(LOGGER, event.getLogger());
@@ -186,27 +257,37 @@ public class JsonMarshaller implements Marshaller {
         generator.writeStringField(CULPRIT, event.getCulprit());
         writeSdk(generator, event.getSdkName(), event.getSdkVersion());
         writeTags(generator, event.getTags());
-        writeBreadcumbs(generator, event.getBreadcrumbs());
-        writeContexts(generator, event.getContexts());
+        writeBreadcumbs(generator, event.getBreadcrumbs(), trimming.breadcrumbs);
+        if (trimming.contexts) {
+            writeContexts(generator, event.getContexts());
+        }
         generator.writeStringField(SERVER_NAME, event.getServerName());
         generator.writeStringField(RELEASE, event.getRelease());
         generator.writeStringField(ENVIRONMENT, event.getEnvironment());
-        writeExtras(generator, event.getExtra());
+        writeExtras(generator, event.getExtra(), trimming.extras);
         writeCollection(generator, FINGERPRINT, event.getFingerprint());
         generator.writeStringField(CHECKSUM, event.getChecksum());
-        writeInterfaces(generator, event.getSentryInterfaces());
+        writeInterfaces(generator, event.getSentryInterfaces(), trimming);
 
         generator.writeEndObject();
     }
 
-    private void writeInterfaces(JsonGenerator generator, Map<String, SentryInterface> sentryInterfaces)
-        throws IOException {
+    private void writeInterfaces(JsonGenerator generator, Map<String, SentryInterface> sentryInterfaces,
+                                 Trimming trimming) throws IOException {
         for (Map.Entry<String, SentryInterface> interfaceEntry : sentryInterfaces.entrySet()) {
             SentryInterface sentryInterface = interfaceEntry.getValue();
+            if (sentryInterface instanceof ExceptionInterface) {
+                if (trimming.frames < Integer.MAX_VALUE || trimming.messageLength < Integer.MAX_VALUE) {
+                    sentryInterface = trimExceptions((ExceptionInterface) sentryInterface, trimming.frames,
+                        trimming.messageLength);
+                }
+            } else if (!trimming.interfaces) {
+                continue;
+            }
 
             if (interfaceBindings.containsKey(sentryInterface.getClass())) {
                 generator.writeFieldName(interfaceEntry.getKey());
-                getInterfaceBinding(sentryInterface).writeInterface(generator, interfaceEntry.getValue());
+                getInterfaceBinding(sentryInterface).writeInterface(generator, sentryInterface);
             } else {
                 logger.error("Couldn't parse the content of '{}' provided in {}.",
                     interfaceEntry.getKey(), sentryInterface);
@@ -220,11 +301,57 @@ public class JsonMarshaller implements Marshaller {
         return (InterfaceBinding<? super T>) interfaceBindings.get(sentryInterface.getClass());
     }
 
-    private void writeExtras(JsonGenerator generator, Map<String, Object> extras) throws IOException {
+    /**
+     * Copies the exceptions keeping only their most recent frames and the beginning of their messages.
+     */
+    private static ExceptionInterface trimExceptions(ExceptionInterface exceptionInterface, int maxFrames,
+                                                     int maxMessageLength) {
+        Deque<SentryException> exceptions = new ArrayDeque<SentryException>();
+        for (SentryException exception : exceptionInterface.getExceptions()) {
+            StackTraceInterface stackTrace = exception.getStackTraceInterface();
+            int frameCount = stackTrace.getFrameCount();
+            if (frameCount > maxFrames) {
+                // The frames in common with the enclosing exception are the oldest ones, the ones dropped first
+                int framesCommonWithEnclosing = Math.max(0,
+                    stackTrace.getFramesCommonWithEnclosing() - (frameCount - maxFrames));
+                StackTraceElement[] frames = new StackTraceElement[maxFrames];
+                for (int i = 0; i < maxFrames; i++) {
+                    frames[i] = stackTrace.getFrame(i);
+                }
+                stackTrace = new StackTraceInterface(frames, framesCommonWithEnclosing);
+            }
+            exceptions.add(new SentryException(trimMessage(exception.getExceptionMessage(), maxMessageLength),
+                exception.getExceptionClassName(), exception.getExceptionPackageName(), stackTrace));
+        }
+        return new ExceptionInterface(exceptions);
+    }
+
+    /**
+     * Cuts a message to {@code maxLength} characters, ending with {@code "..."} when there is enough room for it.
+     */
+    private static String trimMessage(String message, int maxLength) {
+        if (message == null || message.length() <= maxLength) {
+            return message;
+        } else if (maxLength > TRUNCATED_VALUE.length()) {
+            return Util.trimString(message, maxLength);
+        } else {
+            return message.substring(0, maxLength);
+        }
+    }
+
+    private void writeExtras(JsonGenerator generator, Map<String, Object> extras, int limit) throws IOException {
+        if (maxExtras > 0) {
+            limit = Math.min(limit, maxExtras);
+        }
         generator.writeObjectFieldStart(EXTRA);
+        int written = 0;
         for (Map.Entry<String, Object> extra : extras.entrySet()) {
+            if (written++ == limit) {
+                markTruncated();
+                break;
+            }
             generator.writeFieldName(extra.getKey());
-            safelyWriteObject(generator, extra.getValue());
+            safelyWriteObject(generator, extra.getValue(), 1);
         }
         generator.writeEndObject();
     }
@@ -239,15 +366,18 @@ public class JsonMarshaller implements Marshaller {
         }
     }
 
-    private void safelyWriteObject(JsonGenerator generator, Object value) throws IOException {
+    private void safelyWriteObject(JsonGenerator generator, Object value, int depth) throws IOException {
         if (value != null && value.getClass().isArray()) {
             value = Arrays.asList((Object[]) value);
         }
 
-        if (value instanceof Iterable) {
+        if (maxDepth > 0 && depth > maxDepth && (value instanceof Iterable || value instanceof Map)) {
+            markTruncated();
+            generator.writeString(TRUNCATED_VALUE);
+        } else if (value instanceof Iterable) {
             generator.writeStartArray();
             for (Object subValue : (Iterable<?>) value) {
-                safelyWriteObject(generator, subValue);
+                safelyWriteObject(generator, subValue, depth + 1);
             }
             generator.writeEndArray();
         } else if (value instanceof Map) {
@@ -258,7 +388,7 @@ public class JsonMarshaller implements Marshaller {
                 } else {
                     generator.writeFieldName(entry.getKey().toString());
                 }
-                safelyWriteObject(generator, entry.getValue());
+                safelyWriteObject(generator, entry.getValue(), depth + 1);
             }
             generator.writeEndObject();
         } else if (value == null) {
@@ -291,14 +421,21 @@ public class JsonMarshaller implements Marshaller {
     }
 
     @SuppressWarnings("checkstyle:magicnumber")
-    private void writeBreadcumbs(JsonGenerator generator, List<Breadcrumb> breadcrumbs) throws IOException {
-        if (breadcrumbs.isEmpty()) {
+    private void writeBreadcumbs(JsonGenerator generator, List<Breadcrumb> breadcrumbs, int limit)
+        throws IOException {
+        if (breadcrumbs.isEmpty() || limit == 0) {
             return;
         }
 
         generator.writeObjectFieldStart(BREADCRUMBS);
         generator.writeArrayFieldStart("values");
+        // Skips the oldest breadcrumbs beyond the limit
+        int skipped = Math.max(0, breadcrumbs.size() - limit);
         for (Breadcrumb breadcrumb : breadcrumbs) {
+            if (skipped > 0) {
+                skipped--;
+                continue;
+            }
             generator.writeStartObject();
             // getTime() returns ts in millis, but breadcrumbs expect seconds
             generator.writeNumberField("timestamp", breadcrumb.getTimestamp().getTime() / 1000);
@@ -318,7 +455,12 @@ public class JsonMarshaller implements Marshaller {
             if (breadcrumb.getData() != null && !breadcrumb.getData().isEmpty()) {
                 generator.writeObjectFieldStart("data");
                 for (Map.Entry<String, String> entry : breadcrumb.getData().entrySet()) {
-                    generator.writeStringField(entry.getKey(), entry.getValue());
+                    String value = entry.getValue();
+                    if (maxBreadcrumbValueLength > 0 && value != null && value.length() > maxBreadcrumbValueLength) {
+                        markTruncated();
+                        value = Util.trimString(value, maxBreadcrumbValueLength);
+                    }
+                    generator.writeStringField(entry.getKey(), value);
                 }
                 generator.writeEndObject();
             }
@@ -337,13 +479,21 @@ public class JsonMarshaller implements Marshaller {
         for (Map.Entry<String, Map<String, Object>> contextEntry : contexts.entrySet()) {
             generator.writeObjectFieldStart(contextEntry.getKey());
             for (Map.Entry<String, Object> innerContextEntry : contextEntry.getValue().entrySet()) {
-                generator.writeObjectField(innerContextEntry.getKey(), innerContextEntry.getValue());
+                generator.writeFieldName(innerContextEntry.getKey());
+                safelyWriteObject(generator, innerContextEntry.getValue(), 1);
             }
             generator.writeEndObject();
         }
         generator.writeEndObject();
     }
 
+    /**
+     * Records that part of the event being marshalled by the current thread was cut.
+     */
+    private void markTruncated() {
+        threadBuffers.get().truncated = true;
+    }
+
     /**
      * Formats the {@code UUID} to send only the 32 necessary characters.
      *
@@ -396,6 +546,189 @@ public class JsonMarshaller implements Marshaller {
         this.interfaceBindings.put(sentryInterfaceClass, binding);
     }
 
+    /**
+     * Parts of the event written, cut one step after the other while the event is too large.
+     * <p>
+     * The oldest breadcrumbs are dropped first, then the contexts and the extras, then the oldest frames of the
+     * stack traces, then the interfaces other than the exception and finally the end of the messages. The number of
+     * breadcrumbs, extras, frames and characters kept is halved at each step, so that an event is written again only
+     * a few times.
+     */
+    private static final class Trimming {
+        private int breadcrumbs;
+        private boolean contexts;
+        private int extras;
+        private int frames;
+        private boolean interfaces;
+        private int messageLength;
+
+        private Trimming() {
+            reset();
+        }
+
+        /**
+         * Writes the complete event.
+         */
+        private void reset() {
+            breadcrumbs = Integer.MAX_VALUE;
+            contexts = true;
+            extras = Integer.MAX_VALUE;
+            frames = Integer.MAX_VALUE;
+            interfaces = true;
+            messageLength = Integer.MAX_VALUE;
+        }
+
+        /**
+         * Starts from the actual size of each part of the event.
+         */
+        private void start(Event event) {
+            breadcrumbs = event.getBreadcrumbs().size();
+            extras = event.getExtra().size();
+            frames = 0;
+            messageLength = event.getMessage() != null ? event.getMessage().length() : 0;
+            ExceptionInterface exceptionInterface = getExceptionInterface(event);
+            if (exceptionInterface != null) {
+                for (SentryException exception : exceptionInterface.getExceptions()) {
+                    frames = Math.max(frames, exception.getStackTraceInterface().getFrameCount());
+                    if (exception.getExceptionMessage() != null) {
+                        messageLength = Math.max(messageLength, exception.getExceptionMessage().length());
+                    }
+                }
+            }
+        }
+
+        /**
+         * Cuts the next part of the event.
+         *
+         * @return false if there is nothing left to cut.
+         */
+        private boolean next(Event event) {
+            if (breadcrumbs > 0) {
+                breadcrumbs /= 2;
+            } else if (contexts && !event.getContexts().isEmpty()) {
+                contexts = false;
+            } else if (extras > 0) {
+                extras /= 2;
+            } else if (frames > 0) {
+                frames /= 2;
+            } else if (interfaces && hasOtherInterfaces(event)) {
+                interfaces = false;
+            } else if (messageLength > 0) {
+                messageLength /= 2;
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        private static boolean hasOtherInterfaces(Event event) {
+            for (SentryInterface sentryInterface : event.getSentryInterfaces().values()) {
+                if (!(sentryInterface instanceof ExceptionInterface)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static ExceptionInterface getExceptionInterface(Event event) {
+            for (SentryInterface sentryInterface : event.getSentryInterfaces().values()) {
+                if (sentryInterface instanceof ExceptionInterface) {
+                    return (ExceptionInterface) sentryInterface;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Growable byte array, exposing its content without copying it.
+     */
+    private static final class ByteArrayBuffer extends ByteArrayOutputStream {
+        ByteArrayBuffer() {
+            super(INITIAL_BUFFER_SIZE);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    /**
+     * State reused by a thread from one event to the next, so that marshalling an event allocates next to nothing
+     * besides the event itself.
+     * <p>
+     * The JSON content is written to a growable buffer, then compressed with a {@link Deflater} reset for every event
+     * and encoded in base 64 into an other reusable array. Buffers grown beyond {@link #MAX_RETAINED_BUFFER_SIZE} by
+     * a large event aren't kept afterwards.
+     */
+    private final class MarshallingBuffers {
+        private ByteArrayBuffer json = new ByteArrayBuffer();
+        private JsonGenerator generator;
+        private final Deflater deflater = new Deflater();
+        private byte[] compressed = new byte[INITIAL_BUFFER_SIZE];
+        private byte[] encoded = new byte[INITIAL_BUFFER_SIZE];
+        /**
+         * Whether part of the current event was cut to fit the limits.
+         */
+        private boolean truncated;
+        private final Trimming trimming = new Trimming();
+
+        private JsonGenerator getGenerator() throws IOException {
+            if (generator == null) {
+                generator = jsonFactory.createGenerator(json);
+            }
+            return generator;
+        }
+
+        /**
+         * Compresses the JSON content and encodes it in base 64 in {@link #encoded}.
+         *
+         * @return the length of the encoded content.
+         */
+        private int compressAndEncode() {
+            deflater.reset();
+            deflater.setInput(json.array(), 0, json.size());
+            deflater.finish();
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                if (compressedLength == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                compressedLength += deflater.deflate(compressed, compressedLength,
+                    compressed.length - compressedLength);
+            }
+
+            int encodedLength = Base64.encodedLength(compressedLength, Base64.NO_WRAP);
+            if (encoded.length < encodedLength) {
+                encoded = new byte[Math.max(encodedLength, encoded.length * 2)];
+            }
+            return Base64.encode(compressed, 0, compressedLength, Base64.NO_WRAP, encoded);
+        }
+
+        /**
+         * Prepares the buffers for the next event.
+         *
+         * @param reuseGenerator whether the generator is in a clean state, after a complete event.
+         */
+        private void reset(boolean reuseGenerator) {
+            truncated = false;
+            trimming.reset();
+            if (!reuseGenerator || json.array().length > MAX_RETAINED_BUFFER_SIZE) {
+                // The generator is bound to the JSON buffer
+                generator = null;
+                json = new ByteArrayBuffer();
+            } else {
+                json.reset();
+            }
+            if (compressed.length > MAX_RETAINED_BUFFER_SIZE) {
+                compressed = new byte[INITIAL_BUFFER_SIZE];
+            }
+            if (encoded.length > MAX_RETAINED_BUFFER_SIZE) {
+                encoded = new byte[INITIAL_BUFFER_SIZE];
+            }
+        }
+    }
+
     /**
      * Enables the JSON compression with deflate.
      *
@@ -404,4 +737,65 @@ public class JsonMarshaller implements Marshaller {
     public void setCompression(boolean compression) {
         this.compression = compression;
     }
+
+    /**
+     * Sets the maximum number of extras written for each event.
+     *
+     * @param maxExtras maximum number of extras, 0 for no limit.
+     */
+    public void setMaxExtras(int maxExtras) {
+        this.maxExtras = maxExtras;
+    }
+
+    /**
+     * Sets the maximum nesting of the arrays and objects in the values of the extras and contexts, deeper values
+     * are replaced with {@code "..."}.
+     *
+     * @param maxDepth maximum nesting of the values, 0 for no limit.
+     */
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Sets the maximum length of the values of the breadcrumbs' data.
+     *
+     * @param maxBreadcrumbValueLength maximum length of the values, 0 for no limit.
+     */
+    public void setMaxBreadcrumbValueLength(int maxBreadcrumbValueLength) {
+        this.maxBreadcrumbValueLength = maxBreadcrumbValueLength;
+    }
+
+    /**
+     * Sets the maximum size of the content written for each event, compressed and encoded if the compression is
+     * enabled.
+     * <p>
+     * Events too large are cut step by step: the oldest breadcrumbs first, then the contexts and the extras, the
+     * oldest frames of the stack traces, the interfaces other than the exception and finally the end of the
+     * messages. The type of the exceptions is always kept. Events still too large once cut aren't written at all.
+     *
+     * @param maxSize maximum size of the content written, in bytes, 0 for no limit.
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the number of events which had to be cut to fit the limits of this marshaller.
+     *
+     * @return the number of truncated events.
+     */
+    public long getTruncatedEvents() {
+        return truncatedEvents.get();
+    }
+
+    /**
+     * Returns the number of events which couldn't fit the maximum size of this marshaller even once cut, and weren't
+     * written.
+     *
+     * @return the number of dropped events.
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
 }
@@ -1,17 +1,30 @@
 package com.getsentry.raven.marshaller.json;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.getsentry.raven.event.interfaces.StackTraceInterface;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Binding allowing to convert a {@link StackTraceInterface} into a JSON stream.
  */
 public class StackTraceInterfaceBinding implements InterfaceBinding<StackTraceInterface> {
+    /**
+     * Default number of stack traces whose JSON representation is kept in memory.
+     */
+    public static final int DEFAULT_FRAME_CACHE_SIZE = 100;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
     private static final String FRAMES_PARAMETER = "frames";
+    private static final String FRAMES_OMITTED_PARAMETER = "frames_omitted";
     private static final String FILENAME_PARAMETER = "filename";
     private static final String FUNCTION_PARAMETER = "function";
     private static final String MODULE_PARAMETER = "module";
@@ -22,8 +35,14 @@ public class StackTraceInterfaceBinding implements InterfaceBinding<StackTraceIn
     private static final String POST_CONTEXT_PARAMETER = "post_context";
     private static final String IN_APP_PARAMETER = "in_app";
     private static final String VARIABLES_PARAMETER = "vars";
-    private Collection<String> inAppFrames = Collections.emptyList();
+    private volatile InAppFrameMatcher inAppFrameMatcher = new InAppFrameMatcher(Collections.<String>emptyList());
     private boolean removeCommonFramesWithEnclosing = true;
+    private int frameCacheSize = DEFAULT_FRAME_CACHE_SIZE;
+    private volatile EncodedStackTraceCache frameCache = new EncodedStackTraceCache(frameCacheSize);
+    private final AtomicLong frameCacheHits = new AtomicLong();
+    private final AtomicLong frameCacheMisses = new AtomicLong();
+    private int maxFrames = 0;
+    private final AtomicLong truncatedStackTraces = new AtomicLong();
 
     /**
      * Writes a single frame based on a {@code StackTraceElement}.
@@ -43,38 +62,165 @@ public class StackTraceInterfaceBinding implements InterfaceBinding<StackTraceIn
     }
 
     private boolean isFrameInApp(StackTraceElement stackTraceElement) {
-        // TODO: A linear search is not efficient here, a Trie could be a better solution.
-        for (String inAppFrame : inAppFrames) {
-            String className = stackTraceElement.getClassName();
-            if (className.startsWith(inAppFrame)) {
-                return true;
-            }
-        }
-        return false;
+        return inAppFrameMatcher.isInApp(stackTraceElement.getClassName());
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The same stack trace is often reported many times in a row, the JSON representation of the most recent ones is
+     * kept in memory and written as is.
+     */
     @Override
     public void writeInterface(JsonGenerator generator, StackTraceInterface stackTraceInterface) throws IOException {
-        StackTraceElement[] stackTrace = stackTraceInterface.getStackTrace();
+        if (maxFrames > 0 && stackTraceInterface.getFrameCount() > maxFrames) {
+            truncatedStackTraces.incrementAndGet();
+        }
+
+        EncodedStackTraceCache cache = frameCache;
+        if (cache == null) {
+            writeFrames(generator, stackTraceInterface);
+            return;
+        }
+
+        int commonWithEnclosing = stackTraceInterface.getFramesCommonWithEnclosing();
+        byte[] json = cache.get(stackTraceInterface, commonWithEnclosing);
+        if (json != null) {
+            frameCacheHits.incrementAndGet();
+        } else {
+            frameCacheMisses.incrementAndGet();
+            ByteArrayOutputStream fragment = new ByteArrayOutputStream();
+            JsonGenerator fragmentGenerator = JSON_FACTORY.createGenerator(fragment, JsonEncoding.UTF8);
+            writeFrames(fragmentGenerator, stackTraceInterface);
+            fragmentGenerator.close();
+            json = fragment.toByteArray();
+            cache.put(stackTraceInterface, commonWithEnclosing, json);
+        }
+        writeRawValue(generator, json);
+    }
+
+    /**
+     * Writes an already encoded JSON value, directly to the underlying stream when possible.
+     */
+    private static void writeRawValue(JsonGenerator generator, byte[] json) throws IOException {
+        Object outputTarget = generator.getOutputTarget();
+        if (!(outputTarget instanceof OutputStream)) {
+            generator.writeRawValue(new String(json, UTF_8));
+            return;
+        }
+
+        // Writes the separator expected before the value, then the pending content of the generator
+        generator.writeRawValue("");
+        boolean flushPassedToStream = generator.isEnabled(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        try {
+            generator.flush();
+        } finally {
+            generator.configure(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM, flushPassedToStream);
+        }
+        ((OutputStream) outputTarget).write(json);
+    }
+
+    private void writeFrames(JsonGenerator generator, StackTraceInterface stackTraceInterface) throws IOException {
+        int frameCount = stackTraceInterface.getFrameCount();
 
         generator.writeStartObject();
         generator.writeArrayFieldStart(FRAMES_PARAMETER);
         int commonWithEnclosing = stackTraceInterface.getFramesCommonWithEnclosing();
 
+        // Frames omitted from the middle of the stack trace, keeping the most recent and the oldest ones
+        int omittedFrom = frameCount;
+        int omittedTo = frameCount;
+        if (maxFrames > 0 && frameCount > maxFrames) {
+            omittedFrom = (maxFrames + 1) / 2;
+            omittedTo = frameCount - maxFrames / 2;
+        }
+
         // Go through the stackTrace frames from the first call to the last
-        for (int i = stackTrace.length - 1; i >= 0; i--) {
-            writeFrame(generator, stackTrace[i], commonWithEnclosing-- > 0);
+        for (int i = frameCount - 1; i >= 0; i--) {
+            boolean common = commonWithEnclosing-- > 0;
+            if (i < omittedFrom || i >= omittedTo) {
+                writeFrame(generator, stackTraceInterface.getFrame(i), common);
+            }
         }
 
         generator.writeEndArray();
+        if (omittedFrom < omittedTo) {
+            // Indexes of the omitted frames in the list sent, which starts from the first call
+            generator.writeArrayFieldStart(FRAMES_OMITTED_PARAMETER);
+            generator.writeNumber(frameCount - omittedTo);
+            generator.writeNumber(frameCount - omittedFrom);
+            generator.writeEndArray();
+        }
         generator.writeEndObject();
     }
 
     public void setRemoveCommonFramesWithEnclosing(boolean removeCommonFramesWithEnclosing) {
         this.removeCommonFramesWithEnclosing = removeCommonFramesWithEnclosing;
+        resetFrameCache();
     }
 
+    /**
+     * Sets the prefixes of the classes considered as part of the application.
+     *
+     * @param inAppFrames prefixes of the names of the in-app classes.
+     */
     public void setInAppFrames(Collection<String> inAppFrames) {
-        this.inAppFrames = inAppFrames;
+        this.inAppFrameMatcher = new InAppFrameMatcher(inAppFrames);
+        resetFrameCache();
+    }
+
+    /**
+     * Sets the number of stack traces whose JSON representation is kept in memory.
+     *
+     * @param frameCacheSize maximum number of cached stack traces, 0 disables the cache.
+     */
+    public void setFrameCacheSize(int frameCacheSize) {
+        this.frameCacheSize = frameCacheSize;
+        resetFrameCache();
+    }
+
+    /**
+     * Sets the maximum number of frames written for each stack trace.
+     * <p>
+     * The frames in the middle of longer stack traces are omitted, half of the frames kept are the most recent ones
+     * and the other half the oldest ones.
+     *
+     * @param maxFrames maximum number of frames written, 0 to write all the frames.
+     */
+    public void setMaxFrames(int maxFrames) {
+        this.maxFrames = maxFrames;
+        resetFrameCache();
+    }
+
+    /**
+     * Returns the number of stack traces written without some of their frames.
+     *
+     * @return the number of truncated stack traces.
+     */
+    public long getTruncatedStackTraces() {
+        return truncatedStackTraces.get();
+    }
+
+    /**
+     * Returns the number of stack traces written from the cache.
+     *
+     * @return the number of cache hits.
+     */
+    public long getFrameCacheHits() {
+        return frameCacheHits.get();
+    }
+
+    /**
+     * Returns the number of stack traces that had to be serialized because they weren't in the cache.
+     *
+     * @return the number of cache misses.
+     */
+    public long getFrameCacheMisses() {
+        return frameCacheMisses.get();
+    }
+
+    private void resetFrameCache() {
+        frameCache = frameCacheSize > 0 ? new EncodedStackTraceCache(frameCacheSize) : null;
     }
 }
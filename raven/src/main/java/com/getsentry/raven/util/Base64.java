@@ -480,10 +480,49 @@ public class Base64 {
      */
     public static byte[] encode(byte[] input, int offset, int len, int flags) {
         Encoder encoder = new Encoder(flags, null);
-        // Compute the exact length of the array we will produce.
+        int output_len = encodedLength(len, flags);
+        encoder.output = new byte[output_len];
+        encoder.process(input, offset, len, true);
+        assert encoder.op == output_len;
+        return encoder.output;
+    }
+    /**
+     * Base64-encode the given data into an existing array, allowing
+     * the caller to reuse the same array for several encodings.
+     *
+     * @param input  the data to encode
+     * @param offset the position within the input array at which to
+     *               start
+     * @param len    the number of bytes of input to encode
+     * @param flags  controls certain features of the encoded output.
+     *               Passing {@code DEFAULT} results in output that
+     *               adheres to RFC 2045.
+     * @param output array receiving the encoded data from its first
+     *               byte, at least {@link #encodedLength(int, int)}
+     *               bytes long
+     *
+     * @return the number of bytes written in output
+     */
+    public static int encode(byte[] input, int offset, int len, int flags, byte[] output) {
+        Encoder encoder = new Encoder(flags, output);
+        encoder.process(input, offset, len, true);
+        return encoder.op;
+    }
+    /**
+     * Computes the exact length of the Base64 encoding of some data.
+     *
+     * @param len    the number of bytes of input to encode
+     * @param flags  controls certain features of the encoded output.
+     *
+     * @return the number of bytes of the encoded data
+     */
+    public static int encodedLength(int len, int flags) {
+        boolean do_padding = (flags & NO_PADDING) == 0;
+        boolean do_newline = (flags & NO_WRAP) == 0;
+        boolean do_cr = (flags & CRLF) != 0;
         int output_len = len / 3 * 4;
         // Account for the tail of the data and the padding bytes, if any.
-        if (encoder.do_padding) {
+        if (do_padding) {
             if (len % 3 > 0) {
                 output_len += 4;
             }
@@ -495,14 +534,11 @@ public class Base64 {
             }
         }
         // Account for the newlines, if any.
-        if (encoder.do_newline && len > 0) {
+        if (do_newline && len > 0) {
             output_len += (((len-1) / (3 * Encoder.LINE_GROUPS)) + 1) *
-                (encoder.do_cr ? 2 : 1);
+                (do_cr ? 2 : 1);
         }
-        encoder.output = new byte[output_len];
-        encoder.process(input, offset, len, true);
-        assert encoder.op == output_len;
-        return encoder.output;
+        return output_len;
     }
     /* package */ static class Encoder extends Coder {
         /**
@@ -0,0 +1,139 @@
+package com.getsentry.raven.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free FIFO queue backed by a preallocated array of slots.
+ * <p>
+ * Each slot carries a sequence number telling whether it is ready to be written or read for a given lap around the
+ * array, so that producers and consumers only contend on a compare-and-set of the tail and head counters, without
+ * any lock nor any allocation per element (see Dmitry Vyukov's bounded MPMC queue).<br>
+ * Any thread can {@link #offer(Object)} and {@link #poll()}, which allows producers to evict the oldest element when
+ * the queue is full, while a single consumer usually drains it.
+ * <p>
+ * This queue prevents null elements from being added.
+ *
+ * @param <E> type of the elements.
+ */
+public class RingBuffer<E> {
+    /**
+     * Largest supported capacity, as a power of two.
+     */
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    /**
+     * Position of the next element to write.
+     */
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * Position of the next element to read.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Creates a ring buffer holding at least {@code capacity} elements.
+     *
+     * @param capacity minimum number of elements, rounded up to the next power of two (and at least 2).
+     */
+    public RingBuffer(int capacity) {
+        if (capacity < 1 || capacity > MAXIMUM_CAPACITY) {
+            throw new IllegalArgumentException("The capacity must be between 1 and " + MAXIMUM_CAPACITY
+                + ", got " + capacity);
+        }
+        // A single slot can't tell a written slot from a read one, so there are at least two slots
+        int size = Math.max(2, Integer.highestOneBit(capacity));
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<E>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an element at the end of the queue, if there is some room left.
+     *
+     * @param element element to add.
+     * @return true if the element was added, false if the queue is full.
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException("Null elements aren't supported");
+        }
+
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    // Publishes the element to the consumers
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                // The slot still holds the element of the previous lap
+                return false;
+            }
+            // Otherwise an other producer took the slot, try the next one
+        }
+    }
+
+    /**
+     * Removes the element at the head of the queue.
+     *
+     * @return the oldest element, or null if the queue is empty.
+     */
+    public E poll() {
+        while (true) {
+            long position = head.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = elements.get(index);
+                    elements.lazySet(index, null);
+                    // Hands the slot over to the producers of the next lap
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+            } else if (difference < 0) {
+                // The slot hasn't been published yet
+                return null;
+            }
+            // Otherwise an other consumer took the element, try the next one
+        }
+    }
+
+    /**
+     * Number of elements in the queue, which may already be outdated when concurrently modified.
+     *
+     * @return the approximate number of elements in the queue.
+     */
+    public int size() {
+        while (true) {
+            long currentHead = head.get();
+            long currentTail = tail.get();
+            if (currentHead == head.get()) {
+                return (int) Math.max(0, Math.min(currentTail - currentHead, capacity()));
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -6,15 +6,23 @@ import mockit.Injectable;
 import mockit.NonStrictExpectations;
 import mockit.Tested;
 import mockit.Verifications;
+import mockit.VerificationsInOrder;
+import com.getsentry.raven.connection.AdaptiveEventSampler;
 import com.getsentry.raven.connection.Connection;
 import com.getsentry.raven.event.Event;
 import com.getsentry.raven.event.EventBuilder;
 import com.getsentry.raven.event.helper.EventBuilderHelper;
+import com.getsentry.raven.event.helper.ThreadBoundEventBuilderHelper;
 import com.getsentry.raven.event.interfaces.ExceptionInterface;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -111,6 +119,117 @@ public class RavenTest {
         }};
     }
 
+    @Test
+    public void testSampledOutEventsAreNotBuilt() throws Exception {
+        raven.addBuilderHelper(mockEventBuilderHelper);
+        raven.setSampleRate(0.0);
+
+        raven.sendEvent(new EventBuilder());
+        raven.sendMessage("message");
+        raven.sendException(new Exception());
+
+        new Verifications() {{
+            mockEventBuilderHelper.helpBuildingEvent((EventBuilder) any);
+            times = 0;
+            mockConnection.send((Event) any);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testBuiltEventIsSampled() throws Exception {
+        raven.setSampleRate(0.0);
+
+        raven.sendEvent(mockEvent);
+
+        new Verifications() {{
+            mockConnection.send((Event) any);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testAdaptiveSamplerAppliesToBuiltEvents(@Injectable final AdaptiveEventSampler mockEventSampler,
+                                                        @Injectable final Event mockSampledEvent)
+        throws Exception {
+        new NonStrictExpectations() {{
+            mockEventSampler.sample(mockEvent);
+            result = null;
+            mockEventSampler.sample(mockSampledEvent);
+            result = mockSampledEvent;
+        }};
+        raven.setAdaptiveEventSampler(mockEventSampler);
+
+        raven.sendEvent(mockEvent);
+        raven.sendEvent(mockSampledEvent);
+
+        new Verifications() {{
+            mockConnection.send(mockEvent);
+            times = 0;
+            mockConnection.send(mockSampledEvent);
+        }};
+    }
+
+    @Test
+    public void testSampledEventIsNotSampledAgain(@Injectable final AdaptiveEventSampler mockEventSampler)
+        throws Exception {
+        raven.setSampleRate(0.0);
+        raven.setAdaptiveEventSampler(mockEventSampler);
+
+        raven.sendSampledEvent(mockEvent);
+
+        new Verifications() {{
+            mockEventSampler.sample((Event) any);
+            times = 0;
+            mockConnection.send(mockEvent);
+        }};
+    }
+
+    @Test
+    public void testAdaptiveSamplerSkipsSentEventsOnlyHelpers(@Injectable final AdaptiveEventSampler mockEventSampler,
+                                                              @Injectable final EventBuilderHelper mockSentOnlyHelper)
+        throws Exception {
+        new NonStrictExpectations() {{
+            mockEventSampler.sample((EventBuilder) any);
+            result = false;
+        }};
+        raven.setAdaptiveEventSampler(mockEventSampler);
+        raven.addBuilderHelper(mockEventBuilderHelper);
+        raven.addBuilderHelper(mockSentOnlyHelper, Raven.DEFAULT_HELPER_PRIORITY, true);
+
+        raven.sendMessage("3f2a9c34-b9c5-4c27-a6a1-7f3f7c6d0d0e");
+
+        new Verifications() {{
+            mockEventBuilderHelper.helpBuildingEvent((EventBuilder) any);
+            mockSentOnlyHelper.helpBuildingEvent((EventBuilder) any);
+            times = 0;
+            mockConnection.send((Event) any);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testSentEventsOnlyHelpersRunAfterTheSampler(@Injectable final AdaptiveEventSampler mockEventSampler,
+                                                            @Injectable final EventBuilderHelper mockSentOnlyHelper)
+        throws Exception {
+        new NonStrictExpectations() {{
+            mockEventSampler.sample((EventBuilder) any);
+            result = true;
+        }};
+        raven.setAdaptiveEventSampler(mockEventSampler);
+        raven.addBuilderHelper(mockSentOnlyHelper, Raven.DEFAULT_HELPER_PRIORITY, true);
+        raven.addBuilderHelper(mockEventBuilderHelper);
+
+        raven.sendMessage("3f2a9c34-b9c5-4c27-a6a1-7f3f7c6d0d0e");
+
+        new VerificationsInOrder() {{
+            mockEventBuilderHelper.helpBuildingEvent((EventBuilder) any);
+            mockEventSampler.sample((EventBuilder) any);
+            mockSentOnlyHelper.helpBuildingEvent((EventBuilder) any);
+            mockConnection.send((Event) any);
+        }};
+    }
+
     @Test
     public void testAddRemoveBuilderHelpers(@Injectable final EventBuilderHelper mockBuilderHelper) throws Exception {
         assertThat(raven.getBuilderHelpers(), not(contains(mockBuilderHelper)));
@@ -121,6 +240,89 @@ public class RavenTest {
         assertThat(raven.getBuilderHelpers(), not(contains(mockBuilderHelper)));
     }
 
+    @Test
+    public void testBuilderHelpersRunByPriority() throws Exception {
+        final List<String> runs = new ArrayList<String>();
+        EventBuilderHelper first = new RecordingBuilderHelper("first", runs);
+        EventBuilderHelper second = new RecordingBuilderHelper("second", runs);
+        EventBuilderHelper third = new RecordingBuilderHelper("third", runs);
+        raven.addBuilderHelper(third, -1, false);
+        raven.addBuilderHelper(second);
+        raven.addBuilderHelper(first, 10, false);
+
+        raven.runBuilderHelpers(new EventBuilder());
+
+        assertThat(raven.getBuilderHelpers(), contains(first, second, third));
+        assertThat(runs, contains("first", "second", "third"));
+    }
+
+    @Test
+    public void testReaddingABuilderHelperChangesItsPriority() throws Exception {
+        final List<String> runs = new ArrayList<String>();
+        EventBuilderHelper first = new RecordingBuilderHelper("first", runs);
+        EventBuilderHelper second = new RecordingBuilderHelper("second", runs);
+        raven.addBuilderHelper(second);
+        raven.addBuilderHelper(first);
+
+        raven.addBuilderHelper(first, 1, false);
+
+        assertThat(raven.getBuilderHelpers(), contains(first, second));
+    }
+
+    @Test
+    public void testBuilderHelpersAreTimedWhenEnabled() throws Exception {
+        raven.addBuilderHelper(mockEventBuilderHelper);
+
+        raven.runBuilderHelpers(new EventBuilder());
+        assertThat(raven.getBuilderHelperRuns(), hasEntry(mockEventBuilderHelper, 0L));
+        raven.setBuilderHelperTimingEnabled(true);
+        raven.runBuilderHelpers(new EventBuilder());
+        raven.runBuilderHelpers(new EventBuilder());
+
+        assertThat(raven.getBuilderHelperRuns(), hasEntry(mockEventBuilderHelper, 2L));
+        assertThat(raven.getBuilderHelperTimes().get(mockEventBuilderHelper), greaterThanOrEqualTo(0L));
+    }
+
+    @Test
+    public void testEventsAreBuiltOnTheExecutor() throws Exception {
+        final List<String> runs = new ArrayList<String>();
+        raven.addBuilderHelper(new ThreadRecordingBuilderHelper("", runs));
+        raven.addBuilderHelper(new ThreadBoundRecordingBuilderHelper(runs));
+        raven.setEventBuildingExecutor(Executors.newSingleThreadExecutor(), -1);
+        final String message = "c0d5f1a3-1a89-4c9b-9d8a-1bc1d1c8c6f4";
+        final Exception exception = new Exception(message);
+
+        raven.sendException(exception);
+        final UUID lastEventId = raven.getContext().getLastEventId();
+        raven.closeConnection();
+
+        String caller = Thread.currentThread().getName();
+        assertThat(runs, hasSize(2));
+        assertThat(runs, hasItem("bound:" + caller));
+        assertThat(runs, not(hasItem(caller)));
+        new Verifications() {{
+            Event event;
+            mockConnection.send(event = withCapture());
+            assertThat(event.getId(), equalTo(lastEventId));
+            assertThat(event.getMessage(), equalTo(message));
+            assertThat(event.getSentryInterfaces(), hasKey(ExceptionInterface.EXCEPTION_INTERFACE));
+        }};
+    }
+
+    @Test
+    public void testEventsRejectedByTheExecutorAreDropped() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        raven.setEventBuildingExecutor(executor, -1);
+
+        raven.sendMessage("c0d5f1a3-1a89-4c9b-9d8a-1bc1d1c8c6f4");
+
+        new Verifications() {{
+            mockConnection.send((Event) any);
+            times = 0;
+        }};
+    }
+
     @Test(expectedExceptions = UnsupportedOperationException.class)
     public void testCantModifyBuilderHelpersDirectly(@Injectable final EventBuilderHelper mockBuilderHelper) throws Exception {
         raven.getBuilderHelpers().add(mockBuilderHelper);
@@ -222,4 +424,43 @@ public class RavenTest {
             assertThat(event.getSentryInterfaces(), hasKey(ExceptionInterface.EXCEPTION_INTERFACE));
         }};
     }
+
+    private static final class RecordingBuilderHelper implements EventBuilderHelper {
+        private final String name;
+        private final List<String> runs;
+
+        private RecordingBuilderHelper(String name, List<String> runs) {
+            this.name = name;
+            this.runs = runs;
+        }
+
+        @Override
+        public void helpBuildingEvent(EventBuilder eventBuilder) {
+            runs.add(name);
+        }
+    }
+
+    private static class ThreadRecordingBuilderHelper implements EventBuilderHelper {
+        private final String prefix;
+        private final List<String> runs;
+
+        private ThreadRecordingBuilderHelper(String prefix, List<String> runs) {
+            this.prefix = prefix;
+            this.runs = runs;
+        }
+
+        @Override
+        public void helpBuildingEvent(EventBuilder eventBuilder) {
+            synchronized (runs) {
+                runs.add(prefix + Thread.currentThread().getName());
+            }
+        }
+    }
+
+    private static final class ThreadBoundRecordingBuilderHelper extends ThreadRecordingBuilderHelper
+        implements ThreadBoundEventBuilderHelper {
+        private ThreadBoundRecordingBuilderHelper(List<String> runs) {
+            super("bound:", runs);
+        }
+    }
 }
@@ -0,0 +1,217 @@
+package com.getsentry.raven.buffer;
+
+import com.getsentry.raven.event.Breadcrumb;
+import com.getsentry.raven.event.BreadcrumbBuilder;
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventBuilder;
+import com.getsentry.raven.event.interfaces.ExceptionInterface;
+import com.getsentry.raven.event.interfaces.HttpInterface;
+import com.getsentry.raven.event.interfaces.MessageInterface;
+import com.getsentry.raven.event.interfaces.SentryException;
+import com.getsentry.raven.event.interfaces.SentryInterface;
+import com.getsentry.raven.event.interfaces.UserInterface;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+public class BinaryEventCodecTest {
+    private final BinaryEventCodec codec = new BinaryEventCodec();
+
+    @Test
+    public void testEveryFieldIsKept() throws Exception {
+        Event event = createEvent();
+
+        Event decoded = codec.decode(codec.encode(event));
+
+        assertThat(decoded.getId(), is(event.getId()));
+        assertThat(decoded.getMessage(), is(event.getMessage()));
+        assertThat(decoded.getTimestamp(), is(event.getTimestamp()));
+        assertThat(decoded.getLevel(), is(event.getLevel()));
+        assertThat(decoded.getLogger(), is(event.getLogger()));
+        assertThat(decoded.getPlatform(), is(event.getPlatform()));
+        assertThat(decoded.getSdkName(), is(event.getSdkName()));
+        assertThat(decoded.getSdkVersion(), is(event.getSdkVersion()));
+        assertThat(decoded.getCulprit(), is(event.getCulprit()));
+        assertThat(decoded.getServerName(), is(event.getServerName()));
+        assertThat(decoded.getRelease(), is(event.getRelease()));
+        assertThat(decoded.getEnvironment(), is(event.getEnvironment()));
+        assertThat(decoded.getChecksum(), is(event.getChecksum()));
+        assertThat(decoded.getTags(), is(event.getTags()));
+        assertThat(decoded.getFingerprint(), is(event.getFingerprint()));
+        assertThat(decoded.getContexts(), is(event.getContexts()));
+        assertThat(decoded.getSentryInterfaces().keySet(), is(event.getSentryInterfaces().keySet()));
+        for (SentryInterface sentryInterface : event.getSentryInterfaces().values()) {
+            SentryInterface decodedInterface = decoded.getSentryInterfaces().get(sentryInterface.getInterfaceName());
+            if (sentryInterface instanceof ExceptionInterface) {
+                // Deques don't implement equals
+                assertThat(new ArrayList<SentryException>(((ExceptionInterface) decodedInterface).getExceptions()),
+                    is((List<SentryException>) new ArrayList<SentryException>(
+                        ((ExceptionInterface) sentryInterface).getExceptions())));
+            } else {
+                assertThat(decodedInterface, is(sentryInterface));
+            }
+        }
+
+        Breadcrumb breadcrumb = decoded.getBreadcrumbs().get(0);
+        assertThat(breadcrumb.getType(), is(Breadcrumb.Type.HTTP));
+        assertThat(breadcrumb.getLevel(), is(Breadcrumb.Level.WARNING));
+        assertThat(breadcrumb.getTimestamp(), is(new Date(1000L)));
+        assertThat(breadcrumb.getMessage(), is("breadcrumb"));
+        assertThat(breadcrumb.getCategory(), is("category"));
+        assertThat(breadcrumb.getData(), is(Collections.singletonMap("key", "value")));
+    }
+
+    @Test
+    public void testExtrasKeepTheirType() throws Exception {
+        Event event = createEvent();
+
+        Map<String, Object> extra = codec.decode(codec.encode(event)).getExtra();
+
+        assertThat(extra.get("string"), is((Object) "value"));
+        assertThat(extra.get("integer"), is((Object) 42));
+        assertThat(extra.get("long"), is((Object) 42L));
+        assertThat(extra.get("double"), is((Object) 4.2));
+        assertThat(extra.get("boolean"), is((Object) true));
+        assertThat(extra.get("date"), is((Object) new Date(2000L)));
+        assertThat(extra.get("null"), is(nullValue()));
+        assertThat((List<?>) extra.get("list"), contains((Object) "a", 1));
+        assertThat((List<?>) extra.get("array"), contains((Object) "b", "c"));
+        assertThat(extra.get("map"), is((Object) Collections.singletonMap("nested", 1)));
+        assertThat(extra.get("serializable"), is((Object) Thread.State.RUNNABLE));
+        assertThat(extra.get("other"), is((Object) "not serializable"));
+    }
+
+    @Test
+    public void testEncodedEventIsSmallerThanJavaSerialization() throws Exception {
+        Event event = createEvent();
+
+        int binarySize = codec.encode(event).length;
+        int serializationSize = new SerializationEventCodec().encode(event).length;
+
+        assertThat(binarySize, lessThan(serializationSize));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testOtherFormatIsRejected() throws Exception {
+        codec.decode(new SerializationEventCodec().encode(createEvent()));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testTruncatedEventIsRejected() throws Exception {
+        byte[] content = codec.encode(createEvent());
+
+        codec.decode(Arrays.copyOf(content, content.length / 2));
+    }
+
+    @Test
+    public void testMinimalEvent() throws Exception {
+        Event event = new EventBuilder().getEvent();
+
+        Event decoded = codec.decode(codec.encode(event));
+
+        assertThat(decoded.getId(), equalTo(event.getId()));
+        assertThat(decoded.getTimestamp(), is(nullValue()));
+        assertThat(decoded.getLevel(), is(nullValue()));
+        assertThat(decoded.getFingerprint(), is(nullValue()));
+    }
+
+    private static Event createEvent() {
+        Map<String, Object> context = new HashMap<String, Object>();
+        context.put("name", "Java");
+        context.put("version", 8);
+        Map<String, Map<String, Object>> contexts = new HashMap<String, Map<String, Object>>();
+        contexts.put("runtime", context);
+
+        Map<String, Collection<String>> headers = new HashMap<String, Collection<String>>();
+        headers.put("Accept", Arrays.asList("text/html", "application/json"));
+        HttpInterface httpInterface = new HttpInterface("http://localhost/path", "GET",
+            Collections.<String, Collection<String>>singletonMap("q", Collections.singletonList("1")), "q=1",
+            Collections.singletonMap("session", "abc"), "127.0.0.1", "localhost", 80, "127.0.0.1", "localhost",
+            8080, "HTTP/1.1", false, false, null, null, headers, "body");
+
+        return new EventBuilder()
+            .withMessage("message")
+            .withLevel(Event.Level.ERROR)
+            .withLogger("logger")
+            .withSdkName("raven-java")
+            .withSdkVersion("test")
+            .withCulprit("culprit")
+            .withServerName("server")
+            .withRelease("1.0")
+            .withEnvironment("test")
+            .withChecksum("checksum")
+            .withTag("tag", "value")
+            .withFingerprint("{{ default }}", "fingerprint")
+            .withContexts(contexts)
+            .withBreadcrumbs(Collections.singletonList(new BreadcrumbBuilder()
+                .setType(Breadcrumb.Type.HTTP)
+                .setLevel(Breadcrumb.Level.WARNING)
+                .setTimestamp(new Date(1000L))
+                .setMessage("breadcrumb")
+                .setCategory("category")
+                .setData(Collections.singletonMap("key", "value"))
+                .build()))
+            .withExtra("string", "value")
+            .withExtra("integer", 42)
+            .withExtra("long", 42L)
+            .withExtra("double", 4.2)
+            .withExtra("boolean", true)
+            .withExtra("date", new Date(2000L))
+            .withExtra("null", null)
+            .withExtra("list", Arrays.<Object>asList("a", 1))
+            .withExtra("array", new String[]{"b", "c"})
+            .withExtra("map", Collections.singletonMap("nested", 1))
+            .withExtra("serializable", Thread.State.RUNNABLE)
+            .withExtra("other", new Object() {
+                @Override
+                public String toString() {
+                    return "not serializable";
+                }
+            })
+            .withSentryInterface(new ExceptionInterface(new IllegalStateException("failure",
+                new IOException("cause"))))
+            .withSentryInterface(new MessageInterface("Hello %s", "world"))
+            .withSentryInterface(new UserInterface("id", "username", "127.0.0.1", "user@example.com"))
+            .withSentryInterface(httpInterface)
+            .withSentryInterface(new CustomInterface("custom"))
+            .build();
+    }
+
+    private static final class CustomInterface implements SentryInterface {
+        private final String value;
+
+        private CustomInterface(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String getInterfaceName() {
+            return "custom";
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CustomInterface && value.equals(((CustomInterface) o).value);
+        }
+
+        @Override
+        public int hashCode() {
+            return value.hashCode();
+        }
+    }
+}
@@ -95,6 +95,36 @@ public class DiskBufferTest extends BufferTest {
         assertThat(BUFFER_DIR.listFiles().length, equalTo(0));
     }
 
+    @Test
+    public void testBinaryCodec() throws IOException {
+        buffer = new DiskBuffer(BUFFER_DIR, maxEvents, new BinaryEventCodec());
+        Event event = new EventBuilder().withExtra("key", "value").build();
+
+        buffer.add(event);
+
+        Iterator<Event> events = buffer.getEvents();
+        assertThat(events.next().getExtra().get("key"), equalTo((Object) "value"));
+        assertThat(events.hasNext(), equalTo(false));
+    }
+
+    @Test
+    public void testEventsAreReturnedFromTheOldestFile() throws IOException {
+        Event event1 = new EventBuilder().build();
+        Event event2 = new EventBuilder().build();
+        buffer.add(event1);
+        buffer.add(event2);
+        long now = System.currentTimeMillis();
+        assertThat(new File(BUFFER_DIR, event1.getId() + DiskBuffer.FILE_SUFFIX).setLastModified(now), equalTo(true));
+        assertThat(new File(BUFFER_DIR, event2.getId() + DiskBuffer.FILE_SUFFIX).setLastModified(now - 10000),
+            equalTo(true));
+
+        Iterator<Event> events = buffer.getEvents();
+
+        assertThat(events.next(), equalTo(event2));
+        assertThat(events.next(), equalTo(event1));
+        assertThat(events.hasNext(), equalTo(false));
+    }
+
     private int eventCount(Iterator<Event> events) {
         int count = 0;
         while (events.hasNext()) {
@@ -0,0 +1,196 @@
+package com.getsentry.raven.buffer;
+
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventBuilder;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+public class MappedDiskBufferTest extends BufferTest {
+
+    private static File BUFFER_DIR = new File("./raven-test-mapped-buffer-dir");
+    private int maxEvents = 2;
+
+    private MappedDiskBuffer buffer;
+
+    @BeforeMethod
+    public void setup() {
+        buffer = new MappedDiskBuffer(BUFFER_DIR, maxEvents);
+    }
+
+    @AfterMethod
+    public void teardown() throws IOException {
+        buffer.close();
+        delete(BUFFER_DIR);
+    }
+
+    @Test
+    public void testAddAndDiscard() throws IOException {
+        Event event1 = new EventBuilder().withMessage("first").build();
+        buffer.add(event1);
+        // 1 event is buffered
+        assertThat(events(buffer.getEvents()).size(), equalTo(1));
+
+        Event event2 = new EventBuilder().build();
+        buffer.add(event2);
+        // 2 events are buffered
+        assertThat(events(buffer.getEvents()).size(), equalTo(2));
+
+        Event event3 = new EventBuilder().build();
+        buffer.add(event3);
+        // still 2 events, because we hit maxEvents (2)
+        assertThat(buffer.getNumStoredEvents(), equalTo(2));
+
+        List<Event> events = events(buffer.getEvents());
+        assertThat(events.get(0).getId(), equalTo(event1.getId()));
+        assertThat(events.get(0).getMessage(), equalTo("first"));
+
+        buffer.discard(event2);
+        assertThat(ids(buffer.getEvents()), contains(event1.getId().toString()));
+
+        buffer.discard(event1);
+        assertThat(events(buffer.getEvents()).size(), equalTo(0));
+
+        // noop, because event3 isn't in the buffer
+        buffer.discard(event3);
+        assertThat(buffer.getNumStoredEvents(), equalTo(0));
+    }
+
+    @Test
+    public void testEventsAreRecoveredAfterRestart() throws IOException {
+        Event event1 = new EventBuilder().build();
+        Event event2 = new EventBuilder().build();
+        buffer.add(event1);
+        buffer.add(event2);
+        buffer.discard(event1);
+        buffer.close();
+
+        buffer = new MappedDiskBuffer(BUFFER_DIR, maxEvents);
+
+        assertThat(ids(buffer.getEvents()), contains(event2.getId().toString()));
+    }
+
+    @Test
+    public void testCorruptRecordEndsTheRecovery() throws IOException {
+        Event event1 = new EventBuilder().build();
+        Event event2 = new EventBuilder().build();
+        buffer.add(event1);
+        buffer.add(event2);
+        buffer.close();
+
+        // Simulates the last record being partially written when the host crashed
+        File segment = new File(BUFFER_DIR, String.format("%020d", 0) + MappedDiskBuffer.FILE_SUFFIX);
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            file.seek(file.length() - 1);
+            while (file.readByte() == 0) {
+                file.seek(file.getFilePointer() - 2);
+            }
+            long position = file.getFilePointer() - 1;
+            file.seek(position);
+            byte lastByte = file.readByte();
+            file.seek(position);
+            file.writeByte(~lastByte);
+        } finally {
+            file.close();
+        }
+
+        buffer = new MappedDiskBuffer(BUFFER_DIR, maxEvents);
+
+        assertThat(ids(buffer.getEvents()), contains(event1.getId().toString()));
+        // The space of the corrupted record is reused
+        buffer.add(event2);
+        assertThat(ids(buffer.getEvents()), contains(event1.getId().toString(), event2.getId().toString()));
+    }
+
+    @Test
+    public void testSegmentsBehindTheHeadAreDeleted() throws IOException {
+        buffer.close();
+        delete(BUFFER_DIR);
+        // Every segment holds a single record
+        buffer = new MappedDiskBuffer(BUFFER_DIR, 10, 4096, MappedDiskBuffer.DEFAULT_SYNC_INTERVAL,
+            new SerializationEventCodec());
+        List<Event> events = new ArrayList<Event>();
+        for (int i = 0; i < 3; i++) {
+            Event event = new EventBuilder().withMessage(String.format("%02100d", i)).build();
+            events.add(event);
+            buffer.add(event);
+        }
+        assertThat(buffer.getNumSegments(), equalTo(3));
+
+        buffer.discard(events.get(1));
+        assertThat(buffer.getNumSegments(), equalTo(2));
+        buffer.discard(events.get(0));
+        assertThat(buffer.getNumSegments(), equalTo(1));
+
+        buffer.close();
+        buffer = new MappedDiskBuffer(BUFFER_DIR, 10, 4096, MappedDiskBuffer.DEFAULT_SYNC_INTERVAL,
+            new SerializationEventCodec());
+        assertThat(ids(buffer.getEvents()), contains(events.get(2).getId().toString()));
+    }
+
+    @Test
+    public void testOldLiveRecordDoesNotKeepNewerSegments() throws IOException {
+        buffer.close();
+        delete(BUFFER_DIR);
+        // Every segment holds a single record
+        buffer = new MappedDiskBuffer(BUFFER_DIR, 10, 4096, MappedDiskBuffer.DEFAULT_SYNC_INTERVAL,
+            new SerializationEventCodec());
+        List<Event> events = new ArrayList<Event>();
+        for (int i = 0; i < 4; i++) {
+            Event event = new EventBuilder().withMessage(String.format("%02100d", i)).build();
+            events.add(event);
+            buffer.add(event);
+        }
+
+        buffer.discard(events.get(1));
+        buffer.discard(events.get(2));
+        assertThat(buffer.getNumSegments(), equalTo(2));
+        buffer.sync();
+        assertThat(segmentFiles(), equalTo(2));
+
+        // The recovery skips the deleted segments
+        buffer.close();
+        buffer = new MappedDiskBuffer(BUFFER_DIR, 10, 4096, MappedDiskBuffer.DEFAULT_SYNC_INTERVAL,
+            new SerializationEventCodec());
+        assertThat(ids(buffer.getEvents()),
+            contains(events.get(0).getId().toString(), events.get(3).getId().toString()));
+    }
+
+    private int segmentFiles() {
+        int count = 0;
+        for (File file : BUFFER_DIR.listFiles()) {
+            if (file.getName().endsWith(MappedDiskBuffer.FILE_SUFFIX)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private List<Event> events(Iterator<Event> events) {
+        List<Event> list = new ArrayList<Event>();
+        while (events.hasNext()) {
+            list.add(events.next());
+        }
+        return list;
+    }
+
+    private List<String> ids(Iterator<Event> events) {
+        List<String> ids = new ArrayList<String>();
+        for (Event event : events(events)) {
+            ids.add(event.getId().toString());
+        }
+        return ids;
+    }
+}
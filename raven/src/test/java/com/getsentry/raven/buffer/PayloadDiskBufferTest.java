@@ -0,0 +1,137 @@
+package com.getsentry.raven.buffer;
+
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventBuilder;
+import com.getsentry.raven.marshaller.Marshaller;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class PayloadDiskBufferTest extends BufferTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static File BUFFER_DIR = new File("./raven-test-payload-buffer-dir");
+    private int maxEvents = 2;
+
+    private PayloadDiskBuffer buffer;
+
+    @BeforeMethod
+    public void setup() {
+        buffer = new PayloadDiskBuffer(BUFFER_DIR, maxEvents, new MessageMarshaller());
+    }
+
+    @AfterMethod
+    public void teardown() {
+        delete(BUFFER_DIR);
+    }
+
+    @Test
+    public void testAddAndDiscard() throws IOException {
+        Event event1 = new EventBuilder().build();
+        buffer.add(event1);
+        assertThat(ids(buffer.getPayloads()), contains(event1.getId().toString()));
+
+        Event event2 = new EventBuilder().build();
+        buffer.add(event2);
+        Event event3 = new EventBuilder().build();
+        buffer.add(event3);
+        // still 2 events, because we hit maxEvents (2)
+        assertThat(ids(buffer.getPayloads()).size(), equalTo(2));
+
+        buffer.discard(event1);
+        assertThat(ids(buffer.getPayloads()), contains(event2.getId().toString()));
+
+        buffer.discard(buffer.getPayloads().next());
+        assertThat(ids(buffer.getPayloads()).size(), equalTo(0));
+
+        // noop, because event3 isn't in the buffer
+        buffer.discard(event3);
+    }
+
+    @Test
+    public void testPayloadIsTheMarshalledEvent() throws IOException {
+        buffer.add(new EventBuilder().withMessage("message").build());
+
+        FileChannel channel = buffer.getPayloads().next().open();
+        try {
+            ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+            while (content.hasRemaining() && channel.read(content) != -1) {
+                continue;
+            }
+            assertThat(new String(content.array(), UTF_8), is("message"));
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testEventsCantBeRead() {
+        buffer.add(new EventBuilder().build());
+
+        buffer.getEvents();
+    }
+
+    @Test
+    public void testStoredPayloadsAreCountedWhenReopened() throws IOException {
+        Event event = new EventBuilder().build();
+        buffer.add(event);
+
+        buffer = new PayloadDiskBuffer(BUFFER_DIR, 1, new MessageMarshaller());
+        buffer.add(new EventBuilder().build());
+        assertThat(ids(buffer.getPayloads()), contains(event.getId().toString()));
+
+        buffer.discard(event);
+        Event event2 = new EventBuilder().build();
+        assertThat(buffer.addPayload(event2).getEventId(), is(event2.getId()));
+    }
+
+    @Test
+    public void testPartialPayloadIsDeleted() throws IOException {
+        File partialPayload = new File(BUFFER_DIR, new EventBuilder().build().getId() + PayloadDiskBuffer.FILE_SUFFIX
+            + ".tmp");
+        FileOutputStream outputStream = new FileOutputStream(partialPayload);
+        outputStream.write(1);
+        outputStream.close();
+
+        buffer = new PayloadDiskBuffer(BUFFER_DIR, maxEvents, new MessageMarshaller());
+
+        assertThat(partialPayload.exists(), is(false));
+        assertThat(buffer.getPayloads().hasNext(), is(false));
+    }
+
+    private List<String> ids(Iterator<Payload> payloads) {
+        List<String> ids = new ArrayList<String>();
+        while (payloads.hasNext()) {
+            ids.add(payloads.next().getEventId().toString());
+        }
+        return ids;
+    }
+
+    private static final class MessageMarshaller implements Marshaller {
+        @Override
+        public void marshall(Event event, OutputStream destination) {
+            try {
+                if (event.getMessage() != null) {
+                    destination.write(event.getMessage().getBytes(UTF_8));
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.getsentry.raven.buffer;
+
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventBuilder;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+public class SegmentedLogBufferTest extends BufferTest {
+
+    private static File BUFFER_DIR = new File("./raven-test-log-buffer-dir");
+    private int maxEvents = 2;
+
+    private SegmentedLogBuffer buffer;
+
+    @BeforeMethod
+    public void setup() {
+        buffer = new SegmentedLogBuffer(BUFFER_DIR, maxEvents);
+    }
+
+    @AfterMethod
+    public void teardown() throws IOException {
+        buffer.close();
+        delete(BUFFER_DIR);
+    }
+
+    @Test
+    public void testAddAndDiscard() throws IOException {
+        Event event1 = new EventBuilder().withMessage("first").build();
+        buffer.add(event1);
+        // 1 event is buffered
+        assertThat(events(buffer.getEvents()).size(), equalTo(1));
+
+        Event event2 = new EventBuilder().build();
+        buffer.add(event2);
+        // 2 events are buffered
+        assertThat(events(buffer.getEvents()).size(), equalTo(2));
+
+        Event event3 = new EventBuilder().build();
+        buffer.add(event3);
+        // still 2 events, because we hit maxEvents (2)
+        assertThat(buffer.getNumStoredEvents(), equalTo(2));
+
+        List<Event> events = events(buffer.getEvents());
+        assertThat(events.get(0).getId(), equalTo(event1.getId()));
+        assertThat(events.get(0).getMessage(), equalTo("first"));
+
+        buffer.discard(event1);
+        assertThat(events(buffer.getEvents()).size(), equalTo(1));
+
+        buffer.discard(event2);
+        assertThat(events(buffer.getEvents()).size(), equalTo(0));
+
+        // noop, because event3 isn't in the buffer
+        buffer.discard(event3);
+        assertThat(buffer.getNumStoredEvents(), equalTo(0));
+    }
+
+    @Test
+    public void testEventsAreReplayedAfterRestart() throws IOException {
+        Event event1 = new EventBuilder().build();
+        Event event2 = new EventBuilder().build();
+        buffer.add(event1);
+        buffer.add(event2);
+        buffer.discard(event1);
+        buffer.close();
+
+        buffer = new SegmentedLogBuffer(BUFFER_DIR, maxEvents);
+
+        assertThat(ids(buffer.getEvents()), contains(event2.getId().toString()));
+    }
+
+    @Test
+    public void testIncompleteRecordIsIgnoredOnReplay() throws IOException {
+        Event event = new EventBuilder().build();
+        buffer.add(event);
+        buffer.close();
+
+        // Simulates a record partially written when the JVM stopped
+        File segment = BUFFER_DIR.listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            file.seek(file.length());
+            file.writeInt(1000);
+            file.writeInt(0);
+        } finally {
+            file.close();
+        }
+
+        buffer = new SegmentedLogBuffer(BUFFER_DIR, maxEvents);
+
+        assertThat(ids(buffer.getEvents()), contains(event.getId().toString()));
+    }
+
+    @Test
+    public void testNonEvent() throws IOException {
+        buffer.close();
+        File nonEventFile = new File(BUFFER_DIR, "not-an-event");
+        assertThat(nonEventFile.createNewFile(), equalTo(true));
+
+        buffer = new SegmentedLogBuffer(BUFFER_DIR, maxEvents);
+
+        assertThat(events(buffer.getEvents()).size(), equalTo(0));
+        assertThat(nonEventFile.exists(), equalTo(true));
+    }
+
+    @Test
+    public void testCompactionDeletesDiscardedSegments() throws IOException {
+        buffer.close();
+        delete(BUFFER_DIR);
+        // Every record fills a segment on its own
+        buffer = new SegmentedLogBuffer(BUFFER_DIR, 10, 1, new SerializationEventCodec());
+        List<Event> events = new ArrayList<Event>();
+        for (int i = 0; i < 4; i++) {
+            Event event = new EventBuilder().build();
+            events.add(event);
+            buffer.add(event);
+        }
+        buffer.discard(events.get(0));
+        buffer.discard(events.get(2));
+        int segments = buffer.getNumSegments();
+
+        buffer.compact();
+
+        assertThat(buffer.getNumSegments() < segments, equalTo(true));
+        assertThat(ids(buffer.getEvents()),
+            contains(events.get(1).getId().toString(), events.get(3).getId().toString()));
+
+        // The compacted log is still consistent after a restart
+        buffer.close();
+        buffer = new SegmentedLogBuffer(BUFFER_DIR, 10, 1, new SerializationEventCodec());
+        assertThat(ids(buffer.getEvents()),
+            contains(events.get(1).getId().toString(), events.get(3).getId().toString()));
+    }
+
+    private List<Event> events(Iterator<Event> events) {
+        List<Event> list = new ArrayList<Event>();
+        while (events.hasNext()) {
+            list.add(events.next());
+        }
+        return list;
+    }
+
+    private List<String> ids(Iterator<Event> events) {
+        List<String> ids = new ArrayList<String>();
+        for (Event event : events(events)) {
+            ids.add(event.getId().toString());
+        }
+        return ids;
+    }
+}
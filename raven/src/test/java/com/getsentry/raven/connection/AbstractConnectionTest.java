@@ -11,7 +11,6 @@ import java.util.HashSet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import static mockit.Deencapsulation.getField;
 import static mockit.Deencapsulation.setField;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -68,7 +67,7 @@ public class AbstractConnectionTest {
             // ignore
         }
 
-        Date lockdownStartTime = getField(lockdownManager, "lockdownStartTime");
+        Date lockdownStartTime = lockdownManager.getLockdownStartTime();
         assertThat(lockdownStartTime, is(FIXED_DATE));
 
         // Send while in lockdown throws LockedDownException
@@ -81,7 +80,7 @@ public class AbstractConnectionTest {
     }
 
     @Test
-    public void testLockDownDoublesTheTime(@Injectable final Event mockEvent) throws Exception {
+    public void testFailedProbeDoesntDoubleTheTime(@Injectable final Event mockEvent) throws Exception {
         setField(abstractConnection, "lockdownManager", lockdownManager);
 
         new NonStrictExpectations() {{
@@ -96,33 +95,35 @@ public class AbstractConnectionTest {
         }
 
         // Check for default lockdown time
-        long lockdownTimeAfter = getField(lockdownManager, "lockdownTime");
+        long lockdownTimeAfter = lockdownManager.getLockdownTime();
         assertThat(lockdownTimeAfter, is(LockdownManager.DEFAULT_BASE_LOCKDOWN_TIME));
 
-        // Roll forward by the base lockdown time, allowing the lockdown to retried
+        // Roll forward by the base lockdown time, allowing a probe
         fixedClock.tick(LockdownManager.DEFAULT_BASE_LOCKDOWN_TIME, TimeUnit.MILLISECONDS);
 
-        // Send a second event, doubling the lockdown
+        // Send a second event as the probe, failing again
         try {
             abstractConnection.send(mockEvent);
         } catch (Exception e) {
             // ignore
         }
 
-        // Check for doubled lockdown time
-        long lockdownTimeAfter2 = getField(lockdownManager, "lockdownTime");
-        assertThat(lockdownTimeAfter2, is(LockdownManager.DEFAULT_BASE_LOCKDOWN_TIME * 2));
+        long lockdownTimeAfter2 = lockdownManager.getLockdownTime();
+        assertThat(lockdownTimeAfter2, is(LockdownManager.DEFAULT_BASE_LOCKDOWN_TIME));
+        assertThat(lockdownManager.getState(), is(LockdownManager.State.OPEN));
+        new Verifications() {{
+            abstractConnection.doSend(mockEvent);
+            times = 2;
+        }};
     }
 
     @Test
-    public void testLockDownDoesntDoubleItAtMax(@Injectable final Event mockEvent) throws Exception {
+    public void testRecommendedLockdownIsCappedAtMax(@Injectable final Event mockEvent) throws Exception {
         setField(abstractConnection, "lockdownManager", lockdownManager);
-        setField(lockdownManager, "lockdownTime", LockdownManager.DEFAULT_MAX_LOCKDOWN_TIME);
-        setField(lockdownManager, "lockdownStartTime", fixedClock.date());
 
         new NonStrictExpectations() {{
             abstractConnection.doSend((Event) any);
-            result = new ConnectionException();
+            result = new ConnectionException("Message", null, LockdownManager.DEFAULT_MAX_LOCKDOWN_TIME * 2);
         }};
 
         try {
@@ -131,10 +132,24 @@ public class AbstractConnectionTest {
             // ignore
         }
 
-        long lockdownTimeAfter = getField(lockdownManager, "lockdownTime");
+        long lockdownTimeAfter = lockdownManager.getLockdownTime();
         assertThat(lockdownTimeAfter, is(LockdownManager.DEFAULT_MAX_LOCKDOWN_TIME));
     }
 
+    @Test
+    public void testSuccessfulProbeEndsTheLockdown(@Injectable final Event mockEvent) throws Exception {
+        setField(abstractConnection, "lockdownManager", lockdownManager);
+        lockdownManager.setState(null);
+        assertThat(abstractConnection.isShortCircuited(), is(true));
+        fixedClock.tick(LockdownManager.DEFAULT_BASE_LOCKDOWN_TIME, TimeUnit.MILLISECONDS);
+        assertThat(abstractConnection.isShortCircuited(), is(false));
+
+        abstractConnection.send(mockEvent);
+
+        assertThat(lockdownManager.getState(), is(LockdownManager.State.CLOSED));
+        assertThat(abstractConnection.isShortCircuited(), is(false));
+    }
+
     @Test
     public void testEventSendFailureCallback(@Injectable final Event mockEvent) throws Exception {
         final AtomicBoolean callbackCalled = new AtomicBoolean(false);
@@ -180,7 +195,7 @@ public class AbstractConnectionTest {
             // ignore
         }
 
-        long lockdownTimeAfter = getField(lockdownManager, "lockdownTime");
+        long lockdownTimeAfter = lockdownManager.getLockdownTime();
         assertThat(lockdownTimeAfter, is(recommendedLockdownWaitTime));
     }
 }
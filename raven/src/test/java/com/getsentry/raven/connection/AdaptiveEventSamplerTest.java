@@ -0,0 +1,132 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventBuilder;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class AdaptiveEventSamplerTest {
+    private static final long WINDOW = TimeUnit.SECONDS.toMillis(10);
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void testSampleRateFollowsTheTarget() {
+        AdaptiveEventSampler eventSampler = new AdaptiveEventSampler(10, WINDOW, new Random());
+        Event event = event("noisy", Event.Level.ERROR);
+
+        // 100 events per second for a few windows
+        long now = System.nanoTime();
+        double sampleRate = 1.0;
+        for (int i = 0; i < 5000; i++) {
+            sampleRate = eventSampler.getSampleRate(event, now += INTERVAL);
+        }
+
+        assertThat(sampleRate, closeTo(0.1, 0.01));
+    }
+
+    @Test
+    public void testBudgetIsSharedBetweenLoggers() {
+        AdaptiveEventSampler eventSampler = new AdaptiveEventSampler(10, WINDOW, new Random());
+        Event noisy = event("noisy", Event.Level.ERROR);
+        Event quiet = event("quiet", Event.Level.ERROR);
+
+        long now = System.nanoTime();
+        double noisyRate = 1.0;
+        double quietRate = 0.0;
+        for (int i = 0; i < 5000; i++) {
+            noisyRate = eventSampler.getSampleRate(noisy, now += INTERVAL);
+            if (i % 100 == 0) {
+                quietRate = eventSampler.getSampleRate(quiet, now);
+            }
+        }
+
+        assertThat(noisyRate, closeTo(0.05, 0.01));
+        assertThat(quietRate, is(1.0));
+    }
+
+    @Test
+    public void testFatalAndFirstEventsAreAlwaysSent() {
+        AdaptiveEventSampler eventSampler = new AdaptiveEventSampler(0.001, WINDOW, new Random());
+        long now = System.nanoTime();
+
+        assertThat(eventSampler.getSampleRate(event("logger", Event.Level.ERROR), now), is(1.0));
+        assertThat(eventSampler.getSampleRate(event("logger", Event.Level.ERROR), now), lessThan(1.0));
+        assertThat(eventSampler.getSampleRate(event("logger", Event.Level.FATAL), now), is(1.0));
+        assertThat(eventSampler.getSampleRate(event("logger", Event.Level.FATAL), now), is(1.0));
+    }
+
+    @Test
+    public void testSampledEventsAreTagged() {
+        AdaptiveEventSampler eventSampler = new AdaptiveEventSampler(0.1, WINDOW, new FixedRandom(0.0));
+        Event first = event("logger", Event.Level.ERROR);
+        Event second = event("logger", Event.Level.ERROR);
+
+        assertThat(eventSampler.sample(first), is(sameInstance(first)));
+        Event sampled = eventSampler.sample(second);
+
+        assertThat(sampled.getId(), is(second.getId()));
+        assertThat(sampled.getTags().get(AdaptiveEventSampler.SAMPLE_RATE_TAG), is(not(nullValue())));
+        assertThat(Double.parseDouble(sampled.getTags().get(AdaptiveEventSampler.SAMPLE_RATE_TAG)),
+            lessThan(1.0));
+    }
+
+    @Test
+    public void testDroppedEvent() {
+        AdaptiveEventSampler eventSampler = new AdaptiveEventSampler(0.1, WINDOW, new FixedRandom(0.99));
+
+        eventSampler.sample(event("logger", Event.Level.ERROR));
+
+        assertThat(eventSampler.sample(event("logger", Event.Level.ERROR)), is(nullValue()));
+    }
+
+    @Test
+    public void testEventBuildersAreTaggedInPlace() {
+        AdaptiveEventSampler eventSampler = new AdaptiveEventSampler(0.1, WINDOW, new FixedRandom(0.0));
+        EventBuilder first = new EventBuilder().withLogger("logger").withLevel(Event.Level.ERROR);
+        EventBuilder second = new EventBuilder().withLogger("logger").withLevel(Event.Level.ERROR);
+
+        assertThat(eventSampler.sample(first), is(true));
+        assertThat(eventSampler.sample(second), is(true));
+
+        assertThat(first.build().getTags().get(AdaptiveEventSampler.SAMPLE_RATE_TAG), is(nullValue()));
+        assertThat(Double.parseDouble(second.build().getTags().get(AdaptiveEventSampler.SAMPLE_RATE_TAG)),
+            lessThan(1.0));
+    }
+
+    @Test
+    public void testDroppedEventBuilder() {
+        AdaptiveEventSampler eventSampler = new AdaptiveEventSampler(0.1, WINDOW, new FixedRandom(0.99));
+
+        eventSampler.sample(new EventBuilder().withLogger("logger").withLevel(Event.Level.ERROR));
+
+        assertThat(eventSampler.sample(new EventBuilder().withLogger("logger").withLevel(Event.Level.ERROR)),
+            is(false));
+    }
+
+    private static Event event(String logger, Event.Level level) {
+        return new EventBuilder().withLogger(logger).withLevel(level).build();
+    }
+
+    private static final class FixedRandom extends Random {
+        private final double value;
+
+        private FixedRandom(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double nextDouble() {
+            return value;
+        }
+    }
+}
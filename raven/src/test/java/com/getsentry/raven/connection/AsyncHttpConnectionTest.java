@@ -0,0 +1,419 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.BaseTest;
+import com.getsentry.raven.buffer.Buffer;
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventBuilder;
+import com.getsentry.raven.marshaller.Marshaller;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.is;
+
+public class AsyncHttpConnectionTest extends BaseTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private List<String> receivedBodies;
+    private volatile int responseStatus;
+    private volatile CountDownLatch responseAllowed;
+    private List<Event> failedEvents;
+    private List<String> marshallingThreads;
+    private AsyncHttpConnection asyncHttpConnection;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        receivedBodies = new CopyOnWriteArrayList<String>();
+        failedEvents = new CopyOnWriteArrayList<Event>();
+        marshallingThreads = new CopyOnWriteArrayList<String>();
+        responseStatus = 200;
+        responseAllowed = new CountDownLatch(0);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", createHandler());
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        asyncHttpConnection = createConnection(server.getAddress().getPort());
+    }
+
+    private HttpHandler createHandler() {
+        return new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                receivedBodies.add(new String(readFully(exchange.getRequestBody()), UTF_8));
+                try {
+                    responseAllowed.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                byte[] body = "{}".getBytes(UTF_8);
+                exchange.sendResponseHeaders(responseStatus, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        };
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        responseAllowed.countDown();
+        asyncHttpConnection.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testEventsAreSubmitted() throws Exception {
+        asyncHttpConnection.send(new EventBuilder().withMessage("first").build());
+        waitUntilTrue(1000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return receivedBodies.size() == 1 && asyncHttpConnection.getInFlight() == 0;
+            }
+        });
+        asyncHttpConnection.send(new EventBuilder().withMessage("second").build());
+        waitUntilTrue(1000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return receivedBodies.size() == 2 && asyncHttpConnection.getInFlight() == 0;
+            }
+        });
+
+        assertThat(receivedBodies, contains("first", "second"));
+        assertThat(failedEvents.isEmpty(), is(true));
+        assertThat(marshallingThreads, everyItem(is("raven-async-http")));
+    }
+
+    @Test
+    public void testManySubmissionsInFlightAtOnce() throws Exception {
+        responseAllowed = new CountDownLatch(1);
+        final int count = 20;
+        for (int i = 0; i < count; i++) {
+            asyncHttpConnection.send(new EventBuilder().withMessage("event" + i).build());
+        }
+
+        // A single I/O thread keeps every submission waiting for the server
+        waitUntilTrue(2000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return receivedBodies.size() == count && asyncHttpConnection.getInFlight() == count;
+            }
+        });
+        responseAllowed.countDown();
+        waitUntilTrue(2000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return asyncHttpConnection.getInFlight() == 0;
+            }
+        });
+
+        assertThat(failedEvents.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testCloseCompletesPendingSubmissions() throws Exception {
+        asyncHttpConnection.send(new EventBuilder().withMessage("first").build());
+        asyncHttpConnection.send(new EventBuilder().withMessage("second").build());
+
+        asyncHttpConnection.close();
+
+        assertThat(receivedBodies, containsInAnyOrder("first", "second"));
+        assertThat(asyncHttpConnection.getInFlight(), is(0));
+    }
+
+    @Test
+    public void testErrorResponseTriggersCallbackAndLockdown() throws Exception {
+        responseStatus = 500;
+        final Event event = new EventBuilder().build();
+
+        asyncHttpConnection.send(event);
+        waitUntilTrue(1000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return failedEvents.size() == 1;
+            }
+        });
+        assertThat(failedEvents, contains(event));
+
+        // Events sent during the lockdown are dropped without any exception
+        asyncHttpConnection.send(new EventBuilder().withMessage("dropped").build());
+        asyncHttpConnection.close();
+        assertThat(receivedBodies.size(), is(1));
+        assertThat(failedEvents.size(), is(1));
+    }
+
+    @Test
+    public void testDiscardNewWhenQueueIsFull() throws Exception {
+        asyncHttpConnection = createConnection(server.getAddress().getPort(), QueueOverflowPolicy.DISCARD_NEW);
+        sendQueuedAndOverflowingEvents();
+
+        assertThat(receivedBodies, contains("inflight", "queued"));
+    }
+
+    @Test
+    public void testDiscardOldWhenQueueIsFull() throws Exception {
+        asyncHttpConnection = createConnection(server.getAddress().getPort(), QueueOverflowPolicy.DISCARD_OLD);
+        sendQueuedAndOverflowingEvents();
+
+        assertThat(receivedBodies, contains("inflight", "overflowing"));
+    }
+
+    @Test
+    public void testSyncWaitsForRoomInTheQueue() throws Exception {
+        asyncHttpConnection = createConnection(server.getAddress().getPort(), QueueOverflowPolicy.SYNC);
+        final CountDownLatch overflowingSent = new CountDownLatch(1);
+        responseAllowed = new CountDownLatch(1);
+        sendInFlightAndQueuedEvents();
+
+        Thread sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                asyncHttpConnection.send(new EventBuilder().withMessage("overflowing").build());
+                overflowingSent.countDown();
+            }
+        });
+        sender.start();
+        assertThat(overflowingSent.await(200, TimeUnit.MILLISECONDS), is(false));
+        responseAllowed.countDown();
+        assertThat(overflowingSent.await(2, TimeUnit.SECONDS), is(true));
+        asyncHttpConnection.close();
+
+        assertThat(receivedBodies, contains("inflight", "queued", "overflowing"));
+    }
+
+    @Test
+    public void testHttpsSubmissions() throws Exception {
+        SSLContext sslContext = PooledHttpConnectionTest.createSslContext();
+        HttpsServer httpsServer = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        httpsServer.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+        httpsServer.createContext("/", createHandler());
+        httpsServer.setExecutor(serverExecutor);
+        httpsServer.start();
+        AsyncHttpConnection connection = createConnection(
+            new URL("https://127.0.0.1:" + httpsServer.getAddress().getPort() + "/api/1/store/"),
+            QueueOverflowPolicy.DISCARD_NEW);
+        connection.setSslContext(sslContext);
+        try {
+            connection.send(new EventBuilder().withMessage("first").build());
+            waitUntilTrue(2000, new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return receivedBodies.size() == 1;
+                }
+            });
+            connection.send(new EventBuilder().withMessage("second").build());
+            connection.close();
+
+            assertThat(receivedBodies, contains("first", "second"));
+            assertThat(failedEvents.isEmpty(), is(true));
+        } finally {
+            connection.close();
+            httpsServer.stop(0);
+        }
+    }
+
+    @Test
+    public void testUnreachableServerTriggersCallback() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0);
+        int unusedPort = serverSocket.getLocalPort();
+        serverSocket.close();
+        AsyncHttpConnection connection = createConnection(unusedPort);
+        try {
+            final Event event = new EventBuilder().build();
+            connection.send(event);
+            waitUntilTrue(2000, new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return failedEvents.size() == 1;
+                }
+            });
+            assertThat(failedEvents, contains(event));
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testBufferedEventIsDiscardedOnceAccepted() throws Exception {
+        final List<Event> bufferedEvents = new CopyOnWriteArrayList<>();
+        responseAllowed = new CountDownLatch(1);
+        BufferedConnection bufferedConnection = new BufferedConnection(asyncHttpConnection,
+            createBuffer(bufferedEvents), 60000, false, 0);
+        Connection connection = bufferedConnection.wrapConnectionWithBufferWriter(bufferedConnection);
+        try {
+            Event event = new EventBuilder().withMessage("inflight").build();
+            connection.send(event);
+            waitUntilTrue(1000, new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return receivedBodies.size() == 1;
+                }
+            });
+            assertThat(bufferedEvents, contains(event));
+
+            responseAllowed.countDown();
+            waitUntilTrue(2000, new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return bufferedEvents.isEmpty();
+                }
+            });
+            assertThat(bufferedEvents, is(empty()));
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testBufferedEventStaysInTheBufferOnFailure() throws Exception {
+        final List<Event> bufferedEvents = new CopyOnWriteArrayList<>();
+        responseStatus = 500;
+        BufferedConnection bufferedConnection = new BufferedConnection(asyncHttpConnection,
+            createBuffer(bufferedEvents), 60000, false, 0);
+        Connection connection = bufferedConnection.wrapConnectionWithBufferWriter(bufferedConnection);
+        try {
+            Event failingEvent = new EventBuilder().withMessage("failing").build();
+            connection.send(failingEvent);
+            waitUntilTrue(2000, new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return failedEvents.size() == 1;
+                }
+            });
+
+            Event lockedDownEvent = new EventBuilder().withMessage("lockeddown").build();
+            connection.send(lockedDownEvent);
+
+            assertThat(bufferedEvents, contains(failingEvent, lockedDownEvent));
+            assertThat(receivedBodies, contains("failing"));
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Sends an event waiting for Sentry and a queued event, then an event overflowing the queue.
+     */
+    private void sendQueuedAndOverflowingEvents() throws Exception {
+        responseAllowed = new CountDownLatch(1);
+        sendInFlightAndQueuedEvents();
+        asyncHttpConnection.send(new EventBuilder().withMessage("overflowing").build());
+        responseAllowed.countDown();
+        asyncHttpConnection.close();
+    }
+
+    private void sendInFlightAndQueuedEvents() throws Exception {
+        asyncHttpConnection.send(new EventBuilder().withMessage("inflight").build());
+        waitUntilTrue(1000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return receivedBodies.size() == 1;
+            }
+        });
+        asyncHttpConnection.send(new EventBuilder().withMessage("queued").build());
+    }
+
+    private AsyncHttpConnection createConnection(int port) throws Exception {
+        AsyncHttpConnection connection = new AsyncHttpConnection(new URL("http://127.0.0.1:" + port + "/api/1/store/"),
+            "public", "private", null, 50, -1, QueueOverflowPolicy.DISCARD_NEW, false, 2000L);
+        return setUpConnection(connection);
+    }
+
+    /**
+     * Creates a connection with a single submission in flight and a single queued submission at most.
+     */
+    private AsyncHttpConnection createConnection(int port, QueueOverflowPolicy overflowPolicy) throws Exception {
+        asyncHttpConnection.close();
+        return createConnection(new URL("http://127.0.0.1:" + port + "/api/1/store/"), overflowPolicy);
+    }
+
+    private AsyncHttpConnection createConnection(URL url, QueueOverflowPolicy overflowPolicy) throws Exception {
+        AsyncHttpConnection connection = new AsyncHttpConnection(url, "public", "private", null, 1, 1,
+            overflowPolicy, false, 2000L);
+        return setUpConnection(connection);
+    }
+
+    private AsyncHttpConnection setUpConnection(AsyncHttpConnection connection) {
+        connection.setTimeout(2000);
+        connection.setMarshaller(new Marshaller() {
+            @Override
+            public void marshall(Event event, OutputStream destination) {
+                marshallingThreads.add(Thread.currentThread().getName());
+                try {
+                    String message = event.getMessage() != null ? event.getMessage() : "";
+                    destination.write(message.getBytes(UTF_8));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        connection.addEventSendFailureCallback(new EventSendFailureCallback() {
+            @Override
+            public void onFailure(Event event, Exception exception) {
+                failedEvents.add(event);
+            }
+        });
+        return connection;
+    }
+
+    private static Buffer createBuffer(final List<Event> bufferedEvents) {
+        return new Buffer() {
+            @Override
+            public void add(Event event) {
+                bufferedEvents.add(event);
+            }
+
+            @Override
+            public void discard(Event event) {
+                bufferedEvents.remove(event);
+            }
+
+            @Override
+            public Iterator<Event> getEvents() {
+                return new ArrayList<>(bufferedEvents).iterator();
+            }
+        };
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[512];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            content.write(buffer, 0, read);
+        }
+        return content.toByteArray();
+    }
+}
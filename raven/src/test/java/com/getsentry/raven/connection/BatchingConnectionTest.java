@@ -0,0 +1,267 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.BaseTest;
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventBuilder;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static mockit.Deencapsulation.getField;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+
+public class BatchingConnectionTest extends BaseTest {
+    private List<Event> sentEvents;
+    private List<Thread> sendingThreads;
+    private CountDownLatch sendAllowed;
+    private volatile boolean closed;
+    private volatile Event failingEvent;
+    private Connection mockConnection;
+    private BatchingConnection batchingConnection;
+
+    @BeforeMethod
+    public void setUp() {
+        sentEvents = new CopyOnWriteArrayList<Event>();
+        sendingThreads = new CopyOnWriteArrayList<Thread>();
+        sendAllowed = new CountDownLatch(0);
+        closed = false;
+        failingEvent = null;
+
+        mockConnection = new Connection() {
+            @Override
+            public void send(Event event) {
+                try {
+                    // Only the sender thread is held back, synchronous sends go through
+                    if (Thread.currentThread().getName().startsWith("raven-batch-sender")) {
+                        sendAllowed.await();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (event == failingEvent) {
+                    throw new IllegalStateException("Failing event");
+                }
+                sendingThreads.add(Thread.currentThread());
+                sentEvents.add(event);
+            }
+
+            @Override
+            public void addEventSendFailureCallback(EventSendFailureCallback eventSendFailureCallback) {
+
+            }
+
+            @Override
+            public void close() throws IOException {
+                closed = true;
+            }
+        };
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        if (batchingConnection != null) {
+            sendAllowed.countDown();
+            batchingConnection.close();
+            batchingConnection = null;
+        }
+    }
+
+    @Test
+    public void testEventsAreSentInOrderFromTheSenderThread() throws Exception {
+        batchingConnection = new BatchingConnection(mockConnection, 10, 50L, 1, Thread.MIN_PRIORITY, -1,
+            QueueOverflowPolicy.DISCARD_NEW, false, 1000L);
+        final Event event1 = new EventBuilder().build();
+        final Event event2 = new EventBuilder().build();
+        final Event event3 = new EventBuilder().build();
+
+        batchingConnection.send(event1);
+        batchingConnection.send(event2);
+        batchingConnection.send(event3);
+
+        waitUntilTrue(1000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return sentEvents.size() == 3;
+            }
+        });
+        assertThat(sentEvents, contains(event1, event2, event3));
+        for (Thread thread : sendingThreads) {
+            assertThat(thread.getName(), startsWith("raven-batch-sender"));
+        }
+    }
+
+    @Test
+    public void testCloseSendsQueuedEventsAndClosesActualConnection() throws Exception {
+        sendAllowed = new CountDownLatch(1);
+        batchingConnection = new BatchingConnection(mockConnection, 2, 10000L, 1, Thread.MIN_PRIORITY, -1,
+            QueueOverflowPolicy.DISCARD_NEW, false, 1000L);
+        for (int i = 0; i < 5; i++) {
+            batchingConnection.send(new EventBuilder().build());
+        }
+        assertThat(sentEvents, is(empty()));
+
+        sendAllowed.countDown();
+        batchingConnection.close();
+        batchingConnection = null;
+
+        assertThat(sentEvents.size(), is(5));
+        assertThat(closed, is(true));
+    }
+
+    @Test
+    public void testFailingEventDoesNotPreventTheRestOfTheBatch() throws Exception {
+        batchingConnection = new BatchingConnection(mockConnection, 10, 50L, 1, Thread.MIN_PRIORITY, -1,
+            QueueOverflowPolicy.DISCARD_NEW, false, 1000L);
+        final Event event1 = new EventBuilder().build();
+        final Event event2 = new EventBuilder().build();
+        failingEvent = event1;
+
+        batchingConnection.send(event1);
+        batchingConnection.send(event2);
+
+        waitUntilTrue(1000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return sentEvents.size() == 1;
+            }
+        });
+        assertThat(sentEvents, contains(event2));
+    }
+
+    @Test
+    public void testEventSentAfterCloseIsDroppedAndCounted() throws Exception {
+        BatchingConnection closedConnection = new BatchingConnection(mockConnection, 10, 50L, 1, Thread.MIN_PRIORITY,
+            -1, QueueOverflowPolicy.DISCARD_NEW, false, 1000L);
+        closedConnection.close();
+
+        closedConnection.send(new EventBuilder().build());
+
+        assertThat(sentEvents, is(empty()));
+        assertThat(closedConnection.getDroppedEvents(), is(1L));
+    }
+
+    @Test
+    public void testDiscardNewWhenQueueIsFull() throws Exception {
+        sendAllowed = new CountDownLatch(1);
+        batchingConnection = new BatchingConnection(mockConnection, 1, 0L, 1, Thread.MIN_PRIORITY, 1,
+            QueueOverflowPolicy.DISCARD_NEW, false, 1000L);
+        final Event blocked = sendWhileSenderIsBlocked();
+        Event queued = new EventBuilder().build();
+        Event discarded = new EventBuilder().build();
+
+        batchingConnection.send(queued);
+        batchingConnection.send(discarded);
+        assertThat(batchingConnection.getDroppedEvents(), is(1L));
+        sendAllowed.countDown();
+        batchingConnection.close();
+        batchingConnection = null;
+
+        assertThat(sentEvents, contains(blocked, queued));
+    }
+
+    @Test
+    public void testDiscardOldWhenQueueIsFull() throws Exception {
+        sendAllowed = new CountDownLatch(1);
+        batchingConnection = new BatchingConnection(mockConnection, 1, 0L, 1, Thread.MIN_PRIORITY, 1,
+            QueueOverflowPolicy.DISCARD_OLD, false, 1000L);
+        final Event blocked = sendWhileSenderIsBlocked();
+        Event discarded = new EventBuilder().build();
+        Event queued = new EventBuilder().build();
+
+        batchingConnection.send(discarded);
+        batchingConnection.send(queued);
+        sendAllowed.countDown();
+        batchingConnection.close();
+        batchingConnection = null;
+
+        assertThat(sentEvents, contains(blocked, queued));
+    }
+
+    @Test
+    public void testSyncWhenQueueIsFull() throws Exception {
+        sendAllowed = new CountDownLatch(1);
+        batchingConnection = new BatchingConnection(mockConnection, 1, 0L, 1, Thread.MIN_PRIORITY, 1,
+            QueueOverflowPolicy.SYNC, false, 1000L);
+        sendWhileSenderIsBlocked();
+        batchingConnection.send(new EventBuilder().build());
+        Event synchronous = new EventBuilder().build();
+        batchingConnection.send(synchronous);
+
+        assertThat(sentEvents, contains(synchronous));
+        assertThat(sendingThreads.get(0), equalTo(Thread.currentThread()));
+    }
+
+    @Test
+    public void testBatchesAreSentConcurrentlyBySeveralThreads() throws Exception {
+        sendAllowed = new CountDownLatch(1);
+        batchingConnection = new BatchingConnection(mockConnection, 1, 0L, 2, Thread.NORM_PRIORITY, -1,
+            QueueOverflowPolicy.DISCARD_NEW, false, 1000L);
+        batchingConnection.send(new EventBuilder().build());
+        batchingConnection.send(new EventBuilder().build());
+
+        // Both events are picked up while the first one is still being sent
+        final Collection<?> queue = getField(batchingConnection, "queue");
+        waitUntilTrue(1000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return queue.isEmpty();
+            }
+        });
+        sendAllowed.countDown();
+        waitUntilTrue(1000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return sentEvents.size() == 2;
+            }
+        });
+
+        assertThat(sendingThreads.get(0), is(not(sendingThreads.get(1))));
+        assertThat(sendingThreads.get(0).getPriority(), is(Thread.NORM_PRIORITY));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidBatchSize() throws Exception {
+        new BatchingConnection(mockConnection, 0, 0L, 1, Thread.MIN_PRIORITY, 1,
+            QueueOverflowPolicy.SYNC, false, 1000L);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidThreads() throws Exception {
+        new BatchingConnection(mockConnection, 1, 0L, 0, Thread.MIN_PRIORITY, 1,
+            QueueOverflowPolicy.SYNC, false, 1000L);
+    }
+
+    /**
+     * Sends an event and waits for the sender thread to pick it up, so that it blocks on {@link #sendAllowed}.
+     */
+    private Event sendWhileSenderIsBlocked() throws Exception {
+        Event event = new EventBuilder().build();
+        batchingConnection.send(event);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        // The queue is empty again once the sender thread has taken the event
+        while (queueSize() != 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(queueSize(), is(0));
+        return event;
+    }
+
+    private int queueSize() {
+        Collection<?> queue = getField(batchingConnection, "queue");
+        return queue.size();
+    }
+}
@@ -2,8 +2,10 @@ package com.getsentry.raven.connection;
 
 import com.getsentry.raven.BaseTest;
 import com.getsentry.raven.buffer.Buffer;
+import com.getsentry.raven.buffer.PayloadDiskBuffer;
 import com.getsentry.raven.event.Event;
 import com.getsentry.raven.event.EventBuilder;
+import com.getsentry.raven.marshaller.Marshaller;
 import com.getsentry.raven.time.FixedClock;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
@@ -11,17 +13,27 @@ import org.testng.annotations.Test;
 import org.testng.collections.Lists;
 import org.testng.collections.Sets;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static mockit.Deencapsulation.setField;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.core.Is.is;
 
 public class BufferedConnectionTest extends BaseTest {
@@ -131,4 +143,236 @@ public class BufferedConnectionTest extends BaseTest {
         assertThat(sentEvents.contains(event), is(true));
         assertThat(sentEvents.contains(event2), is(true));
     }
+
+    @Test
+    public void testEventsAreOnlyBufferedDuringLockdown() throws Exception {
+        setField(mockConnection, "lockdownManager", lockdownManager);
+        lockdownManager.setState(null);
+        final List<Event> wrappedEvents = Lists.newArrayList();
+        BufferedConnection innerBufferedConnection = new BufferedConnection(mockConnection, mockBuffer,
+            TimeUnit.MINUTES.toMillis(1), false, 0);
+        Connection lockedDownConnection = innerBufferedConnection.wrapConnectionWithBufferWriter(new Connection() {
+            @Override
+            public void send(Event event) throws ConnectionException {
+                wrappedEvents.add(event);
+            }
+
+            @Override
+            public void addEventSendFailureCallback(EventSendFailureCallback eventSendFailureCallback) {
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+        });
+
+        Event event = new EventBuilder().build();
+        lockedDownConnection.send(event);
+
+        assertThat(bufferedEvents, contains(event));
+        assertThat(wrappedEvents.isEmpty(), is(true));
+        innerBufferedConnection.close();
+    }
+
+    @Test
+    public void testFlushSendsOldEventsInTheBufferOrder() throws Exception {
+        long now = System.currentTimeMillis();
+        Event youngEvent = new EventBuilder().withTimestamp(new Date(now + 60000)).build();
+        Event oldEvent = new EventBuilder().withTimestamp(new Date(now - 2000)).build();
+        Event olderEvent = new EventBuilder().withTimestamp(new Date(now - 3000)).build();
+        // The young event doesn't stop the flush of the events buffered after it
+        final List<Event> orderedEvents = Lists.newArrayList(olderEvent, youngEvent, oldEvent);
+        Buffer orderedBuffer = new Buffer() {
+            @Override
+            public void add(Event event) {
+            }
+
+            @Override
+            public void discard(Event event) {
+                orderedEvents.remove(event);
+            }
+
+            @Override
+            public Iterator<Event> getEvents() {
+                return Lists.newArrayList(orderedEvents).iterator();
+            }
+        };
+
+        BufferedConnection flushingConnection = new BufferedConnection(mockConnection, orderedBuffer, 100, false, 0);
+        try {
+            waitUntilTrue(2000, new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return sentEvents.size() == 2;
+                }
+            });
+        } finally {
+            flushingConnection.close();
+        }
+
+        assertThat(sentEvents, contains(olderEvent, oldEvent));
+    }
+
+    @Test
+    public void testParallelFlushRampsUp() throws Exception {
+        final AtomicInteger sending = new AtomicInteger();
+        final AtomicInteger maxSending = new AtomicInteger();
+        final Set<Event> sent = Collections.newSetFromMap(new ConcurrentHashMap<Event, Boolean>());
+        Connection slowConnection = new AbstractConnection("public", "private") {
+            @Override
+            protected void doSend(Event event) throws ConnectionException {
+                int current = sending.incrementAndGet();
+                int max = maxSending.get();
+                while (current > max && !maxSending.compareAndSet(max, current)) {
+                    max = maxSending.get();
+                }
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                sending.decrementAndGet();
+                sent.add(event);
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+        };
+        final Set<Event> events = Collections.newSetFromMap(new ConcurrentHashMap<Event, Boolean>());
+        for (int i = 0; i < 30; i++) {
+            events.add(new EventBuilder().withTimestamp(new Date(System.currentTimeMillis() - 1000)).build());
+        }
+        Buffer concurrentBuffer = new Buffer() {
+            @Override
+            public void add(Event event) {
+            }
+
+            @Override
+            public void discard(Event event) {
+                events.remove(event);
+            }
+
+            @Override
+            public Iterator<Event> getEvents() {
+                return Lists.newArrayList(events).iterator();
+            }
+        };
+
+        BufferedConnection flushingConnection = new BufferedConnection(slowConnection, concurrentBuffer, 10, false,
+            0, 4, 0);
+        try {
+            waitUntilTrue(5000, new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return events.isEmpty();
+                }
+            });
+        } finally {
+            flushingConnection.close();
+        }
+
+        assertThat(sent.size(), is(30));
+        assertThat(maxSending.get(), is(greaterThan(1)));
+        assertThat(maxSending.get(), is(lessThanOrEqualTo(4)));
+    }
+
+    @Test
+    public void testPayloadsAreFlushedWithoutMarshalling() throws Exception {
+        final List<UUID> sentPayloads = Lists.newArrayList();
+        final List<Event> marshalledEvents = Lists.newArrayList();
+        Connection payloadConnection = new PayloadHttpConnection() {
+            @Override
+            public void sendPayload(UUID eventId, Event event, FileChannel payload) throws ConnectionException {
+                sentPayloads.add(eventId);
+            }
+        };
+        File bufferDir = File.createTempFile("raven-payloads", null);
+        bufferDir.delete();
+        final PayloadDiskBuffer payloadBuffer = new PayloadDiskBuffer(bufferDir, 10, new Marshaller() {
+            @Override
+            public void marshall(Event event, OutputStream destination) {
+                marshalledEvents.add(event);
+            }
+        });
+        Event event = new EventBuilder().build();
+        payloadBuffer.add(event);
+
+        BufferedConnection payloadBufferedConnection = new BufferedConnection(payloadConnection, payloadBuffer, 10,
+            false, 0);
+        try {
+            waitUntilTrue(1000, new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return !payloadBuffer.getPayloads().hasNext();
+                }
+            });
+            assertThat(payloadBuffer.getPayloads().hasNext(), is(false));
+        } finally {
+            payloadBufferedConnection.close();
+            bufferDir.delete();
+        }
+
+        assertThat(sentPayloads, contains(event.getId()));
+        assertThat(marshalledEvents, contains(event));
+    }
+
+    @Test
+    public void testLiveEventIsMarshalledOnceAndSentAsAPayload() throws Exception {
+        final List<Event> sentPayloadEvents = Lists.newArrayList();
+        final List<Event> marshalledEvents = Lists.newArrayList();
+        Connection payloadConnection = new PayloadHttpConnection() {
+            @Override
+            public void sendPayload(UUID eventId, Event event, FileChannel payload) throws ConnectionException {
+                sentPayloadEvents.add(event);
+            }
+        };
+        File bufferDir = File.createTempFile("raven-payloads", null);
+        bufferDir.delete();
+        final PayloadDiskBuffer payloadBuffer = new PayloadDiskBuffer(bufferDir, 10, new Marshaller() {
+            @Override
+            public void marshall(Event event, OutputStream destination) {
+                marshalledEvents.add(event);
+            }
+        });
+        BufferedConnection payloadBufferedConnection = new BufferedConnection(payloadConnection, payloadBuffer,
+            TimeUnit.MINUTES.toMillis(1), false, 0);
+        Event event = new EventBuilder().build();
+        try {
+            payloadBufferedConnection.wrapConnectionWithBufferWriter(payloadBufferedConnection).send(event);
+            assertThat(payloadBuffer.getPayloads().hasNext(), is(false));
+        } finally {
+            payloadBufferedConnection.close();
+            bufferDir.delete();
+        }
+
+        assertThat(marshalledEvents, contains(event));
+        assertThat(sentPayloadEvents, contains(event));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testPayloadBufferRequiresAPayloadConnection() throws Exception {
+        File bufferDir = File.createTempFile("raven-payloads", null);
+        bufferDir.delete();
+        try {
+            new BufferedConnection(mockConnection, new PayloadDiskBuffer(bufferDir, 10, null), 10, false, 0);
+        } finally {
+            bufferDir.delete();
+        }
+    }
+
+    private abstract static class PayloadHttpConnection extends AbstractConnection implements PayloadConnection {
+        PayloadHttpConnection() {
+            super("public", "private");
+        }
+
+        @Override
+        protected void doSend(Event event) throws ConnectionException {
+            throw new ConnectionException("Only payloads are expected.");
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
 }
@@ -0,0 +1,138 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.BaseTest;
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventBuilder;
+import com.getsentry.raven.event.interfaces.ExceptionInterface;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class DeduplicatingConnectionTest extends BaseTest {
+    private static final long WINDOW = TimeUnit.HOURS.toMillis(1);
+    private List<Event> sentEvents;
+    private volatile boolean closed;
+    private DeduplicatingConnection deduplicatingConnection;
+
+    @BeforeMethod
+    public void setUp() {
+        sentEvents = new CopyOnWriteArrayList<Event>();
+        closed = false;
+
+        Connection mockConnection = new Connection() {
+            @Override
+            public void send(Event event) {
+                sentEvents.add(event);
+            }
+
+            @Override
+            public void addEventSendFailureCallback(EventSendFailureCallback eventSendFailureCallback) {
+
+            }
+
+            @Override
+            public void close() throws IOException {
+                closed = true;
+            }
+        };
+        deduplicatingConnection = new DeduplicatingConnection(mockConnection, WINDOW,
+            DeduplicatingConnection.DEFAULT_TOP_FRAMES);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        deduplicatingConnection.close();
+    }
+
+    @Test
+    public void testRepeatsAreSentAsASingleEvent() throws Exception {
+        // Thrown from the same place, as the top frames identify the events
+        List<Event> events = new ArrayList<Event>();
+        for (int i = 0; i < 3; i++) {
+            events.add(exceptionEvent());
+        }
+        Event first = events.get(0);
+        Event third = events.get(2);
+
+        for (Event event : events) {
+            deduplicatingConnection.send(event);
+        }
+        assertThat(sentEvents, contains(first));
+
+        deduplicatingConnection.sendSummaries(System.currentTimeMillis() + WINDOW, false);
+
+        assertThat(sentEvents, hasSize(2));
+        Event summary = sentEvents.get(1);
+        assertThat(summary.getId(), is(third.getId()));
+        assertThat(summary.getExtra().get(DeduplicatingConnection.TIMES_SEEN_EXTRA), is((Object) 2));
+        assertThat(summary.getSentryInterfaces(), is(third.getSentryInterfaces()));
+    }
+
+    @Test
+    public void testDifferentEventsAreSent() throws Exception {
+        Event exception = exceptionEvent();
+        Event message = new EventBuilder().withMessage("message").build();
+        Event otherMessage = new EventBuilder().withMessage("other message").build();
+
+        deduplicatingConnection.send(exception);
+        deduplicatingConnection.send(message);
+        deduplicatingConnection.send(otherMessage);
+
+        assertThat(sentEvents, contains(exception, message, otherMessage));
+    }
+
+    @Test
+    public void testEventIsSentAgainAfterAWindowWithoutRepeats() throws Exception {
+        Event first = new EventBuilder().withMessage("message").build();
+        Event second = new EventBuilder().withMessage("message").build();
+
+        deduplicatingConnection.send(first);
+        deduplicatingConnection.sendSummaries(System.currentTimeMillis() + WINDOW, false);
+        deduplicatingConnection.send(second);
+
+        assertThat(sentEvents, contains(first, second));
+        assertThat(second.getExtra().get(DeduplicatingConnection.TIMES_SEEN_EXTRA), is(nullValue()));
+    }
+
+    @Test
+    public void testWindowInProgressIsKept() throws Exception {
+        deduplicatingConnection.send(new EventBuilder().withMessage("message").build());
+        deduplicatingConnection.send(new EventBuilder().withMessage("message").build());
+
+        deduplicatingConnection.sendSummaries(System.currentTimeMillis(), false);
+
+        assertThat(sentEvents, hasSize(1));
+    }
+
+    @Test
+    public void testPendingRepeatsAreSentOnClose() throws Exception {
+        deduplicatingConnection.send(new EventBuilder().withMessage("message").build());
+        deduplicatingConnection.send(new EventBuilder().withMessage("message").build());
+
+        deduplicatingConnection.close();
+
+        assertThat(sentEvents, hasSize(2));
+        assertThat(sentEvents.get(1).getExtra().get(DeduplicatingConnection.TIMES_SEEN_EXTRA), is((Object) 1));
+        assertThat(closed, equalTo(true));
+    }
+
+    private static Event exceptionEvent() {
+        return new EventBuilder()
+            .withMessage("failure")
+            .withSentryInterface(new ExceptionInterface(new IllegalStateException("failure")))
+            .build();
+    }
+}
@@ -11,12 +11,18 @@ import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSession;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Proxy;
 import java.net.URI;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.util.UUID;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -161,6 +167,38 @@ public class HttpConnectionTest {
         }
     }
 
+    @Test
+    public void testPayloadCopiedToTheRequest() throws Exception {
+        final byte[] content = "marshalled event".getBytes("UTF-8");
+        final ByteArrayOutputStream requestBody = new ByteArrayOutputStream();
+        new NonStrictExpectations() {{
+            mockUrlConnection.getOutputStream();
+            result = requestBody;
+        }};
+        File payload = File.createTempFile("raven-payload", null);
+        try {
+            FileOutputStream outputStream = new FileOutputStream(payload);
+            outputStream.write(content);
+            outputStream.close();
+
+            FileChannel channel = new FileInputStream(payload).getChannel();
+            try {
+                httpConnection.sendPayload(UUID.randomUUID(), null, channel);
+            } finally {
+                channel.close();
+            }
+        } finally {
+            payload.delete();
+        }
+
+        assertThat(requestBody.toByteArray(), is(content));
+        new Verifications() {{
+            mockUrlConnection.setFixedLengthStreamingMode((long) content.length);
+            mockMarshaller.marshall((Event) any, (OutputStream) any);
+            times = 0;
+        }};
+    }
+
     @Test
     public void testApiUrlCreation(@Injectable final URI sentryUri) throws Exception {
         final String uri = "http://host/sentry/";
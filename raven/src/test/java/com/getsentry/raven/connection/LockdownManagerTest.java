@@ -0,0 +1,136 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.time.FixedClock;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class LockdownManagerTest {
+    private FixedClock fixedClock;
+    private LockdownManager lockdownManager;
+
+    @BeforeMethod
+    public void setUp() {
+        fixedClock = new FixedClock(new Date(1483228800L));
+        lockdownManager = new LockdownManager(fixedClock);
+    }
+
+    @Test
+    public void testLockdownEndsWithASingleProbe() {
+        lockdownManager.setState(null);
+
+        assertThat(lockdownManager.getState(), is(LockdownManager.State.OPEN));
+        assertThat(lockdownManager.isLockedDown(), is(true));
+        fixedClock.tick(LockdownManager.DEFAULT_BASE_LOCKDOWN_TIME - 1, TimeUnit.MILLISECONDS);
+        assertThat(lockdownManager.isLockedDown(), is(true));
+        fixedClock.tick(1, TimeUnit.MILLISECONDS);
+        assertThat(lockdownManager.isShortCircuited(), is(false));
+        assertThat(lockdownManager.isLockedDown(), is(false));
+        assertThat(lockdownManager.getState(), is(LockdownManager.State.HALF_OPEN));
+        assertThat(lockdownManager.isShortCircuited(), is(true));
+        assertThat(lockdownManager.isLockedDown(), is(true));
+    }
+
+    @Test
+    public void testSuccessfulProbeClosesTheCircuit() {
+        lockdownManager.setState(null);
+        fixedClock.tick(LockdownManager.DEFAULT_BASE_LOCKDOWN_TIME, TimeUnit.MILLISECONDS);
+        lockdownManager.isLockedDown();
+
+        lockdownManager.resetState();
+
+        assertThat(lockdownManager.getState(), is(LockdownManager.State.CLOSED));
+        assertThat(lockdownManager.isLockedDown(), is(false));
+        assertThat(lockdownManager.getLockdownTime(), is(0L));
+        assertThat(lockdownManager.getLockdownStartTime(), is(nullValue()));
+    }
+
+    @Test
+    public void testFailedProbeReopensTheCircuit() {
+        lockdownManager.setState(null);
+        fixedClock.tick(LockdownManager.DEFAULT_BASE_LOCKDOWN_TIME, TimeUnit.MILLISECONDS);
+        lockdownManager.isLockedDown();
+
+        lockdownManager.setState(null);
+
+        assertThat(lockdownManager.getState(), is(LockdownManager.State.OPEN));
+        assertThat(lockdownManager.isLockedDown(), is(true));
+        assertThat(lockdownManager.getLockdownTime(), is(LockdownManager.DEFAULT_BASE_LOCKDOWN_TIME));
+    }
+
+    @Test
+    public void testUnfinishedProbeIsReplacedAfterTheLockdownTime() {
+        lockdownManager.setState(null);
+        fixedClock.tick(LockdownManager.DEFAULT_BASE_LOCKDOWN_TIME, TimeUnit.MILLISECONDS);
+        lockdownManager.isLockedDown();
+
+        fixedClock.tick(LockdownManager.DEFAULT_BASE_LOCKDOWN_TIME, TimeUnit.MILLISECONDS);
+
+        assertThat(lockdownManager.isLockedDown(), is(false));
+        assertThat(lockdownManager.isLockedDown(), is(true));
+    }
+
+    @Test
+    public void testStateChangesAreNotified() {
+        final List<String> transitions = new ArrayList<String>();
+        lockdownManager.addStateListener(new LockdownStateListener() {
+            @Override
+            public void onStateChange(LockdownManager.State previousState, LockdownManager.State newState) {
+                transitions.add(previousState + "->" + newState);
+            }
+        });
+
+        lockdownManager.resetState();
+        lockdownManager.setState(null);
+        lockdownManager.setState(null);
+        fixedClock.tick(LockdownManager.DEFAULT_BASE_LOCKDOWN_TIME, TimeUnit.MILLISECONDS);
+        lockdownManager.isLockedDown();
+        lockdownManager.resetState();
+
+        assertThat(transitions, contains("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED"));
+    }
+
+    @Test
+    public void testConcurrentCallersTakeASingleProbe() throws Exception {
+        lockdownManager.setState(null);
+        fixedClock.tick(LockdownManager.DEFAULT_BASE_LOCKDOWN_TIME, TimeUnit.MILLISECONDS);
+
+        int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executorService.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    start.await();
+                    return lockdownManager.isLockedDown();
+                }
+            }));
+        }
+        start.countDown();
+        executorService.shutdown();
+
+        int probes = 0;
+        for (Future<Boolean> result : results) {
+            if (!result.get(1, TimeUnit.MINUTES)) {
+                probes++;
+            }
+        }
+        assertThat(probes, is(1));
+    }
+}
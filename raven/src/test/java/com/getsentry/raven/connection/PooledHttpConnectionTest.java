@@ -0,0 +1,422 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventBuilder;
+import com.getsentry.raven.marshaller.Marshaller;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.KeyStore;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static mockit.Deencapsulation.getField;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class PooledHttpConnectionTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] KEYSTORE_PASSWORD = "raven-test".toCharArray();
+    private HttpServer server;
+    private List<String> receivedBodies;
+    private volatile int responseStatus;
+    private volatile String responseBody;
+    private volatile boolean closeAfterResponse;
+    private PooledHttpConnection pooledHttpConnection;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        receivedBodies = new CopyOnWriteArrayList<String>();
+        responseStatus = 200;
+        responseBody = "{\"id\": \"1\"}";
+        closeAfterResponse = false;
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", createHandler());
+        server.start();
+
+        pooledHttpConnection = createConnection(server.getAddress().getPort(), 2);
+    }
+
+    private HttpHandler createHandler() {
+        return new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                receivedBodies.add(new String(readFully(exchange.getRequestBody()), UTF_8));
+                if (responseStatus == 429) {
+                    exchange.getResponseHeaders().add("Retry-After", "5");
+                }
+                if (closeAfterResponse) {
+                    exchange.getResponseHeaders().add("Connection", "close");
+                }
+                byte[] body = responseBody.getBytes(UTF_8);
+                exchange.sendResponseHeaders(responseStatus, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        };
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        pooledHttpConnection.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testConnectionIsReusedBetweenEvents() throws Exception {
+        pooledHttpConnection.doSend(new EventBuilder().withMessage("first").build());
+        pooledHttpConnection.doSend(new EventBuilder().withMessage("second").build());
+        pooledHttpConnection.doSend(new EventBuilder().withMessage("third").build());
+
+        assertThat(receivedBodies, contains("first", "second", "third"));
+        assertThat(pooledHttpConnection.getOpenedConnections(), is(1L));
+        assertThat(pooledHttpConnection.getRequests(), is(3L));
+        assertThat(pooledHttpConnection.getReusedRequests(), is(2L));
+        assertThat(pooledHttpConnection.getReuseRate(), is(closeTo(2.0 / 3, 0.0001)));
+        assertThat(pooledHttpConnection.getIdleConnections(), is(1));
+    }
+
+    @Test
+    public void testPayloadIsSentOnAPooledConnection() throws Exception {
+        File payload = File.createTempFile("raven-payload", null);
+        try {
+            FileOutputStream outputStream = new FileOutputStream(payload);
+            outputStream.write("marshalled".getBytes(UTF_8));
+            outputStream.close();
+
+            FileChannel channel = new FileInputStream(payload).getChannel();
+            try {
+                pooledHttpConnection.sendPayload(UUID.randomUUID(), null, channel);
+                pooledHttpConnection.sendPayload(UUID.randomUUID(), null, channel);
+            } finally {
+                channel.close();
+            }
+        } finally {
+            payload.delete();
+        }
+
+        assertThat(receivedBodies, contains("marshalled", "marshalled"));
+        assertThat(pooledHttpConnection.getReusedRequests(), is(1L));
+    }
+
+    @Test
+    public void testConnectionClosedByServerIsNotReused() throws Exception {
+        closeAfterResponse = true;
+
+        pooledHttpConnection.doSend(new EventBuilder().withMessage("first").build());
+        pooledHttpConnection.doSend(new EventBuilder().withMessage("second").build());
+
+        assertThat(receivedBodies, contains("first", "second"));
+        assertThat(pooledHttpConnection.getOpenedConnections(), is(2L));
+        assertThat(pooledHttpConnection.getReusedRequests(), is(0L));
+        assertThat(pooledHttpConnection.getIdleConnections(), is(0));
+    }
+
+    @Test
+    public void testIdleConnectionsAreEvicted() throws Exception {
+        pooledHttpConnection.setIdleTimeout(10L);
+
+        pooledHttpConnection.doSend(new EventBuilder().build());
+        Thread.sleep(50L);
+        pooledHttpConnection.doSend(new EventBuilder().build());
+
+        assertThat(pooledHttpConnection.getOpenedConnections(), is(2L));
+        assertThat(pooledHttpConnection.getReusedRequests(), is(0L));
+    }
+
+    @Test
+    public void testErrorResponseIsReportedAndConnectionKept() throws Exception {
+        responseStatus = 429;
+        responseBody = "Creation of this event was denied due to rate limiting";
+
+        try {
+            pooledHttpConnection.doSend(new EventBuilder().build());
+            throw new AssertionError("A ConnectionException should have been thrown");
+        } catch (ConnectionException e) {
+            assertThat(e.getMessage(), is(responseBody));
+            assertThat(e.getRecommendedLockdownTime(), is(5000L));
+        }
+
+        responseStatus = 200;
+        pooledHttpConnection.doSend(new EventBuilder().build());
+        assertThat(pooledHttpConnection.getOpenedConnections(), is(1L));
+    }
+
+    @Test
+    public void testConnectionClosedByTheServerIsNotReused() throws Exception {
+        // Server answering a single request per connection, without announcing that it closes the connection
+        final ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+        final CountDownLatch firstConnectionClosed = new CountDownLatch(1);
+        Thread serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 2; i++) {
+                        Socket socket = serverSocket.accept();
+                        readRequest(socket.getInputStream());
+                        OutputStream outputStream = socket.getOutputStream();
+                        outputStream.write("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n".getBytes(UTF_8));
+                        outputStream.flush();
+                        socket.close();
+                        firstConnectionClosed.countDown();
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        serverThread.start();
+        PooledHttpConnection connection = createConnection(serverSocket.getLocalPort(), 1);
+        try {
+            connection.doSend(new EventBuilder().build());
+            firstConnectionClosed.await(1, TimeUnit.SECONDS);
+            // The closed connection is found by the background check
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+            while (connection.getIdleConnections() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50L);
+            }
+            assertThat(connection.getIdleConnections(), is(0));
+            connection.doSend(new EventBuilder().build());
+
+            assertThat(connection.getOpenedConnections(), is(2L));
+            assertThat(connection.getRequests(), is(2L));
+        } finally {
+            connection.close();
+            serverThread.join(1000L);
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void testWrittenRequestIsNeverSentTwice() throws Exception {
+        // Server closing the connection after receiving the second request, without answering it
+        final ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+        Thread serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Socket socket = serverSocket.accept();
+                    readRequest(socket.getInputStream());
+                    OutputStream outputStream = socket.getOutputStream();
+                    outputStream.write("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n".getBytes(UTF_8));
+                    outputStream.flush();
+                    readRequest(socket.getInputStream());
+                    socket.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        serverThread.start();
+        PooledHttpConnection connection = createConnection(serverSocket.getLocalPort(), 1);
+        try {
+            connection.doSend(new EventBuilder().build());
+            try {
+                connection.doSend(new EventBuilder().build());
+                throw new AssertionError("A ConnectionException should have been thrown");
+            } catch (ConnectionException e) {
+                // expected
+            }
+
+            assertThat(connection.getOpenedConnections(), is(1L));
+        } finally {
+            connection.close();
+            serverThread.join(1000L);
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void testInvalidContentLengthIsAConnectionFailure() throws Exception {
+        final ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+        Thread serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Socket socket = serverSocket.accept();
+                    readRequest(socket.getInputStream());
+                    OutputStream outputStream = socket.getOutputStream();
+                    outputStream.write("HTTP/1.1 200 OK\r\nContent-Length: abc\r\n\r\n".getBytes(UTF_8));
+                    outputStream.flush();
+                    socket.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        serverThread.start();
+        PooledHttpConnection connection = createConnection(serverSocket.getLocalPort(), 1);
+        try {
+            connection.doSend(new EventBuilder().build());
+            throw new AssertionError("A ConnectionException should have been thrown");
+        } catch (ConnectionException e) {
+            assertThat(e.getCause().getMessage(), is("Invalid Content-Length: abc"));
+        } finally {
+            connection.close();
+            serverThread.join(1000L);
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void testPoolExhaustionDoesNotLockDown() throws Exception {
+        final List<Event> failedEvents = new CopyOnWriteArrayList<Event>();
+        pooledHttpConnection.addEventSendFailureCallback(new EventSendFailureCallback() {
+            @Override
+            public void onFailure(Event event, Exception exception) {
+                failedEvents.add(event);
+            }
+        });
+        pooledHttpConnection.setTimeout(10);
+        Semaphore permits = getField(pooledHttpConnection, "permits");
+        permits.acquire(2);
+
+        Event event = new EventBuilder().build();
+        try {
+            pooledHttpConnection.send(event);
+            throw new AssertionError("A PoolExhaustedException should have been thrown");
+        } catch (PoolExhaustedException e) {
+            // expected, as a ConnectionException so that the event can be buffered
+        }
+        permits.release(2);
+        pooledHttpConnection.send(new EventBuilder().withMessage("sent").build());
+
+        assertThat(receivedBodies, contains("sent"));
+        assertThat(failedEvents, contains(event));
+    }
+
+    @Test
+    public void testHttpsConnectionIsReused() throws Exception {
+        SSLContext sslContext = createSslContext();
+        HttpsServer httpsServer = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        httpsServer.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+        httpsServer.createContext("/", createHandler());
+        httpsServer.start();
+        PooledHttpConnection connection = new PooledHttpConnection(
+            new URL("https://127.0.0.1:" + httpsServer.getAddress().getPort() + "/api/1/store/"),
+            "public", "private", null, 1);
+        connection.setMarshaller(createMarshaller());
+        connection.setSslSocketFactory(sslContext.getSocketFactory());
+        try {
+            connection.doSend(new EventBuilder().withMessage("first").build());
+            connection.doSend(new EventBuilder().withMessage("second").build());
+
+            assertThat(receivedBodies, contains("first", "second"));
+            assertThat(connection.getOpenedConnections(), is(1L));
+            assertThat(connection.getReusedRequests(), is(1L));
+        } finally {
+            connection.close();
+            httpsServer.stop(0);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidMaxConnections() throws Exception {
+        new PooledHttpConnection(new URL("http://localhost/api/1/store/"), "public", "private", null, 0);
+    }
+
+    private PooledHttpConnection createConnection(int port, int maxConnections) throws Exception {
+        PooledHttpConnection connection = new PooledHttpConnection(
+            new URL("http://127.0.0.1:" + port + "/api/1/store/"), "public", "private", null, maxConnections);
+        connection.setMarshaller(createMarshaller());
+        return connection;
+    }
+
+    private static Marshaller createMarshaller() {
+        return new Marshaller() {
+            @Override
+            public void marshall(Event event, OutputStream destination) {
+                try {
+                    String message = event.getMessage() != null ? event.getMessage() : "";
+                    destination.write(message.getBytes(UTF_8));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates a TLS context both presenting and trusting the self-signed certificate of the test keystore.
+     */
+    static SSLContext createSslContext() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        InputStream keyStoreStream = PooledHttpConnectionTest.class.getResourceAsStream("keystore.jks");
+        try {
+            keyStore.load(keyStoreStream, KEYSTORE_PASSWORD);
+        } finally {
+            keyStoreStream.close();
+        }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, KEYSTORE_PASSWORD);
+        TrustManagerFactory trustManagerFactory =
+            TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(keyStore);
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+        return sslContext;
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[512];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            content.write(buffer, 0, read);
+        }
+        return content.toByteArray();
+    }
+
+    /**
+     * Reads the request headers and its body, relying on its Content-Length.
+     */
+    private static void readRequest(InputStream inputStream) throws IOException {
+        StringBuilder headers = new StringBuilder();
+        while (!headers.toString().endsWith("\r\n\r\n")) {
+            int c = inputStream.read();
+            if (c == -1) {
+                throw new IOException("Connection closed");
+            }
+            headers.append((char) c);
+        }
+        int contentLength = 0;
+        for (String header : headers.toString().split("\r\n")) {
+            if (header.toLowerCase().startsWith("content-length:")) {
+                contentLength = Integer.parseInt(header.substring("content-length:".length()).trim());
+            }
+        }
+        for (int i = 0; i < contentLength; i++) {
+            inputStream.read();
+        }
+    }
+}
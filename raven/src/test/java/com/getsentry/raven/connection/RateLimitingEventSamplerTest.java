@@ -0,0 +1,49 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventBuilder;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class RateLimitingEventSamplerTest {
+    // Low enough for the buckets not to be refilled during the test
+    private static final double RATE = 0.001;
+
+    @Test
+    public void testGlobalLimit() {
+        RateLimitingEventSampler eventSampler = new RateLimitingEventSampler(RATE, 0, 0, 2);
+
+        assertThat(eventSampler.shouldSendEvent(event("a", "message")), is(true));
+        assertThat(eventSampler.shouldSendEvent(event("b", "message")), is(true));
+        assertThat(eventSampler.shouldSendEvent(event("c", "message")), is(false));
+        assertThat(eventSampler.getDroppedEvents(), is(1L));
+    }
+
+    @Test
+    public void testLimitPerLogger() {
+        RateLimitingEventSampler eventSampler = new RateLimitingEventSampler(0, RATE, 0, 1);
+
+        assertThat(eventSampler.shouldSendEvent(event("a", "first")), is(true));
+        assertThat(eventSampler.shouldSendEvent(event("a", "second")), is(false));
+        assertThat(eventSampler.shouldSendEvent(event("b", "first")), is(true));
+    }
+
+    @Test
+    public void testLimitPerFingerprint() {
+        RateLimitingEventSampler eventSampler = new RateLimitingEventSampler(0, 0, RATE, 1);
+        Event fingerprinted = new EventBuilder().withMessage("first").withFingerprint("group").build();
+        Event sameFingerprint = new EventBuilder().withMessage("second").withFingerprint("group").build();
+
+        assertThat(eventSampler.shouldSendEvent(event("a", "message")), is(true));
+        assertThat(eventSampler.shouldSendEvent(event("b", "message")), is(false));
+        assertThat(eventSampler.shouldSendEvent(event("a", "other message")), is(true));
+        assertThat(eventSampler.shouldSendEvent(fingerprinted), is(true));
+        assertThat(eventSampler.shouldSendEvent(sameFingerprint), is(false));
+    }
+
+    private static Event event(String logger, String message) {
+        return new EventBuilder().withLogger(logger).withMessage(message).build();
+    }
+}
@@ -0,0 +1,209 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.BaseTest;
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventBuilder;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class RingBufferConnectionTest extends BaseTest {
+    private List<Event> sentEvents;
+    private List<Thread> sendingThreads;
+    private CountDownLatch sendAllowed;
+    private volatile boolean closed;
+    private Connection mockConnection;
+    private RingBufferConnection ringBufferConnection;
+
+    @BeforeMethod
+    public void setUp() {
+        sentEvents = new CopyOnWriteArrayList<Event>();
+        sendingThreads = new CopyOnWriteArrayList<Thread>();
+        sendAllowed = new CountDownLatch(0);
+        closed = false;
+
+        mockConnection = new Connection() {
+            @Override
+            public void send(Event event) {
+                try {
+                    // Only the sender thread is held back, synchronous sends go through
+                    if (Thread.currentThread().getName().equals("raven-ring-buffer-sender")) {
+                        sendAllowed.await();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                sendingThreads.add(Thread.currentThread());
+                sentEvents.add(event);
+            }
+
+            @Override
+            public void addEventSendFailureCallback(EventSendFailureCallback eventSendFailureCallback) {
+
+            }
+
+            @Override
+            public void close() throws IOException {
+                closed = true;
+            }
+        };
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        if (ringBufferConnection != null) {
+            sendAllowed.countDown();
+            ringBufferConnection.close();
+            ringBufferConnection = null;
+        }
+    }
+
+    @Test
+    public void testEventsAreSentInOrderFromTheSenderThread() throws Exception {
+        ringBufferConnection = createConnection(16, QueueOverflowPolicy.DISCARD_NEW);
+        Event event1 = new EventBuilder().build();
+        Event event2 = new EventBuilder().build();
+        Event event3 = new EventBuilder().build();
+
+        ringBufferConnection.send(event1);
+        ringBufferConnection.send(event2);
+        ringBufferConnection.send(event3);
+
+        waitUntilTrue(1000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return sentEvents.size() == 3;
+            }
+        });
+        assertThat(sentEvents, contains(event1, event2, event3));
+        for (Thread thread : sendingThreads) {
+            assertThat(thread.getName(), is("raven-ring-buffer-sender"));
+        }
+    }
+
+    @Test
+    public void testCloseSendsQueuedEventsAndClosesActualConnection() throws Exception {
+        sendAllowed = new CountDownLatch(1);
+        ringBufferConnection = createConnection(16, QueueOverflowPolicy.DISCARD_NEW);
+        for (int i = 0; i < 5; i++) {
+            ringBufferConnection.send(new EventBuilder().build());
+        }
+
+        sendAllowed.countDown();
+        ringBufferConnection.close();
+        ringBufferConnection = null;
+
+        assertThat(sentEvents.size(), is(5));
+        assertThat(closed, is(true));
+    }
+
+    @Test
+    public void testDiscardNewWhenFull() throws Exception {
+        sendAllowed = new CountDownLatch(1);
+        ringBufferConnection = createConnection(2, QueueOverflowPolicy.DISCARD_NEW);
+        Event blocked = sendWhileSenderIsBlocked();
+        Event queued1 = new EventBuilder().build();
+        Event queued2 = new EventBuilder().build();
+
+        ringBufferConnection.send(queued1);
+        ringBufferConnection.send(queued2);
+        ringBufferConnection.send(new EventBuilder().build());
+        assertThat(ringBufferConnection.getDroppedNewEvents(), is(1L));
+        sendAllowed.countDown();
+        ringBufferConnection.close();
+        ringBufferConnection = null;
+
+        assertThat(sentEvents, contains(blocked, queued1, queued2));
+    }
+
+    @Test
+    public void testDiscardOldWhenFull() throws Exception {
+        sendAllowed = new CountDownLatch(1);
+        ringBufferConnection = createConnection(2, QueueOverflowPolicy.DISCARD_OLD);
+        Event blocked = sendWhileSenderIsBlocked();
+        Event queued1 = new EventBuilder().build();
+        Event queued2 = new EventBuilder().build();
+
+        ringBufferConnection.send(new EventBuilder().build());
+        ringBufferConnection.send(queued1);
+        ringBufferConnection.send(queued2);
+        assertThat(ringBufferConnection.getDroppedOldEvents(), is(1L));
+        sendAllowed.countDown();
+        ringBufferConnection.close();
+        ringBufferConnection = null;
+
+        assertThat(sentEvents, contains(blocked, queued1, queued2));
+    }
+
+    @Test
+    public void testSyncWhenFull() throws Exception {
+        sendAllowed = new CountDownLatch(1);
+        ringBufferConnection = createConnection(2, QueueOverflowPolicy.SYNC);
+        sendWhileSenderIsBlocked();
+        ringBufferConnection.send(new EventBuilder().build());
+        ringBufferConnection.send(new EventBuilder().build());
+        Event synchronous = new EventBuilder().build();
+
+        ringBufferConnection.send(synchronous);
+
+        assertThat(sentEvents, contains(synchronous));
+        assertThat(sendingThreads.get(0), equalTo(Thread.currentThread()));
+        assertThat(ringBufferConnection.getSynchronousEvents(), is(1L));
+    }
+
+    @Test
+    public void testConcurrentProducersDontLoseEvents() throws Exception {
+        ringBufferConnection = createConnection(64, QueueOverflowPolicy.SYNC);
+        final int producers = 8;
+        final int eventsPerProducer = 500;
+        Thread[] threads = new Thread[producers];
+        for (int i = 0; i < producers; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < eventsPerProducer; j++) {
+                        ringBufferConnection.send(new EventBuilder().build());
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        ringBufferConnection.close();
+        ringBufferConnection = null;
+
+        assertThat(sentEvents.size(), is(producers * eventsPerProducer));
+    }
+
+    private RingBufferConnection createConnection(int capacity, QueueOverflowPolicy overflowPolicy) {
+        return new RingBufferConnection(mockConnection, capacity, Thread.MIN_PRIORITY, overflowPolicy, false, 1000L);
+    }
+
+    /**
+     * Sends an event and waits for the sender thread to pick it up, so that it blocks on {@link #sendAllowed}.
+     */
+    private Event sendWhileSenderIsBlocked() throws Exception {
+        Event event = new EventBuilder().build();
+        ringBufferConnection.send(event);
+        waitUntilTrue(1000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return ringBufferConnection.getQueuedEvents() == 0;
+            }
+        });
+        return event;
+    }
+}
@@ -0,0 +1,47 @@
+package com.getsentry.raven.connection;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class TokenBucketTest {
+    @Test
+    public void testBurstUpToTheCapacity() {
+        TokenBucket tokenBucket = new TokenBucket(1, 3);
+        long now = System.nanoTime();
+
+        assertThat(tokenBucket.tryAcquire(now), is(true));
+        assertThat(tokenBucket.tryAcquire(now), is(true));
+        assertThat(tokenBucket.tryAcquire(now), is(true));
+        assertThat(tokenBucket.tryAcquire(now), is(false));
+    }
+
+    @Test
+    public void testPermitsAreRefilledAtTheRate() {
+        TokenBucket tokenBucket = new TokenBucket(2, 1);
+        long now = System.nanoTime();
+
+        assertThat(tokenBucket.tryAcquire(now), is(true));
+        assertThat(tokenBucket.tryAcquire(now + TimeUnit.MILLISECONDS.toNanos(400)), is(false));
+        assertThat(tokenBucket.tryAcquire(now + TimeUnit.MILLISECONDS.toNanos(500)), is(true));
+        assertThat(tokenBucket.tryAcquire(now + TimeUnit.MILLISECONDS.toNanos(500)), is(false));
+    }
+
+    @Test
+    public void testIdleBucketDoesntExceedItsCapacity() {
+        TokenBucket tokenBucket = new TokenBucket(10, 2);
+        long later = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+
+        assertThat(tokenBucket.tryAcquire(later), is(true));
+        assertThat(tokenBucket.tryAcquire(later), is(true));
+        assertThat(tokenBucket.tryAcquire(later), is(false));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRateMustBePositive() {
+        new TokenBucket(0, 1);
+    }
+}
@@ -1,5 +1,6 @@
 package com.getsentry.raven.event;
 
+import mockit.Deencapsulation;
 import mockit.Injectable;
 import mockit.NonStrictExpectations;
 import com.getsentry.raven.event.interfaces.SentryInterface;
@@ -10,8 +11,8 @@ import org.testng.annotations.Test;
 import java.net.InetAddress;
 import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import static mockit.Deencapsulation.getField;
 import static mockit.Deencapsulation.setField;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -20,13 +21,10 @@ public class EventBuilderTest {
     @Injectable
     private InetAddress mockLocalHost = null;
 
-    private static void resetHostnameCache() {
-        setField(getHostnameCache(), "expirationTimestamp", 0l);
-        setField(getHostnameCache(), "hostname", EventBuilder.DEFAULT_HOSTNAME);
-    }
-
-    private static Object getHostnameCache() {
-        return getField(EventBuilder.class, "HOSTNAME_CACHE");
+    private static void setCachedHostname(String hostname) {
+        // Keeps the background resolution from overriding the hostname
+        Deencapsulation.<AtomicBoolean>getField(EventBuilder.getHostnameCache(), "started").set(true);
+        setField(EventBuilder.getHostnameCache(), "hostname", hostname);
     }
 
     @BeforeMethod
@@ -253,35 +251,20 @@ public class EventBuilderTest {
     }
 
     @Test
-    public void builtEventWithNoServerNameUsesDefaultIfSearchTimesOut()
+    public void builtEventWithNoServerNameUsesDefaultIfHostnameIsUnknown()
             throws Exception {
-        resetHostnameCache();
-        new NonStrictExpectations(InetAddress.class) {{
-            InetAddress.getLocalHost();
-            result = mockLocalHost;
-            mockLocalHost.getCanonicalHostName();
-            result = new RuntimeException("For all intents and purposes, an exception is the same as a timeout");
-        }};
+        setCachedHostname(EventBuilder.DEFAULT_HOSTNAME);
         final EventBuilder eventBuilder = new EventBuilder();
 
         final Event event = eventBuilder.build();
-        synchronized (this) {
-            this.notify();
-        }
 
         assertThat(event.getServerName(), is(EventBuilder.DEFAULT_HOSTNAME));
     }
 
     @Test
-    public void builtEventWithNoServerNameUsesLocalHost(@Injectable("serverName") final String mockServerName)
+    public void builtEventWithNoServerNameUsesCachedHostname(@Injectable("serverName") final String mockServerName)
             throws Exception {
-        resetHostnameCache();
-        new NonStrictExpectations(InetAddress.class) {{
-            InetAddress.getLocalHost();
-            result = mockLocalHost;
-            mockLocalHost.getCanonicalHostName();
-            result = mockServerName;
-        }};
+        setCachedHostname(mockServerName);
         final EventBuilder eventBuilder = new EventBuilder();
 
         final Event event = eventBuilder.build();
@@ -292,7 +275,7 @@ public class EventBuilderTest {
     @Test
     public void builtEventWithServerNameUsesProvidedServerName(@Injectable("serverName") final String mockServerName)
             throws Exception {
-        resetHostnameCache();
+        setCachedHostname(EventBuilder.DEFAULT_HOSTNAME);
         final EventBuilder eventBuilder = new EventBuilder();
         eventBuilder.withServerName(mockServerName);
 
@@ -481,4 +464,24 @@ public class EventBuilderTest {
         eventBuilder.build();
         eventBuilder.build();
     }
+
+    @Test
+    public void copiedEventCanBeModified() throws Exception {
+        Event event = new EventBuilder()
+            .withMessage("message")
+            .withLevel(Event.Level.ERROR)
+            .withTag("tag", "value")
+            .withExtra("extra", "value")
+            .build();
+
+        Event copy = EventBuilder.copyOf(event).withTag("other", "value").build();
+
+        assertThat(copy.getId(), is(event.getId()));
+        assertThat(copy.getMessage(), is("message"));
+        assertThat(copy.getLevel(), is(Event.Level.ERROR));
+        assertThat(copy.getServerName(), is(event.getServerName()));
+        assertThat(copy.getExtra(), is(event.getExtra()));
+        assertThat(copy.getTags(), allOf(hasEntry("tag", "value"), hasEntry("other", "value")));
+        assertThat(event.getTags(), not(hasKey("other")));
+    }
 }
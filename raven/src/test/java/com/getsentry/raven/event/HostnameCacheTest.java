@@ -0,0 +1,149 @@
+package com.getsentry.raven.event;
+
+import mockit.*;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.InetAddress;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+public class HostnameCacheTest {
+    private static final long CACHE_DURATION = TimeUnit.HOURS.toMillis(5);
+    @Injectable
+    private InetAddress mockLocalHost = null;
+    @Injectable("serverName")
+    private String mockLocalHostName = null;
+    @Injectable
+    private InetAddress mockTimingOutLocalHost = null;
+    @Injectable
+    private ScheduledExecutorService mockExecutorService = null;
+    private HostnameCache hostnameCache;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        new NonStrictExpectations() {{
+            mockLocalHost.getCanonicalHostName();
+            result = mockLocalHostName;
+
+            mockTimingOutLocalHost.getCanonicalHostName();
+            result = new RuntimeException("For all intents and purposes, an exception is the same as a timeout");
+        }};
+        hostnameCache = new HostnameCache(CACHE_DURATION, mockExecutorService);
+    }
+
+    @Test
+    public void hostnameIsResolvedInTheBackground() throws Exception {
+        assertThat(hostnameCache.getHostname(), is(EventBuilder.DEFAULT_HOSTNAME));
+        assertThat(hostnameCache.getHostname(), is(EventBuilder.DEFAULT_HOSTNAME));
+
+        new Verifications() {{
+            mockExecutorService.schedule((Runnable) any, 0L, TimeUnit.MILLISECONDS);
+            times = 1;
+        }};
+    }
+
+    @Test
+    public void successfulResolutionIsRefreshedAfterFiveHours() throws Exception {
+        new NonStrictExpectations(InetAddress.class) {{
+            InetAddress.getLocalHost();
+            result = mockLocalHost;
+        }};
+        hostnameCache.start();
+        final Runnable refresh = captureScheduledRefresh(0L);
+
+        refresh.run();
+
+        assertThat(hostnameCache.getHostname(), is(mockLocalHostName));
+        assertThat(hostnameCache.getLastRefreshLatency(), is(greaterThanOrEqualTo(0L)));
+        assertThat(hostnameCache.getRefreshFailures(), is(0L));
+        new Verifications() {{
+            mockExecutorService.schedule((Runnable) any, CACHE_DURATION, TimeUnit.MILLISECONDS);
+        }};
+    }
+
+    @Test
+    public void unsuccessfulResolutionIsRetriedAfterOneSecond() throws Exception {
+        new NonStrictExpectations(InetAddress.class) {{
+            InetAddress.getLocalHost();
+            result = mockTimingOutLocalHost;
+        }};
+        hostnameCache.start();
+        final Runnable refresh = captureScheduledRefresh(0L);
+
+        refresh.run();
+
+        assertThat(hostnameCache.getHostname(), is(EventBuilder.DEFAULT_HOSTNAME));
+        assertThat(hostnameCache.getRefreshFailures(), is(1L));
+        new Verifications() {{
+            mockExecutorService.schedule((Runnable) any, HostnameCache.RETRY_DELAY, TimeUnit.MILLISECONDS);
+        }};
+    }
+
+    @Test
+    public void consecutiveFailuresAreRetriedWithAnExponentialBackoff() throws Exception {
+        new NonStrictExpectations(InetAddress.class) {{
+            InetAddress.getLocalHost();
+            result = mockTimingOutLocalHost;
+            result = mockTimingOutLocalHost;
+            result = mockTimingOutLocalHost;
+            result = mockTimingOutLocalHost;
+            result = mockLocalHost;
+            result = mockTimingOutLocalHost;
+        }};
+        long cacheDuration = 3 * HostnameCache.RETRY_DELAY;
+        hostnameCache = new HostnameCache(cacheDuration, mockExecutorService);
+
+        assertThat(hostnameCache.refresh(), is(HostnameCache.RETRY_DELAY));
+        assertThat(hostnameCache.refresh(), is(2 * HostnameCache.RETRY_DELAY));
+        assertThat(hostnameCache.refresh(), is(cacheDuration));
+        assertThat(hostnameCache.refresh(), is(cacheDuration));
+        assertThat(hostnameCache.refresh(), is(cacheDuration));
+        assertThat(hostnameCache.refresh(), is(HostnameCache.RETRY_DELAY));
+        assertThat(hostnameCache.getRefreshFailures(), is(5L));
+    }
+
+    @Test
+    public void firstResolutionCanBeAwaited() throws Exception {
+        new NonStrictExpectations(InetAddress.class) {{
+            InetAddress.getLocalHost();
+            result = mockTimingOutLocalHost;
+        }};
+
+        assertThat(hostnameCache.awaitFirstRefresh(0), is(false));
+        hostnameCache.refresh();
+        assertThat(hostnameCache.awaitFirstRefresh(0), is(true));
+    }
+
+    @Test
+    public void unsuccessfulResolutionKeepsLastKnownValue() throws Exception {
+        new NonStrictExpectations(InetAddress.class) {{
+            InetAddress.getLocalHost();
+            result = mockLocalHost;
+            result = mockTimingOutLocalHost;
+        }};
+
+        assertThat(hostnameCache.refresh(), is(CACHE_DURATION));
+        assertThat(hostnameCache.refresh(), is(HostnameCache.RETRY_DELAY));
+
+        assertThat(hostnameCache.getHostname(), is(mockLocalHostName));
+        new Verifications() {{
+            mockLocalHost.getCanonicalHostName();
+            mockTimingOutLocalHost.getCanonicalHostName();
+        }};
+    }
+
+    private Runnable captureScheduledRefresh(final long delay) {
+        final Runnable[] refresh = new Runnable[1];
+        new Verifications() {{
+            Runnable runnable;
+            mockExecutorService.schedule(runnable = withCapture(), delay, TimeUnit.MILLISECONDS);
+            refresh[0] = runnable;
+        }};
+        return refresh[0];
+    }
+}
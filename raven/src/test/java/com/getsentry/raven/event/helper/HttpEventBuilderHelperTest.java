@@ -3,6 +3,7 @@ package com.getsentry.raven.event.helper;
 import mockit.*;
 import com.getsentry.raven.event.EventBuilder;
 import com.getsentry.raven.event.interfaces.HttpInterface;
+import com.getsentry.raven.event.interfaces.HttpSnapshotPolicy;
 import com.getsentry.raven.event.interfaces.SentryInterface;
 import com.getsentry.raven.event.interfaces.UserInterface;
 import com.getsentry.raven.servlet.RavenServletRequestListener;
@@ -10,6 +11,7 @@ import org.testng.annotations.Test;
 
 import javax.servlet.http.HttpServletRequest;
 import java.security.Principal;
+import java.util.Collections;
 
 public class HttpEventBuilderHelperTest {
     @Tested
@@ -94,4 +96,26 @@ public class HttpEventBuilderHelperTest {
             mockEventBuilder.withSentryInterface(this.<UserInterface>withNotNull(), false);
         }};
     }
+
+    @Test
+    public void testWithSnapshotPolicy(@Injectable final HttpServletRequest mockHttpServletRequest)
+            throws Exception {
+        final RemoteAddressResolver remoteAddressResolver = new BasicRemoteAddressResolver();
+        final HttpSnapshotPolicy snapshotPolicy = new HttpSnapshotPolicy(Collections.singleton("Host"),
+            Collections.<String>emptyList(), 100);
+        HttpEventBuilderHelper snapshotHelper = new HttpEventBuilderHelper(remoteAddressResolver, snapshotPolicy);
+        new NonStrictExpectations(RavenServletRequestListener.class) {{
+            RavenServletRequestListener.getServletRequest();
+            result = mockHttpServletRequest;
+        }};
+
+        snapshotHelper.helpBuildingEvent(mockEventBuilder);
+
+        new Verifications() {{
+            new HttpInterface(mockHttpServletRequest, remoteAddressResolver, null, snapshotPolicy);
+            new HttpInterface(withInstanceOf(HttpServletRequest.class), withInstanceOf(RemoteAddressResolver.class));
+            times = 0;
+            mockEventBuilder.withSentryInterface(this.<HttpInterface>withNotNull(), false);
+        }};
+    }
 }
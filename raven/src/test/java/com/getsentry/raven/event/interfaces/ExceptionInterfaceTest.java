@@ -0,0 +1,59 @@
+package com.getsentry.raven.event.interfaces;
+
+import mockit.Injectable;
+import mockit.NonStrictExpectations;
+import mockit.Verifications;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ExceptionInterfaceTest {
+    @Test
+    public void testExceptionsAreExtractedWhenNeeded(@Injectable final Throwable mockThrowable) throws Exception {
+        final String message = "5d3bd6a4-2c55-4d3c-8c8c-0f4fd3b0a6e1";
+        new NonStrictExpectations() {{
+            mockThrowable.getMessage();
+            result = message;
+            mockThrowable.getStackTrace();
+            result = new StackTraceElement[0];
+            mockThrowable.getCause();
+            result = null;
+        }};
+
+        ExceptionInterface exceptionInterface = new ExceptionInterface(mockThrowable);
+        new Verifications() {{
+            mockThrowable.getStackTrace();
+            times = 0;
+        }};
+
+        assertThat(exceptionInterface.getExceptions().getFirst().getExceptionMessage(), is(message));
+        assertThat(exceptionInterface.getExceptions().size(), is(1));
+        new Verifications() {{
+            mockThrowable.getStackTrace();
+            times = 1;
+        }};
+    }
+
+    @Test
+    public void testSerializationExtractsTheExceptions() throws Exception {
+        final String message = "0f3c3c8e-6f7e-4f0a-bb0f-2b4a9a3b9d0e";
+        ExceptionInterface exceptionInterface = new ExceptionInterface(new IllegalStateException(message));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(exceptionInterface);
+        out.close();
+        ExceptionInterface deserialized = (ExceptionInterface) new ObjectInputStream(
+            new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        SentryException exception = deserialized.getExceptions().getFirst();
+        assertThat(exception.getExceptionMessage(), is(message));
+        assertThat(exception.getExceptionClassName(), is("IllegalStateException"));
+    }
+}
@@ -1,7 +1,9 @@
 package com.getsentry.raven.event.interfaces;
 
+import com.getsentry.raven.event.helper.BasicRemoteAddressResolver;
 import mockit.Injectable;
 import mockit.NonStrictExpectations;
+import mockit.Verifications;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -158,4 +160,50 @@ public class HttpInterfaceTest {
 
         assertThat(httpInterface.getCookies().size(), is(0));
     }
+
+    @Test
+    public void testSnapshotCapturesOnlyAllowedValues() throws Exception {
+        new NonStrictExpectations() {{
+            mockHttpServletRequest.getHeaders("User-Agent");
+            result = Collections.enumeration(Arrays.asList("agent"));
+            mockHttpServletRequest.getHeaders("Accept");
+            result = Collections.enumeration(Arrays.asList("text/html", "application/json"));
+            mockHttpServletRequest.getParameterValues("page");
+            result = new String[]{"2"};
+            mockHttpServletRequest.getParameterValues("query");
+            result = null;
+        }};
+        HttpSnapshotPolicy snapshotPolicy = new HttpSnapshotPolicy(Arrays.asList("User-Agent", "Accept", "Host"),
+            Arrays.asList("page", "query"), 10);
+
+        HttpInterface httpInterface = new HttpInterface(mockHttpServletRequest, new BasicRemoteAddressResolver(),
+            null, snapshotPolicy);
+
+        assertThat(httpInterface.getHeaders().size(), is(2));
+        assertThat(httpInterface.getHeaders(), hasEntry(is("User-Agent"), contains("agent")));
+        assertThat(httpInterface.getHeaders(), hasEntry(is("Accept"), contains("text/html", "applica...")));
+        assertThat(httpInterface.getParameters().size(), is(1));
+        assertThat(httpInterface.getParameters(), hasEntry(is("page"), contains("2")));
+        assertThat(httpInterface.getCookies().size(), is(0));
+        assertThat(httpInterface.getQueryString(), is("querySt..."));
+        new Verifications() {{
+            mockHttpServletRequest.getHeaderNames();
+            times = 0;
+            mockHttpServletRequest.getParameterMap();
+            times = 0;
+            mockHttpServletRequest.getCookies();
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testSnapshotTruncatesBody() throws Exception {
+        HttpSnapshotPolicy snapshotPolicy = new HttpSnapshotPolicy(Collections.<String>emptyList(),
+            Collections.<String>emptyList(), 8);
+
+        HttpInterface httpInterface = new HttpInterface(mockHttpServletRequest, new BasicRemoteAddressResolver(),
+            "a rather long body", snapshotPolicy);
+
+        assertThat(httpInterface.getBody(), is("a rat..."));
+    }
 }
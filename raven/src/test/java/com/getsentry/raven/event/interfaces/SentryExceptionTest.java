@@ -37,4 +37,36 @@ public class SentryExceptionTest {
         assertThat(exceptions.getFirst().getExceptionMessage(), is(exceptionMessage));
         assertThat(exceptions.getLast().getExceptionMessage(), is(causeMessage));
     }
+
+    @Test
+    public void testCircularChainIsExtractedOnce() throws Exception {
+        Exception exception = new Exception("exception");
+        Exception cause = new Exception("cause", exception);
+        exception.initCause(cause);
+
+        Deque<SentryException> exceptions = SentryException.extractExceptionQueue(exception);
+
+        assertThat(exceptions.size(), is(2));
+    }
+
+    @Test
+    public void testChainAndFramesAreBounded() throws Exception {
+        Exception exception = new Exception("exception", new Exception("cause", new Exception("root")));
+        StackTraceElement[] frames = new StackTraceElement[10];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new StackTraceElement("Class", "method" + i, null, i);
+        }
+        exception.setStackTrace(frames);
+        exception.getCause().setStackTrace(new StackTraceElement[]{frames[1], frames[8], frames[9]});
+
+        Deque<SentryException> exceptions = SentryException.extractExceptionQueue(exception, 2, 5);
+
+        assertThat(exceptions.size(), is(2));
+        StackTraceInterface stackTrace = exceptions.getFirst().getStackTraceInterface();
+        assertThat(stackTrace.getStackTrace().length, is(5));
+        assertThat(stackTrace.getStackTrace()[0], is(frames[0]));
+        StackTraceInterface causeStackTrace = exceptions.getLast().getStackTraceInterface();
+        assertThat(causeStackTrace.getStackTrace().length, is(3));
+        assertThat(causeStackTrace.getFramesCommonWithEnclosing(), is(2));
+    }
 }
@@ -5,6 +5,8 @@ import org.testng.annotations.Test;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 
 public class StackTraceInterfaceTest {
     @Test
@@ -17,4 +19,17 @@ public class StackTraceInterfaceTest {
 
         assertThat(stackTraceInterface.getFramesCommonWithEnclosing(), is(exception.getStackTrace().length - 1));
     }
+
+    @Test
+    public void testFramesAreReadWithoutExposingTheInternalArray() throws Exception {
+        StackTraceElement frame = new StackTraceElement("Class", "method", "File.java", 1);
+        StackTraceInterface stackTraceInterface = new StackTraceInterface(new StackTraceElement[]{frame});
+
+        StackTraceElement[] stackTrace = stackTraceInterface.getStackTrace();
+        stackTrace[0] = null;
+
+        assertThat(stackTraceInterface.getStackTrace(), is(not(sameInstance(stackTrace))));
+        assertThat(stackTraceInterface.getFrameCount(), is(1));
+        assertThat(stackTraceInterface.getFrame(0), is(frame));
+    }
 }
@@ -2,6 +2,7 @@ package com.getsentry.raven.jul;
 
 import com.getsentry.raven.environment.RavenEnvironment;
 import mockit.Injectable;
+import mockit.NonStrictExpectations;
 import mockit.Tested;
 import mockit.Verifications;
 import com.getsentry.raven.Raven;
@@ -12,6 +13,7 @@ import com.getsentry.raven.event.interfaces.MessageInterface;
 import com.getsentry.raven.event.interfaces.SentryException;
 import com.getsentry.raven.event.interfaces.SentryInterface;
 import org.hamcrest.Matchers;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
@@ -32,6 +34,16 @@ public class SentryHandlerEventBuildingTest {
     @Injectable
     private Raven mockRaven = null;
 
+    @BeforeMethod
+    public void setUp() throws Exception {
+        new NonStrictExpectations() {{
+            mockRaven.shouldSendEvent();
+            result = true;
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            result = true;
+        }};
+    }
+
     private void assertNoErrorsInErrorManager() throws Exception {
         new Verifications() {{
             errorManager.error(anyString, (Exception) any, anyInt);
@@ -52,7 +64,7 @@ public class SentryHandlerEventBuildingTest {
         new Verifications() {{
             Event event;
             mockRaven.runBuilderHelpers((EventBuilder) any);
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getMessage(), is(message));
             Map<String, SentryInterface> sentryInterfaces = event.getSentryInterfaces();
             assertThat(sentryInterfaces, hasKey(MessageInterface.MESSAGE_INTERFACE));
@@ -84,7 +96,7 @@ public class SentryHandlerEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getLevel(), is(expectedLevel));
         }};
         assertNoErrorsInErrorManager();
@@ -98,7 +110,7 @@ public class SentryHandlerEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             ExceptionInterface exceptionInterface = (ExceptionInterface) event.getSentryInterfaces()
                     .get(ExceptionInterface.EXCEPTION_INTERFACE);
             final SentryException sentryException = exceptionInterface.getExceptions().getFirst();
@@ -119,7 +131,7 @@ public class SentryHandlerEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getCulprit(), is("a.b"));
         }};
         assertNoErrorsInErrorManager();
@@ -133,7 +145,7 @@ public class SentryHandlerEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getCulprit(), is(loggerName));
         }};
         assertNoErrorsInErrorManager();
@@ -169,7 +181,7 @@ public class SentryHandlerEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getRelease(), is(release));
         }};
         assertNoErrorsInErrorManager();
@@ -184,10 +196,65 @@ public class SentryHandlerEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getEnvironment(), is(environment));
         }};
         assertNoErrorsInErrorManager();
     }
 
+    @Test
+    public void testSampledOutEventIsNotBuilt() throws Exception {
+        new NonStrictExpectations() {{
+            mockRaven.shouldSendEvent();
+            result = false;
+        }};
+
+        sentryHandler.publish(newLogRecord(null, Level.INFO, null, null, null));
+
+        new Verifications() {{
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            times = 0;
+            mockRaven.sendSampledEvent((Event) any);
+            times = 0;
+        }};
+        assertNoErrorsInErrorManager();
+    }
+
+    @Test
+    public void testEventDroppedByTheBuilderHelpersIsNotSent() throws Exception {
+        new NonStrictExpectations() {{
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            result = false;
+        }};
+
+        sentryHandler.publish(newLogRecord(null, Level.INFO, null, null, null));
+
+        new Verifications() {{
+            mockRaven.sendSampledEvent((Event) any);
+            times = 0;
+        }};
+        assertNoErrorsInErrorManager();
+    }
+
+    @Test
+    public void testAsyncBuildingOnlyCapturesTheRecord() throws Exception {
+        final String message = "8b4a2f8e-6e9c-4c0e-9a54-6c1b0f2d3a77";
+        new NonStrictExpectations() {{
+            mockRaven.isEventBuildingAsync();
+            result = true;
+        }};
+
+        sentryHandler.publish(newLogRecord(null, Level.INFO, message, null, null));
+
+        new Verifications() {{
+            EventBuilder eventBuilder;
+            mockRaven.buildAndSendEvent(eventBuilder = withCapture());
+            assertThat(eventBuilder.getEvent().getMessage(), is(message));
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            times = 0;
+            mockRaven.sendSampledEvent((Event) any);
+            times = 0;
+        }};
+        assertNoErrorsInErrorManager();
+    }
 }
@@ -0,0 +1,57 @@
+package com.getsentry.raven.marshaller.json;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class InAppFrameMatcherTest {
+    private final InAppFrameMatcher matcher = new InAppFrameMatcher(
+        Arrays.asList("com.example.app", "com.example.lib.", "org.company"));
+
+    @Test
+    public void testClassesStartingWithAPrefixAreInApp() {
+        assertThat(matcher.isInApp("com.example.app.Main"), is(true));
+        assertThat(matcher.isInApp("com.example.lib.Util"), is(true));
+        assertThat(matcher.isInApp("org.company.Service$1"), is(true));
+    }
+
+    @Test
+    public void testOtherClassesArentInApp() {
+        assertThat(matcher.isInApp("com.example.Main"), is(false));
+        assertThat(matcher.isInApp("com.example.library.Util"), is(false));
+        assertThat(matcher.isInApp("org.comp"), is(false));
+        assertThat(matcher.isInApp(""), is(false));
+    }
+
+    @Test
+    public void testPrefixesMatchAnyCharacterLikeStartsWith() {
+        assertThat(matcher.isInApp("com.example.application.Main"), is(true));
+        assertThat(matcher.isInApp("com.example.app"), is(true));
+    }
+
+    @Test
+    public void testNoPrefix() {
+        InAppFrameMatcher noPrefix = new InAppFrameMatcher(Collections.<String>emptyList());
+
+        assertThat(noPrefix.isInApp("com.example.app.Main"), is(false));
+    }
+
+    @Test
+    public void testEmptyPrefixMatchesEverything() {
+        InAppFrameMatcher emptyPrefix = new InAppFrameMatcher(Collections.singletonList(""));
+
+        assertThat(emptyPrefix.isInApp("com.example.app.Main"), is(true));
+    }
+
+    @Test
+    public void testCachedDecisionsStayCorrect() {
+        for (int i = 0; i < InAppFrameMatcher.MAX_CACHED_CLASSES * 2; i++) {
+            assertThat(matcher.isInApp("com.example.app.Class" + i), is(true));
+            assertThat(matcher.isInApp("com.other.Class" + i), is(false));
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package com.getsentry.raven.marshaller.json;
 
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.getsentry.raven.event.Breadcrumb;
 import com.getsentry.raven.event.BreadcrumbBuilder;
 import mockit.*;
 import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.interfaces.ExceptionInterface;
+import com.getsentry.raven.event.interfaces.SentryException;
 import com.getsentry.raven.event.interfaces.SentryInterface;
+import com.getsentry.raven.event.interfaces.StackTraceInterface;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -16,7 +20,10 @@ import java.util.*;
 
 import static com.getsentry.raven.marshaller.json.JsonComparisonUtil.*;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 public class JsonMarshallerTest {
     @Tested
@@ -391,4 +398,187 @@ public class JsonMarshallerTest {
                 + "kdNIQ0xY4p6i/baVXYXfmxyeOs6zfXY43jPBZ0g=="
         ));
     }
+
+    @Test
+    public void testBuffersAreReusedBetweenEvents() throws Exception {
+        jsonMarshaller.setCompression(true);
+        ByteArrayOutputStream firstOutputStream = new ByteArrayOutputStream();
+        ByteArrayOutputStream secondOutputStream = new ByteArrayOutputStream();
+
+        jsonMarshaller.marshall(mockEvent, firstOutputStream);
+        jsonMarshaller.marshall(mockEvent, secondOutputStream);
+
+        assertThat(secondOutputStream.toByteArray(), is(firstOutputStream.toByteArray()));
+    }
+
+    @Test
+    public void testFailedEventDoesntCorruptTheNextOne(
+            @Injectable final SentryInterface mockSentryInterface,
+            @Injectable final InterfaceBinding<SentryInterface> mockInterfaceBinding) throws Exception {
+        final JsonOutputStreamParser jsonOutputStreamParser = newJsonOutputStream();
+        new NonStrictExpectations() {{
+            mockEvent.getSentryInterfaces();
+            returns(Collections.singletonMap("interfaceKey", mockSentryInterface),
+                Collections.<String, SentryInterface>emptyMap());
+            mockInterfaceBinding.writeInterface((JsonGenerator) any, mockSentryInterface);
+            result = new IOException();
+        }};
+        jsonMarshaller.addInterfaceBinding(mockSentryInterface.getClass(), mockInterfaceBinding);
+        ByteArrayOutputStream failedOutputStream = new ByteArrayOutputStream();
+
+        jsonMarshaller.marshall(mockEvent, failedOutputStream);
+        jsonMarshaller.marshall(mockEvent, jsonOutputStreamParser.outputStream());
+
+        assertThat(failedOutputStream.size(), is(0));
+        assertThat(jsonOutputStreamParser.value().get("event_id").asText(), is("00000000000000000000000000000000"));
+    }
+
+    @Test
+    public void testExtrasAreCapped() throws Exception {
+        final JsonOutputStreamParser jsonOutputStreamParser = newJsonOutputStream();
+        final Map<String, Object> extras = new LinkedHashMap<>();
+        extras.put("first", Collections.singletonMap("key", Collections.singletonMap("key", "value")));
+        extras.put("second", "value");
+        extras.put("third", "value");
+        new NonStrictExpectations() {{
+            mockEvent.getExtra();
+            result = extras;
+        }};
+        jsonMarshaller.setMaxExtras(2);
+        jsonMarshaller.setMaxDepth(1);
+
+        jsonMarshaller.marshall(mockEvent, jsonOutputStreamParser.outputStream());
+
+        JsonNode extra = jsonOutputStreamParser.value().get("extra");
+        assertThat(extra.size(), is(2));
+        assertThat(extra.has("third"), is(false));
+        assertThat(extra.get("first").get("key").asText(), is("..."));
+        assertThat(jsonMarshaller.getTruncatedEvents(), is(1L));
+    }
+
+    @Test
+    public void testOversizedEventIsWrittenWithoutExtras() throws Exception {
+        final JsonOutputStreamParser jsonOutputStreamParser = newJsonOutputStream();
+        final String largeValue = repeat("0123456789", 1000);
+        new NonStrictExpectations() {{
+            mockEvent.getExtra();
+            result = Collections.singletonMap("key", largeValue);
+        }};
+        jsonMarshaller.setMaxSize(1000);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        jsonMarshaller.marshall(mockEvent, outputStream);
+        jsonMarshaller.marshall(mockEvent, jsonOutputStreamParser.outputStream());
+
+        assertThat(outputStream.size(), is(lessThanOrEqualTo(1000)));
+        JsonNode value = jsonOutputStreamParser.value();
+        assertThat(value.get("extra").size(), is(0));
+        assertThat(value.get("event_id").asText(), is("00000000000000000000000000000000"));
+        assertThat(jsonMarshaller.getTruncatedEvents(), is(2L));
+    }
+
+    @Test
+    public void testOldestBreadcrumbsAreDroppedFirst() throws Exception {
+        final JsonOutputStreamParser jsonOutputStreamParser = newJsonOutputStream();
+        final List<Breadcrumb> breadcrumbs = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            breadcrumbs.add(new BreadcrumbBuilder()
+                .setTimestamp(new Date(0))
+                .setMessage(i + repeat("-", 100))
+                .build());
+        }
+        new NonStrictExpectations() {{
+            mockEvent.getBreadcrumbs();
+            result = breadcrumbs;
+            mockEvent.getExtra();
+            result = Collections.singletonMap("key", "value");
+        }};
+        jsonMarshaller.setMaxSize(1000);
+
+        jsonMarshaller.marshall(mockEvent, jsonOutputStreamParser.outputStream());
+
+        JsonNode value = jsonOutputStreamParser.value();
+        JsonNode values = value.get("breadcrumbs").get("values");
+        assertThat(values.size(), is(4));
+        assertThat(values.get(0).get("message").asText(), is(12 + repeat("-", 100)));
+        assertThat(values.get(3).get("message").asText(), is(15 + repeat("-", 100)));
+        assertThat(value.get("extra").get("key").asText(), is("value"));
+    }
+
+    @Test
+    public void testExceptionTypeIsKeptWhenFramesAreDropped() throws Exception {
+        final JsonOutputStreamParser jsonOutputStreamParser = newJsonOutputStream();
+        StackTraceElement[] frames = new StackTraceElement[100];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new StackTraceElement("Class" + i, "method", "Class" + i + ".java", i);
+        }
+        final StackTraceInterface stackTrace = new StackTraceInterface(frames);
+        Deque<SentryException> exceptions = new ArrayDeque<>();
+        exceptions.add(new SentryException("message", "IllegalStateException", "java.lang", stackTrace));
+        final ExceptionInterface exceptionInterface = new ExceptionInterface(exceptions);
+        new NonStrictExpectations() {{
+            mockEvent.getSentryInterfaces();
+            result = Collections.singletonMap(ExceptionInterface.EXCEPTION_INTERFACE, exceptionInterface);
+        }};
+        jsonMarshaller.addInterfaceBinding(ExceptionInterface.class,
+            new ExceptionInterfaceBinding(new StackTraceInterfaceBinding()));
+        jsonMarshaller.setMaxSize(2000);
+
+        jsonMarshaller.marshall(mockEvent, jsonOutputStreamParser.outputStream());
+
+        JsonNode exception = jsonOutputStreamParser.value().get(ExceptionInterface.EXCEPTION_INTERFACE).get(0);
+        assertThat(exception.get("type").asText(), is("IllegalStateException"));
+        assertThat(exception.get("value").asText(), is("message"));
+        JsonNode writtenFrames = exception.get("stacktrace").get("frames");
+        assertThat(writtenFrames.size(), is(lessThan(100)));
+        // The most recent frame is the last one written
+        assertThat(writtenFrames.get(writtenFrames.size() - 1).get("module").asText(), is("Class0"));
+    }
+
+    @Test
+    public void testMessageIsCutToFitTheMaximumSize() throws Exception {
+        final JsonOutputStreamParser jsonOutputStreamParser = newJsonOutputStream();
+        final String largeMessage = repeat("0123456789", 1000);
+        new NonStrictExpectations() {{
+            mockEvent.getMessage();
+            result = largeMessage;
+        }};
+        JsonMarshaller marshaller = new JsonMarshaller(largeMessage.length());
+        marshaller.setCompression(false);
+        marshaller.setMaxSize(1000);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        marshaller.marshall(mockEvent, outputStream);
+        marshaller.marshall(mockEvent, jsonOutputStreamParser.outputStream());
+
+        assertThat(outputStream.size(), is(lessThanOrEqualTo(1000)));
+        String message = jsonOutputStreamParser.value().get("message").asText();
+        assertThat(message.length(), is(lessThan(largeMessage.length())));
+        assertThat(message, endsWith("..."));
+    }
+
+    @Test
+    public void testEventTooLargeOnceCutIsDropped() throws Exception {
+        final String largeValue = repeat("0123456789", 1000);
+        new NonStrictExpectations() {{
+            mockEvent.getTags();
+            result = Collections.singletonMap("key", largeValue);
+        }};
+        jsonMarshaller.setMaxSize(1000);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        jsonMarshaller.marshall(mockEvent, outputStream);
+
+        assertThat(outputStream.size(), is(0));
+        assertThat(jsonMarshaller.getDroppedEvents(), is(1L));
+        assertThat(jsonMarshaller.getTruncatedEvents(), is(0L));
+    }
+
+    private static String repeat(String value, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
 }
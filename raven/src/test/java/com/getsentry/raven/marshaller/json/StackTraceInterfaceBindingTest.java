@@ -1,11 +1,15 @@
 package com.getsentry.raven.marshaller.json;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import mockit.Delegate;
 import mockit.Injectable;
 import mockit.NonStrictExpectations;
 import mockit.Tested;
 import com.getsentry.raven.event.interfaces.StackTraceInterface;
 import org.testng.annotations.Test;
 
+import java.util.Collections;
+
 import static com.getsentry.raven.marshaller.json.JsonComparisonUtil.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -23,10 +27,7 @@ public class StackTraceInterfaceBindingTest {
         final String className = "31b26f01-9b97-442b-9f36-8a317f94ad76";
         final int lineNumber = 1;
         final StackTraceElement stackTraceElement = new StackTraceElement(className, methodName, "File.java", lineNumber);
-        new NonStrictExpectations() {{
-            mockStackTraceInterface.getStackTrace();
-            result = new StackTraceElement[]{stackTraceElement};
-        }};
+        recordFrames(stackTraceElement);
 
         interfaceBinding.writeInterface(jsonGeneratorParser.generator(), mockStackTraceInterface);
 
@@ -37,9 +38,8 @@ public class StackTraceInterfaceBindingTest {
     public void testFramesCommonWithEnclosing() throws Exception {
         final JsonGeneratorParser jsonGeneratorParser = newJsonGenerator();
         final StackTraceElement stackTraceElement = new StackTraceElement("", "", "File.java", 0);
+        recordFrames(stackTraceElement, stackTraceElement);
         new NonStrictExpectations() {{
-            mockStackTraceInterface.getStackTrace();
-            result = new StackTraceElement[]{stackTraceElement, stackTraceElement};
             mockStackTraceInterface.getFramesCommonWithEnclosing();
             result = 1;
         }};
@@ -54,9 +54,8 @@ public class StackTraceInterfaceBindingTest {
     public void testFramesCommonWithEnclosingDisabled() throws Exception {
         final JsonGeneratorParser jsonGeneratorParser = newJsonGenerator();
         final StackTraceElement stackTraceElement = new StackTraceElement("", "", "File.java", 0);
+        recordFrames(stackTraceElement, stackTraceElement);
         new NonStrictExpectations() {{
-            mockStackTraceInterface.getStackTrace();
-            result = new StackTraceElement[]{stackTraceElement, stackTraceElement};
             mockStackTraceInterface.getFramesCommonWithEnclosing();
             result = 1;
         }};
@@ -66,4 +65,109 @@ public class StackTraceInterfaceBindingTest {
 
         assertThat(jsonGeneratorParser.value(), is(jsonResource("/com/getsentry/raven/marshaller/json/StackTrace3.json")));
     }
+
+    @Test
+    public void testInAppFrames() throws Exception {
+        final JsonGeneratorParser jsonGeneratorParser = newJsonGenerator();
+        final StackTraceElement inAppElement = new StackTraceElement("com.example.App", "run", "App.java", 1);
+        final StackTraceElement otherElement = new StackTraceElement("java.lang.Thread", "run", "Thread.java", 2);
+        recordFrames(inAppElement, otherElement);
+        interfaceBinding.setInAppFrames(Collections.singletonList("com.example."));
+
+        interfaceBinding.writeInterface(jsonGeneratorParser.generator(), mockStackTraceInterface);
+
+        JsonNode frames = jsonGeneratorParser.value().get("frames");
+        assertThat(frames.get(0).get("in_app").asBoolean(), is(false));
+        assertThat(frames.get(1).get("in_app").asBoolean(), is(true));
+    }
+
+    @Test
+    public void testRepeatedStackTraceIsWrittenFromTheCache() throws Exception {
+        StackTraceElement stackTraceElement = new StackTraceElement("com.example.App", "run", "App.java", 1);
+        // Equal but distinct stack traces, as every exception has its own stack trace
+        StackTraceInterface firstStackTrace = new StackTraceInterface(new StackTraceElement[]{stackTraceElement});
+        StackTraceInterface secondStackTrace = new StackTraceInterface(new StackTraceElement[]{stackTraceElement});
+        JsonGeneratorParser firstParser = newJsonGenerator();
+        JsonGeneratorParser secondParser = newJsonGenerator();
+
+        interfaceBinding.writeInterface(firstParser.generator(), firstStackTrace);
+        interfaceBinding.writeInterface(secondParser.generator(), secondStackTrace);
+
+        assertThat(secondParser.value(), is(firstParser.value()));
+        assertThat(interfaceBinding.getFrameCacheMisses(), is(1L));
+        assertThat(interfaceBinding.getFrameCacheHits(), is(1L));
+    }
+
+    @Test
+    public void testFramesCommonWithEnclosingArePartOfTheCacheKey() throws Exception {
+        final StackTraceElement stackTraceElement = new StackTraceElement("", "", "File.java", 0);
+        recordFrames(stackTraceElement, stackTraceElement);
+        new NonStrictExpectations() {{
+            mockStackTraceInterface.getFramesCommonWithEnclosing();
+            returns(0, 1);
+        }};
+        JsonGeneratorParser firstParser = newJsonGenerator();
+        JsonGeneratorParser secondParser = newJsonGenerator();
+
+        interfaceBinding.writeInterface(firstParser.generator(), mockStackTraceInterface);
+        interfaceBinding.writeInterface(secondParser.generator(), mockStackTraceInterface);
+
+        assertThat(secondParser.value(), is(jsonResource("/com/getsentry/raven/marshaller/json/StackTrace2.json")));
+        assertThat(interfaceBinding.getFrameCacheMisses(), is(2L));
+        assertThat(interfaceBinding.getFrameCacheHits(), is(0L));
+    }
+
+    @Test
+    public void testFrameCacheCanBeDisabled() throws Exception {
+        final StackTraceElement stackTraceElement = new StackTraceElement("", "", "File.java", 0);
+        recordFrames(stackTraceElement);
+        interfaceBinding.setFrameCacheSize(0);
+
+        interfaceBinding.writeInterface(newJsonGenerator().generator(), mockStackTraceInterface);
+        interfaceBinding.writeInterface(newJsonGenerator().generator(), mockStackTraceInterface);
+
+        assertThat(interfaceBinding.getFrameCacheMisses(), is(0L));
+        assertThat(interfaceBinding.getFrameCacheHits(), is(0L));
+    }
+
+    @Test
+    public void testMiddleFramesAreOmitted() throws Exception {
+        final StackTraceElement[] stackTrace = new StackTraceElement[10];
+        for (int i = 0; i < stackTrace.length; i++) {
+            stackTrace[i] = new StackTraceElement("Class", "method" + i, "File.java", i);
+        }
+        recordFrames(stackTrace);
+        interfaceBinding.setMaxFrames(5);
+        JsonGeneratorParser jsonGeneratorParser = newJsonGenerator();
+
+        interfaceBinding.writeInterface(jsonGeneratorParser.generator(), mockStackTraceInterface);
+
+        JsonNode value = jsonGeneratorParser.value();
+        JsonNode frames = value.get("frames");
+        assertThat(frames.size(), is(5));
+        // Frames are sent from the oldest call, the most recent ones are kept
+        assertThat(frames.get(0).get("function").asText(), is("method9"));
+        assertThat(frames.get(1).get("function").asText(), is("method8"));
+        assertThat(frames.get(2).get("function").asText(), is("method2"));
+        assertThat(frames.get(4).get("function").asText(), is("method0"));
+        assertThat(value.get("frames_omitted").get(0).asInt(), is(2));
+        assertThat(value.get("frames_omitted").get(1).asInt(), is(7));
+        assertThat(interfaceBinding.getTruncatedStackTraces(), is(1L));
+    }
+
+    /**
+     * Records the frames read from the mocked stack trace, from the most recent one.
+     */
+    private void recordFrames(final StackTraceElement... frames) {
+        new NonStrictExpectations() {{
+            mockStackTraceInterface.getFrameCount();
+            result = frames.length;
+            mockStackTraceInterface.getFrame(anyInt);
+            result = new Delegate<StackTraceElement>() {
+                StackTraceElement getFrame(int index) {
+                    return frames[index];
+                }
+            };
+        }};
+    }
 }